@@ -0,0 +1,128 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.mutiny.core.net.SocketAddress;
+
+import javax.sip.address.SipURI;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * User agent answering every INVITE with SDP and hanging up right after the call is confirmed.
+ * Runs without Vert.x: messages are exchanged with the peer through {@link InMemoryTransport},
+ * timers are advanced by the benchmark calling {@link #onTimerTick(long)}.
+ */
+final class BenchmarkUserAgent extends AbstractSipUserAgent<Void> {
+    private final InMemoryTransport transport;
+    private long terminatedDialogs;
+
+    private BenchmarkUserAgent(SipVerticleConfig config, InMemoryTransport transport, String idPrefix) {
+        super(config, transport, idGenerator(idPrefix));
+        this.transport = transport;
+    }
+
+    /**
+     * @return client and server user agents connected to each other
+     */
+    static BenchmarkUserAgent[] pair() {
+        return pair(SipMetrics.NOOP);
+    }
+
+    /**
+     * @param metrics metrics shared by both user agents
+     */
+    static BenchmarkUserAgent[] pair(SipMetrics metrics) {
+        return pair(metrics, null);
+    }
+
+    /**
+     * @param metrics metrics shared by both user agents
+     * @param capture capture of messages sent by both user agents, null disables
+     */
+    static BenchmarkUserAgent[] pair(SipMetrics metrics, SipCapture capture) {
+        ArrayDeque<Runnable> inFlight = new ArrayDeque<>();
+        BenchmarkUserAgent client = create(inFlight, 5080, "client-", metrics);
+        BenchmarkUserAgent server = create(inFlight, 5081, "server-", metrics);
+        client.transport.connect(server);
+        server.transport.connect(client);
+        client.transport.capture(capture);
+        server.transport.capture(capture);
+        return new BenchmarkUserAgent[]{client, server};
+    }
+
+    /**
+     * @return user agent on port 5080 journaling dialogs in directory, see {@link #recoverDialogs()}
+     */
+    static BenchmarkUserAgent journaled(String directory) {
+        SipVerticleConfig config = new SipVerticleConfig("127.0.0.1", 5080, "udp").setJournalDirectory(directory);
+        SocketAddress address = SocketAddress.inetSocketAddress(5080, "127.0.0.1");
+        return new BenchmarkUserAgent(config, new InMemoryTransport(new ArrayDeque<>(), address), "journaled-");
+    }
+
+    private static BenchmarkUserAgent create(ArrayDeque<Runnable> inFlight, int port, String idPrefix,
+                                             SipMetrics metrics) {
+        // short timers, so transactions completed by benchmark iterations don't pile up
+        SipVerticleConfig config = new SipVerticleConfig("127.0.0.1", port, "udp")
+            .setTimerT1(1)
+            .setTimerT2(4)
+            .setTimerT4(5)
+            .setMetrics(metrics);
+        SocketAddress address = SocketAddress.inetSocketAddress(port, "127.0.0.1");
+        return new BenchmarkUserAgent(config, new InMemoryTransport(inFlight, address), idPrefix);
+    }
+
+    private static Supplier<String> idGenerator(String prefix) {
+        AtomicLong ids = new AtomicLong();
+        return () -> prefix + ids.incrementAndGet();
+    }
+
+    SipURI uri() {
+        try {
+            return addressFactory.createSipURI("Robot", config.getHostPort());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    void call(SipURI target) {
+        sendRequest(createInvite("Human", target));
+    }
+
+    void deliver() {
+        transport.deliver();
+    }
+
+    long getTerminatedDialogs() {
+        return terminatedDialogs;
+    }
+
+    SIPResponse okWithSdp(String callId) {
+        return createOk(callId, BenchmarkMessages.SDP);
+    }
+
+    @Override
+    protected void onInvite(SIPRequest invite) {
+        String callId = invite.getCallId().getCallId();
+        sendResponse(createTrying(callId));
+        sendResponse(okWithSdp(callId));
+    }
+
+    @Override
+    protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+        sendRequest(createAck(successResponseOnInvite));
+        sendRequest(createBye(successResponseOnInvite.getCallId().getCallId()));
+    }
+
+    @Override
+    protected void onBye(SIPRequest bye) {
+        sendResponse(createOk(bye.getCallId().getCallId()));
+    }
+
+    @Override
+    protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+        terminatedDialogs++;
+    }
+}
@@ -0,0 +1,49 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.openjdk.jmh.annotations.*;
+import tech.ivoice.javax.sip.SipClientTransactionImpl;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogImpl;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests created within client dialog from dialog state
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DialogBenchmark {
+    private SipDialog<Void> dialog;
+
+    @Setup
+    public void setUp() throws ParseException {
+        SIPRequest invite = (SIPRequest) new StringMsgParser()
+            .parseSIPMessage(BenchmarkMessages.INVITE.getBytes(), true, false, null);
+        dialog = new SipDialogImpl<>(new SipClientTransactionImpl(invite), () -> "z9hG4bK-benchmark",
+            new HeaderFactoryImpl(), "udp");
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        dialog.updateOnResponse(ok);
+    }
+
+    @Benchmark
+    public SIPRequest createRequest() {
+        return dialog.createRequest(Request.BYE);
+    }
+
+    @Benchmark
+    public SIPRequest createAck() {
+        return dialog.createAck();
+    }
+}
@@ -0,0 +1,71 @@
+package tech.ivoice.sip.vertx;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import tech.ivoice.sip.metrics.MicrometerSipMetrics;
+
+import javax.sip.address.SipURI;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete call between two user agents: INVITE, 100 Trying, 200 OK with SDP, ACK, BYE, 200 OK.
+ * Every message is encoded, passed through in-memory transport and received by the peer as from network.
+ * With metrics false user agents use {@link SipMetrics#NOOP}, with true - {@link MicrometerSipMetrics}.
+ * With capture true every message is captured to pcap ring in temporary directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DialogLifecycleBenchmark {
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"false", "true"})
+    public boolean capture;
+
+    private SipCapture sipCapture;
+
+    private BenchmarkUserAgent client;
+    private BenchmarkUserAgent server;
+    private SipURI target;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (capture) {
+            sipCapture = new SipCapture(Files.createTempDirectory("sip-capture"), "benchmark", 64 * 1024 * 1024, 4);
+        }
+        BenchmarkUserAgent[] pair = BenchmarkUserAgent.pair(metrics
+            ? new MicrometerSipMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT))
+            : SipMetrics.NOOP, sipCapture);
+        client = pair[0];
+        server = pair[1];
+        target = server.uri();
+    }
+
+    @TearDown
+    public void checkCallsCompleted() {
+        if (sipCapture != null) {
+            sipCapture.close();
+        }
+        if (client.getDialogCount() != 0 || server.getDialogCount() != 0) {
+            throw new IllegalStateException("Dialogs left after calls: client " + client.getDialogCount() +
+                ", server " + server.getDialogCount());
+        }
+    }
+
+    @Benchmark
+    public long call() {
+        client.call(target);
+        client.deliver();
+        long now = AbstractSipUserAgent.currentTimeMillis();
+        client.onTimerTick(now);
+        server.onTimerTick(now);
+        return client.getTerminatedDialogs();
+    }
+}
@@ -0,0 +1,95 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.openjdk.jmh.annotations.*;
+import tech.ivoice.javax.sip.SipClientTransactionImpl;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogImpl;
+import tech.ivoice.javax.sip.SipDialogSnapshot;
+
+import javax.sip.message.Response;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Restart of user agent with journaled confirmed dialogs: replay of journal, dialogs restore and compaction,
+ * see {@link AbstractSipUserAgent#recoverDialogs()}. Target is 1 s for 100000 dialogs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DialogRecoveryBenchmark {
+    private static final int BATCH = 1000;
+    private static final int JOURNAL_SIZE = 256 * 1024 * 1024;
+
+    @Param({"100000"})
+    private int dialogs;
+
+    private ByteBuffer snapshot;
+    private Path directory;
+    private BenchmarkUserAgent userAgent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ParseException {
+        SIPRequest invite = (SIPRequest) new StringMsgParser()
+            .parseSIPMessage(BenchmarkMessages.INVITE.getBytes(), true, false, null);
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipClientTransactionImpl(invite), () -> "z9hG4bK-benchmark",
+            new HeaderFactoryImpl(), "udp");
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        dialog.updateOnResponse(ok);
+        snapshot = ByteBuffer.allocate(4096);
+        dialog.snapshot().writeTo(snapshot);
+        snapshot.flip();
+        // journaled copies get their own Call-IDs
+        SipDialogSnapshot.readString(snapshot);
+    }
+
+    /**
+     * Journals dialogs as previous run of the user agent would do
+     */
+    @Setup(Level.Invocation)
+    public void journal() throws IOException {
+        directory = Files.createTempDirectory("dialog-recovery");
+        SipDialogJournal journal = new SipDialogJournal(directory.resolve("dialogs-udp-5080-0.journal"), JOURNAL_SIZE);
+        for (int i = 0; i < dialogs; i += BATCH) {
+            ByteBuffer batch = ByteBuffer.allocate(BATCH * (1 + 64 + snapshot.remaining()));
+            for (int j = i; j < i + BATCH; j++) {
+                batch.put(SipDialogReplicator.SNAPSHOT);
+                SipDialogSnapshot.writeString(batch, "recovered-" + j);
+                batch.put(snapshot.duplicate());
+            }
+            journal.append(batch.flip());
+        }
+        journal.close();
+        userAgent = BenchmarkUserAgent.journaled(directory.toString());
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteJournal() throws IOException {
+        if (userAgent.getDialogCount() != dialogs) {
+            throw new IllegalStateException(userAgent.getDialogCount() + " of " + dialogs + " dialogs recovered");
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public BenchmarkUserAgent recover() {
+        userAgent.recoverDialogs();
+        return userAgent;
+    }
+}
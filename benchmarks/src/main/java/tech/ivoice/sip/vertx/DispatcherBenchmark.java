@@ -0,0 +1,40 @@
+package tech.ivoice.sip.vertx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing cost of {@link SipDispatcher} per forwarded message: Call-ID scan and hash ring lookup, socket excluded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatcherBenchmark {
+    @Param({"INVITE", "ACK", "BYE"})
+    public String method;
+
+    @Param({"4", "32"})
+    public int backends;
+
+    private SipDispatcher dispatcher;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        SipDispatcherConfig config = new SipDispatcherConfig(new SipVerticleConfig("127.0.0.1", 5060, "udp"));
+        for (int i = 1; i <= backends; i++) {
+            config.addBackend("10.0.0." + i, 5080);
+        }
+        dispatcher = new SipDispatcher(config);
+        bytes = BenchmarkMessages.of(method).getBytes();
+    }
+
+    @Benchmark
+    public String route() {
+        return dispatcher.backendOf(bytes);
+    }
+}
@@ -0,0 +1,95 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.net.SocketAddress;
+
+import java.util.ArrayDeque;
+
+/**
+ * Delivers encoded messages to the peer user agent receive path. Messages are queued, not delivered from
+ * {@code send}, so user agent never re-enters itself; {@link #deliver()} drains the queue.
+ */
+final class InMemoryTransport implements AbstractSipUserAgent.Transport {
+    private final ArrayDeque<Runnable> inFlight;
+    private final SocketAddress localAddress;
+    private AbstractSipUserAgent<?> peer;
+    private SipCapture capture;
+
+    /**
+     * @param inFlight queue shared by both peers, so messages are delivered in order they are sent
+     */
+    InMemoryTransport(ArrayDeque<Runnable> inFlight, SocketAddress localAddress) {
+        this.inFlight = inFlight;
+        this.localAddress = localAddress;
+    }
+
+    void connect(AbstractSipUserAgent<?> peer) {
+        this.peer = peer;
+    }
+
+    /**
+     * Captures every sent message, as listening transport does
+     */
+    void capture(SipCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Delivers queued messages and messages sent in response, until there are no more
+     */
+    void deliver() {
+        Runnable delivery;
+        while ((delivery = inFlight.poll()) != null) {
+            delivery.run();
+        }
+    }
+
+    @Override
+    public Uni<Void> asyncStartListener() {
+        return Uni.createFrom().voidItem();
+    }
+
+    @Override
+    public void send(SIPRequest request) {
+        send((SIPMessage) request);
+    }
+
+    @Override
+    public void send(SIPResponse response) {
+        send((SIPMessage) response);
+    }
+
+    @Override
+    public void send(SIPResponse response, Buffer encoded) {
+        send(encoded.getBytes());
+    }
+
+    @Override
+    public void send(Buffer encoded, Via requestVia) {
+        send(encoded.getBytes());
+    }
+
+    private void send(SIPMessage message) {
+        ByteBuf encoded = SipMessageEncoder.encode(message);
+        try {
+            send(ByteBufUtil.getBytes(encoded));
+        } finally {
+            encoded.release();
+        }
+    }
+
+    private void send(byte[] bytes) {
+        if (capture != null) {
+            capture.packet(localAddress.host(), localAddress.port(), peer.config.getHost(), peer.config.getPort(),
+                bytes);
+        }
+        inFlight.add(() -> peer.dispatch(bytes, localAddress));
+    }
+}
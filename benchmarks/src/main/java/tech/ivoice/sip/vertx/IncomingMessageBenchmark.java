@@ -0,0 +1,41 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receive path parsing: head scanned for every received message (routing, retransmission absorption),
+ * then full parse of messages reaching dialog or application.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IncomingMessageBenchmark {
+    @Param({"INVITE", "ACK", "BYE", "MESSAGE"})
+    public String method;
+
+    private final StringMsgParser parser = new StringMsgParser();
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        bytes = BenchmarkMessages.of(method).getBytes();
+    }
+
+    @Benchmark
+    public SipMessageHead head() throws ParseException {
+        return SipMessageHead.parse(bytes);
+    }
+
+    @Benchmark
+    public SIPMessage message() throws ParseException {
+        return SipMessageHead.parse(bytes).message(parser);
+    }
+}
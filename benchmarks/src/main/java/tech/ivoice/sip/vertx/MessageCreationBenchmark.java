@@ -0,0 +1,46 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sip.address.SipURI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the messages sent by user agent: INVITE of outgoing call and 200 OK with SDP answering incoming call
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCreationBenchmark {
+    private BenchmarkUserAgent client;
+    private BenchmarkUserAgent server;
+    private SipURI target;
+    private String callId;
+
+    @Setup
+    public void setUp() {
+        BenchmarkUserAgent[] pair = BenchmarkUserAgent.pair();
+        client = pair[0];
+        server = pair[1];
+        target = server.uri();
+        // server dialog waiting for final response
+        SIPRequest invite = client.createInvite("Human", target);
+        callId = invite.getCallId().getCallId();
+        server.onRequestReceived(invite);
+    }
+
+    @Benchmark
+    public SIPRequest createInvite() {
+        return client.createInvite("Human", target);
+    }
+
+    @Benchmark
+    public SIPResponse createOkWithSdp() {
+        return server.okWithSdp(callId);
+    }
+}
@@ -0,0 +1,47 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.buffer.impl.VertxByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receive path of a datagram: message bytes taken from received buffer, copied or not, see {@link ReceivedBytes},
+ * and parsed. Difference of {@code gc.alloc.rate.norm} is the copy saved.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceivedBytesBenchmark {
+    @Param({"INVITE", "BYE", "MESSAGE"})
+    public String method;
+
+    private final StringMsgParser parser = new StringMsgParser();
+    private Buffer received;
+
+    @Setup
+    public void setUp() {
+        byte[] bytes = BenchmarkMessages.of(method).getBytes();
+        // same buffer as created by Vert.x for received datagram
+        ByteBuf byteBuf = VertxByteBufAllocator.DEFAULT.heapBuffer(bytes.length).writeBytes(bytes);
+        received = Buffer.buffer(byteBuf);
+    }
+
+    @Benchmark
+    public SIPMessage copy() throws ParseException {
+        return parser.parseSIPMessage(received.getBytes(), true, false, null);
+    }
+
+    @Benchmark
+    public SIPMessage zeroCopy() throws ParseException {
+        return parser.parseSIPMessage(ReceivedBytes.of(received), true, false, null);
+    }
+}
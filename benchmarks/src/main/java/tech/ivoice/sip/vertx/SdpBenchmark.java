@@ -0,0 +1,50 @@
+package tech.ivoice.sip.vertx;
+
+import org.openjdk.jmh.annotations.*;
+import tech.ivoice.sip.sdp.SdpAnswer;
+import tech.ivoice.sip.sdp.SdpCodec;
+import tech.ivoice.sip.sdp.SdpNegotiator;
+import tech.ivoice.sip.sdp.SdpParser;
+import tech.ivoice.sip.sdp.SessionDescription;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answering Asterisk offer: from cached template, by full parse and negotiation, and parse alone
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SdpBenchmark {
+    private static final List<SdpCodec> CODECS = List.of(SdpCodec.PCMA, SdpCodec.PCMU, SdpCodec.TELEPHONE_EVENT);
+
+    private byte[] offer;
+    private SdpNegotiator negotiator;
+
+    @Setup
+    public void setUp() {
+        offer = BenchmarkMessages.SDP.getBytes(StandardCharsets.UTF_8);
+        negotiator = new SdpNegotiator("10.0.0.10", CODECS, 20);
+    }
+
+    @Benchmark
+    public SdpAnswer cachedAnswer() {
+        return negotiator.answer(offer, 40000);
+    }
+
+    @Benchmark
+    public SdpAnswer negotiatedAnswer() {
+        // new negotiator has empty cache
+        return new SdpNegotiator("10.0.0.10", CODECS, 20).answer(offer, 40000);
+    }
+
+    @Benchmark
+    public SessionDescription parse() {
+        return SdpParser.parse(offer);
+    }
+}
@@ -0,0 +1,93 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.mutiny.core.Vertx;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests answered per second by a user agent listening on loopback udp: client sends a burst of OPTIONS,
+ * every one answered with 200 OK out of dialog, and waits for all responses.
+ * <p>
+ * Transport vertx is Vert.x datagram socket on NIO (default), native is {@link SipDatagramChannel} with batched
+ * reads and writes, see {@link SipVerticleConfig#setNativeUdp(boolean)}. Lost datagrams are counted as
+ * {@code lost} secondary result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 8, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UdpThroughputBenchmark {
+    private static final int BURST = 64;
+    private static final int PORT = 15100;
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    @Param({"vertx", "native"})
+    public String transport;
+
+    private Vertx vertx;
+    private DatagramSocket client;
+    private DatagramPacket request;
+    private DatagramPacket response;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Losses {
+        public long lost;
+    }
+
+    private static class Responder extends AbstractSipUserAgent<Void> {
+        Responder(SipVerticleConfig config) {
+            super(config);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean nativeUdp = transport.equals("native");
+        vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(nativeUdp));
+        vertx.deployVerticleAndAwait(new Responder(new SipVerticleConfig("127.0.0.1", PORT, "udp")
+            .setNativeUdp(nativeUdp)
+            .setUdpReceiveBufferSize(BUFFER_SIZE)
+            .setUdpSendBufferSize(BUFFER_SIZE)));
+
+        client = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+        client.setReceiveBufferSize(BUFFER_SIZE);
+        client.setSoTimeout(100);
+        byte[] options = BenchmarkMessages.OPTIONS.getBytes();
+        request = new DatagramPacket(options, options.length, new InetSocketAddress("127.0.0.1", PORT));
+        response = new DatagramPacket(new byte[65535], 65535);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        vertx.closeAndAwait();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int optionsBurst(Losses losses) throws IOException {
+        for (int i = 0; i < BURST; i++) {
+            client.send(request);
+        }
+        int received = 0;
+        try {
+            while (received < BURST) {
+                client.receive(response);
+                received++;
+            }
+        } catch (SocketTimeoutException e) {
+            losses.lost += BURST - received;
+        }
+        return received;
+    }
+}
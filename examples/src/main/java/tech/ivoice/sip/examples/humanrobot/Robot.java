@@ -37,6 +37,7 @@ public class Robot extends AbstractSipUserAgent<List<Robot.QA>> {
             .onItem().delayIt().by(Duration.of(1, ChronoUnit.SECONDS))
             .map(itsTime -> createOk(invite.getCallId().getCallId()))
             .subscribe().with(response -> {
+                // Mutiny executor thread: user agent passes calls to its event loop
                 setApplicationData(invite.getCallId().getCallId(), new ArrayList<>());
                 log.info(user + ": scenario initialized, sending OK");
                 sendResponse(response);
@@ -0,0 +1,48 @@
+package tech.ivoice.sip.loadgen;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import tech.ivoice.sip.vertx.AbstractSipUserAgent;
+import tech.ivoice.sip.vertx.SipVerticleConfig;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Robot answering every call immediately with SDP and echoing every MESSAGE back, target for
+ * {@link LoadGenerator} to qualify the build over loopback
+ */
+public class AnsweringRobot extends AbstractSipUserAgent<Void> {
+    private static final String SDP = "v=0\r\n" +
+        "o=- 0 0 IN IP4 127.0.0.1\r\n" +
+        "s=AnsweringRobot\r\n" +
+        "c=IN IP4 127.0.0.1\r\n" +
+        "t=0 0\r\n" +
+        "m=audio 40000 RTP/AVP 0 8\r\n" +
+        "a=rtpmap:0 PCMU/8000\r\n" +
+        "a=rtpmap:8 PCMA/8000\r\n" +
+        "a=sendrecv\r\n";
+
+    public AnsweringRobot(SipVerticleConfig config) {
+        super(config);
+    }
+
+    @Override
+    protected void onInvite(SIPRequest invite) {
+        String callId = invite.getCallId().getCallId();
+        sendResponse(createTrying(callId));
+        sendResponse(createOk(callId, SDP));
+    }
+
+    @Override
+    protected void onMessage(SIPRequest message) {
+        try {
+            sendRequest(createMessage(message.getCallId().getCallId(), message.getMessageContent()));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    protected void onBye(SIPRequest bye) {
+        sendResponse(createOk(bye.getCallId().getCallId()));
+    }
+}
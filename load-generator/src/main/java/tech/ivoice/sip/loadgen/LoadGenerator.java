@@ -0,0 +1,188 @@
+package tech.ivoice.sip.loadgen;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.smallrye.mutiny.Uni;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipTransaction;
+import tech.ivoice.sip.vertx.AbstractSipUserAgent;
+import tech.ivoice.sip.vertx.SipVerticleConfig;
+
+import javax.sip.message.Request;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UAC making calls to the target with configured rate: INVITE, ACK, MESSAGEs during hold time, BYE.
+ * <p>
+ * Calls are started by pacing timer, so the rate is kept regardless of target response time, until
+ * {@link LoadGeneratorConfig#getMaxConcurrentCalls()} calls are in progress. Call is failed on error response,
+ * transaction timeout or dialog eviction. Call hung up by the target is completed as remote hangup.
+ */
+public class LoadGenerator extends AbstractSipUserAgent<Void> {
+    private static final String USER = "LoadGenerator";
+    private static final long PACING_MILLIS = 5;
+
+    private final LoadGeneratorConfig load;
+    private final PrintStream out;
+    private final LoadReport report = new LoadReport();
+    private final CompletableFuture<LoadReport> finished = new CompletableFuture<>();
+    private final Map<String, Call> calls = new HashMap<>();
+
+    private long startNanos;
+    private long lastReportNanos;
+    private long pacingTimerId = -1;
+
+    private static final class Call {
+        private final long inviteNanos;
+        private long byeNanos;
+        private int messagesLeft;
+        private long timerId = -1;
+
+        private Call(long inviteNanos, int messages) {
+            this.inviteNanos = inviteNanos;
+            this.messagesLeft = messages;
+        }
+    }
+
+    public LoadGenerator(SipVerticleConfig config, LoadGeneratorConfig load, PrintStream out) {
+        super(config);
+        this.load = load;
+        this.out = out;
+    }
+
+    /**
+     * @return report completed when all calls are completed or failed
+     */
+    public CompletionStage<LoadReport> finished() {
+        return finished;
+    }
+
+    @Override
+    protected void onServerStartedListening() {
+        log.info("Starting load " + load);
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        pacingTimerId = vertx.setPeriodic(PACING_MILLIS, id -> pace());
+    }
+
+    @Override
+    public Uni<Void> asyncStop() {
+        if (pacingTimerId >= 0) {
+            vertx.cancelTimer(pacingTimerId);
+        }
+        return super.asyncStop();
+    }
+
+    private void pace() {
+        long now = System.nanoTime();
+        long due = Math.min(load.getCalls(), (long) ((now - startNanos) * load.getCallsPerSecond() / 1e9) + 1);
+        while (report.getStarted() < due && calls.size() < load.getMaxConcurrentCalls()) {
+            startCall();
+        }
+        if (now - lastReportNanos >= TimeUnit.MILLISECONDS.toNanos(load.getReportIntervalMillis())) {
+            lastReportNanos = now;
+            report.printProgress(out, calls.size());
+        }
+        if (report.getStarted() == load.getCalls() && calls.isEmpty()) {
+            vertx.cancelTimer(pacingTimerId);
+            pacingTimerId = -1;
+            report.print(out);
+            finished.complete(report);
+        }
+    }
+
+    private void startCall() {
+        SIPRequest invite = createInvite(USER, load.getTarget());
+        calls.put(invite.getCallId().getCallId(), new Call(System.nanoTime(), load.getMessagesPerCall()));
+        report.onStarted();
+        sendRequest(invite);
+    }
+
+    @Override
+    protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+        String callId = successResponseOnInvite.getCallId().getCallId();
+        Call call = calls.get(callId);
+        if (call == null) {
+            return;
+        }
+        report.onSetup(System.nanoTime() - call.inviteNanos);
+        sendRequest(createAck(successResponseOnInvite));
+        holdCall(callId, call);
+    }
+
+    /**
+     * Sends next MESSAGE or BYE after hold time part
+     */
+    private void holdCall(String callId, Call call) {
+        long delay = Math.max(1, load.getHoldMillis() / (load.getMessagesPerCall() + 1));
+        call.timerId = vertx.setTimer(delay, id -> {
+            call.timerId = -1;
+            if (call.messagesLeft > 0) {
+                call.messagesLeft--;
+                sendRequest(createMessage(callId, "load message " + call.messagesLeft));
+                report.onMessageSent();
+                holdCall(callId, call);
+            } else {
+                call.byeNanos = System.nanoTime();
+                sendRequest(createBye(callId));
+            }
+        });
+    }
+
+    @Override
+    protected void onMessage(SIPRequest message) {
+        report.onMessageReceived();
+    }
+
+    @Override
+    protected void onBye(SIPRequest bye) {
+        sendResponse(createOk(bye.getCallId().getCallId()));
+    }
+
+    @Override
+    protected void onDialogTerminated(SIPResponse response) {
+        Call call = end(response.getCallId().getCallId());
+        if (call == null) {
+            return;
+        }
+        String method = response.getCSeq().getMethod();
+        int code = response.getStatusCode();
+        if (method.equals(Request.BYE) && code / 100 == 2) {
+            if (call.byeNanos == 0) {
+                report.onRemoteHangup();
+            } else {
+                report.onCompleted(System.nanoTime() - call.byeNanos);
+            }
+        } else {
+            report.onFailed(method + " " + code);
+        }
+    }
+
+    @Override
+    protected void onTransactionTimeout(SipTransaction transaction) {
+        SIPRequest request = transaction.getOriginalRequest();
+        if (end(request.getCallId().getCallId()) != null) {
+            report.onFailed(request.getMethod() + " timeout");
+        }
+    }
+
+    @Override
+    protected void onDialogEvicted(SipDialog<Void> dialog) {
+        if (end(dialog.getDialogId()) != null) {
+            report.onFailed("dialog evicted in state " + dialog.getState());
+        }
+    }
+
+    private Call end(String callId) {
+        Call call = calls.remove(callId);
+        if (call != null && call.timerId >= 0) {
+            vertx.cancelTimer(call.timerId);
+        }
+        return call;
+    }
+}
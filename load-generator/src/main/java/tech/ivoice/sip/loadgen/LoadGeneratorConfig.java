@@ -0,0 +1,129 @@
+package tech.ivoice.sip.loadgen;
+
+import javax.sip.address.SipURI;
+
+/**
+ * Load profile of {@link LoadGenerator}
+ */
+public class LoadGeneratorConfig {
+    private final SipURI target;
+
+    private double callsPerSecond = 10;
+    private int maxConcurrentCalls = 100;
+    private long calls = 100;
+    private long holdMillis = 1000;
+    private int messagesPerCall = 0;
+    private long reportIntervalMillis = 5000;
+
+    /**
+     * @param target URI of the robot to call
+     */
+    public LoadGeneratorConfig(SipURI target) {
+        this.target = target;
+    }
+
+    public SipURI getTarget() {
+        return target;
+    }
+
+    public double getCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    /**
+     * Rate of new calls (CPS), calls are started evenly, not in bursts
+     */
+    public LoadGeneratorConfig setCallsPerSecond(double callsPerSecond) {
+        if (!(callsPerSecond > 0)) {
+            throw new IllegalArgumentException("callsPerSecond must be positive, but was " + callsPerSecond);
+        }
+        this.callsPerSecond = callsPerSecond;
+        return this;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Calls are delayed while this number of calls is in progress, so the rate drops when target slows down
+     */
+    public LoadGeneratorConfig setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = (int) requirePositive("maxConcurrentCalls", maxConcurrentCalls);
+        return this;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Total number of calls, load generator finishes when all of them are completed or failed
+     */
+    public LoadGeneratorConfig setCalls(long calls) {
+        this.calls = requirePositive("calls", calls);
+        return this;
+    }
+
+    public long getHoldMillis() {
+        return holdMillis;
+    }
+
+    /**
+     * Time from ACK to BYE
+     */
+    public LoadGeneratorConfig setHoldMillis(long holdMillis) {
+        if (holdMillis < 0) {
+            throw new IllegalArgumentException("holdMillis must not be negative, but was " + holdMillis);
+        }
+        this.holdMillis = holdMillis;
+        return this;
+    }
+
+    public int getMessagesPerCall() {
+        return messagesPerCall;
+    }
+
+    /**
+     * Number of MESSAGE requests sent evenly during call hold time
+     */
+    public LoadGeneratorConfig setMessagesPerCall(int messagesPerCall) {
+        if (messagesPerCall < 0) {
+            throw new IllegalArgumentException("messagesPerCall must not be negative, but was " + messagesPerCall);
+        }
+        this.messagesPerCall = messagesPerCall;
+        return this;
+    }
+
+    public long getReportIntervalMillis() {
+        return reportIntervalMillis;
+    }
+
+    /**
+     * Interval of progress reports while load is running
+     */
+    public LoadGeneratorConfig setReportIntervalMillis(long reportIntervalMillis) {
+        this.reportIntervalMillis = requirePositive("reportIntervalMillis", reportIntervalMillis);
+        return this;
+    }
+
+    private static long requirePositive(String name, long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, but was " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGeneratorConfig{" +
+            "target=" + target +
+            ", callsPerSecond=" + callsPerSecond +
+            ", maxConcurrentCalls=" + maxConcurrentCalls +
+            ", calls=" + calls +
+            ", holdMillis=" + holdMillis +
+            ", messagesPerCall=" + messagesPerCall +
+            ", reportIntervalMillis=" + reportIntervalMillis +
+            '}';
+    }
+}
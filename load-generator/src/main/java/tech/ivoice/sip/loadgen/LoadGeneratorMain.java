@@ -0,0 +1,80 @@
+package tech.ivoice.sip.loadgen;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import io.vertx.core.VertxOptions;
+import io.vertx.mutiny.core.Vertx;
+import tech.ivoice.sip.vertx.SipVerticleConfig;
+
+import javax.sip.address.SipURI;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line load test:
+ * <pre>
+ * java -jar load-generator.jar [-target sip:Robot@127.0.0.1:5081] [-local 127.0.0.1:5070] [-transport udp]
+ *     [-cps 10] [-concurrency 100] [-calls 100] [-hold 1000] [-messages 0] [-report 5000] [-robot]
+ *     [-capture directory] [-native]
+ * </pre>
+ * With {@code -robot} {@link AnsweringRobot} is started on the target address, so the whole stack can be
+ * qualified on one box over loopback. With {@code -capture} the robot captures its messages to pcap files in the
+ * directory, see {@link SipVerticleConfig#setCaptureDirectory(String)}. With {@code -native} udp is sent and received
+ * with native transport, see {@link SipVerticleConfig#setNativeUdp(boolean)}. Exits with status 1 if any call failed.
+ */
+public final class LoadGeneratorMain {
+    private static final Set<String> FLAGS = Set.of("robot", "native");
+
+    private LoadGeneratorMain() {
+    }
+
+    public static void main(String[] args) throws ParseException {
+        Map<String, String> options = parse(args);
+        String transport = options.getOrDefault("transport", "udp");
+        SipURI target = (SipURI) new AddressFactoryImpl().createURI(
+            options.getOrDefault("target", "sip:Robot@127.0.0.1:5081"));
+        String[] local = options.getOrDefault("local", "127.0.0.1:5070").split(":");
+        LoadGeneratorConfig load = new LoadGeneratorConfig(target)
+            .setCallsPerSecond(Double.parseDouble(options.getOrDefault("cps", "10")))
+            .setMaxConcurrentCalls(Integer.parseInt(options.getOrDefault("concurrency", "100")))
+            .setCalls(Long.parseLong(options.getOrDefault("calls", "100")))
+            .setHoldMillis(Long.parseLong(options.getOrDefault("hold", "1000")))
+            .setMessagesPerCall(Integer.parseInt(options.getOrDefault("messages", "0")))
+            .setReportIntervalMillis(Long.parseLong(options.getOrDefault("report", "5000")));
+
+        boolean nativeUdp = options.containsKey("native");
+        Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(nativeUdp));
+        if (options.containsKey("robot")) {
+            SipVerticleConfig robotConfig = new SipVerticleConfig(target.getHost(), target.getPort(), transport)
+                .setCaptureDirectory(options.get("capture"))
+                .setNativeUdp(nativeUdp);
+            vertx.deployVerticleAndAwait(new AnsweringRobot(robotConfig));
+        }
+        SipVerticleConfig config = new SipVerticleConfig(local[0], Integer.parseInt(local[1]), transport)
+            .setNativeUdp(nativeUdp);
+        LoadGenerator generator = new LoadGenerator(config, load, System.out);
+        vertx.deployVerticleAndAwait(generator);
+        LoadReport report = generator.finished().toCompletableFuture().join();
+        vertx.closeAndAwait();
+        System.exit(report.getFailed() == 0 ? 0 : 1);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(1);
+            if (FLAGS.contains(name)) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("No value of option " + args[i]);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,140 @@
+package tech.ivoice.sip.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies and outcome of calls made by {@link LoadGenerator}. Latencies are recorded in microseconds.
+ * <p>
+ * Updated from load generator event loop only, read it after load generator finished.
+ */
+public class LoadReport {
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Histogram setupLatency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+    private final Histogram byeLatency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+    private final Map<String, Long> failures = new TreeMap<>();
+
+    private long started;
+    private long completed;
+    private long remoteHangups;
+    private long messagesSent;
+    private long messagesReceived;
+
+    void onStarted() {
+        started++;
+    }
+
+    /**
+     * @param nanos time from INVITE sent to 200 OK received
+     */
+    void onSetup(long nanos) {
+        record(setupLatency, nanos);
+    }
+
+    /**
+     * @param nanos time from BYE sent to 200 OK received
+     */
+    void onCompleted(long nanos) {
+        completed++;
+        record(byeLatency, nanos);
+    }
+
+    void onRemoteHangup() {
+        completed++;
+        remoteHangups++;
+    }
+
+    void onFailed(String reason) {
+        failures.merge(reason, 1L, Long::sum);
+    }
+
+    void onMessageSent() {
+        messagesSent++;
+    }
+
+    void onMessageReceived() {
+        messagesReceived++;
+    }
+
+    private static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_LATENCY_MICROS));
+    }
+
+    public Histogram getSetupLatency() {
+        return setupLatency;
+    }
+
+    public Histogram getByeLatency() {
+        return byeLatency;
+    }
+
+    /**
+     * @return number of failed calls by reason: error response, transaction timeout, dialog eviction
+     */
+    public Map<String, Long> getFailures() {
+        return failures;
+    }
+
+    public long getFailed() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getRemoteHangups() {
+        return remoteHangups;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * One line of progress: calls and setup latency percentiles so far
+     */
+    void printProgress(PrintStream out, int active) {
+        out.printf("started %d, active %d, completed %d, failed %d, setup ms %s%n",
+            started, active, completed, getFailed(), percentiles(setupLatency));
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Calls: started %d, completed %d (remote hangup %d), failed %d%n",
+            started, completed, remoteHangups, getFailed());
+        failures.forEach((reason, count) -> out.printf("  %s: %d%n", reason, count));
+        out.printf("Messages: sent %d, received %d%n", messagesSent, messagesReceived);
+        out.printf("Setup latency (INVITE -> 200) ms: %s%n", percentiles(setupLatency));
+        out.printf("BYE latency (BYE -> 200) ms: %s%n", percentiles(byeLatency));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "no samples";
+        }
+        StringBuilder line = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            line.append(String.format("p%s=%.3f ", format(percentile),
+                histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        return line.append(String.format("max=%.3f", histogram.getMaxValue() / 1000.0)).toString();
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,54 @@
+package tech.ivoice.sip.loadgen;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import tech.ivoice.sip.vertx.SipVerticleConfig;
+
+import javax.sip.address.SipURI;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class LoadGeneratorTest {
+    private static final int CALLS = 20;
+
+    @Test
+    void callsRobotOverLoopback(io.vertx.core.Vertx coreVertx) throws Exception {
+        Vertx vertx = Vertx.newInstance(coreVertx);
+        SipURI robotUri = new AddressFactoryImpl().createSipURI("Robot", "127.0.0.1:15391");
+        LoadGeneratorConfig load = new LoadGeneratorConfig(robotUri)
+            .setCallsPerSecond(200)
+            .setCalls(CALLS)
+            .setHoldMillis(30)
+            .setMessagesPerCall(2);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        LoadGenerator generator = new LoadGenerator(new SipVerticleConfig("127.0.0.1", 15390, "udp"), load,
+            new PrintStream(printed, true, StandardCharsets.UTF_8));
+
+        vertx.deployVerticleAndAwait(new AnsweringRobot(new SipVerticleConfig("127.0.0.1", 15391, "udp")));
+        vertx.deployVerticleAndAwait(generator);
+        LoadReport report = generator.finished().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertEquals(CALLS, report.getStarted());
+        assertEquals(CALLS, report.getCompleted());
+        assertEquals(0, report.getFailed(), () -> "failures " + report.getFailures());
+        assertEquals(CALLS, report.getSetupLatency().getTotalCount());
+        assertEquals(CALLS, report.getByeLatency().getTotalCount());
+        assertEquals(2 * CALLS, report.getMessagesSent());
+        assertEquals(2 * CALLS, report.getMessagesReceived());
+        assertTrue(report.getSetupLatency().getMaxValue() > 0);
+        String output = printed.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("Calls: started " + CALLS + ", completed " + CALLS + " (remote hangup 0), failed 0"),
+            output);
+        assertTrue(output.contains("Messages: sent " + 2 * CALLS + ", received " + 2 * CALLS), output);
+        assertTrue(output.contains("Setup latency (INVITE -> 200) ms: p50="), output);
+    }
+}
@@ -0,0 +1,250 @@
+package tech.ivoice.sip.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import tech.ivoice.sip.vertx.SipMetrics;
+
+import javax.sip.DialogState;
+import javax.sip.message.Request;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SipMetrics} recorded to Micrometer registry.
+ * <p>
+ * Meters are resolved by array index, never by tags lookup: meters of methods and dialog states are registered
+ * in constructor, response counters are registered on first response with the status code. So recording doesn't
+ * allocate, and counters are striped ({@link LongAdder}, Micrometer counters and timers), so verticle instances
+ * sharing metrics don't contend.
+ * <p>
+ * Methods other than the ones the user agent handles are counted as "other", to bound the number of time series.
+ *
+ * <pre>
+ * sip_requests_total{direction, method}
+ * sip_responses_total{direction, method, status}
+ * sip_parse_failures_total
+ * sip_transaction_duration_seconds{method, side} request to final response
+ * sip_handler_duration_seconds{method}           onInvite, onBye, onMessage
+ * sip_dialogs_active{state}
+ * sip_dialog_duration_seconds{state}             by the last state
+ * sip_invites_rejected_total{reason}             503 on overload
+ * sip_event_loop_lag_seconds                     transaction timer tick delay
+ * </pre>
+ */
+public final class MicrometerSipMetrics implements SipMetrics {
+    private static final String[] METHODS = {
+        Request.INVITE, Request.ACK, Request.BYE, Request.CANCEL, Request.MESSAGE, Request.OPTIONS, "other"
+    };
+    private static final int OTHER_METHOD = METHODS.length - 1;
+    // indexed as in SipVerticleConfig: null state first
+    private static final String[] STATES = {"initial", "early", "confirmed", "completed", "terminated"};
+    private static final String[] REJECTION_REASONS = {
+        "dialogs", "event_loop_lag", "source_rate", "receive_queue", "other"
+    };
+    private static final int OTHER_REASON = REJECTION_REASONS.length - 1;
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 699;
+
+    private final MeterRegistry registry;
+
+    private final Counter[] requestsReceived = new Counter[METHODS.length];
+    private final Counter[] requestsSent = new Counter[METHODS.length];
+    // indexed by method and status code - MIN_STATUS, registered lazily
+    private final AtomicReferenceArray<Counter> responsesReceived;
+    private final AtomicReferenceArray<Counter> responsesSent;
+    private final Counter parseFailures;
+
+    private final Timer[] clientTransactions = new Timer[METHODS.length];
+    private final Timer[] serverTransactions = new Timer[METHODS.length];
+    private final Timer[] handlers = new Timer[METHODS.length];
+
+    private final LongAdder[] activeDialogs = new LongAdder[STATES.length];
+    private final Timer[] dialogDurations = new Timer[STATES.length];
+
+    private final Counter[] rejectedInvites = new Counter[REJECTION_REASONS.length];
+    private final Timer eventLoopLag;
+
+    public MicrometerSipMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        int statuses = MAX_STATUS - MIN_STATUS + 1;
+        this.responsesReceived = new AtomicReferenceArray<>(METHODS.length * statuses);
+        this.responsesSent = new AtomicReferenceArray<>(METHODS.length * statuses);
+        this.parseFailures = Counter.builder("sip.parse.failures")
+            .description("Received messages dropped as malformed")
+            .register(registry);
+        this.eventLoopLag = Timer.builder("sip.event.loop.lag")
+            .description("Delay of transaction timer tick over its period")
+            .publishPercentileHistogram()
+            .maximumExpectedValue(Duration.ofSeconds(1))
+            .register(registry);
+
+        for (int i = 0; i < REJECTION_REASONS.length; i++) {
+            rejectedInvites[i] = Counter.builder("sip.invites.rejected")
+                .description("New INVITEs rejected with 503 under overload")
+                .tag("reason", REJECTION_REASONS[i])
+                .register(registry);
+        }
+        for (int i = 0; i < METHODS.length; i++) {
+            requestsReceived[i] = requestCounter("in", METHODS[i]);
+            requestsSent[i] = requestCounter("out", METHODS[i]);
+            clientTransactions[i] = Timer.builder("sip.transaction.duration")
+                .description("Time from request to its final response")
+                .tags("method", METHODS[i], "side", "client")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(3))
+                .register(registry);
+            serverTransactions[i] = Timer.builder("sip.transaction.duration")
+                .description("Time from request to its final response")
+                .tags("method", METHODS[i], "side", "server")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(3))
+                .register(registry);
+            handlers[i] = Timer.builder("sip.handler.duration")
+                .description("Time spent in request handler of the user agent")
+                .tag("method", METHODS[i])
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+        }
+        for (int i = 0; i < STATES.length; i++) {
+            LongAdder active = new LongAdder();
+            activeDialogs[i] = active;
+            Gauge.builder("sip.dialogs.active", active, LongAdder::sum)
+                .description("Dialogs by state")
+                .tag("state", STATES[i])
+                .register(registry);
+            dialogDurations[i] = Timer.builder("sip.dialog.duration")
+                .description("Dialog lifetime by the last state")
+                .tag("state", STATES[i])
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofHours(4))
+                .register(registry);
+        }
+    }
+
+    @Override
+    public void requestReceived(String method) {
+        requestsReceived[methodIndex(method)].increment();
+    }
+
+    @Override
+    public void requestSent(String method) {
+        requestsSent[methodIndex(method)].increment();
+    }
+
+    @Override
+    public void responseReceived(String method, int statusCode) {
+        responseCounter(responsesReceived, "in", method, statusCode).increment();
+    }
+
+    @Override
+    public void responseSent(String method, int statusCode) {
+        responseCounter(responsesSent, "out", method, statusCode).increment();
+    }
+
+    @Override
+    public void parseFailed() {
+        parseFailures.increment();
+    }
+
+    @Override
+    public void transactionCompleted(String method, boolean client, int statusCode, long nanos) {
+        Timer[] timers = client ? clientTransactions : serverTransactions;
+        timers[methodIndex(method)].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void requestHandled(String method, long nanos) {
+        handlers[methodIndex(method)].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void dialogCreated(DialogState state) {
+        activeDialogs[stateIndex(state)].increment();
+    }
+
+    @Override
+    public void dialogStateChanged(DialogState from, DialogState to) {
+        activeDialogs[stateIndex(from)].decrement();
+        activeDialogs[stateIndex(to)].increment();
+    }
+
+    @Override
+    public void dialogRemoved(DialogState state, long durationMillis) {
+        activeDialogs[stateIndex(state)].decrement();
+        dialogDurations[stateIndex(state)].record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void inviteRejected(String reason) {
+        rejectedInvites[reasonIndex(reason)].increment();
+    }
+
+    @Override
+    public void eventLoopLag(long millis) {
+        eventLoopLag.record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private Counter requestCounter(String direction, String method) {
+        return Counter.builder("sip.requests")
+            .description("SIP requests, including retransmissions")
+            .tags("direction", direction, "method", method)
+            .register(registry);
+    }
+
+    private Counter responseCounter(AtomicReferenceArray<Counter> counters, String direction, String method,
+                                    int statusCode) {
+        int status = Math.max(MIN_STATUS, Math.min(statusCode, MAX_STATUS));
+        int methodIndex = methodIndex(method);
+        int index = methodIndex * (MAX_STATUS - MIN_STATUS + 1) + status - MIN_STATUS;
+        Counter counter = counters.get(index);
+        if (counter == null) {
+            // registry returns the same counter if registered concurrently
+            counter = Counter.builder("sip.responses")
+                .description("SIP responses, including retransmissions")
+                .tags("direction", direction, "method", METHODS[methodIndex], "status", String.valueOf(status))
+                .register(registry);
+            counters.set(index, counter);
+        }
+        return counter;
+    }
+
+    private static int methodIndex(String method) {
+        if (method == null) {
+            return OTHER_METHOD;
+        }
+        switch (method) {
+            case Request.INVITE:
+                return 0;
+            case Request.ACK:
+                return 1;
+            case Request.BYE:
+                return 2;
+            case Request.CANCEL:
+                return 3;
+            case Request.MESSAGE:
+                return 4;
+            case Request.OPTIONS:
+                return 5;
+            default:
+                return OTHER_METHOD;
+        }
+    }
+
+    private static int reasonIndex(String reason) {
+        for (int i = 0; i < OTHER_REASON; i++) {
+            if (REJECTION_REASONS[i].equals(reason)) {
+                return i;
+            }
+        }
+        return OTHER_REASON;
+    }
+
+    private static int stateIndex(DialogState state) {
+        return state == null ? 0 : state.getValue() + 1;
+    }
+}
@@ -0,0 +1,71 @@
+package tech.ivoice.sip.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.vertx.core.AbstractVerticle;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.mutiny.core.http.HttpServer;
+import io.vertx.mutiny.core.http.HttpServerRequest;
+
+/**
+ * Serves Prometheus scrape of the registry on {@code GET /metrics}, deploy next to user agent verticles:
+ * <pre>
+ * PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+ * SipVerticleConfig config = new SipVerticleConfig(...).setMetrics(new MicrometerSipMetrics(registry));
+ * vertx.deployVerticle(new PrometheusScrapeVerticle(registry, "127.0.0.1", 9102));
+ * </pre>
+ * Scrape is rendered on the event loop of this verticle, off the SIP event loops.
+ */
+public class PrometheusScrapeVerticle extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(PrometheusScrapeVerticle.class);
+    private static final String PATH = "/metrics";
+
+    private final PrometheusMeterRegistry registry;
+    private final String host;
+    private final int port;
+    private HttpServer server;
+
+    /**
+     * @param host listening host, keep local unless scraped from other hosts
+     */
+    public PrometheusScrapeVerticle(PrometheusMeterRegistry registry, String host, int port) {
+        this.registry = registry;
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Uni<Void> asyncStart() {
+        return vertx.createHttpServer()
+            .requestHandler(this::handle)
+            .listen(port, host)
+            .onItem().invoke(server -> this.server = server)
+            .onItem().invoke(server -> log.info("Serving metrics on http://" + host + ":" + server.actualPort() + PATH))
+            .onFailure().invoke(throwable -> log.error(throwable.getMessage()))
+            .replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> asyncStop() {
+        return server == null ? Uni.createFrom().voidItem() : server.close();
+    }
+
+    /**
+     * @return actual listening port, useful when started on port 0
+     */
+    public int actualPort() {
+        return server.actualPort();
+    }
+
+    private void handle(HttpServerRequest request) {
+        if (request.method() != HttpMethod.GET || !request.path().equals(PATH)) {
+            request.response().setStatusCode(404).endAndForget();
+            return;
+        }
+        request.response()
+            .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+            .endAndForget(registry.scrape());
+    }
+}
@@ -0,0 +1,117 @@
+package tech.ivoice.sip.metrics;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.sip.DialogState;
+import javax.sip.message.Request;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class MicrometerSipMetricsTest {
+    private static final int WARMUP = 10_000;
+    private static final int ITERATIONS = 10_000;
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final MicrometerSipMetrics metrics = new MicrometerSipMetrics(registry);
+
+    @Test
+    void countsMessagesAndDialogs() {
+        metrics.requestReceived(Request.INVITE);
+        metrics.requestReceived(Request.INVITE);
+        metrics.requestReceived("PUBLISH");
+        metrics.responseSent(Request.INVITE, 180);
+        metrics.responseSent(Request.INVITE, 200);
+        metrics.parseFailed();
+        metrics.transactionCompleted(Request.INVITE, false, 200, 2_000_000);
+        metrics.dialogCreated(null);
+        metrics.dialogCreated(null);
+        metrics.dialogStateChanged(null, DialogState.EARLY);
+        metrics.dialogStateChanged(DialogState.EARLY, DialogState.CONFIRMED);
+        metrics.dialogRemoved(null, 32_000);
+        metrics.inviteRejected("source_rate");
+        metrics.eventLoopLag(250);
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("sip_requests_total{direction=\"in\",method=\"INVITE\",} 2.0"), scrape);
+        assertTrue(scrape.contains("sip_requests_total{direction=\"in\",method=\"other\",} 1.0"), scrape);
+        assertTrue(scrape.contains("sip_responses_total{direction=\"out\",method=\"INVITE\",status=\"180\",} 1.0"));
+        assertTrue(scrape.contains("sip_responses_total{direction=\"out\",method=\"INVITE\",status=\"200\",} 1.0"));
+        assertTrue(scrape.contains("sip_parse_failures_total 1.0"));
+        assertTrue(scrape.contains("sip_transaction_duration_seconds_count{method=\"INVITE\",side=\"server\",} 1.0"));
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"initial\",} 0.0"));
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"confirmed\",} 1.0"));
+        assertTrue(scrape.contains("sip_dialog_duration_seconds_sum{state=\"initial\",} 32.0"));
+        assertTrue(scrape.contains("sip_invites_rejected_total{reason=\"source_rate\",} 1.0"), scrape);
+        assertTrue(scrape.contains("sip_event_loop_lag_seconds_sum 0.25"), scrape);
+    }
+
+    @Test
+    void restoredDialogIsCountedInItsState() {
+        metrics.dialogCreated(DialogState.CONFIRMED);
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"initial\",} 0.0"), scrape);
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"confirmed\",} 1.0"), scrape);
+
+        metrics.dialogRemoved(DialogState.CONFIRMED, 60_000);
+
+        scrape = registry.scrape();
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"initial\",} 0.0"), scrape);
+        assertTrue(scrape.contains("sip_dialogs_active{state=\"confirmed\",} 0.0"), scrape);
+    }
+
+    @Test
+    void recordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            record();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            record();
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        // histogram windows rotation may allocate rarely, but nothing per recording
+        assertTrue(allocated < ITERATIONS, allocated + " bytes allocated for " + ITERATIONS + " recordings");
+    }
+
+    @Test
+    void servesScrape(Vertx vertx, VertxTestContext testContext) {
+        metrics.requestSent(Request.BYE);
+        PrometheusScrapeVerticle verticle = new PrometheusScrapeVerticle(registry, "127.0.0.1", 0);
+        vertx.deployVerticle(verticle)
+            .compose(id -> vertx.createHttpClient()
+                .request(HttpMethod.GET, verticle.actualPort(), "127.0.0.1", "/metrics"))
+            .compose(HttpClientRequest::send)
+            .compose(response -> {
+                testContext.verify(() -> assertEquals(200, response.statusCode()));
+                return response.body();
+            })
+            .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                assertTrue(body.toString().contains("sip_requests_total{direction=\"out\",method=\"BYE\",} 1.0"));
+                testContext.completeNow();
+            })));
+    }
+
+    private void record() {
+        metrics.requestReceived(Request.INVITE);
+        metrics.responseSent(Request.INVITE, 200);
+        metrics.transactionCompleted(Request.INVITE, false, 200, 1_000_000);
+        metrics.requestHandled(Request.INVITE, 10_000);
+        metrics.dialogCreated(null);
+        metrics.dialogStateChanged(null, DialogState.CONFIRMED);
+        metrics.dialogRemoved(DialogState.CONFIRMED, 60_000);
+    }
+}
@@ -5,8 +5,6 @@ import gov.nist.javax.sip.message.SIPResponse;
 
 import javax.sip.TransactionState;
 import javax.sip.message.Request;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
 
 /**
@@ -15,10 +13,11 @@ import java.util.Optional;
  * @see gov.nist.javax.sip.stack.SIPTransactionImpl
  */
 abstract class AbstractSipTransaction implements SipTransaction {
-    private final TransactionState state;
+    private TransactionState state;
     private final String branchId;
     private final SIPRequest request;
-    protected final List<SIPResponse> responses = new ArrayList<>();
+    // only last response is needed, earlier ones are not kept
+    private SIPResponse lastResponse;
 
     public AbstractSipTransaction(TransactionState state, String branchId, SIPRequest request) {
         this.state = state;
@@ -31,6 +30,11 @@ abstract class AbstractSipTransaction implements SipTransaction {
         return state;
     }
 
+    @Override
+    public void setState(TransactionState state) {
+        this.state = state;
+    }
+
     @Override
     public String getBranchId() {
         return branchId;
@@ -43,15 +47,12 @@ abstract class AbstractSipTransaction implements SipTransaction {
 
     @Override
     public void addResponse(SIPResponse response) {
-        responses.add(response);
+        this.lastResponse = response;
     }
 
     @Override
     public Optional<SIPResponse> getLastResponse() {
-        if (responses.isEmpty()) {
-            return Optional.empty();
-        }
-        return Optional.of(responses.get(responses.size() - 1));
+        return Optional.ofNullable(lastResponse);
     }
 
     @Override
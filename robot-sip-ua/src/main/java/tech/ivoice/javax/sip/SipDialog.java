@@ -21,6 +21,16 @@ public interface SipDialog<T> {
 
     String getDialogId();
 
+    /**
+     * @return state needed to restore dialog, see {@link SipDialogSnapshot}
+     */
+    SipDialogSnapshot snapshot();
+
+    /**
+     * @return CSeq of the last request sent in dialog
+     */
+    long getLocalCSeq();
+
     boolean isServer();
 
     /**
@@ -31,6 +41,9 @@ public interface SipDialog<T> {
 
     void addTransaction(SipTransaction transaction);
 
+    /**
+     * @return original request of the active transaction, null if there is none (INVITE transaction is finished by ACK)
+     */
     SIPRequest getLastRequest();
 
     SIPResponse createProvisionalResponse(int statusCode);
@@ -1,14 +1,17 @@
 package tech.ivoice.javax.sip;
 
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.address.AddressImpl;
 import gov.nist.javax.sip.address.SipUri;
-import gov.nist.javax.sip.header.CSeq;
-import gov.nist.javax.sip.header.MaxForwards;
+import gov.nist.javax.sip.header.*;
+import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 
 import javax.sip.DialogState;
 import javax.sip.InvalidArgumentException;
 import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
 import javax.sip.address.SipURI;
 import javax.sip.header.*;
 import javax.sip.message.Request;
@@ -26,18 +29,41 @@ import static tech.ivoice.javax.sip.SipClientTransaction.MAX_FORWARDS;
 
 /**
  * Simplified version of:
+ * <p>
+ * Dialog keeps only state needed to create requests within dialog: Call-ID, tags, local CSeq, remote target and
+ * route set, see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-12">rfc3261#section-12</a>.
+ * Parties are kept encoded and parsed on demand. Only the transaction of the last request is kept, until it's
+ * replaced with the next one; ACK finishes INVITE transaction, so confirmed dialog keeps no messages at all.
  *
  * @version WIP - need revision before 0.1 ver. lots of stuff copied from nist SIPDialog and need fixing / removing
  * @see gov.nist.javax.sip.stack.SIPDialog
  */
 public class SipDialogImpl<T> implements SipDialog<T> {
-    private final List<SipTransaction> transactions = new ArrayList<>();
+    private static final AddressFactory ADDRESS_FACTORY = new AddressFactoryImpl();
 
     // needed to construct messages
     private final Supplier<String> branchIdGen;
     private final HeaderFactory headerFactory;
     private final String transport;
 
+    private final String callId;
+    private final boolean server;
+    private final String localParty;
+    private final String remoteParty;
+    private String localTag;
+    private String remoteTag;
+    private String remoteTarget;
+    // null when there are no proxies in the path
+    private RouteList routeSet;
+    private long localCSeq;
+    // Via sent-by of UAC requests, UAS requests use local party host and port
+    private final String viaTransport;
+    private final String viaHost;
+    private final int viaPort;
+
+    // null when there is no active transaction
+    private SipTransaction transaction;
+
     /*
     state on creation is null.
     For UAS, state is constructed when sending responses: https://datatracker.ietf.org/doc/html/rfc3261#section-12.1.1
@@ -47,31 +73,101 @@ public class SipDialogImpl<T> implements SipDialog<T> {
     private T applicationData;
 
     public SipDialogImpl(SipTransaction tx, Supplier<String> branchIdGen, HeaderFactory hdrFactory, String transport) {
-        transactions.add(tx);
         this.branchIdGen = branchIdGen;
         this.headerFactory = Objects.requireNonNull(hdrFactory);
         this.transport = transport;
+
+        SIPRequest invite = tx.getOriginalRequest();
+        if (!invite.getMethod().equals(Request.INVITE)) {
+            throw new IllegalStateException("First transaction original request must always be invite, but it was " +
+                invite);
+        }
+        this.transaction = tx;
+        this.callId = invite.getCallId().getCallId();
+        this.server = tx.isServerTransaction();
+        this.localCSeq = invite.getCSeq().getSeqNumber();
+        Via via = invite.getTopmostVia();
+        this.viaTransport = via.getTransport();
+        this.viaHost = via.getHost();
+        this.viaPort = via.getPort();
+        if (server) {
+            this.localParty = invite.getTo().getAddress().toString();
+            this.remoteParty = invite.getFrom().getAddress().toString();
+            this.remoteTag = invite.getFromTag();
+            this.remoteTarget = remoteTarget(invite, invite.getFrom());
+            // https://datatracker.ietf.org/doc/html/rfc3261#section-12.1.1
+            this.routeSet = routeSet(invite.getRecordRouteHeaders(), false);
+        } else {
+            this.localParty = invite.getFrom().getAddress().toString();
+            this.remoteParty = invite.getTo().getAddress().toString();
+            this.localTag = invite.getFromTag();
+            this.remoteTarget = invite.getRequestURI().toString();
+        }
+    }
+
+    /**
+     * Restores dialog from snapshot, without active transaction
+     */
+    public SipDialogImpl(SipDialogSnapshot snapshot, Supplier<String> branchIdGen, HeaderFactory hdrFactory,
+                         String transport) {
+        this.branchIdGen = branchIdGen;
+        this.headerFactory = Objects.requireNonNull(hdrFactory);
+        this.transport = transport;
+
+        this.callId = snapshot.callId;
+        this.server = snapshot.server;
+        this.localParty = snapshot.localParty;
+        this.remoteParty = snapshot.remoteParty;
+        this.localTag = snapshot.localTag;
+        this.remoteTag = snapshot.remoteTag;
+        this.remoteTarget = snapshot.remoteTarget;
+        this.routeSet = routeSet(snapshot.routeSet);
+        this.localCSeq = snapshot.localCSeq;
+        this.viaTransport = snapshot.viaTransport;
+        this.viaHost = snapshot.viaHost;
+        this.viaPort = snapshot.viaPort;
+        this.state = snapshot.state;
+    }
+
+    @Override
+    public SipDialogSnapshot snapshot() {
+        List<String> routes = new ArrayList<>();
+        if (routeSet != null) {
+            for (Route route : routeSet) {
+                routes.add(route.getAddress().toString());
+            }
+        }
+        return new SipDialogSnapshot(callId, server, localParty, remoteParty, localTag, remoteTag, remoteTarget,
+            routes, localCSeq, viaTransport, viaHost, viaPort, state);
+    }
+
+    @Override
+    public long getLocalCSeq() {
+        return localCSeq;
     }
 
     @Override
     public String getDialogId() {
-        return getCallId().getCallId();
+        return callId;
     }
 
     @Override
     public boolean isServer() {
-        return transactions.get(0).isServerTransaction();
+        return server;
     }
 
     @Override
     public SipDialog<T> updateOnResponse(SIPResponse response) {
-        SipTransaction lastTransaction = transactions.get(transactions.size() - 1);
+        SipTransaction lastTransaction = getTransaction();
         lastTransaction.addResponse(response);
         int code = response.getStatusCode();
+        String lastRequestMethod = lastTransaction.getOriginalRequest().getMethod();
+        if (lastRequestMethod.equals(Request.INVITE)) {
+            onResponseOnInvite(response);
+        }
         if (code / 100 == 1) { //1xx - provisional response
             state = DialogState.EARLY;
         } else if (code / 100 == 2) {
-            String lastRequestMethod = lastTransaction.getOriginalRequest().getMethod();
             if (lastRequestMethod.equals(Request.INVITE)) {
                 state = DialogState.CONFIRMED;
             } else if (lastRequestMethod.equals(Request.BYE)) {
@@ -79,22 +175,56 @@ public class SipDialogImpl<T> implements SipDialog<T> {
             } else {
                 throw new RuntimeException("TODO");
             }
+        } else if (lastRequestMethod.equals(Request.INVITE) || lastRequestMethod.equals(Request.BYE)) {
+            // https://datatracker.ietf.org/doc/html/rfc3261#section-13.2.2.3 dialog is not established
+            // https://datatracker.ietf.org/doc/html/rfc3261#section-15.1.1 session is terminated on any BYE response
+            state = DialogState.TERMINATED;
         } else {
             throw new RuntimeException("TODO");
         }
         return this;
     }
 
+    private void onResponseOnInvite(SIPResponse response) {
+        String toTag = response.getToTag();
+        if (server) {
+            if (toTag != null) {
+                localTag = toTag;
+            }
+            return;
+        }
+        // https://datatracker.ietf.org/doc/html/rfc3261#section-12.1.2
+        if (toTag != null) {
+            remoteTag = toTag;
+        }
+        if (response.getStatusCode() / 100 == 2) {
+            remoteTarget = remoteTarget(response, null);
+            routeSet = routeSet(response.getRecordRouteHeaders(), true);
+        }
+    }
+
     @Override
     public void addTransaction(SipTransaction transaction) {
-        transactions.add(transaction);
+        SIPRequest request = transaction.getOriginalRequest();
+        if (!transaction.isServerTransaction() && !request.getMethod().equals(Request.ACK)) {
+            localCSeq = request.getCSeq().getSeqNumber();
+        }
+        // https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.1.3
+        // 2xx on INVITE is acknowledged end-to-end, nothing is left to keep after ACK
+        this.transaction = request.getMethod().equals(Request.ACK) ? null : transaction;
+    }
+
+    private SipTransaction getTransaction() {
+        if (transaction == null) {
+            throw new IllegalStateException("No active transaction in dialog " + callId);
+        }
+        return transaction;
     }
 
     private SIPRequest getInitialInvite() {
-        SipTransaction firstTx = transactions.get(0);
-        SIPRequest request = firstTx.getOriginalRequest();
+        SIPRequest request = getTransaction().getOriginalRequest();
         if (!request.getMethod().equals(Request.INVITE)) {
-            throw new IllegalStateException("First transaction original request must always be invite, but it was " +
+            throw new IllegalStateException("Last transaction original request must be invite, but it was " +
                 request);
         }
         return request;
@@ -102,7 +232,7 @@ public class SipDialogImpl<T> implements SipDialog<T> {
 
     @Override
     public SIPRequest getLastRequest() {
-        return transactions.get(transactions.size() - 1).getOriginalRequest();
+        return transaction == null ? null : transaction.getOriginalRequest();
     }
 
     // https://datatracker.ietf.org/doc/html/rfc3261#section-12.2.1.1
@@ -124,26 +254,20 @@ public class SipDialogImpl<T> implements SipDialog<T> {
 
             CSeq cseq = new CSeq();
             cseq.setMethod(method);
-            cseq.setSeqNumber(findLastRequestCseq() + 1);
+            cseq.setSeqNumber(localCSeq + 1);
 
-            FromHeader from;
-            ToHeader to;
+            Address local = getLocalParty();
+            FromHeader from = headerFactory.createFromHeader(local, localTag);
+            ToHeader to = headerFactory.createToHeader(getRemoteParty(), remoteTag);
             ViaHeader via;
-            SIPResponse lastResponseOnOriginalInvite = transactions.get(0).getLastResponse().orElseThrow();
             if (isServer()) {
-                from = headerFactory.createFromHeader(getLocalParty(), lastResponseOnOriginalInvite.getToTag());
-                to = headerFactory.createToHeader(getRemoteParty(), lastResponseOnOriginalInvite.getFromTag());
-                SipURI sipUri = (SipURI) getLocalParty().getURI();
+                SipURI sipUri = (SipURI) local.getURI();
                 via = headerFactory.createViaHeader(sipUri.getHost(), sipUri.getPort(), transport, branchIdGen.get());
             } else {
-                from = lastResponseOnOriginalInvite.getFrom();
-                // use last response TO header, because original INVITE has no TO tag
-                to = lastResponseOnOriginalInvite.getTo();
-                via = (ViaHeader) getOriginalRequest().getTopmostVia().clone();
-                via.setBranch(branchIdGen.get());
+                via = headerFactory.createViaHeader(viaHost, viaPort, viaTransport, branchIdGen.get());
             }
 
-            SipUri requestUri = (SipUri) getRemoteParty().getURI();
+            SipUri requestUri = (SipUri) ADDRESS_FACTORY.createURI(remoteTarget);
 
             SIPRequest newRequest = new SIPRequest();
             newRequest.setMethod(method);
@@ -154,6 +278,9 @@ public class SipDialogImpl<T> implements SipDialog<T> {
             newRequest.setHeader(to);
             newRequest.setHeader(getCallId());
             newRequest.attachHeader(new MaxForwards(MAX_FORWARDS), false);
+            if (routeSet != null) {
+                newRequest.setHeader((RouteList) routeSet.clone());
+            }
 
             return newRequest;
         } catch (ParseException | InvalidArgumentException ex) {
@@ -174,7 +301,7 @@ public class SipDialogImpl<T> implements SipDialog<T> {
 
     @Override
     public SIPResponse createSuccessResponse(Supplier<String> uasToTagSupplier) {
-        SIPRequest lastRequest = getLastRequest();
+        SIPRequest lastRequest = getTransaction().getOriginalRequest();
         SIPResponse response = lastRequest.createResponse(Response.OK);
 
         if (lastRequest.getMethod().equals("INVITE")) {
@@ -188,7 +315,7 @@ public class SipDialogImpl<T> implements SipDialog<T> {
 
     @Override
     public SIPRequest createAck() {
-        SipTransaction lastTransaction = transactions.get(transactions.size() - 1);
+        SipTransaction lastTransaction = getTransaction();
         if (!(lastTransaction instanceof SipClientTransaction)) {
             throw new IllegalStateException("Only UAC can create ACK, but last transaction class = " +
                 lastTransaction.getClass().getSimpleName());
@@ -231,39 +358,72 @@ public class SipDialogImpl<T> implements SipDialog<T> {
         return sipRequest;
     }
 
-    private SIPRequest getOriginalRequest() {
-        return transactions.get(0).getOriginalRequest();
-    }
-
     @Override
     public Address getRemoteParty() {
-        if (isServer()) {
-            return getInitialInvite().getFrom().getAddress();
-        } else {
-            return getInitialInvite().getTo().getAddress();
-        }
+        return parseAddress(remoteParty);
     }
 
     @Override
     public Address getLocalParty() {
-        if (isServer()) {
-            return transactions.get(0).getOriginalRequest().getTo().getAddress();
-        } else {
-            return transactions.get(0).getOriginalRequest().getFrom().getAddress();
+        return parseAddress(localParty);
+    }
+
+    @Override
+    public CallIdHeader getCallId() {
+        return new CallID(callId);
+    }
+
+    private static Address parseAddress(String address) {
+        try {
+            return ADDRESS_FACTORY.createAddress(address);
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    private long findLastRequestCseq() {
-        if (transactions.isEmpty()) {
-            return 0;
+    /**
+     * @return URI of the Contact, or of the party address if message has no Contact
+     */
+    private static String remoteTarget(SIPMessage message, HeaderAddress party) {
+        ContactList contacts = message.getContactHeaders();
+        if (contacts != null && !contacts.isEmpty()) {
+            return ((Contact) contacts.getFirst()).getAddress().getURI().toString();
+        }
+        if (party != null) {
+            return party.getAddress().getURI().toString();
         }
-        SipTransaction lastTx = transactions.get(transactions.size() - 1);
-        return lastTx.getOriginalRequest().getCSeq().getSeqNumber();
+        return ((SIPResponse) message).getTo().getAddress().getURI().toString();
     }
 
-    @Override
-    public CallIdHeader getCallId() {
-        return getOriginalRequest().getCallId();
+    /**
+     * @param reverse UAC takes Record-Route in reverse order
+     * @return route set or null if there is no Record-Route
+     */
+    private static RouteList routeSet(RecordRouteList recordRoutes, boolean reverse) {
+        if (recordRoutes == null || recordRoutes.isEmpty()) {
+            return null;
+        }
+        RouteList routes = new RouteList();
+        for (RecordRoute recordRoute : recordRoutes) {
+            Route route = new Route((AddressImpl) recordRoute.getAddress().clone());
+            if (reverse) {
+                routes.addFirst(route);
+            } else {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    private static RouteList routeSet(List<String> routes) {
+        if (routes.isEmpty()) {
+            return null;
+        }
+        RouteList routeList = new RouteList();
+        for (String route : routes) {
+            routeList.add(new Route((AddressImpl) parseAddress(route)));
+        }
+        return routeList;
     }
 
     @Override
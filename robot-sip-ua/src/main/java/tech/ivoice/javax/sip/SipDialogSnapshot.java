@@ -0,0 +1,188 @@
+package tech.ivoice.javax.sip;
+
+import javax.sip.DialogState;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Dialog state needed to continue dialog without its messages, e.g. on other node or after restart: Call-ID, tags,
+ * parties, remote target, route set, local CSeq and Via sent-by, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-12">rfc3261#section-12</a>.
+ * Active transaction and application data are not included.
+ * <p>
+ * Binary form: strings are UTF-8 prefixed with unsigned short length, 0xFFFF for null.
+ */
+public final class SipDialogSnapshot {
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final DialogState[] STATES = {null, DialogState.EARLY, DialogState.CONFIRMED,
+        DialogState.TERMINATED};
+
+    final String callId;
+    final boolean server;
+    final String localParty;
+    final String remoteParty;
+    final String localTag;
+    final String remoteTag;
+    final String remoteTarget;
+    // Route addresses, empty when there are no proxies in the path
+    final List<String> routeSet;
+    final long localCSeq;
+    final String viaTransport;
+    final String viaHost;
+    final int viaPort;
+    final DialogState state;
+
+    SipDialogSnapshot(String callId, boolean server, String localParty, String remoteParty, String localTag,
+                      String remoteTag, String remoteTarget, List<String> routeSet, long localCSeq,
+                      String viaTransport, String viaHost, int viaPort, DialogState state) {
+        this.callId = callId;
+        this.server = server;
+        this.localParty = localParty;
+        this.remoteParty = remoteParty;
+        this.localTag = localTag;
+        this.remoteTag = remoteTag;
+        this.remoteTarget = remoteTarget;
+        this.routeSet = routeSet;
+        this.localCSeq = localCSeq;
+        this.viaTransport = viaTransport;
+        this.viaHost = viaHost;
+        this.viaPort = viaPort;
+        this.state = state;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public long getLocalCSeq() {
+        return localCSeq;
+    }
+
+    public DialogState getState() {
+        return state;
+    }
+
+    /**
+     * @return same snapshot with local CSeq updated by request sent in dialog
+     */
+    public SipDialogSnapshot withLocalCSeq(long localCSeq) {
+        return new SipDialogSnapshot(callId, server, localParty, remoteParty, localTag, remoteTag, remoteTarget,
+            routeSet, localCSeq, viaTransport, viaHost, viaPort, state);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        writeString(buffer, callId);
+        buffer.put((byte) (server ? 1 : 0));
+        writeString(buffer, localParty);
+        writeString(buffer, remoteParty);
+        writeString(buffer, localTag);
+        writeString(buffer, remoteTag);
+        writeString(buffer, remoteTarget);
+        if (routeSet.size() > 0xFF) {
+            throw new IllegalArgumentException("Route set is too long: " + routeSet.size());
+        }
+        buffer.put((byte) routeSet.size());
+        for (String route : routeSet) {
+            writeString(buffer, route);
+        }
+        buffer.putLong(localCSeq);
+        writeString(buffer, viaTransport);
+        writeString(buffer, viaHost);
+        buffer.putInt(viaPort);
+        buffer.put((byte) stateIndex(state));
+    }
+
+    /**
+     * @throws IllegalArgumentException if snapshot is malformed
+     * @throws java.nio.BufferUnderflowException if snapshot is truncated
+     */
+    public static SipDialogSnapshot readFrom(ByteBuffer buffer) {
+        String callId = readString(buffer);
+        boolean server = buffer.get() != 0;
+        String localParty = readString(buffer);
+        String remoteParty = readString(buffer);
+        String localTag = readString(buffer);
+        String remoteTag = readString(buffer);
+        String remoteTarget = readString(buffer);
+        String[] routeSet = new String[buffer.get() & 0xFF];
+        for (int i = 0; i < routeSet.length; i++) {
+            routeSet[i] = readString(buffer);
+        }
+        long localCSeq = buffer.getLong();
+        String viaTransport = readString(buffer);
+        String viaHost = readString(buffer);
+        int viaPort = buffer.getInt();
+        int state = buffer.get();
+        if (callId == null || state < 0 || state >= STATES.length) {
+            throw new IllegalArgumentException("Malformed dialog snapshot");
+        }
+        return new SipDialogSnapshot(callId, server, localParty, remoteParty, localTag, remoteTag, remoteTarget,
+            List.of(routeSet), localCSeq, viaTransport, viaHost, viaPort, STATES[state]);
+    }
+
+    /**
+     * @return upper bound of binary form size, strings are assumed to be ASCII mostly
+     */
+    public int maxEncodedLength() {
+        int length = 1 + 1 + 8 + 4 + 1;
+        length += maxLength(callId) + maxLength(localParty) + maxLength(remoteParty) + maxLength(localTag) +
+            maxLength(remoteTag) + maxLength(remoteTarget) + maxLength(viaTransport) + maxLength(viaHost);
+        for (String route : routeSet) {
+            length += maxLength(route);
+        }
+        return length;
+    }
+
+    /**
+     * @return upper bound of string binary form size
+     */
+    public static int maxLength(String value) {
+        return 2 + (value == null ? 0 : value.length() * 3);
+    }
+
+    /**
+     * Writes string in the form used by snapshot, for framing of snapshots and their updates
+     */
+    public static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("Dialog value is too long: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stateIndex(DialogState state) {
+        for (int i = 0; i < STATES.length; i++) {
+            if (STATES[i] == state) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported dialog state " + state);
+    }
+
+    @Override
+    public String toString() {
+        return "SipDialogSnapshot{" +
+            "callId='" + callId + '\'' +
+            ", server=" + server +
+            ", localCSeq=" + localCSeq +
+            ", state=" + state +
+            '}';
+    }
+}
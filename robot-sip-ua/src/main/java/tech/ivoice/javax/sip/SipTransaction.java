@@ -16,6 +16,13 @@ public interface SipTransaction {
 
     TransactionState getState();
 
+    /**
+     * Transaction state is driven by transaction timers and messages sent and received in transaction
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-17">rfc3261#section-17</a>
+     */
+    void setState(TransactionState state);
+
     String getBranchId();
 
     Request getRequest();
@@ -0,0 +1,108 @@
+package tech.ivoice.sip.rtp;
+
+/**
+ * Configuration of {@link RtpEngine}
+ */
+public class RtpConfig {
+    private final String host;
+    private final int minPort;
+    private final int maxPort;
+
+    private int ptime = 20;
+    // in frames
+    private int minJitterBufferDepth = 2;
+    private int maxJitterBufferDepth = 10;
+    // https://datatracker.ietf.org/doc/html/rfc3550#section-6.2
+    private long rtcpInterval = 5000;
+
+    /**
+     * @param host    local address RTP and RTCP sockets are bound to
+     * @param minPort first port of range, streams use pairs of even RTP port and next odd RTCP port
+     * @param maxPort last port of range, inclusive
+     */
+    public RtpConfig(String host, int minPort, int maxPort) {
+        if (minPort < 1024 || maxPort > 65535 || maxPort - minPort < 1) {
+            throw new IllegalArgumentException("Port range must be within 1024..65535 and contain a pair of ports, " +
+                "but was " + minPort + ".." + maxPort);
+        }
+        this.host = host;
+        this.minPort = minPort;
+        this.maxPort = maxPort;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getMinPort() {
+        return minPort;
+    }
+
+    public int getMaxPort() {
+        return maxPort;
+    }
+
+    public int getPtime() {
+        return ptime;
+    }
+
+    /**
+     * Period of stream scheduler in milliseconds, packet duration of streams must be a multiple of it. Default is 20.
+     */
+    public RtpConfig setPtime(int ptime) {
+        if (ptime < 10 || ptime > 60) {
+            throw new IllegalArgumentException("ptime must be 10..60 ms, but was " + ptime);
+        }
+        this.ptime = ptime;
+        return this;
+    }
+
+    public int getMinJitterBufferDepth() {
+        return minJitterBufferDepth;
+    }
+
+    public int getMaxJitterBufferDepth() {
+        return maxJitterBufferDepth;
+    }
+
+    /**
+     * Bounds of jitter buffer depth in frames, see {@link RtpJitterBuffer}. Default is 2..10.
+     */
+    public RtpConfig setJitterBufferDepth(int minFrames, int maxFrames) {
+        if (minFrames < 1 || maxFrames < minFrames || maxFrames > 50) {
+            throw new IllegalArgumentException("Jitter buffer depth must be within 1..50 frames, but was " +
+                minFrames + ".." + maxFrames);
+        }
+        this.minJitterBufferDepth = minFrames;
+        this.maxJitterBufferDepth = maxFrames;
+        return this;
+    }
+
+    public long getRtcpInterval() {
+        return rtcpInterval;
+    }
+
+    /**
+     * Interval of RTCP sender reports in milliseconds. Default is 5000.
+     */
+    public RtpConfig setRtcpInterval(long millis) {
+        if (millis < ptime) {
+            throw new IllegalArgumentException("rtcpInterval must not be less than ptime, but was " + millis);
+        }
+        this.rtcpInterval = millis;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "RtpConfig{" +
+            "host='" + host + '\'' +
+            ", minPort=" + minPort +
+            ", maxPort=" + maxPort +
+            ", ptime=" + ptime +
+            ", minJitterBufferDepth=" + minJitterBufferDepth +
+            ", maxJitterBufferDepth=" + maxJitterBufferDepth +
+            ", rtcpInterval=" + rtcpInterval +
+            '}';
+    }
+}
@@ -0,0 +1,174 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.InternetProtocolFamily;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.impl.future.PromiseInternal;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RTP media of calls, one engine per node shared by user agent verticles. Each call opens {@link RtpStream} on its
+ * verticle context: RTP and RTCP sockets are bound on the next free port pair of configured range and registered on
+ * the event loop of the context. Started streams of one event loop are paced by one {@link RtpScheduler}.
+ * <p>
+ * Sockets are Netty datagram channels of Vert.x transport (epoll when Vert.x runs on native transport) rather than
+ * Vert.x datagram sockets, whose send allocates a packet wrapper and resolves address on every call.
+ * <pre>{@code
+ * engine.open(context).compose(stream -> {
+ *     SdpAnswer answer = negotiator.answer(invite.getRawContent(), stream.getLocalPort());
+ *     sendResponse(createOk(callId, answer.getBody()));
+ *     return stream.start(answer.getRemoteAddress(), answer.getRemotePort(), answer.getPayloadType(),
+ *         answer.getPtime());
+ * });
+ * }</pre>
+ */
+public class RtpEngine {
+    static final Logger log = LoggerFactory.getLogger(RtpEngine.class);
+    // attempts to bind when allocated port is used by another process
+    private static final int BIND_ATTEMPTS = 8;
+
+    private final VertxInternal vertx;
+    private final RtpConfig config;
+    private final RtpPortAllocator ports;
+    private final InternetProtocolFamily family;
+    private final Map<EventLoop, RtpScheduler> schedulers = new ConcurrentHashMap<>();
+    // runs scheduler tasks instead of stream event loops, null if not replaced
+    private final EventLoop timer;
+
+    public RtpEngine(Vertx vertx, RtpConfig config) {
+        this(vertx, config, null);
+    }
+
+    /**
+     * @param timer runs scheduler tasks instead of stream event loops, e.g. event loop that is never started,
+     *              so tests tick schedulers themselves
+     */
+    RtpEngine(Vertx vertx, RtpConfig config, EventLoop timer) {
+        this.vertx = (VertxInternal) vertx;
+        this.config = config;
+        this.ports = new RtpPortAllocator(config.getMinPort(), config.getMaxPort());
+        this.family = config.getHost().indexOf(':') >= 0 ? InternetProtocolFamily.IPv6 : InternetProtocolFamily.IPv4;
+        this.timer = timer;
+    }
+
+    /**
+     * Opens stream on the current context, which must be an event loop one, e.g. of user agent verticle.
+     * Off context, e.g. in application callback on virtual thread, use {@link #open(Context)}.
+     *
+     * @return stream bound on free port pair, failed when all ports are used
+     */
+    public Future<RtpStream> open() {
+        // not Vertx#getContext, off event loop it returns context the thread once created with getOrCreateContext
+        ContextInternal context = ContextInternal.current();
+        if (context == null || context.owner() != vertx) {
+            throw new IllegalStateException("RTP stream must be opened on event loop context, " +
+                "pass context of user agent verticle when called from other thread");
+        }
+        return open(context);
+    }
+
+    /**
+     * Opens stream on given event loop context, e.g. of user agent verticle, from any thread.
+     * Stream methods must be called on this context.
+     *
+     * @return stream bound on free port pair, failed when all ports are used
+     */
+    public Future<RtpStream> open(Context context) {
+        ContextInternal streamContext = (ContextInternal) context;
+        if (!streamContext.isEventLoopContext()) {
+            throw new IllegalStateException("RTP stream must be opened on event loop context");
+        }
+        PromiseInternal<RtpStream> promise = streamContext.promise();
+        if (streamContext.isRunningOnContext()) {
+            open(streamContext, promise, BIND_ATTEMPTS);
+        } else {
+            streamContext.runOnContext(v -> open(streamContext, promise, BIND_ATTEMPTS));
+        }
+        return promise.future();
+    }
+
+    private void open(ContextInternal context, PromiseInternal<RtpStream> promise, int attempts) {
+        int port = ports.allocate();
+        if (port < 0) {
+            promise.fail(new IllegalStateException("No free RTP ports in " + config.getMinPort() + ".." +
+                config.getMaxPort()));
+            return;
+        }
+        EventLoop eventLoop = context.nettyEventLoop();
+        RtpScheduler scheduler = schedulers.computeIfAbsent(eventLoop,
+            loop -> new RtpScheduler(timer != null ? timer : loop, config.getPtime()));
+        RtpStream stream = new RtpStream(this, context, scheduler, config, port);
+        bind(context, stream.new RtpHandler(), port)
+            .compose(rtp -> {
+                stream.rtpChannel = rtp;
+                return bind(context, stream.new RtcpHandler(), port + 1);
+            })
+            .onSuccess(rtcp -> {
+                stream.rtcpChannel = rtcp;
+                promise.complete(stream);
+            })
+            .onFailure(cause -> {
+                if (stream.rtpChannel != null) {
+                    stream.rtpChannel.close();
+                }
+                ports.release(port);
+                if (attempts > 1) {
+                    log.debug("Failed to bind RTP port " + port + ": " + cause.getMessage());
+                    open(context, promise, attempts - 1);
+                } else {
+                    promise.fail(cause);
+                }
+            });
+    }
+
+    private Future<Channel> bind(ContextInternal context, ChannelHandler handler, int port) {
+        PromiseInternal<Void> promise = context.promise();
+        Channel channel = new Bootstrap()
+            .group(context.nettyEventLoop())
+            .channelFactory((ChannelFactory<DatagramChannel>) () -> vertx.transport().datagramChannel(family))
+            .handler(handler)
+            .bind(config.getHost(), port)
+            .addListener(promise)
+            .channel();
+        return promise.future().map(channel);
+    }
+
+    void release(int port) {
+        ports.release(port);
+    }
+
+    /**
+     * @return number of open streams
+     */
+    public int getOpenStreams() {
+        return ports.getAllocated();
+    }
+
+    public RtpConfig getConfig() {
+        return config;
+    }
+
+    int getSchedulers() {
+        return schedulers.size();
+    }
+
+    /**
+     * @return scheduler of streams opened on context, null if there are none
+     */
+    RtpScheduler getScheduler(Context context) {
+        return schedulers.get(((ContextInternal) context).nettyEventLoop());
+    }
+}
@@ -0,0 +1,16 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Supplies payload of outgoing packets, called by {@link RtpStream} once per packet duration
+ */
+@FunctionalInterface
+public interface RtpFrameSource {
+    /**
+     * @param frame   packet buffer positioned after RTP header, payload is written to it
+     * @param samples samples in frame, equals payload size for G.711
+     * @return false if nothing is sent in this frame, e.g. silence, next packet starts a talkspurt
+     */
+    boolean read(ByteBuf frame, int samples);
+}
@@ -0,0 +1,210 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.Arrays;
+
+/**
+ * Reorders received frames and delays their playout by a depth adapted to network jitter.
+ * <p>
+ * Frames are copied to slots preallocated for the stream, indexed by sequence number, so buffering allocates nothing.
+ * Playout starts when target depth is buffered, then one frame is taken per frame duration, see {@link #poll()}:
+ * missing frame is counted as lost, empty buffer stops playout until target depth is buffered again.
+ * <p>
+ * Target depth is the minimum depth plus three times interarrival jitter in frames, up to the maximum depth. When
+ * buffered depth exceeds target, e.g. jitter decreased, one frame is dropped per playout to reduce delay.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#appendix-A.8">rfc3550#appendix-A.8</a>
+ */
+final class RtpJitterBuffer {
+    private static final int EMPTY = -1;
+
+    private final ByteBuf[] frames;
+    // sequence number of frame in slot or EMPTY
+    private final int[] sequences;
+    private final int mask;
+    private final int minDepth;
+    private final int maxDepth;
+    private final int frameSamples;
+
+    private boolean started;
+    private boolean playing;
+    // next sequence number to play
+    private int playSequence;
+    private int highestSequence;
+    private int buffered;
+    private int targetDepth;
+
+    private boolean transitKnown;
+    private int lastTransit;
+    // interarrival jitter in timestamp units, scaled by 16
+    private int jitter;
+
+    private long received;
+    private long lost;
+    private long late;
+    private long dropped;
+
+    /**
+     * @param frameSamples   samples in frame, timestamp increment between frames
+     * @param maxPayloadSize bigger frames are discarded
+     */
+    RtpJitterBuffer(int minDepth, int maxDepth, int frameSamples, int maxPayloadSize) {
+        int capacity = Integer.highestOneBit(maxDepth * 2 - 1) << 1;
+        this.frames = new ByteBuf[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = Unpooled.buffer(maxPayloadSize, maxPayloadSize);
+        }
+        this.sequences = new int[capacity];
+        Arrays.fill(sequences, EMPTY);
+        this.mask = capacity - 1;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.frameSamples = frameSamples;
+        this.targetDepth = minDepth;
+    }
+
+    /**
+     * @param arrival arrival time in timestamp units
+     * @return false if frame is discarded: late, duplicate or too big
+     */
+    boolean offer(int sequence, int timestamp, int arrival, ByteBuf payload, int index, int length) {
+        if (length > frames[0].maxCapacity()) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            playSequence = sequence;
+            highestSequence = sequence;
+        }
+        int distance = (short) (sequence - playSequence);
+        if (distance < 0) {
+            late++;
+            return false;
+        }
+        if (distance > mask) {
+            // gap longer than buffer, e.g. stream restarted
+            reset(sequence);
+        }
+        int slot = sequence & mask;
+        if (sequences[slot] == sequence) {
+            return false;
+        }
+        frames[slot].clear().writeBytes(payload, index, length);
+        sequences[slot] = sequence;
+        buffered++;
+        received++;
+        if ((short) (sequence - highestSequence) > 0) {
+            highestSequence = sequence;
+        }
+        updateJitter(timestamp, arrival);
+        if (!playing && depth() >= targetDepth) {
+            playing = true;
+        }
+        return true;
+    }
+
+    /**
+     * Called once per frame duration
+     *
+     * @return frame to play, valid until the next offer, null if there is none
+     */
+    ByteBuf poll() {
+        if (!playing) {
+            return null;
+        }
+        if (buffered == 0) {
+            playing = false;
+            return null;
+        }
+        if (depth() > targetDepth + 1) {
+            dropped += take() != null ? 1 : 0;
+        }
+        ByteBuf frame = take();
+        if (frame == null) {
+            lost++;
+        }
+        return frame;
+    }
+
+    private ByteBuf take() {
+        int slot = playSequence & mask;
+        boolean present = sequences[slot] == playSequence;
+        playSequence = (playSequence + 1) & 0xffff;
+        if (!present) {
+            return null;
+        }
+        sequences[slot] = EMPTY;
+        buffered--;
+        return frames[slot];
+    }
+
+    /**
+     * Drops buffered frames, e.g. when sender changed
+     */
+    void reset(int sequence) {
+        Arrays.fill(sequences, EMPTY);
+        buffered = 0;
+        playing = false;
+        started = true;
+        playSequence = sequence;
+        highestSequence = sequence;
+        transitKnown = false;
+    }
+
+    private int depth() {
+        return ((highestSequence - playSequence) & 0xffff) + 1;
+    }
+
+    private void updateJitter(int timestamp, int arrival) {
+        int transit = arrival - timestamp;
+        if (transitKnown) {
+            int d = Math.abs(transit - lastTransit);
+            jitter += d - ((jitter + 8) >> 4);
+            targetDepth = (int) Math.min(maxDepth, minDepth + (3L * (jitter >> 4) + frameSamples - 1) / frameSamples);
+        }
+        transitKnown = true;
+        lastTransit = transit;
+    }
+
+    /**
+     * @return interarrival jitter in timestamp units
+     */
+    int getJitter() {
+        return jitter >> 4;
+    }
+
+    int getTargetDepth() {
+        return targetDepth;
+    }
+
+    int getBuffered() {
+        return buffered;
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return frames not received in time for playout
+     */
+    long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return frames received after their playout time
+     */
+    long getLate() {
+        return late;
+    }
+
+    /**
+     * @return frames dropped to reduce delay
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,146 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads and writes RTP and RTCP headers in place, on packet buffer
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#section-5.1">rfc3550#section-5.1</a>
+ */
+final class RtpPacket {
+    static final int HEADER_SIZE = 12;
+    static final int CLOCK_RATE = 8000;
+
+    private static final int VERSION = 2;
+    // https://datatracker.ietf.org/doc/html/rfc3550#section-12.1
+    private static final int SENDER_REPORT = 200;
+    private static final int SOURCE_DESCRIPTION = 202;
+    private static final int BYE = 203;
+    private static final int CNAME = 1;
+    // seconds from 1900 to 1970
+    private static final long NTP_EPOCH_OFFSET = 2_208_988_800L;
+
+    private RtpPacket() {
+    }
+
+    /**
+     * @return index of payload in packet, -1 if packet is not RTP version 2 or is truncated
+     */
+    static int payloadStart(ByteBuf packet) {
+        int start = packet.readerIndex();
+        int end = packet.writerIndex();
+        if (end - start < HEADER_SIZE) {
+            return -1;
+        }
+        int first = packet.getUnsignedByte(start);
+        if (first >> 6 != VERSION) {
+            return -1;
+        }
+        int payloadStart = start + HEADER_SIZE + (first & 0x0f) * 4;
+        if ((first & 0x10) != 0) {
+            if (payloadStart + 4 > end) {
+                return -1;
+            }
+            payloadStart += 4 + packet.getUnsignedShort(payloadStart + 2) * 4;
+        }
+        return payloadStart <= payloadEnd(packet) ? payloadStart : -1;
+    }
+
+    /**
+     * @return index after payload, padding excluded
+     */
+    static int payloadEnd(ByteBuf packet) {
+        int end = packet.writerIndex();
+        if ((packet.getUnsignedByte(packet.readerIndex()) & 0x20) != 0) {
+            end -= packet.getUnsignedByte(end - 1);
+        }
+        return end;
+    }
+
+    static int payloadType(ByteBuf packet) {
+        return packet.getUnsignedByte(packet.readerIndex() + 1) & 0x7f;
+    }
+
+    static int sequence(ByteBuf packet) {
+        return packet.getUnsignedShort(packet.readerIndex() + 2);
+    }
+
+    static int timestamp(ByteBuf packet) {
+        return packet.getInt(packet.readerIndex() + 4);
+    }
+
+    static int ssrc(ByteBuf packet) {
+        return packet.getInt(packet.readerIndex() + 8);
+    }
+
+    /**
+     * Writes header at the start of packet, without CSRC and extension, writer index is kept
+     */
+    static void writeHeader(ByteBuf packet, boolean marker, int payloadType, int sequence, int timestamp, int ssrc) {
+        int start = packet.readerIndex();
+        packet.setByte(start, VERSION << 6);
+        packet.setByte(start + 1, (marker ? 0x80 : 0) | payloadType);
+        packet.setShort(start + 2, sequence);
+        packet.setInt(start + 4, timestamp);
+        packet.setInt(start + 8, ssrc);
+    }
+
+    /**
+     * Writes sender report without report blocks
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#section-6.4.1">rfc3550#section-6.4.1</a>
+     */
+    static void writeSenderReport(ByteBuf packet, int ssrc, long wallClockMillis, int timestamp, long packets,
+                                  long octets) {
+        long seconds = wallClockMillis / 1000 + NTP_EPOCH_OFFSET;
+        long fraction = ((wallClockMillis % 1000) << 32) / 1000;
+        packet.writeByte(VERSION << 6);
+        packet.writeByte(SENDER_REPORT);
+        packet.writeShort(6);
+        packet.writeInt(ssrc);
+        packet.writeInt((int) seconds);
+        packet.writeInt((int) fraction);
+        packet.writeInt(timestamp);
+        packet.writeInt((int) packets);
+        packet.writeInt((int) octets);
+    }
+
+    /**
+     * Writes source description with CNAME item, padded to 32-bit boundary
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#section-6.5">rfc3550#section-6.5</a>
+     */
+    static void writeSourceDescription(ByteBuf packet, int ssrc, byte[] cname) {
+        // SSRC, CNAME type and length, text, at least one null octet ending items
+        int chunkSize = (4 + 2 + cname.length + 4) & ~3;
+        packet.writeByte(VERSION << 6 | 1);
+        packet.writeByte(SOURCE_DESCRIPTION);
+        packet.writeShort(chunkSize / 4);
+        packet.writeInt(ssrc);
+        packet.writeByte(CNAME);
+        packet.writeByte(cname.length);
+        packet.writeBytes(cname);
+        packet.writeZero(chunkSize - 6 - cname.length);
+    }
+
+    /**
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#section-6.6">rfc3550#section-6.6</a>
+     */
+    static void writeBye(ByteBuf packet, int ssrc) {
+        packet.writeByte(VERSION << 6 | 1);
+        packet.writeByte(BYE);
+        packet.writeShort(1);
+        packet.writeInt(ssrc);
+    }
+
+    /**
+     * @return RTCP packet type of the first packet of compound packet, -1 if it's not RTCP version 2
+     */
+    static int rtcpType(ByteBuf packet) {
+        int start = packet.readerIndex();
+        if (packet.writerIndex() - start < 8 || packet.getUnsignedByte(start) >> 6 != VERSION) {
+            return -1;
+        }
+        return packet.getUnsignedByte(start + 1);
+    }
+}
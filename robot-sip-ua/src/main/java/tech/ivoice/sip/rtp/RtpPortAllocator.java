@@ -0,0 +1,61 @@
+package tech.ivoice.sip.rtp;
+
+import java.util.BitSet;
+
+/**
+ * Allocates pairs of even RTP port and next odd RTCP port from a range, shared by event loops of {@link RtpEngine}.
+ * Ports are allocated round-robin, so released port is reused as late as possible and late packets of ended call
+ * don't reach the next one.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550#section-11">rfc3550#section-11</a>
+ */
+final class RtpPortAllocator {
+    private final int firstPort;
+    private final int pairs;
+    private final BitSet used;
+    private int next;
+    private int allocated;
+
+    RtpPortAllocator(int minPort, int maxPort) {
+        this.firstPort = minPort + (minPort & 1);
+        this.pairs = (maxPort - firstPort + 1) / 2;
+        if (pairs < 1) {
+            throw new IllegalArgumentException("No pair of ports in " + minPort + ".." + maxPort);
+        }
+        this.used = new BitSet(pairs);
+    }
+
+    /**
+     * @return RTP port, RTCP port is the next one, -1 if all are allocated
+     */
+    synchronized int allocate() {
+        if (allocated == pairs) {
+            return -1;
+        }
+        int pair = used.nextClearBit(next);
+        if (pair >= pairs) {
+            pair = used.nextClearBit(0);
+        }
+        used.set(pair);
+        allocated++;
+        next = pair + 1;
+        return firstPort + pair * 2;
+    }
+
+    synchronized void release(int port) {
+        int pair = (port - firstPort) / 2;
+        if (pair < 0 || pair >= pairs || !used.get(pair)) {
+            throw new IllegalStateException("Port " + port + " is not allocated");
+        }
+        used.clear(pair);
+        allocated--;
+    }
+
+    synchronized int getAllocated() {
+        return allocated;
+    }
+
+    int getCapacity() {
+        return pairs;
+    }
+}
@@ -0,0 +1,88 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces streams of one event loop: one periodic task calls every started stream once per period, instead of a timer
+ * per stream. The task runs at fixed rate, so executions delayed by a busy event loop are caught up back to back and
+ * streams keep their rate. The task runs only while there are streams.
+ * <p>
+ * Used on its event loop only.
+ */
+final class RtpScheduler {
+    private final EventLoop eventLoop;
+    private final long period;
+    private RtpStream[] streams = new RtpStream[64];
+    private int size;
+    private long tick;
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param period milliseconds
+     */
+    RtpScheduler(EventLoop eventLoop, long period) {
+        this.eventLoop = eventLoop;
+        this.period = period;
+    }
+
+    void add(RtpStream stream) {
+        if (stream.schedulerIndex >= 0) {
+            return;
+        }
+        if (size == streams.length) {
+            streams = Arrays.copyOf(streams, size * 2);
+        }
+        stream.schedulerIndex = size;
+        stream.lastTick = tick;
+        streams[size++] = stream;
+        if (task == null) {
+            task = eventLoop.scheduleAtFixedRate(this::run, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void remove(RtpStream stream) {
+        int index = stream.schedulerIndex;
+        if (index < 0) {
+            return;
+        }
+        RtpStream last = streams[--size];
+        streams[index] = last;
+        last.schedulerIndex = index;
+        streams[size] = null;
+        stream.schedulerIndex = -1;
+        if (size == 0) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Calls started streams, once per period
+     */
+    void run() {
+        long tick = ++this.tick;
+        // backwards: streams removed by stream handlers are replaced by already called ones
+        for (int i = size - 1; i >= 0; i--) {
+            if (i >= size) {
+                continue;
+            }
+            RtpStream stream = streams[i];
+            if (stream.lastTick != tick) {
+                stream.lastTick = tick;
+                stream.tick();
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getPeriod() {
+        return period;
+    }
+}
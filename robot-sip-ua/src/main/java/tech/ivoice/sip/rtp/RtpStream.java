@@ -0,0 +1,360 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.NetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.future.PromiseInternal;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RTP stream of one call: RTP and RTCP sockets bound on port pair allocated by {@link RtpEngine#open(Context)}.
+ * <p>
+ * When started, stream is called by the scheduler of its event loop once per packet duration: it sends a packet with
+ * payload from {@link #setSource(RtpFrameSource)} and passes the next frame of jitter buffer to
+ * {@link #setFrameHandler(Handler)}, on the context stream is opened on. Sockets are connected to remote address,
+ * packets are written without envelope, packet buffers are pooled, received frames are copied to preallocated
+ * jitter buffer slots, so there are no buffer allocations per packet. RTCP sender report with CNAME is sent every
+ * {@link RtpConfig#getRtcpInterval()}, BYE when stream is closed.
+ * <p>
+ * Only audio with 8000 Hz clock rate (G.711) is supported. Methods are called on the context stream is opened on.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3550">rfc3550</a>
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3551#section-4.5.14">rfc3551#section-4.5.14</a>
+ */
+public final class RtpStream {
+    // 60 ms of G.711
+    static final int MAX_PAYLOAD_SIZE = 480;
+    // nanoseconds per timestamp unit
+    private static final long NANOS_PER_SAMPLE = 1_000_000_000L / RtpPacket.CLOCK_RATE;
+
+    private final RtpEngine engine;
+    private final ContextInternal context;
+    private final RtpScheduler scheduler;
+    private final RtpConfig config;
+    private final int localPort;
+    private final int ssrc = ThreadLocalRandom.current().nextInt();
+    private final byte[] cname;
+    private final Handler<Void> tickHandler = v -> onTick();
+    Channel rtpChannel;
+    Channel rtcpChannel;
+
+    // used by scheduler
+    int schedulerIndex = -1;
+    long lastTick;
+
+    private RtpFrameSource source;
+    private Handler<ByteBuf> frameHandler;
+    private RtpJitterBuffer jitterBuffer;
+    private int payloadType = -1;
+    private int frameSamples;
+    private int ticksPerFrame;
+    private int ticks;
+    private int framesPerReport;
+    private int frames;
+
+    private int sequence = ThreadLocalRandom.current().nextInt(0x10000);
+    private int timestamp = ThreadLocalRandom.current().nextInt();
+    private boolean marker = true;
+    private boolean remoteSsrcKnown;
+    private int remoteSsrc;
+    private boolean closed;
+
+    private long packetsSent;
+    private long octetsSent;
+    private long otherPackets;
+    private long rtcpPacketsReceived;
+
+    RtpStream(RtpEngine engine, ContextInternal context, RtpScheduler scheduler, RtpConfig config, int localPort) {
+        this.engine = engine;
+        this.context = context;
+        this.scheduler = scheduler;
+        this.config = config;
+        this.localPort = localPort;
+        this.cname = ("robot-" + Integer.toHexString(ssrc) + "@" + config.getHost()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Connects sockets to remote RTP port and the next RTCP port, and starts sending and playout, e.g. with payload
+     * type and ptime of {@link tech.ivoice.sip.sdp.SdpAnswer}. Stream can be started again with another remote.
+     *
+     * @param remoteAddress IP address
+     * @param ptime         packet duration in milliseconds, a multiple of {@link RtpConfig#getPtime()}
+     */
+    public Future<Void> start(String remoteAddress, int remotePort, int payloadType, int ptime) {
+        if (closed) {
+            return context.failedFuture(new IllegalStateException("Stream " + localPort + " is closed"));
+        }
+        if (ptime % config.getPtime() != 0 || ptime * RtpPacket.CLOCK_RATE / 1000 > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("ptime must be a multiple of " + config.getPtime() + " up to 60 ms, " +
+                "but was " + ptime);
+        }
+        byte[] address = NetUtil.createByteArrayFromIpAddressString(remoteAddress);
+        if (address == null) {
+            throw new IllegalArgumentException("Remote address must be IP address, but was " + remoteAddress);
+        }
+        InetAddress inetAddress;
+        try {
+            inetAddress = InetAddress.getByAddress(remoteAddress, address);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+        scheduler.remove(this);
+        this.payloadType = payloadType;
+        this.frameSamples = ptime * RtpPacket.CLOCK_RATE / 1000;
+        this.ticksPerFrame = ptime / config.getPtime();
+        this.framesPerReport = (int) Math.max(1, config.getRtcpInterval() / ptime);
+        this.jitterBuffer = new RtpJitterBuffer(config.getMinJitterBufferDepth(), config.getMaxJitterBufferDepth(),
+            frameSamples, MAX_PAYLOAD_SIZE);
+        this.remoteSsrcKnown = false;
+        this.marker = true;
+        return connect(rtpChannel, new InetSocketAddress(inetAddress, remotePort))
+            .compose(v -> connect(rtcpChannel, new InetSocketAddress(inetAddress, remotePort + 1)))
+            .onSuccess(v -> {
+                if (!closed) {
+                    scheduler.add(this);
+                }
+            });
+    }
+
+    private Future<Void> connect(Channel channel, InetSocketAddress remote) {
+        PromiseInternal<Void> promise = context.promise();
+        if (channel.remoteAddress() != null) {
+            channel.disconnect().addListener(disconnected -> channel.connect(remote).addListener(promise));
+        } else {
+            channel.connect(remote).addListener(promise);
+        }
+        return promise.future();
+    }
+
+    /**
+     * @param source payload of outgoing packets, null stops sending
+     */
+    public RtpStream setSource(RtpFrameSource source) {
+        this.source = source;
+        return this;
+    }
+
+    /**
+     * @param frameHandler called with payload of received packets in playout order, once per packet duration when
+     *                     there is a frame to play, buffer is valid only during the call
+     */
+    public RtpStream setFrameHandler(Handler<ByteBuf> frameHandler) {
+        this.frameHandler = frameHandler;
+        return this;
+    }
+
+    /**
+     * Stops the stream, sends RTCP BYE if started, closes sockets and releases ports
+     */
+    public Future<Void> close() {
+        if (closed) {
+            return context.succeededFuture();
+        }
+        closed = true;
+        if (schedulerIndex >= 0) {
+            scheduler.remove(this);
+            ByteBuf bye = rtcpChannel.alloc().directBuffer(8);
+            RtpPacket.writeBye(bye, ssrc);
+            rtcpChannel.writeAndFlush(bye, rtcpChannel.voidPromise());
+        }
+        PromiseInternal<Void> rtp = context.promise();
+        PromiseInternal<Void> rtcp = context.promise();
+        rtpChannel.close().addListener(rtp);
+        rtcpChannel.close().addListener(rtcp);
+        return rtp.future().eventually(v -> rtcp.future())
+            .onComplete(released -> engine.release(localPort));
+    }
+
+    void tick() {
+        context.emit(tickHandler);
+    }
+
+    private void onTick() {
+        if (++ticks < ticksPerFrame) {
+            return;
+        }
+        ticks = 0;
+        sendFrame();
+        ByteBuf frame = jitterBuffer.poll();
+        if (frame != null && frameHandler != null) {
+            frameHandler.handle(frame);
+        }
+        if (++frames >= framesPerReport) {
+            frames = 0;
+            sendReport();
+        }
+    }
+
+    private void sendFrame() {
+        RtpFrameSource source = this.source;
+        if (source == null) {
+            marker = true;
+            timestamp += frameSamples;
+            return;
+        }
+        ByteBuf packet = rtpChannel.alloc().directBuffer(RtpPacket.HEADER_SIZE + frameSamples);
+        packet.writerIndex(RtpPacket.HEADER_SIZE);
+        boolean read = false;
+        try {
+            read = source.read(packet, frameSamples) && packet.readableBytes() > RtpPacket.HEADER_SIZE;
+        } finally {
+            if (read) {
+                RtpPacket.writeHeader(packet, marker, payloadType, sequence, timestamp, ssrc);
+                sequence = (sequence + 1) & 0xffff;
+                marker = false;
+                packetsSent++;
+                octetsSent += packet.readableBytes() - RtpPacket.HEADER_SIZE;
+                rtpChannel.writeAndFlush(packet, rtpChannel.voidPromise());
+            } else {
+                packet.release();
+                marker = true;
+            }
+            timestamp += frameSamples;
+        }
+    }
+
+    private void sendReport() {
+        ByteBuf report = rtcpChannel.alloc().directBuffer(64);
+        RtpPacket.writeSenderReport(report, ssrc, System.currentTimeMillis(), timestamp, packetsSent, octetsSent);
+        RtpPacket.writeSourceDescription(report, ssrc, cname);
+        rtcpChannel.writeAndFlush(report, rtcpChannel.voidPromise());
+    }
+
+    private void received(ByteBuf packet) {
+        int payloadStart = RtpPacket.payloadStart(packet);
+        if (jitterBuffer == null || payloadStart < 0 || RtpPacket.payloadType(packet) != payloadType) {
+            // not started, invalid or other payload, e.g. telephone-event
+            otherPackets++;
+            return;
+        }
+        int packetSsrc = RtpPacket.ssrc(packet);
+        int sequence = RtpPacket.sequence(packet);
+        if (!remoteSsrcKnown || packetSsrc != remoteSsrc) {
+            if (remoteSsrcKnown) {
+                jitterBuffer.reset(sequence);
+            }
+            remoteSsrcKnown = true;
+            remoteSsrc = packetSsrc;
+        }
+        int arrival = (int) (System.nanoTime() / NANOS_PER_SAMPLE);
+        jitterBuffer.offer(sequence, RtpPacket.timestamp(packet), arrival, packet, payloadStart,
+            RtpPacket.payloadEnd(packet) - payloadStart);
+    }
+
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public int getSsrc() {
+        return ssrc;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * @return RTP packets of negotiated payload type buffered for playout
+     */
+    public long getPacketsReceived() {
+        return jitterBuffer == null ? 0 : jitterBuffer.getReceived();
+    }
+
+    /**
+     * @return frames missing at playout time
+     */
+    public long getPacketsLost() {
+        return jitterBuffer == null ? 0 : jitterBuffer.getLost();
+    }
+
+    /**
+     * @return packets arrived after playout time and frames dropped to reduce delay
+     */
+    public long getPacketsDiscarded() {
+        return jitterBuffer == null ? 0 : jitterBuffer.getLate() + jitterBuffer.getDropped();
+    }
+
+    /**
+     * @return packets of other payload types and invalid ones, received before start
+     */
+    public long getOtherPacketsReceived() {
+        return otherPackets;
+    }
+
+    public long getRtcpPacketsReceived() {
+        return rtcpPacketsReceived;
+    }
+
+    /**
+     * @return interarrival jitter in milliseconds
+     */
+    public double getJitter() {
+        return jitterBuffer == null ? 0 : jitterBuffer.getJitter() * 1000.0 / RtpPacket.CLOCK_RATE;
+    }
+
+    @Override
+    public String toString() {
+        return "RtpStream{" +
+            "localPort=" + localPort +
+            ", remote=" + (rtpChannel == null ? null : rtpChannel.remoteAddress()) +
+            ", payloadType=" + payloadType +
+            ", sent=" + packetsSent +
+            ", received=" + getPacketsReceived() +
+            ", lost=" + getPacketsLost() +
+            '}';
+    }
+
+    /**
+     * Handles datagrams of RTP socket on event loop
+     */
+    final class RtpHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                received(msg instanceof DatagramPacket ? ((DatagramPacket) msg).content() : (ByteBuf) msg);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            RtpEngine.log.debug("RTP socket " + localPort + " failed", cause);
+        }
+    }
+
+    /**
+     * Counts RTCP packets, reports are not used
+     */
+    final class RtcpHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (RtpPacket.rtcpType(msg instanceof DatagramPacket ? ((DatagramPacket) msg).content() :
+                    (ByteBuf) msg) >= 0) {
+                    rtcpPacketsReceived++;
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            RtpEngine.log.debug("RTCP socket " + (localPort + 1) + " failed", cause);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package tech.ivoice.sip.sdp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Media line ({@code m=}) with its connection and attributes: rtpmap, fmtp, ptime and direction
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc4566#section-5.14">rfc4566#section-5.14</a>
+ */
+public class MediaDescription {
+    public static final String SENDRECV = "sendrecv";
+    public static final String SENDONLY = "sendonly";
+    public static final String RECVONLY = "recvonly";
+    public static final String INACTIVE = "inactive";
+
+    private final String media;
+    private final int port;
+    private final String protocol;
+    private final List<String> formats = new ArrayList<>();
+    // by payload type
+    private final Map<String, String> rtpMaps = new LinkedHashMap<>();
+    private final Map<String, String> formatParameters = new LinkedHashMap<>();
+    private String connectionAddress;
+    // 0 if not set
+    private int ptime;
+    // null if not set, sendrecv by default
+    private String direction;
+
+    /**
+     * @param media    audio, video etc.
+     * @param port     0 rejects media in answer
+     * @param protocol RTP/AVP etc.
+     */
+    public MediaDescription(String media, int port, String protocol) {
+        this.media = media;
+        this.port = port;
+        this.protocol = protocol;
+    }
+
+    public String getMedia() {
+        return media;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return payload types for RTP, in preference order
+     */
+    public List<String> getFormats() {
+        return formats;
+    }
+
+    public MediaDescription addFormat(String format) {
+        formats.add(format);
+        return this;
+    }
+
+    /**
+     * @return encoding of payload type, e.g. {@code PCMU/8000}, null if there is no rtpmap for it
+     */
+    public String getRtpMap(String payloadType) {
+        return rtpMaps.get(payloadType);
+    }
+
+    public MediaDescription setRtpMap(String payloadType, String encoding) {
+        rtpMaps.put(payloadType, encoding);
+        return this;
+    }
+
+    /**
+     * @return format parameters of payload type, e.g. {@code 0-16}, null if there is no fmtp for it
+     */
+    public String getFormatParameters(String payloadType) {
+        return formatParameters.get(payloadType);
+    }
+
+    public MediaDescription setFormatParameters(String payloadType, String parameters) {
+        formatParameters.put(payloadType, parameters);
+        return this;
+    }
+
+    public String getConnectionAddress() {
+        return connectionAddress;
+    }
+
+    /**
+     * Media level {@code c=} address, overrides session level one
+     */
+    public MediaDescription setConnectionAddress(String connectionAddress) {
+        this.connectionAddress = connectionAddress;
+        return this;
+    }
+
+    public int getPtime() {
+        return ptime;
+    }
+
+    public MediaDescription setPtime(int ptime) {
+        this.ptime = ptime;
+        return this;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    /**
+     * @param direction one of {@link #SENDRECV}, {@link #SENDONLY}, {@link #RECVONLY}, {@link #INACTIVE}
+     */
+    public MediaDescription setDirection(String direction) {
+        this.direction = direction;
+        return this;
+    }
+}
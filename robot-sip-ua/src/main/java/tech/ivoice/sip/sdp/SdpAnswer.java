@@ -0,0 +1,89 @@
+package tech.ivoice.sip.sdp;
+
+/**
+ * Answer to an offer and negotiated audio stream, see {@link SdpNegotiator#answer(byte[], int)}
+ */
+public final class SdpAnswer {
+    private final byte[] body;
+    private final SdpCodec codec;
+    private final int payloadType;
+    private final int telephoneEventPayloadType;
+    private final int ptime;
+    private final String direction;
+    private final String remoteAddress;
+    private final int remotePort;
+
+    SdpAnswer(byte[] body, SdpCodec codec, int payloadType, int telephoneEventPayloadType, int ptime,
+              String direction, String remoteAddress, int remotePort) {
+        this.body = body;
+        this.codec = codec;
+        this.payloadType = payloadType;
+        this.telephoneEventPayloadType = telephoneEventPayloadType;
+        this.ptime = ptime;
+        this.direction = direction;
+        this.remoteAddress = remoteAddress;
+        this.remotePort = remotePort;
+    }
+
+    /**
+     * @return encoded answer, application/sdp body of 200 OK
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public SdpCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return payload type of audio codec, as offered
+     */
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    /**
+     * @return payload type of DTMF events, as offered, -1 if they are not negotiated
+     */
+    public int getTelephoneEventPayloadType() {
+        return telephoneEventPayloadType;
+    }
+
+    /**
+     * @return packet duration in milliseconds
+     */
+    public int getPtime() {
+        return ptime;
+    }
+
+    /**
+     * @return direction of answered stream, see {@link MediaDescription#setDirection(String)}
+     */
+    public String getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return address audio is sent to, null if offer has no connection address
+     */
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    @Override
+    public String toString() {
+        return "SdpAnswer{" +
+            "codec=" + codec +
+            ", payloadType=" + payloadType +
+            ", telephoneEventPayloadType=" + telephoneEventPayloadType +
+            ", ptime=" + ptime +
+            ", direction='" + direction + '\'' +
+            ", remote=" + remoteAddress + ":" + remotePort +
+            '}';
+    }
+}
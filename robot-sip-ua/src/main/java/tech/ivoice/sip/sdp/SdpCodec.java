@@ -0,0 +1,71 @@
+package tech.ivoice.sip.sdp;
+
+/**
+ * Codecs negotiated by {@link SdpNegotiator}
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3551#section-6">rfc3551#section-6</a>
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc4733#section-7">rfc4733#section-7</a>
+ */
+public enum SdpCodec {
+    PCMU(0, "PCMU"),
+    PCMA(8, "PCMA"),
+    /**
+     * DTMF events, payload type is dynamic, the offered one is used in answer
+     */
+    TELEPHONE_EVENT(101, "telephone-event");
+
+    public static final int CLOCK_RATE = 8000;
+
+    private final int payloadType;
+    private final String encodingName;
+
+    SdpCodec(int payloadType, String encodingName) {
+        this.payloadType = payloadType;
+        this.encodingName = encodingName;
+    }
+
+    /**
+     * @return static payload type, or the one used in offers for dynamic
+     */
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    public String getEncodingName() {
+        return encodingName;
+    }
+
+    /**
+     * @return rtpmap encoding, e.g. {@code PCMU/8000}
+     */
+    public String getRtpMap() {
+        return encodingName + "/" + CLOCK_RATE;
+    }
+
+    /**
+     * @param rtpMap encoding of rtpmap attribute, null for static payload type without it
+     * @return codec or null if it's not supported
+     */
+    static SdpCodec of(String payloadType, String rtpMap) {
+        if (rtpMap == null) {
+            if (payloadType.equals("0")) {
+                return PCMU;
+            }
+            return payloadType.equals("8") ? PCMA : null;
+        }
+        int slash = rtpMap.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        int rateEnd = rtpMap.indexOf('/', slash + 1);
+        if (!rtpMap.substring(slash + 1, rateEnd < 0 ? rtpMap.length() : rateEnd).equals(String.valueOf(CLOCK_RATE))) {
+            return null;
+        }
+        for (SdpCodec codec : values()) {
+            if (codec.encodingName.length() == slash && rtpMap.regionMatches(true, 0, codec.encodingName, 0, slash)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
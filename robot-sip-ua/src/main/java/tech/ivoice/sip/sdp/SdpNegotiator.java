@@ -0,0 +1,350 @@
+package tech.ivoice.sip.sdp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offer/answer negotiation of one audio stream with G.711 (PCMU, PCMA) and DTMF events (telephone-event).
+ * <p>
+ * Answer: the first offered RTP/AVP audio media with a supported codec is accepted with the first supported codec in
+ * offerer's order and telephone-event, if offered, with offered payload types; other media are rejected with port 0.
+ * Offered ptime is kept, otherwise the configured one is used. Direction is the reverse of offered.
+ * <p>
+ * Cache: offers of one peer differ only in origin, connection address and media ports, so answer is negotiated once
+ * per offer fingerprint, a 64-bit hash of the offer without these fields, and kept as encoded template. Answer to an
+ * offer with known fingerprint is the template with session id and local port patched in, offer is scanned but not
+ * parsed. Unsupported offers are cached too.
+ * <p>
+ * Not thread safe, one instance per verticle.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3264#section-6">rfc3264#section-6</a>
+ */
+public class SdpNegotiator {
+    private static final String USERNAME = "robot";
+    private static final int MAX_CACHED_ANSWERS = 256;
+    // offers with more media are not cached
+    private static final int MAX_MEDIA = 8;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String TELEPHONE_EVENT_PARAMETERS = "0-16";
+
+    /**
+     * Negotiated answer encoded with session id and version {@code 0 0} and accepted media port {@code 0}
+     */
+    private static final class AnswerTemplate {
+        private final byte[] encoded;
+        private final int originOffset;
+        private final int portOffset;
+        // index of accepted media in offer, -1 if offer is not acceptable
+        private final int mediaIndex;
+        private final SdpCodec codec;
+        private final int payloadType;
+        private final int telephoneEventPayloadType;
+        private final int ptime;
+        private final String direction;
+
+        private AnswerTemplate(byte[] encoded, int originOffset, int portOffset, int mediaIndex, SdpCodec codec,
+                               int payloadType, int telephoneEventPayloadType, int ptime, String direction) {
+            this.encoded = encoded;
+            this.originOffset = originOffset;
+            this.portOffset = portOffset;
+            this.mediaIndex = mediaIndex;
+            this.codec = codec;
+            this.payloadType = payloadType;
+            this.telephoneEventPayloadType = telephoneEventPayloadType;
+            this.ptime = ptime;
+            this.direction = direction;
+        }
+
+        private byte[] fill(long sessionId, int port) {
+            int idDigits = digits(sessionId);
+            byte[] body = new byte[encoded.length - 4 + idDigits * 2 + 1 + digits(port)];
+            System.arraycopy(encoded, 0, body, 0, originOffset);
+            int position = writeDigits(body, originOffset, sessionId, idDigits);
+            body[position++] = ' ';
+            position = writeDigits(body, position, sessionId, idDigits);
+            int middle = portOffset - originOffset - 3;
+            System.arraycopy(encoded, originOffset + 3, body, position, middle);
+            position = writeDigits(body, position + middle, port, digits(port));
+            System.arraycopy(encoded, portOffset + 1, body, position, encoded.length - portOffset - 1);
+            return body;
+        }
+    }
+
+    private static final AnswerTemplate NOT_ACCEPTABLE = new AnswerTemplate(null, 0, 0, -1, null, 0, 0, 0, null);
+
+    private final String address;
+    private final List<SdpCodec> codecs;
+    private final int ptime;
+    private final Map<Long, AnswerTemplate> answers = new HashMap<>();
+    private long sessionId = System.currentTimeMillis() / 1000;
+    private long cacheHits;
+
+    // results of the last scan: fingerprint, media ports, connection address bounds, session level first
+    private long fingerprint;
+    private int mediaCount;
+    private final int[] mediaPorts = new int[MAX_MEDIA];
+    private final int[] connectionStarts = new int[MAX_MEDIA + 1];
+    private final int[] connectionEnds = new int[MAX_MEDIA + 1];
+
+    /**
+     * @param address local RTP address, sent in answers and offers
+     * @param codecs  supported codecs, offered in this order
+     * @param ptime   packet duration offered, and answered when offer has none
+     */
+    public SdpNegotiator(String address, List<SdpCodec> codecs, int ptime) {
+        if (ptime < 10 || ptime > 60) {
+            throw new IllegalArgumentException("ptime must be 10..60 ms, but was " + ptime);
+        }
+        this.address = address;
+        this.codecs = List.copyOf(codecs);
+        this.ptime = ptime;
+    }
+
+    /**
+     * @param offer     offer body, e.g. of INVITE
+     * @param localPort RTP port of the call on this side
+     * @return answer or null if offer has no acceptable audio, to be rejected with 488 Not Acceptable Here
+     * @throws IllegalArgumentException if offer is malformed
+     */
+    public SdpAnswer answer(byte[] offer, int localPort) {
+        boolean cacheable = scan(offer);
+        AnswerTemplate template = cacheable ? answers.get(fingerprint) : null;
+        if (template != null) {
+            cacheHits++;
+            if (template.mediaIndex < 0) {
+                return null;
+            }
+            int media = template.mediaIndex + 1;
+            int connection = connectionStarts[media] >= 0 ? media : 0;
+            String remoteAddress = connectionStarts[connection] < 0 ? null : new String(offer,
+                connectionStarts[connection], connectionEnds[connection] - connectionStarts[connection],
+                StandardCharsets.US_ASCII);
+            return answer(template, localPort, remoteAddress, mediaPorts[template.mediaIndex]);
+        }
+        SessionDescription description = SdpParser.parse(offer);
+        template = negotiate(description);
+        if (cacheable) {
+            if (answers.size() >= MAX_CACHED_ANSWERS) {
+                answers.clear();
+            }
+            answers.put(fingerprint, template);
+        }
+        if (template.mediaIndex < 0) {
+            return null;
+        }
+        MediaDescription media = description.getMedia().get(template.mediaIndex);
+        return answer(template, localPort, description.getConnectionAddress(media), media.getPort());
+    }
+
+    private SdpAnswer answer(AnswerTemplate template, int localPort, String remoteAddress, int remotePort) {
+        return new SdpAnswer(template.fill(++sessionId, localPort), template.codec, template.payloadType,
+            template.telephoneEventPayloadType, template.ptime, template.direction, remoteAddress, remotePort);
+    }
+
+    /**
+     * @param localPort RTP port of the call on this side
+     * @return offer with supported codecs, e.g. for INVITE
+     */
+    public byte[] offer(int localPort) {
+        MediaDescription audio = new MediaDescription("audio", localPort, "RTP/AVP");
+        for (SdpCodec codec : codecs) {
+            String payloadType = String.valueOf(codec.getPayloadType());
+            audio.addFormat(payloadType).setRtpMap(payloadType, codec.getRtpMap());
+            if (codec == SdpCodec.TELEPHONE_EVENT) {
+                audio.setFormatParameters(payloadType, TELEPHONE_EVENT_PARAMETERS);
+            }
+        }
+        audio.setPtime(ptime).setDirection(MediaDescription.SENDRECV);
+        long id = ++sessionId;
+        return SdpWriter.write(new SessionDescription()
+            .setOriginUsername(USERNAME)
+            .setSessionId(id)
+            .setSessionVersion(id)
+            .setOriginAddress(address)
+            .setSessionName(USERNAME)
+            .setConnectionAddress(address)
+            .addMedia(audio));
+    }
+
+    /**
+     * @return number of answers made from cached templates
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    private AnswerTemplate negotiate(SessionDescription offer) {
+        SessionDescription answer = new SessionDescription()
+            .setOriginUsername(USERNAME)
+            .setOriginAddress(address)
+            .setSessionName(USERNAME)
+            .setConnectionAddress(address);
+        int mediaIndex = -1;
+        SdpCodec codec = null;
+        int payloadType = -1;
+        int eventPayloadType = -1;
+        MediaDescription accepted = null;
+        for (int i = 0; i < offer.getMedia().size(); i++) {
+            MediaDescription offered = offer.getMedia().get(i);
+            MediaDescription answered = null;
+            if (mediaIndex < 0 && offered.getMedia().equals("audio") && offered.getPort() != 0 &&
+                offered.getProtocol().equals("RTP/AVP")) {
+                for (String format : offered.getFormats()) {
+                    SdpCodec offeredCodec = SdpCodec.of(format, offered.getRtpMap(format));
+                    if (offeredCodec == null || !codecs.contains(offeredCodec)) {
+                        continue;
+                    }
+                    if (offeredCodec == SdpCodec.TELEPHONE_EVENT) {
+                        eventPayloadType = eventPayloadType < 0 ? Integer.parseInt(format) : eventPayloadType;
+                    } else if (codec == null) {
+                        codec = offeredCodec;
+                        payloadType = Integer.parseInt(format);
+                    }
+                }
+                if (codec != null) {
+                    mediaIndex = i;
+                    answered = new MediaDescription("audio", 0, "RTP/AVP");
+                    addFormat(answered, payloadType, codec, null);
+                    if (eventPayloadType >= 0) {
+                        String parameters = offered.getFormatParameters(String.valueOf(eventPayloadType));
+                        addFormat(answered, eventPayloadType, SdpCodec.TELEPHONE_EVENT,
+                            parameters != null ? parameters : TELEPHONE_EVENT_PARAMETERS);
+                    }
+                    answered.setPtime(offered.getPtime() > 0 ? offered.getPtime() : ptime)
+                        .setDirection(reverse(offered.getDirection()));
+                    accepted = answered;
+                } else {
+                    eventPayloadType = -1;
+                }
+            }
+            if (answered == null) {
+                answered = new MediaDescription(offered.getMedia(), 0, offered.getProtocol());
+                answered.addFormat(offered.getFormats().isEmpty() ? "0" : offered.getFormats().get(0));
+            }
+            answer.addMedia(answered);
+        }
+        if (accepted == null) {
+            return NOT_ACCEPTABLE;
+        }
+        byte[] encoded = SdpWriter.write(answer);
+        int originOffset = ("v=0\r\no=" + USERNAME + " ").length();
+        return new AnswerTemplate(encoded, originOffset, portOffset(encoded, mediaIndex), mediaIndex, codec,
+            payloadType, eventPayloadType, accepted.getPtime(), accepted.getDirection());
+    }
+
+    private static void addFormat(MediaDescription media, int payloadType, SdpCodec codec, String parameters) {
+        String format = String.valueOf(payloadType);
+        media.addFormat(format).setRtpMap(format, codec.getRtpMap());
+        if (parameters != null) {
+            media.setFormatParameters(format, parameters);
+        }
+    }
+
+    private static String reverse(String direction) {
+        if (MediaDescription.SENDONLY.equals(direction)) {
+            return MediaDescription.RECVONLY;
+        }
+        if (MediaDescription.RECVONLY.equals(direction)) {
+            return MediaDescription.SENDONLY;
+        }
+        return MediaDescription.INACTIVE.equals(direction) ? MediaDescription.INACTIVE : MediaDescription.SENDRECV;
+    }
+
+    /**
+     * @return offset of port of the media in encoded answer
+     */
+    private static int portOffset(byte[] encoded, int mediaIndex) {
+        int media = -1;
+        int lineStart = 0;
+        while (lineStart < encoded.length) {
+            int lineEnd = SdpParser.lineEnd(encoded, lineStart, encoded.length);
+            if (encoded[lineStart] == 'm' && ++media == mediaIndex) {
+                return SdpParser.tokenEnd(encoded, lineStart, lineEnd) + 1;
+            }
+            lineStart = SdpParser.skipLineBreak(encoded, lineEnd, encoded.length);
+        }
+        throw new IllegalStateException("Media " + mediaIndex + " is not found in answer");
+    }
+
+    /**
+     * Computes fingerprint of offer without origin line, connection addresses and media ports, records them
+     *
+     * @return false if offer can't be cached
+     */
+    private boolean scan(byte[] offer) {
+        long hash = FNV_OFFSET;
+        mediaCount = 0;
+        Arrays.fill(connectionStarts, -1);
+        int end = offer.length;
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = SdpParser.lineEnd(offer, lineStart, end);
+            byte type = offer[lineStart];
+            if (lineEnd - lineStart < 2 || offer[lineStart + 1] != '=') {
+                hash = hash(hash, offer, lineStart, lineEnd);
+            } else if (type == 'c') {
+                // c=IN IP4 <address>
+                int addressStart = SdpParser.skipSpaces(offer, SdpParser.tokenEnd(offer,
+                    SdpParser.skipSpaces(offer, SdpParser.tokenEnd(offer, lineStart, lineEnd), lineEnd), lineEnd),
+                    lineEnd);
+                int addressEnd = SdpParser.indexOf(offer, (byte) '/', addressStart, lineEnd);
+                hash = hash(hash, offer, lineStart, addressStart);
+                connectionStarts[mediaCount] = addressStart;
+                connectionEnds[mediaCount] = addressEnd < 0 ? lineEnd : addressEnd;
+            } else if (type == 'm') {
+                if (mediaCount == MAX_MEDIA) {
+                    return false;
+                }
+                // m=<media> <port> ...
+                int portStart = SdpParser.skipSpaces(offer, SdpParser.tokenEnd(offer, lineStart, lineEnd), lineEnd);
+                int portEnd = portStart;
+                int port = 0;
+                while (portEnd < lineEnd && offer[portEnd] >= '0' && offer[portEnd] <= '9' && port < 65536) {
+                    port = port * 10 + offer[portEnd++] - '0';
+                }
+                if (portEnd == portStart || port > 65535) {
+                    return false;
+                }
+                hash = hash(hash, offer, lineStart, portStart);
+                // rejected media is answered differently
+                hash = (hash ^ (port == 0 ? '0' : 'p')) * FNV_PRIME;
+                hash = hash(hash, offer, portEnd, lineEnd);
+                mediaPorts[mediaCount++] = port;
+            } else if (type != 'o') {
+                hash = hash(hash, offer, lineStart, lineEnd);
+            }
+            hash = (hash ^ '\n') * FNV_PRIME;
+            lineStart = SdpParser.skipLineBreak(offer, lineEnd, end);
+        }
+        fingerprint = hash;
+        return true;
+    }
+
+    private static long hash(long hash, byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int writeDigits(byte[] body, int position, long value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            body[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+}
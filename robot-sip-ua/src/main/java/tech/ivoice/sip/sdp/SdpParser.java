@@ -0,0 +1,278 @@
+package tech.ivoice.sip.sdp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses session description directly from message body bytes, line by line, without regular expressions.
+ * Lines end with CRLF or LF. Unknown lines and attributes are skipped.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc4566#section-9">rfc4566#section-9</a>
+ */
+public final class SdpParser {
+    private static final byte[] RTPMAP = ascii("rtpmap:");
+    private static final byte[] FMTP = ascii("fmtp:");
+    private static final byte[] PTIME = ascii("ptime:");
+    private static final String[] DIRECTIONS = {MediaDescription.SENDRECV, MediaDescription.SENDONLY,
+        MediaDescription.RECVONLY, MediaDescription.INACTIVE};
+
+    private SdpParser() {
+    }
+
+    public static SessionDescription parse(byte[] body) {
+        return parse(body, 0, body.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if description is malformed
+     */
+    public static SessionDescription parse(byte[] body, int offset, int length) {
+        SessionDescription description = new SessionDescription();
+        MediaDescription media = null;
+        String sessionDirection = null;
+        boolean versionFound = false;
+        int end = offset + length;
+        int lineStart = offset;
+        while (lineStart < end) {
+            int lineEnd = lineEnd(body, lineStart, end);
+            if (lineEnd > lineStart) {
+                if (lineEnd - lineStart < 2 || body[lineStart + 1] != '=') {
+                    throw malformed(body, lineStart, lineEnd);
+                }
+                int valueStart = lineStart + 2;
+                switch (body[lineStart]) {
+                    case 'v':
+                        if (lineEnd - valueStart != 1 || body[valueStart] != '0') {
+                            throw malformed(body, lineStart, lineEnd);
+                        }
+                        versionFound = true;
+                        break;
+                    case 'o':
+                        parseOrigin(description, body, valueStart, lineEnd);
+                        break;
+                    case 's':
+                        description.setSessionName(string(body, valueStart, lineEnd));
+                        break;
+                    case 'c':
+                        String address = parseConnection(body, valueStart, lineEnd);
+                        if (media == null) {
+                            description.setConnectionAddress(address);
+                        } else {
+                            media.setConnectionAddress(address);
+                        }
+                        break;
+                    case 'm':
+                        media = parseMedia(body, valueStart, lineEnd);
+                        description.addMedia(media);
+                        break;
+                    case 'a':
+                        if (media == null) {
+                            String direction = direction(body, valueStart, lineEnd);
+                            sessionDirection = direction != null ? direction : sessionDirection;
+                        } else {
+                            parseAttribute(media, body, valueStart, lineEnd);
+                        }
+                        break;
+                    default:
+                        // t, b, k, i, u, e, p, z, r: not used
+                }
+            }
+            lineStart = skipLineBreak(body, lineEnd, end);
+        }
+        if (!versionFound) {
+            throw new IllegalArgumentException("Malformed SDP: no version line");
+        }
+        if (sessionDirection != null) {
+            for (MediaDescription m : description.getMedia()) {
+                if (m.getDirection() == null) {
+                    m.setDirection(sessionDirection);
+                }
+            }
+        }
+        return description;
+    }
+
+    /**
+     * {@code o=<username> <sess-id> <sess-version> <nettype> <addrtype> <unicast-address>}
+     */
+    private static void parseOrigin(SessionDescription description, byte[] body, int from, int to) {
+        int[] tokens = tokens(body, from, to, 6);
+        description.setOriginUsername(string(body, tokens[0], tokens[1]))
+            .setSessionId(Long.parseLong(string(body, tokens[2], tokens[3])))
+            .setSessionVersion(Long.parseLong(string(body, tokens[4], tokens[5])))
+            .setOriginAddress(string(body, tokens[10], tokens[11]));
+    }
+
+    /**
+     * {@code c=<nettype> <addrtype> <connection-address>}, TTL and number of multicast addresses are dropped
+     */
+    private static String parseConnection(byte[] body, int from, int to) {
+        int[] tokens = tokens(body, from, to, 3);
+        int addressEnd = indexOf(body, (byte) '/', tokens[4], tokens[5]);
+        return string(body, tokens[4], addressEnd < 0 ? tokens[5] : addressEnd);
+    }
+
+    /**
+     * {@code m=<media> <port>[/<number of ports>] <proto> <fmt> ...}
+     */
+    private static MediaDescription parseMedia(byte[] body, int from, int to) {
+        int[] tokens = tokens(body, from, to, 3);
+        int portEnd = indexOf(body, (byte) '/', tokens[2], tokens[3]);
+        MediaDescription media = new MediaDescription(string(body, tokens[0], tokens[1]),
+            parseNumber(body, tokens[2], portEnd < 0 ? tokens[3] : portEnd), string(body, tokens[4], tokens[5]));
+        int formatStart = skipSpaces(body, tokens[5], to);
+        while (formatStart < to) {
+            int formatEnd = tokenEnd(body, formatStart, to);
+            media.addFormat(string(body, formatStart, formatEnd));
+            formatStart = skipSpaces(body, formatEnd, to);
+        }
+        return media;
+    }
+
+    private static void parseAttribute(MediaDescription media, byte[] body, int from, int to) {
+        if (startsWith(body, from, to, RTPMAP)) {
+            int payloadEnd = tokenEnd(body, from + RTPMAP.length, to);
+            media.setRtpMap(string(body, from + RTPMAP.length, payloadEnd),
+                string(body, skipSpaces(body, payloadEnd, to), to));
+        } else if (startsWith(body, from, to, FMTP)) {
+            int payloadEnd = tokenEnd(body, from + FMTP.length, to);
+            media.setFormatParameters(string(body, from + FMTP.length, payloadEnd),
+                string(body, skipSpaces(body, payloadEnd, to), to));
+        } else if (startsWith(body, from, to, PTIME)) {
+            media.setPtime(parseNumber(body, from + PTIME.length, to));
+        } else {
+            String direction = direction(body, from, to);
+            if (direction != null) {
+                media.setDirection(direction);
+            }
+        }
+    }
+
+    /**
+     * @return direction attribute or null if it's another attribute
+     */
+    private static String direction(byte[] body, int from, int to) {
+        if (to - from != 8) {
+            return null;
+        }
+        for (String direction : DIRECTIONS) {
+            if (startsWith(body, from, to, direction)) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return start and end index of the first {@code count} space separated tokens, the last one ends at the first
+     * space after it
+     */
+    private static int[] tokens(byte[] body, int from, int to, int count) {
+        int[] bounds = new int[count * 2];
+        int start = from;
+        for (int i = 0; i < count; i++) {
+            if (start >= to) {
+                throw malformed(body, from, to);
+            }
+            int end = tokenEnd(body, start, to);
+            bounds[i * 2] = start;
+            bounds[i * 2 + 1] = end;
+            start = skipSpaces(body, end, to);
+        }
+        return bounds;
+    }
+
+    private static int parseNumber(byte[] body, int from, int to) {
+        if (from == to || to - from > 9) {
+            throw malformed(body, from, to);
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = body[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed(body, from, to);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    static int lineEnd(byte[] body, int from, int end) {
+        int i = from;
+        while (i < end && body[i] != '\r' && body[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    static int skipLineBreak(byte[] body, int lineEnd, int end) {
+        int i = lineEnd;
+        if (i < end && body[i] == '\r') {
+            i++;
+        }
+        if (i < end && body[i] == '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    static int tokenEnd(byte[] body, int from, int to) {
+        int i = from;
+        while (i < to && body[i] != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    static int skipSpaces(byte[] body, int from, int to) {
+        int i = from;
+        while (i < to && body[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    static int indexOf(byte[] body, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (body[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] body, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (body[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] body, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (body[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(byte[] body, int from, int to) {
+        return new String(body, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static IllegalArgumentException malformed(byte[] body, int from, int to) {
+        return new IllegalArgumentException("Malformed SDP line: " + string(body, from, to));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,70 @@
+package tech.ivoice.sip.sdp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes session description as message body, lines end with CRLF
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc4566#section-5">rfc4566#section-5</a>
+ */
+public final class SdpWriter {
+    private SdpWriter() {
+    }
+
+    public static byte[] write(SessionDescription description) {
+        return toString(description).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String toString(SessionDescription description) {
+        StringBuilder sdp = new StringBuilder(256);
+        sdp.append("v=0\r\n");
+        sdp.append("o=").append(description.getOriginUsername())
+            .append(' ').append(description.getSessionId())
+            .append(' ').append(description.getSessionVersion())
+            .append(' ');
+        appendAddress(sdp, description.getOriginAddress());
+        sdp.append("s=").append(description.getSessionName()).append("\r\n");
+        if (description.getConnectionAddress() != null) {
+            sdp.append("c=");
+            appendAddress(sdp, description.getConnectionAddress());
+        }
+        sdp.append("t=0 0\r\n");
+        for (MediaDescription media : description.getMedia()) {
+            sdp.append("m=").append(media.getMedia())
+                .append(' ').append(media.getPort())
+                .append(' ').append(media.getProtocol());
+            for (String format : media.getFormats()) {
+                sdp.append(' ').append(format);
+            }
+            sdp.append("\r\n");
+            if (media.getConnectionAddress() != null) {
+                sdp.append("c=");
+                appendAddress(sdp, media.getConnectionAddress());
+            }
+            for (String format : media.getFormats()) {
+                String rtpMap = media.getRtpMap(format);
+                if (rtpMap != null) {
+                    sdp.append("a=rtpmap:").append(format).append(' ').append(rtpMap).append("\r\n");
+                }
+                String parameters = media.getFormatParameters(format);
+                if (parameters != null) {
+                    sdp.append("a=fmtp:").append(format).append(' ').append(parameters).append("\r\n");
+                }
+            }
+            if (media.getPtime() > 0) {
+                sdp.append("a=ptime:").append(media.getPtime()).append("\r\n");
+            }
+            if (media.getDirection() != null) {
+                sdp.append("a=").append(media.getDirection()).append("\r\n");
+            }
+        }
+        return sdp.toString();
+    }
+
+    /**
+     * {@code <nettype> <addrtype> <address>} and line end
+     */
+    private static void appendAddress(StringBuilder sdp, String address) {
+        sdp.append(address.indexOf(':') >= 0 ? "IN IP6 " : "IN IP4 ").append(address).append("\r\n");
+    }
+}
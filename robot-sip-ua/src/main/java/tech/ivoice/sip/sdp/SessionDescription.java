@@ -0,0 +1,94 @@
+package tech.ivoice.sip.sdp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Session description: origin, session name, connection and media, see {@link SdpParser} and {@link SdpWriter}.
+ * Timing is always {@code t=0 0}, bandwidth, encryption and other lines are not kept.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc4566#section-5">rfc4566#section-5</a>
+ */
+public class SessionDescription {
+    private String originUsername = "-";
+    private long sessionId;
+    private long sessionVersion;
+    private String originAddress;
+    private String sessionName = "-";
+    // null when every media has its own
+    private String connectionAddress;
+    private final List<MediaDescription> media = new ArrayList<>();
+
+    public String getOriginUsername() {
+        return originUsername;
+    }
+
+    public SessionDescription setOriginUsername(String originUsername) {
+        this.originUsername = originUsername;
+        return this;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public SessionDescription setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+        return this;
+    }
+
+    public long getSessionVersion() {
+        return sessionVersion;
+    }
+
+    public SessionDescription setSessionVersion(long sessionVersion) {
+        this.sessionVersion = sessionVersion;
+        return this;
+    }
+
+    public String getOriginAddress() {
+        return originAddress;
+    }
+
+    public SessionDescription setOriginAddress(String originAddress) {
+        this.originAddress = originAddress;
+        return this;
+    }
+
+    public String getSessionName() {
+        return sessionName;
+    }
+
+    public SessionDescription setSessionName(String sessionName) {
+        this.sessionName = sessionName;
+        return this;
+    }
+
+    public String getConnectionAddress() {
+        return connectionAddress;
+    }
+
+    /**
+     * Session level {@code c=} address, IP4 or IP6, used by media without their own
+     */
+    public SessionDescription setConnectionAddress(String connectionAddress) {
+        this.connectionAddress = connectionAddress;
+        return this;
+    }
+
+    public List<MediaDescription> getMedia() {
+        return media;
+    }
+
+    public SessionDescription addMedia(MediaDescription media) {
+        this.media.add(media);
+        return this;
+    }
+
+    /**
+     * @return address media is sent to: its own connection address or session level one
+     */
+    public String getConnectionAddress(MediaDescription media) {
+        return media.getConnectionAddress() != null ? media.getConnectionAddress() : connectionAddress;
+    }
+}
@@ -3,19 +3,37 @@ package tech.ivoice.sip.vertx;
 import gov.nist.javax.sip.address.AddressFactoryImpl;
 import gov.nist.javax.sip.header.CallID;
 import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.header.RetryAfter;
 import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.header.ViaList;
 import gov.nist.javax.sip.message.MessageFactoryImpl;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.parser.MessageParser;
 import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.parser.ViaParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.impl.BufferImpl;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.datagram.DatagramSocketOptions;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.mutiny.core.buffer.Buffer;
 import io.vertx.mutiny.core.datagram.DatagramSocket;
+import io.vertx.mutiny.core.net.NetClient;
+import io.vertx.mutiny.core.net.NetSocket;
+import io.vertx.mutiny.core.net.SocketAddress;
+import io.vertx.mutiny.core.shareddata.LocalMap;
 import tech.ivoice.javax.sip.*;
 
 import javax.sip.DialogState;
@@ -27,8 +45,16 @@ import javax.sip.header.*;
 import javax.sip.message.MessageFactory;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 import static tech.ivoice.javax.sip.SipClientTransaction.MAX_FORWARDS;
@@ -46,6 +72,31 @@ import static tech.ivoice.javax.sip.SipClientTransaction.MAX_FORWARDS;
  * Behavior:
  * 1. Abstract class does not initiate sending SIP messages, only provide methods for subclasses to create
  * and send message
+ * <p>
+ * Scaling: deploy {@link SipVerticleConfig#getShards()} instances with the same config to use several event loops.
+ * Instances share listening address, every dialog is owned by one instance chosen by Call-ID hash, so dialog state
+ * is still accessed from single thread. With native transport every udp instance listens with SO_REUSEPORT,
+ * otherwise first instance receives messages and routes them to the owners.
+ * <p>
+ * Overload: received messages of existing dialogs are handled before new INVITEs, see {@link SipReceiveQueue}.
+ * New incoming INVITEs are rejected with 503 before dialog is created when dialogs limit, event loop lag
+ * or calls rate of the source is exceeded, see {@link SipAdmissionControl}.
+ * <p>
+ * Callbacks: application methods are called on event loop and must not block, unless
+ * {@link SipVerticleConfig#setVirtualThreadCallbacks(boolean)} is enabled, see {@link SipCallbackExecutor}.
+ * <p>
+ * Threading: dialog state is confined to verticle context. API may be called from any thread (callback thread,
+ * Mutiny delay, worker): off context, send methods and {@code setApplicationData} are queued to context in call
+ * order, failures are reported to context exception handler; methods returning dialog data block caller until
+ * they are done on context, so they must not be called from other event loop. On context API is called directly.
+ * Counters ({@link #getDialogCount()} etc.) may be read from any thread.
+ * <p>
+ * Failover: confirmed dialogs may be replicated to standby node over event bus, see
+ * {@link SipVerticleConfig#setReplicationAddress(String)} and {@link SipDialogReplicator}, and journaled to survive
+ * restart, see {@link SipVerticleConfig#setJournalDirectory(String)}.
+ * <p>
+ * Metrics: messages, transactions, handlers and dialogs are reported to {@link SipVerticleConfig#getMetrics()},
+ * nothing is measured by default.
  *
  * @param <T> application data
  */
@@ -54,16 +105,41 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
 
     // https://datatracker.ietf.org/doc/html/rfc3261#section-8.1.1.7
     private static final String BRANCH_MAGIC_COOKIE = "z9hG4bK-";
+    // https://datatracker.ietf.org/doc/html/rfc3261#section-18.2.2
+    private static final int DEFAULT_PORT = 5060;
 
-    private final Transport transport;
+    private Transport transport;
+    private SipShardGroup shardGroup;
+    private int shardIndex;
 
     private final MessageFactory messageFactory;
     private final MessageParser messageParser;
+    private final SipResponseTemplates responseTemplates = new SipResponseTemplates();
+    private final SipTransactionEngine transactions;
+    private long transactionTimerId = -1;
 
     private final Supplier<String> idGenerator;
     private final Supplier<String> branchIdGenerator;
 
-    private final Map<String, SipDialog<T>> dialogs = new HashMap<>();
+    private final SipDialogStore<T> dialogs;
+    private final SipAdmissionControl admission;
+    private final SipReceiveQueue receiveQueue;
+    private final BiConsumer<SipMessageHead, SocketAddress> receivedHandler = this::handleIncomingMessage;
+    private final Handler<Void> drainTask = v -> drainReceiveQueue();
+    private boolean drainScheduled;
+    // shared by all 503 responses on overload, never modified
+    private final RetryAfter overloadRetryAfter;
+    private final SipMetrics metrics;
+    private final SipLogLine logLine = new SipLogLine();
+    // created by listening transport when enabled, see SipVerticleConfig#setCaptureDirectory
+    private SipCapture capture;
+    // created on start when enabled, see SipVerticleConfig#setVirtualThreadCallbacks
+    private SipCallbackExecutor callbacks;
+    // null unless replication or standby is enabled, see SipVerticleConfig#setReplicationAddress
+    private final SipDialogReplicator replicator;
+    private MessageConsumer<io.vertx.core.buffer.Buffer> replicaConsumer;
+    // opened on start when enabled, see SipVerticleConfig#setJournalDirectory
+    private SipDialogJournal journal;
 
     //region INTERFACE
     protected final SipVerticleConfig config;
@@ -72,14 +148,28 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     protected final AddressFactory addressFactory;
 
     protected void setApplicationData(String callId, T data) {
+        if (offContext()) {
+            context.runOnContext(v -> setApplicationData(callId, data));
+            return;
+        }
         findDialog(callId).setApplicationData(data);
     }
 
     protected T getApplicationData(String callId) {
+        if (offContext()) {
+            return awaitOnContext(() -> getApplicationData(callId));
+        }
         return findDialog(callId).getApplicationData();
     }
 
     public SIPRequest createInvite(String fromUser, SipURI requestUri) {
+        return createInvite(fromUser, requestUri, null);
+    }
+
+    /**
+     * @param sdp offer body, e.g. {@link tech.ivoice.sip.sdp.SdpNegotiator#offer(int)}, null for INVITE without offer
+     */
+    public SIPRequest createInvite(String fromUser, SipURI requestUri, byte[] sdp) {
         // INVITE is create outside of Dialog, that's why implemented here, unlike other requests
         // https://datatracker.ietf.org/doc/html/rfc3261#section-13.2.1
         try {
@@ -104,15 +194,15 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
             CSeqHeader cSeqHeader = headerFactory.createCSeqHeader(1L, Request.INVITE);
             MaxForwardsHeader maxForwards = headerFactory.createMaxForwardsHeader(MAX_FORWARDS);
 
-            CallIdHeader callIdHeader = new CallID(idGenerator.get());
-//            ContentTypeHeader contentTypeHeader = headerFactory.createContentTypeHeader("application", "sdp");
-
-            //TODO sdp
+            CallIdHeader callIdHeader = new CallID(nextCallId());
 
             SIPRequest request = (SIPRequest) messageFactory.createRequest(requestUri,
                 Request.INVITE, callIdHeader, cSeqHeader, fromHeader,
                 toHeader, viaHeaders, maxForwards);
             request.setHeader(contactHeader);
+            if (sdp != null) {
+                request.setContent(sdp, headerFactory.createContentTypeHeader("application", "sdp"));
+            }
             return request;
         } catch (ParseException | InvalidArgumentException e) {
             throw new IllegalArgumentException(e);
@@ -120,17 +210,26 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     }
 
     protected final SIPRequest createAck(SIPResponse response) {
+        if (offContext()) {
+            return awaitOnContext(() -> createAck(response));
+        }
         String callId = response.getCallId().getCallId();
         SipDialog<T> dialog = findDialog(callId);
         return dialog.createAck();
     }
 
     protected SIPRequest createBye(String callId) {
+        if (offContext()) {
+            return awaitOnContext(() -> createBye(callId));
+        }
         SipDialog<T> dialog = findDialog(callId);
         return dialog.createRequest(Request.BYE);
     }
 
     protected SIPRequest createMessage(String callId, String message) {
+        if (offContext()) {
+            return awaitOnContext(() -> createMessage(callId, message));
+        }
         SipDialog<T> dialog = findDialog(callId);
         SIPRequest request = dialog.createRequest(Request.MESSAGE);
         try {
@@ -143,22 +242,34 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     }
 
     protected final SIPResponse createTrying(String callId) {
+        if (offContext()) {
+            return awaitOnContext(() -> createTrying(callId));
+        }
         SipDialog<T> dialog = findDialog(callId);
         return dialog.createProvisionalResponse(Response.TRYING);
     }
 
     protected final SIPResponse createOk(String callId, String sdp) {
+        return createOk(callId, sdp.getBytes());
+    }
+
+    /**
+     * @param sdp answer body, e.g. {@link tech.ivoice.sip.sdp.SdpAnswer#getBody()}
+     */
+    protected final SIPResponse createOk(String callId, byte[] sdp) {
+        if (offContext()) {
+            return awaitOnContext(() -> createOk(callId, sdp));
+        }
         SipDialog<T> dialog = findDialog(callId);
         SIPRequest lastRequest = dialog.getLastRequest();
-        if (!lastRequest.getMethod().equals(Request.INVITE)) {
+        if (lastRequest == null || !lastRequest.getMethod().equals(Request.INVITE)) {
             throw new IllegalStateException("Success response with SDP must be created on INVITE request");
         }
 
         try {
             ContentTypeHeader contentTypeHeader = headerFactory.createContentTypeHeader("application", "sdp");
-            byte[] contents = sdp.getBytes();
             SIPResponse response = dialog.createSuccessResponse(() -> "server-" + idGenerator.get());
-            response.setContent(contents, contentTypeHeader);
+            response.setContent(sdp, contentTypeHeader);
             return response;
         } catch (ParseException e) {
             throw new IllegalArgumentException(e);
@@ -166,29 +277,60 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     }
 
     protected final SIPResponse createOk(String callId) {
+        if (offContext()) {
+            return awaitOnContext(() -> createOk(callId));
+        }
         SipDialog<T> dialog = findDialog(callId);
         return dialog.createSuccessResponse(() -> "server-" + idGenerator.get());
     }
 
     protected final void sendRequest(SIPRequest request) {
+        if (offContext()) {
+            context.runOnContext(v -> sendRequest(request));
+            return;
+        }
+        SipClientTransaction transaction = null;
         //noinspection StatementWithEmptyBody
         if (!request.getMethod().equals(Request.MESSAGE)) {
-            SipTransaction transaction = new SipClientTransactionImpl(request);
+            transaction = new SipClientTransactionImpl(request);
             addDialogTransaction(transaction);
         } else {
             // do not create transaction for MESSAGE
         }
         logSendingRequest(request);
         transport.send(request);
+        metrics.requestSent(request.getMethod());
+        dialogs.touch(request.getCallId().getCallId(), currentTimeMillis());
+        if (transaction != null) {
+            transactions.onRequestSent(transaction);
+        }
     }
 
     protected final void sendResponse(SIPResponse response) {
+        if (offContext()) {
+            context.runOnContext(v -> sendResponse(response));
+            return;
+        }
         logSendingResponse(response);
-        transport.send(response);
-        SipDialog<T> updated = findDialog(response.getCallId()).updateOnResponse(response);
+        String callId = response.getCallId().getCallId();
+        SipDialog<T> dialog = dialogs.get(callId);
+        SIPRequest request = dialog == null ? null : dialog.getLastRequest();
+        SipMessageHead requestHead = request == null ? null : SipMessageHead.of(request);
+        Buffer encoded = encode(response, requestHead);
+        if (encoded == null && transactions.isRetransmittable(response)) {
+            encoded = wrap(SipMessageEncoder.encodeUnpooled(response));
+        }
+        send(response, encoded);
+        transactions.onResponseSent(response, encoded);
+        dialogs.touch(callId, currentTimeMillis());
+        SipDialog<T> updated = updateDialog(response);
         if (updated.getState().equals(DialogState.TERMINATED)) {
             this.dialogs.remove(updated.getDialogId());
-            onDialogTerminated(response);
+            if (callbacks == null) {
+                onDialogTerminated(response);
+            } else {
+                callbacks.execute(callId, () -> onDialogTerminated(response));
+            }
         }
     }
 
@@ -210,7 +352,69 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     protected void onServerDialogConfirmed(SIPRequest ack) {
     }
 
-    protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+    /**
+     * @param response final response on BYE, or final non-2xx response on INVITE, so dialog is not established
+     */
+    protected void onDialogTerminated(SIPResponse response) {
+    }
+
+    /**
+     * Called when request got no final response (Timers B, F) or final response on INVITE got no ACK (Timer H).
+     * After the call dialog is terminated, unless new request was sent in it from this method.
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-17">rfc3261#section-17</a>
+     */
+    protected void onTransactionTimeout(SipTransaction transaction) {
+    }
+
+    /**
+     * Called when dialog is evicted as idle or alive too long, see {@link SipVerticleConfig#setDialogIdleTimeout},
+     * {@link SipVerticleConfig#setDialogLifetime}. Dialog is already removed, free application resources here.
+     */
+    protected void onDialogEvicted(SipDialog<T> dialog) {
+    }
+
+    /**
+     * Called when dialog replicated from failed primary is taken over to handle in-dialog request, before request
+     * callback, or when dialog is recovered from journal on start, before {@link #onServerStartedListening()}.
+     * Application data is not replicated, restore it here if needed.
+     */
+    protected void onDialogRestored(SipDialog<T> dialog) {
+    }
+
+    /**
+     * @return number of dialogs of this instance
+     */
+    public int getDialogCount() {
+        return dialogs.size();
+    }
+
+    /**
+     * @return number of dialogs replicated from primary, see {@link SipVerticleConfig#setStandbyFor(String)}
+     */
+    public int getDialogReplicaCount() {
+        return replicator == null ? 0 : replicator.replicas();
+    }
+
+    /**
+     * @return number of dialogs evicted as idle
+     */
+    public long getDialogsEvictedOnIdle() {
+        return dialogs.getEvictedIdle();
+    }
+
+    /**
+     * @return number of dialogs evicted as alive longer than configured lifetime
+     */
+    public long getDialogsEvictedOnLifetime() {
+        return dialogs.getEvictedExpired();
+    }
+
+    /**
+     * @return number of dialogs rejected because {@link SipVerticleConfig#getMaxDialogs()} was reached
+     */
+    public long getDialogsRejected() {
+        return dialogs.getRejected();
     }
     //endregion
 
@@ -239,10 +443,15 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
                                 MessageParser messageParser,
                                 Supplier<String> idGenerator) {
         this.config = config;
-        if (config.getTransport().equals("udp")) {
-            this.transport = new UdpTransport();
-        } else {
-            throw new RuntimeException("tcp transport not implemented yet");
+        switch (config.getTransport()) {
+            case "udp":
+                this.transport = new UdpTransport();
+                break;
+            case "tcp":
+                this.transport = new TcpTransport();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported transport: " + config.getTransport());
         }
 
         this.addressFactory = addressFactory;
@@ -252,6 +461,13 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
 
         this.idGenerator = idGenerator;
         this.branchIdGenerator = () -> BRANCH_MAGIC_COOKIE + idGenerator.get();
+        this.transactions = createTransactionEngine();
+        this.dialogs = new SipDialogStore<>(config);
+        this.admission = new SipAdmissionControl(config, dialogs);
+        this.receiveQueue = new SipReceiveQueue(config.getMaxQueuedInvites());
+        this.overloadRetryAfter = retryAfter(config.getOverloadRetryAfter());
+        this.metrics = config.getMetrics();
+        this.replicator = createReplicator(config);
     }
 
     /**
@@ -268,11 +484,81 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
 
         this.idGenerator = idGenerator;
         this.branchIdGenerator = () -> BRANCH_MAGIC_COOKIE + idGenerator.get();
+        this.transactions = createTransactionEngine();
+        this.dialogs = new SipDialogStore<>(config);
+        this.admission = new SipAdmissionControl(config, dialogs);
+        this.receiveQueue = new SipReceiveQueue(config.getMaxQueuedInvites());
+        this.overloadRetryAfter = retryAfter(config.getOverloadRetryAfter());
+        this.metrics = config.getMetrics();
+        this.replicator = createReplicator(config);
+    }
+
+    private static SipDialogReplicator createReplicator(SipVerticleConfig config) {
+        if (config.getReplicationAddress() == null && config.getStandbyFor() == null &&
+            config.getJournalDirectory() == null) {
+            return null;
+        }
+        return new SipDialogReplicator(config);
+    }
+
+    private static RetryAfter retryAfter(int seconds) {
+        RetryAfter retryAfter = new RetryAfter();
+        try {
+            retryAfter.setRetryAfter(seconds);
+        } catch (InvalidArgumentException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return retryAfter;
+    }
+
+    private SipTransactionEngine createTransactionEngine() {
+        return new SipTransactionEngine(config, () -> transport, this::onTransactionTimedOut, currentTimeMillis());
     }
 
     @Override
     public Uni<Void> asyncStart() {
-        return transport.asyncStartListener();
+        if (config.isVirtualThreadCallbacks()) {
+            callbacks = new SipCallbackExecutor(context);
+        }
+        if (config.getStandbyFor() != null) {
+            replicaConsumer = vertx.getDelegate().eventBus().consumer(config.getStandbyFor(),
+                message -> onReplicated(message.body()));
+        }
+        transactionTimerId = vertx.setPeriodic(SipTransactionEngine.TICK_MILLIS,
+            id -> onTimerTick(currentTimeMillis()));
+        if (config.getShards() == 1) {
+            recoverDialogs();
+            return transport.asyncStartListener();
+        }
+        return joinShardGroup();
+    }
+
+    @Override
+    public Uni<Void> asyncStop() {
+        if (transactionTimerId >= 0) {
+            vertx.cancelTimer(transactionTimerId);
+        }
+        if (transport instanceof AbstractSipUserAgent.UdpTransport) {
+            ((AbstractSipUserAgent<?>.UdpTransport) transport).close(this);
+        }
+        if (capture != null) {
+            capture.close();
+        }
+        if (callbacks != null) {
+            callbacks.close();
+        }
+        if (replicaConsumer != null) {
+            replicaConsumer.unregister();
+        }
+        if (journal != null) {
+            publishChanges();
+            journal.close();
+        }
+        if (shardGroup != null && shardGroup.leave(shardIndex)) {
+            LocalMap<String, SipShardGroup> groups = vertx.sharedData().getLocalMap(SipShardGroup.MAP_NAME);
+            groups.removeIfPresent(shardGroupKey(), shardGroup);
+        }
+        return Uni.createFrom().voidItem();
     }
 
     /**
@@ -282,41 +568,563 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     }
     //endregion
 
-    private void onIncomingMessage(byte[] bytes) {
+    private Uni<Void> joinShardGroup() {
+        LocalMap<String, SipShardGroup> groups = vertx.sharedData().getLocalMap(SipShardGroup.MAP_NAME);
+        SipShardGroup created = new SipShardGroup(config.getShards());
+        SipShardGroup existing = groups.putIfAbsent(shardGroupKey(), created);
+        SipShardGroup group = existing != null ? existing : created;
+        if (group.size() != config.getShards()) {
+            throw new IllegalStateException("Shard group " + shardGroupKey() + " already exists with " +
+                group.size() + " shards");
+        }
+        this.shardIndex = group.join(context, this::onIncomingMessage);
+        this.shardGroup = group;
+        recoverDialogs();
+
+        boolean receiver = shardIndex == 0 || listensPerShard();
+        return Uni.createFrom().completionStage(group.whenComplete())
+            .emitOn(task -> context.runOnContext(v -> task.run()))
+            .chain(() -> {
+                if (receiver) {
+                    return transport.asyncStartListener()
+                        .invoke(() -> {
+                            if (shardIndex == 0) {
+                                group.setReceiverTransport(transport);
+                            }
+                        });
+                }
+                return Uni.createFrom().completionStage(group.receiverTransport())
+                    .emitOn(task -> context.runOnContext(v -> task.run()))
+                    .invoke(receiverTransport -> this.transport = receiverTransport)
+                    .invoke(this::onServerStartedListening)
+                    .replaceWithVoid();
+            });
+    }
+
+    // visible for benchmarks
+    static long currentTimeMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Advances transaction timers and dialog sweep, called by periodic timer
+     */
+    // visible for benchmarks
+    void onTimerTick(long nowMillis) {
+        admission.onTick(nowMillis);
+        transactions.advance(nowMillis);
+        dialogs.sweep(nowMillis, this::onDialogExpired);
+        if (replicator != null) {
+            publishChanges();
+            replicator.sweep(nowMillis);
+        }
+    }
+
+    private void replicate(String callId) {
+        if (replicator != null) {
+            replicator.changed(callId);
+        }
+    }
+
+    /**
+     * Writes dialog changes since previous tick to journal and publishes them to standby
+     */
+    private void publishChanges() {
+        ByteBuffer batch = replicator.nextBatch(dialogs);
+        if (batch == null) {
+            return;
+        }
+        if (journal != null && !journal.append(batch.duplicate())) {
+            journal.rewrite(replicator.liveBatch(dialogs));
+        }
+        publish(batch);
+    }
+
+    private void publish(ByteBuffer batch) {
+        if (config.getReplicationAddress() != null && vertx != null) {
+            vertx.getDelegate().eventBus().publish(config.getReplicationAddress(),
+                io.vertx.core.buffer.Buffer.buffer(Unpooled.wrappedBuffer(batch)));
+        }
+    }
+
+    /**
+     * Restores confirmed dialogs journaled by previous run of this instance and compacts journal,
+     * see {@link SipVerticleConfig#setJournalDirectory(String)}
+     */
+    // visible for benchmarks
+    void recoverDialogs() {
+        if (config.getJournalDirectory() == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        String name = "dialogs-" + config.getTransport() + "-" + config.getPort() + "-" + shardIndex + ".journal";
+        journal = new SipDialogJournal(Paths.get(config.getJournalDirectory()).resolve(name),
+            config.getJournalFileSize());
+        SipDialogReplicator journaled = new SipDialogReplicator(config);
+        long nowMillis = currentTimeMillis();
+        try {
+            journal.replay(batch -> journaled.apply(batch, nowMillis));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            log.error("Dialog journal " + name + " is corrupted, dialogs are recovered up to the corrupted record: " +
+                e);
+        }
+        List<SipDialog<T>> recovered = new ArrayList<>();
+        for (SipDialogSnapshot snapshot : journaled.takeAll()) {
+            if (dialogs.rejectNew()) {
+                log.warn("Dialogs limit is reached, not all dialogs are recovered from journal " + name);
+                break;
+            }
+            SipDialog<T> dialog = new SipDialogImpl<>(snapshot, branchIdGenerator, headerFactory,
+                config.getTransport());
+            dialogs.add(dialog, nowMillis);
+            replicator.changed(dialog.getDialogId());
+            recovered.add(dialog);
+        }
+        ByteBuffer live = replicator.nextBatch(dialogs);
+        journal.rewrite(live == null ? null : live.duplicate());
+        if (live != null) {
+            publish(live);
+        }
+        log.info("Recovered " + recovered.size() + " dialogs from journal " + name + " in " +
+            (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+        for (SipDialog<T> dialog : recovered) {
+            dialogRestored(dialog);
+        }
+    }
+
+    private void dialogRestored(SipDialog<T> dialog) {
+        if (callbacks == null) {
+            onDialogRestored(dialog);
+        } else {
+            callbacks.execute(dialog.getDialogId(), () -> onDialogRestored(dialog));
+        }
+    }
+
+    private void onReplicated(io.vertx.core.buffer.Buffer batch) {
+        try {
+            replicator.apply(ByteBuffer.wrap(batch.getBytes()), currentTimeMillis());
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            log.error("Dropping malformed replication batch from " + config.getStandbyFor() + ": " + e);
+        }
+    }
+
+    /**
+     * Restores dialog replicated from failed primary, so its in-dialog request is handled here
+     *
+     * @return true if dialog is restored
+     */
+    private boolean takeOver(String callId) {
+        SipDialogSnapshot snapshot = replicator.take(callId);
+        if (snapshot == null || dialogs.rejectNew()) {
+            return false;
+        }
+        SipDialog<T> dialog = new SipDialogImpl<>(snapshot, branchIdGenerator, headerFactory, config.getTransport());
+        dialogs.add(dialog, currentTimeMillis());
+        replicate(callId);
+        if (log.isDebugEnabled()) {
+            log.debug("Dialog taken over from " + config.getStandbyFor() + ": Call-ID=" + callId);
+        }
+        dialogRestored(dialog);
+        return true;
+    }
+
+    private void onDialogExpired(SipDialog<T> dialog) {
+        if (log.isDebugEnabled()) {
+            log.debug("Dialog evicted in state " + dialog.getState() + ": Call-ID=" + dialog.getDialogId());
+        }
+        replicate(dialog.getDialogId());
+        if (callbacks == null) {
+            onDialogEvicted(dialog);
+        } else {
+            callbacks.execute(dialog.getDialogId(), () -> onDialogEvicted(dialog));
+        }
+    }
+
+    private void onTransactionTimedOut(SipTransaction transaction) {
+        SIPRequest request = transaction.getOriginalRequest();
+        if (log.isDebugEnabled()) {
+            log.debug("Transaction timed out in state " + transaction.getState() + ": " + request.getMethod() +
+                " Call-ID=" + request.getCallId().getCallId());
+        }
+        if (callbacks == null) {
+            onTransactionTimeout(transaction);
+            removeTimedOutDialog(request);
+        } else {
+            callbacks.execute(request.getCallId().getCallId(), () -> {
+                onTransactionTimeout(transaction);
+                context.runOnContext(v -> removeTimedOutDialog(request));
+            });
+        }
+    }
+
+    private void removeTimedOutDialog(SIPRequest request) {
+        String callId = request.getCallId().getCallId();
+        SipDialog<T> dialog = dialogs.get(callId);
+        if (dialog != null && dialog.getLastRequest() == request) {
+            dialogs.remove(callId);
+            replicate(callId);
+        }
+    }
+
+    /**
+     * Thread check only, so API called on verticle context costs no task or allocation
+     *
+     * @return true if API is called from other thread (callback thread, Mutiny or worker executor, other verticle),
+     * so call has to be marshalled to verticle context
+     */
+    private boolean offContext() {
+        return context != null && !((ContextInternal) context).isRunningOnContext();
+    }
+
+    /**
+     * Runs action on verticle context and blocks caller until it's done, cheap for virtual thread.
+     * Blocking event loop of other context is refused, two contexts waiting for each other would deadlock.
+     */
+    private <R> R awaitOnContext(Supplier<R> action) {
+        if (Context.isOnEventLoopThread()) {
+            throw new IllegalStateException("Dialog of " + config.getHostPort() +
+                " can't be accessed from other event loop, use vertx.runOnContext or send message to verticle");
+        }
+        CompletableFuture<R> result = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            try {
+                result.complete(action.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private String shardGroupKey() {
+        return config.getTransport() + ":" + config.getHostPort();
+    }
+
+    private boolean listensPerShard() {
+        return config.getTransport().equals("udp") && vertx.isNativeTransportEnabled();
+    }
+
+    /**
+     * Generates Call-ID owned by this shard, so responses on requests sent from this instance are routed back to it
+     */
+    private String nextCallId() {
+        String callId = idGenerator.get();
+        if (shardGroup != null) {
+            while (shardGroup.shardOf(callId) != shardIndex) {
+                callId = idGenerator.get();
+            }
+        }
+        return callId;
+    }
+
+    private void startCapture() {
+        if (config.getCaptureDirectory() != null) {
+            String name = "sip-" + config.getTransport() + "-" + config.getPort() + "-" + shardIndex;
+            capture = new SipCapture(Paths.get(config.getCaptureDirectory()), name, config.getCaptureFileSize(),
+                config.getCaptureFiles());
+        }
+    }
+
+    private void captureReceived(io.vertx.core.net.SocketAddress remote, byte[] bytes) {
+        if (capture != null) {
+            capture.packet(remote.host(), remote.port(), config.getHost(), config.getPort(), bytes);
+        }
+    }
+
+    private void captureSent(String host, int port, Buffer buffer) {
+        if (capture != null) {
+            capture.packet(config.getHost(), config.getPort(), host, port, byteBuf(buffer));
+        }
+    }
+
+    /**
+     * Entry of the receive path, for both transports
+     */
+    // visible for benchmarks
+    void dispatch(byte[] bytes, SocketAddress sender) {
+        SipMessageHead head;
+        try {
+            head = SipMessageHead.parse(bytes);
+        } catch (ParseException e) {
+            metrics.parseFailed();
+            log.debug("Dropping malformed message from " + sender + ": " + e.getMessage());
+            return;
+        }
+        if (head == null) {
+            return; // keep-alive
+        }
+        if (shardGroup == null) {
+            onIncomingMessage(head, sender);
+        } else {
+            shardGroup.route(head, sender);
+        }
+    }
+
+    /**
+     * Queues message by priority, see {@link SipReceiveQueue}, queue is drained by event loop task handling at most
+     * {@link SipVerticleConfig#getReceiveBatchSize()} messages, so messages received meanwhile are prioritized too.
+     */
+    private void onIncomingMessage(SipMessageHead head, SocketAddress sender) {
+        if (config.getReceiveBatchSize() == 0) {
+            handleIncomingMessage(head, sender);
+            return;
+        }
+        boolean newDialog = head.isRequest() && head.getMethod().equals(Request.INVITE)
+            && !dialogs.contains(head.getCallId());
+        if (!receiveQueue.offer(head, sender, newDialog)) {
+            rejectQueueOverflow(head, sender);
+            return;
+        }
+        if (!drainScheduled) {
+            drainScheduled = true;
+            if (context != null) {
+                context.runOnContext(drainTask);
+            } else {
+                // not deployed: tests and benchmarks
+                drainReceiveQueue();
+            }
+        }
+    }
+
+    /**
+     * Failure of one message (malformed message, application callback) is reported and the next one is handled,
+     * drain is rescheduled in any case, otherwise messages received later would stay queued forever.
+     */
+    private void drainReceiveQueue() {
+        // not deployed instance has no event loop to yield to
+        int batchSize = context != null ? config.getReceiveBatchSize() : Integer.MAX_VALUE;
+        int handled = 0;
         try {
-            SIPMessage message = messageParser.parseSIPMessage(bytes,
-                true,
-                false,
-                (ex, msg, headerClass, headerText, messageText) -> { // ParseExceptionListener
-                    throw new IllegalArgumentException(ex);
-                });
+            while (handled < batchSize && !receiveQueue.isEmpty()) {
+                handled++;
+                try {
+                    receiveQueue.poll(receivedHandler);
+                } catch (RuntimeException e) {
+                    reportReceiveFailure(e);
+                }
+            }
+        } finally {
+            if (receiveQueue.isEmpty() || context == null) {
+                drainScheduled = false;
+            } else {
+                context.runOnContext(drainTask);
+            }
+        }
+    }
+
+    private void reportReceiveFailure(RuntimeException e) {
+        if (context != null) {
+            ((ContextInternal) context).reportException(e);
+        } else {
+            log.error("Failed to handle received message", e);
+        }
+    }
+
+    private void rejectQueueOverflow(SipMessageHead head, SocketAddress sender) {
+        metrics.requestReceived(head.getMethod());
+        admission.reject(SipAdmissionControl.Rejection.RECEIVE_QUEUE);
+        respondOverloaded(head, sender, SipAdmissionControl.Rejection.RECEIVE_QUEUE);
+    }
+
+    /**
+     * Retransmissions and messages not belonging to any dialog are dropped or answered basing on message head,
+     * only messages reaching dialog or application are fully parsed.
+     */
+    private void handleIncomingMessage(SipMessageHead head, SocketAddress sender) {
+        if (head.isRequest()) {
+            metrics.requestReceived(head.getMethod());
+        } else {
+            metrics.responseReceived(head.getCSeqMethod(), head.getStatusCode());
+        }
+        if (head.isRequest() && transactions.absorbRetransmission(head)) {
+            logHead("Absorbed retransmission", head);
+            return;
+        }
+        boolean dialogExists = dialogs.contains(head.getCallId());
+        if (!dialogExists && replicator != null && head.isRequest() && !head.getMethod().equals(Request.INVITE)) {
+            dialogExists = takeOver(head.getCallId());
+        }
+        if (dialogExists) {
+            dialogs.touch(head.getCallId(), currentTimeMillis());
+        }
+        if (!head.isRequest() && !dialogExists) {
+            logHead("Dropping response for unknown dialog", head);
+            return;
+        }
+        if (head.isRequest() && !dialogExists && head.getMethod().equals(Request.ACK)) {
+            if (transactions.absorbAck(head)) {
+                logHead("Absorbed ACK on final response", head);
+                return;
+            }
+            // ACK is never answered
+            logHead("Dropping ACK for unknown dialog", head);
+            return;
+        }
+        if (head.isRequest() && !dialogExists && head.getMethod().equals(Request.INVITE) && !admit(head, sender)) {
+            return;
+        }
+        try {
+            SIPMessage message = head.message(messageParser);
             if (message instanceof SIPRequest) {
-                onRequestReceived((SIPRequest) message);
+                SIPRequest request = (SIPRequest) message;
+                setReceivedFrom(request.getTopmostVia(), sender);
+                if (request.getMethod().equals(Request.OPTIONS)) {
+                    respondOutOfDialog(request, Response.OK);
+                } else if (!dialogExists && !request.getMethod().equals(Request.INVITE)) {
+                    respondOutOfDialog(request, Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST);
+                } else {
+                    onRequestReceived(request);
+                }
             } else if (message instanceof SIPResponse) {
-                onResponse((SIPResponse) message);
+                if (transactions.onResponseReceived((SIPResponse) message)) {
+                    onResponse((SIPResponse) message);
+                }
             } else {
                 throw new IllegalStateException();
             }
         } catch (ParseException e) {
+            metrics.parseFailed();
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Rejects new INVITE with 503 and Retry-After under overload, see {@link SipAdmissionControl}
+     *
+     * @return true if INVITE has to be handled
+     */
+    private boolean admit(SipMessageHead invite, SocketAddress sender) {
+        SipAdmissionControl.Rejection rejection = admission.admit(sender.host(), currentTimeMillis());
+        if (rejection == null) {
+            return true;
+        }
+        respondOverloaded(invite, sender, rejection);
+        return false;
+    }
+
+    /**
+     * Overload response is encoded from request head, only top Via line is parsed to add request source,
+     * so rejecting INVITEs costs less than handling them. To tag is added as for any final response.
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-8.2.6.2">rfc3261#section-8.2.6.2</a>
+     */
+    private void respondOverloaded(SipMessageHead invite, SocketAddress sender,
+                                   SipAdmissionControl.Rejection rejection) {
+        if (log.isDebugEnabled()) {
+            log.debug("Rejecting INVITE from " + sender + " on overload (" + rejection + "): Call-ID=" +
+                invite.getCallId());
+        }
+        String toTag = "server-" + idGenerator.get();
+        try {
+            ViaList topVia = (ViaList) new ViaParser(new String(invite.getBytes(), invite.getViaLineStart(0),
+                invite.getViaLineEnd(0) - invite.getViaLineStart(0), StandardCharsets.UTF_8) + "\n").parse();
+            Via requestVia = (Via) topVia.getFirst();
+            setReceivedFrom(requestVia, sender);
+            Buffer encoded = responseTemplates.encodeOverloaded(invite, topVia, toTag,
+                config.getOverloadRetryAfter());
+            if (encoded != null) {
+                transport.send(encoded, requestVia);
+                metrics.responseSent(Request.INVITE, Response.SERVICE_UNAVAILABLE);
+                return;
+            }
+            // folded headers: parsed as usual
+            SIPRequest request = (SIPRequest) invite.message(messageParser);
+            setReceivedFrom(request.getTopmostVia(), sender);
+            SIPResponse response = request.createResponse(Response.SERVICE_UNAVAILABLE);
+            response.setToTag(toTag);
+            response.setHeader(overloadRetryAfter);
+            logSendingResponse(response);
+            send(response, null);
+        } catch (ParseException e) {
+            metrics.parseFailed();
             throw new IllegalArgumentException(e);
         }
     }
 
+    private void respondOutOfDialog(SIPRequest request, int statusCode) {
+        SIPResponse response = request.createResponse(statusCode);
+        logSendingResponse(response);
+        send(response, encode(response, SipMessageHead.of(request)));
+    }
+
+    /**
+     * @param encoded response bytes or null if transport has to encode response
+     */
+    private void send(SIPResponse response, Buffer encoded) {
+        if (encoded != null) {
+            transport.send(response, encoded);
+        } else {
+            transport.send(response);
+        }
+        metrics.responseSent(response.getCSeq().getMethod(), response.getStatusCode());
+    }
+
+    /**
+     * @param requestHead head of received request response is created on, null if unknown
+     * @return response encoded with template or null
+     */
+    private Buffer encode(SIPResponse response, SipMessageHead requestHead) {
+        return requestHead == null ? null : responseTemplates.encode(response, requestHead);
+    }
+
+    /**
+     * Adds source of the request to the top Via, so response can be sent back to the same address
+     * (and on the same connection for tcp).
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18.2.1">rfc3261#section-18.2.1</a>
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3581#section-4">rfc3581#section-4</a>
+     */
+    private void setReceivedFrom(Via via, SocketAddress sender) throws ParseException {
+        if (config.isTrustTopVia()) {
+            return;
+        }
+        if (!sender.host().equals(via.getHost())) {
+            via.setReceived(sender.host());
+        }
+        if (via.hasParameter(Via.RPORT) || config.getTransport().equals("tcp")) {
+            via.setParameter(Via.RPORT, String.valueOf(sender.port()));
+        }
+    }
+
     final void onRequestReceived(SIPRequest request) {
         logOnRequest(request);
-        if (request.getMethod().equals(Request.MESSAGE)) {
-            onMessage(request);
-            return;
+        if (!request.getMethod().equals(Request.MESSAGE)) {
+            SipServerTransaction serverTransaction = new SipServerTransactionImpl(request);
+            addDialogTransaction(serverTransaction);
+            transactions.onRequestReceived(serverTransaction);
         }
-        SipServerTransaction serverTransaction = new SipServerTransactionImpl(request);
-        addDialogTransaction(serverTransaction);
+        if (callbacks == null) {
+            invokeRequestCallback(request);
+        } else {
+            callbacks.execute(request.getCallId().getCallId(), () -> invokeRequestCallback(request));
+        }
+    }
 
+    private void invokeRequestCallback(SIPRequest request) {
+        long startNanos = handlerStartNanos();
         switch (request.getMethod()) {
+            case Request.MESSAGE:
+                onMessage(request);
+                recordHandled(Request.MESSAGE, startNanos);
+                return;
             case Request.INVITE:
                 onInvite(request);
+                recordHandled(Request.INVITE, startNanos);
                 return;
             case Request.BYE:
                 onBye(request);
+                recordHandled(Request.BYE, startNanos);
                 return;
             case Request.ACK:
                 onServerDialogConfirmed(request);
@@ -326,14 +1134,35 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
         }
     }
 
+    private long handlerStartNanos() {
+        return metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    private void recordHandled(String method, long startNanos) {
+        if (metrics.isEnabled()) {
+            metrics.requestHandled(method, System.nanoTime() - startNanos);
+        }
+    }
+
     final void onResponse(SIPResponse response) {
         logOnResponse(response);
 
-        SipDialog<T> updatedDialog = findDialog(response.getCallId()).updateOnResponse(response);
-        if (updatedDialog.getState().equals(DialogState.CONFIRMED)) {
-            onClientDialogConfirmed(response);
-        } else if (updatedDialog.getState().equals(DialogState.TERMINATED)) {
+        SipDialog<T> updatedDialog = updateDialog(response);
+        DialogState state = updatedDialog.getState();
+        if (state.equals(DialogState.TERMINATED)) {
             this.dialogs.remove(updatedDialog.getDialogId());
+        }
+        if (callbacks == null) {
+            invokeResponseCallbacks(response, state);
+        } else {
+            callbacks.execute(updatedDialog.getDialogId(), () -> invokeResponseCallbacks(response, state));
+        }
+    }
+
+    private void invokeResponseCallbacks(SIPResponse response, DialogState state) {
+        if (state.equals(DialogState.CONFIRMED)) {
+            onClientDialogConfirmed(response);
+        } else if (state.equals(DialogState.TERMINATED)) {
             onDialogTerminated(response);
         }
 
@@ -350,21 +1179,34 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
         } else {
             SipDialog<T> dialog = findDialog(transaction.getOriginalRequest().getCallId());
             dialog.addTransaction(transaction);
+            replicate(dialog.getDialogId());
         }
     }
 
     private void createDialogOnOriginalTransaction(SipTransaction transaction) {
         String callId = transaction.getOriginalRequest().getCallId().getCallId();
-        if (dialogs.containsKey(callId)) {
+        if (dialogs.contains(callId)) {
             throw new IllegalStateException("Dialog already exists on transaction " + transaction);
         }
         SipDialog<T> dialog = new SipDialogImpl<>(transaction, branchIdGenerator, headerFactory, config.getTransport());
-        dialogs.put(dialog.getDialogId(), dialog);
+        dialogs.add(dialog, currentTimeMillis());
+    }
+
+    private SipDialog<T> updateDialog(SIPResponse response) {
+        SipDialog<T> dialog = findDialog(response.getCallId());
+        DialogState previous = dialog.getState();
+        dialog.updateOnResponse(response);
+        if (dialog.getState() != previous) {
+            metrics.dialogStateChanged(previous, dialog.getState());
+            replicate(dialog.getDialogId());
+        }
+        return dialog;
     }
 
     final SipDialog<T> findDialog(String callId) {
-        if (dialogs.containsKey(callId)) {
-            return dialogs.get(callId);
+        SipDialog<T> dialog = dialogs.get(callId);
+        if (dialog != null) {
+            return dialog;
         } else {
             throw new IllegalStateException("dialog not found, probably terminated; callId = " + callId);
         }
@@ -376,43 +1218,45 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
     //endregion
 
     //region Logging
-    private String getUser(HeaderAddress headerAddress) {
-        return ((SipURI) headerAddress.getAddress().getURI()).getUser();
-    }
-
     private void logSendingRequest(SIPRequest request) {
+        if (log.isDebugEnabled()) {
+            log.debug(logLine.sending(request));
+        }
         if (log.isTraceEnabled()) {
-            log.trace(getUser(request.getFrom()) + ": sending\n" + request);
-        } else if (log.isDebugEnabled()) {
-            log.debug(getUser(request.getFrom()) + ": sending " + request.getFirstLine().replaceAll("[\\r\\n]", ""));
+            SipTraceWriter.get().trace(SipLogLine.user(request.getFrom()), "sending", request);
         }
     }
 
     private void logSendingResponse(SIPResponse response) {
+        if (log.isDebugEnabled()) {
+            log.debug(logLine.responding(response));
+        }
         if (log.isTraceEnabled()) {
-            log.trace(getUser(response.getTo()) + ": responding\n" + response);
-        } else if (log.isDebugEnabled()) {
-            log.debug(getUser(response.getTo()) + ": responding " + response.getReasonPhrase() +
-                " for Call-ID=" + response.getCallId().getCallId());
+            SipTraceWriter.get().trace(SipLogLine.user(response.getTo()), "responding", response);
         }
     }
 
     private void logOnRequest(SIPRequest request) {
+        if (log.isDebugEnabled()) {
+            log.debug(logLine.received(request));
+        }
         if (log.isTraceEnabled()) {
-            log.trace(getUser(request.getTo()) + ": got request\n" + request);
-        } else if (log.isDebugEnabled()) {
-            log.debug(getUser(request.getTo()) + ": got " + request.getMethod() + " " +
-                request.getFrom().toString().replaceAll("[\\r\\n]", ""));
+            SipTraceWriter.get().trace(SipLogLine.user(request.getTo()), "got request", request);
         }
     }
 
     private void logOnResponse(SIPResponse response) {
+        if (log.isDebugEnabled()) {
+            log.debug(logLine.received(response));
+        }
         if (log.isTraceEnabled()) {
-            log.trace(getUser(response.getFrom()) + ": got response: " + response);
-        } else if (log.isDebugEnabled()) {
-            log.debug(getUser(response.getFrom()) + " got " +
-                response.getFirstLine().replaceAll("[\\r\\n]", "") + " FROM " +
-                response.getTo().getAddress().toString().replaceAll("[\\r\\n]", ""));
+            SipTraceWriter.get().trace(SipLogLine.user(response.getFrom()), "got response", response);
+        }
+    }
+
+    private void logHead(String event, SipMessageHead head) {
+        if (log.isDebugEnabled()) {
+            log.debug(logLine.head(event, head));
         }
     }
     //endregion
@@ -423,14 +1267,57 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
         void send(SIPRequest request);
 
         void send(SIPResponse response);
+
+        /**
+         * @param encoded response already encoded by caller
+         */
+        default void send(SIPResponse response, Buffer encoded) {
+            send(response);
+        }
+
+        /**
+         * Sends response encoded from request head without creating response message, see
+         * {@link SipResponseTemplates#encodeOverloaded}. By default response is parsed back and sent as
+         * {@link #send(SIPResponse)}.
+         *
+         * @param requestVia top Via of the request with its source added, response destination
+         */
+        default void send(Buffer encoded, Via requestVia) {
+            try {
+                send((SIPResponse) new StringMsgParser().parseSIPMessage(encoded.getBytes(),
+                    true,
+                    false,
+                    (ex, msg, headerClass, headerText, messageText) -> { // ParseExceptionListener
+                        throw new IllegalArgumentException(ex);
+                    }));
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
     }
 
     private final class UdpTransport implements Transport {
         private DatagramSocket socket;
+        // used instead of socket when enabled, see SipVerticleConfig#setNativeUdp
+        private SipDatagramChannel channel;
 
         @Override
         public Uni<Void> asyncStartListener() {
-            return vertx.createDatagramSocket(new DatagramSocketOptions())
+            startCapture();
+            if (config.isNativeUdp() && SipDatagramChannel.isAvailable((VertxInternal) vertx.getDelegate())) {
+                return asyncStartNativeListener();
+            }
+            if (config.isNativeUdp()) {
+                log.warn("Native udp is not available, Vert.x is not started with native transport");
+            }
+            DatagramSocketOptions options = new DatagramSocketOptions().setReusePort(listensPerShard());
+            if (config.getUdpReceiveBufferSize() > 0) {
+                options.setReceiveBufferSize(config.getUdpReceiveBufferSize());
+            }
+            if (config.getUdpSendBufferSize() > 0) {
+                options.setSendBufferSize(config.getUdpSendBufferSize());
+            }
+            return vertx.createDatagramSocket(options)
                 .listen(config.getPort(), config.getHost())
                 .onItem().invoke(socket -> {
                     if (log.isTraceEnabled()) {
@@ -439,11 +1326,48 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
                 })
                 .onItem().invoke(socket -> this.socket = socket)
                 .onItem().invoke(AbstractSipUserAgent.this::onServerStartedListening)
-                .onItem().invoke(socket -> socket.handler(packet -> onIncomingMessage(packet.data().getBytes())))
+                .onItem().invoke(socket -> socket.handler(packet -> {
+                    byte[] bytes = ReceivedBytes.of(packet.data().getDelegate());
+                    captureReceived(packet.sender().getDelegate(), bytes);
+                    dispatch(bytes, packet.sender());
+                }))
                 .onFailure().invoke(throwable -> log.error(throwable.getMessage()))
                 .replaceWithVoid();
         }
 
+        private Uni<Void> asyncStartNativeListener() {
+            channel = new SipDatagramChannel((ContextInternal) context, config, listensPerShard(), (bytes, sender) -> {
+                io.vertx.core.net.SocketAddress address = io.vertx.core.net.SocketAddress.inetSocketAddress(sender);
+                captureReceived(address, bytes);
+                dispatch(bytes, SocketAddress.newInstance(address));
+            });
+            return Uni.createFrom().<Void>emitter(emitter -> channel.bind().addListener(future -> {
+                    if (future.isSuccess()) {
+                        emitter.complete(null);
+                    } else {
+                        emitter.fail(future.cause());
+                    }
+                }))
+                .emitOn(task -> context.runOnContext(v -> task.run()))
+                .invoke(() -> {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Listening " + config.getHostPort() + " with native transport");
+                    }
+                })
+                .invoke(AbstractSipUserAgent.this::onServerStartedListening)
+                .onFailure().invoke(throwable -> log.error(throwable.getMessage()));
+        }
+
+        /**
+         * Closes native channel, Vert.x closes its sockets itself. Shards of a group share receiver's transport,
+         * so it's closed by its owner only.
+         */
+        void close(AbstractSipUserAgent<?> agent) {
+            if (channel != null && agent == AbstractSipUserAgent.this) {
+                channel.close();
+            }
+        }
+
         @Override
         public void send(SIPRequest request) {
             SipURI target = (SipURI) request.getTo().getAddress().getURI();
@@ -453,16 +1377,221 @@ public abstract class AbstractSipUserAgent<T> extends AbstractVerticle {
         @Override
         public void send(SIPResponse response) {
             Via requestSentVia = response.getTopmostVia();
-            send(response, requestSentVia.getPort(), requestSentVia.getHost());
+            send(response, responsePort(requestSentVia), responseHost(requestSentVia));
+        }
+
+        @Override
+        public void send(SIPResponse response, Buffer encoded) {
+            send(encoded, response.getTopmostVia());
+        }
+
+        @Override
+        public void send(Buffer encoded, Via requestVia) {
+            send(encoded, responsePort(requestVia), responseHost(requestVia), null);
+        }
+
+        private void send(SIPMessage message, int port, String host) {
+            ByteBuf encoded = SipMessageEncoder.encode(message);
+            send(wrap(encoded), port, host, encoded::release);
+        }
+
+        /**
+         * @param onWritten called when buffer is written or can't be written anymore, null if not needed
+         */
+        private void send(Buffer buffer, int port, String host, Runnable onWritten) {
+            captureSent(host, port, buffer);
+            if (channel != null) {
+                channel.send(byteBuf(buffer).retainedDuplicate(), host, port, onWritten);
+                return;
+            }
+            Uni<Void> sent = this.socket.send(buffer, port, host);
+            if (onWritten != null) {
+                sent = sent.onTermination().invoke(onWritten);
+            }
+            sent.subscribe().with(success -> {
+            });
+        }
+    }
+
+    /**
+     * Connections are kept open and reused in both directions: responses are sent on the connection request
+     * came from, requests to the same remote host and port share one connection.
+     * <p>
+     * In shard group single instance is shared by all shards, so connection tables are concurrent.
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18">rfc3261#section-18</a>
+     */
+    private final class TcpTransport implements Transport {
+        // key is remote flow host:port
+        private final Map<String, NetSocket> connections = new ConcurrentHashMap<>();
+        private final Map<String, Uni<NetSocket>> connecting = new ConcurrentHashMap<>();
+        private NetClient client;
+
+        @Override
+        public Uni<Void> asyncStartListener() {
+            startCapture();
+            this.client = vertx.createNetClient(new NetClientOptions()
+                .setTcpKeepAlive(true)
+                .setTcpNoDelay(true));
+            return vertx.createNetServer(new NetServerOptions()
+                    .setTcpKeepAlive(true)
+                    .setTcpNoDelay(true))
+                .connectHandler(this::register)
+                .listen(config.getPort(), config.getHost())
+                .onItem().invoke(server -> {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Listening " + config.getHostPort());
+                    }
+                })
+                .onItem().invoke(AbstractSipUserAgent.this::onServerStartedListening)
+                .onFailure().invoke(throwable -> log.error(throwable.getMessage()))
+                .replaceWithVoid();
+        }
+
+        @Override
+        public void send(SIPRequest request) {
+            SipURI target = (SipURI) request.getTo().getAddress().getURI();
+            send(request, target.getPort(), target.getHost());
+        }
+
+        @Override
+        public void send(SIPResponse response) {
+            ByteBuf encoded = SipMessageEncoder.encode(response);
+            respond(wrap(encoded), response.getTopmostVia(), encoded::release);
+        }
+
+        @Override
+        public void send(SIPResponse response, Buffer encoded) {
+            send(encoded, response.getTopmostVia());
+        }
+
+        @Override
+        public void send(Buffer encoded, Via requestVia) {
+            respond(encoded, requestVia, () -> {
+            });
         }
 
         private void send(SIPMessage message, int port, String host) {
-            this.socket.send(message.encode(), port, host)
+            ByteBuf encoded = SipMessageEncoder.encode(message);
+            send(wrap(encoded), port, host, encoded::release);
+        }
+
+        /**
+         * Response is sent on the connection request came from. When it's closed, connection is opened to
+         * received address and sent-by port, source port of closed connection is not listened.
+         *
+         * @param onWritten called when buffer is written or can't be written anymore
+         * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18.2.2">rfc3261#section-18.2.2</a>
+         */
+        private void respond(Buffer buffer, Via requestVia, Runnable onWritten) {
+            String host = responseHost(requestVia);
+            NetSocket connection = connections.get(flow(host, responsePort(requestVia)));
+            if (connection != null) {
+                write(connection, buffer, onWritten);
+            } else {
+                send(buffer, sentByPort(requestVia), host, onWritten);
+            }
+        }
+
+        /**
+         * @param onWritten called when buffer is written or can't be written anymore
+         */
+        private void send(Buffer buffer, int port, String host, Runnable onWritten) {
+            NetSocket connection = connections.get(flow(host, port));
+            if (connection != null) {
+                write(connection, buffer, onWritten);
+            } else {
+                connect(host, port).subscribe().with(
+                    socket -> write(socket, buffer, onWritten),
+                    throwable -> {
+                        onWritten.run();
+                        log.error("Failed to connect " + flow(host, port) + ": " + throwable.getMessage());
+                    });
+            }
+        }
+
+        private void write(NetSocket connection, Buffer buffer, Runnable onWritten) {
+            io.vertx.core.net.SocketAddress remote = connection.getDelegate().remoteAddress();
+            captureSent(remote.host(), remote.port(), buffer);
+            connection.write(buffer)
+                .onTermination().invoke(onWritten)
                 .subscribe()
                 .with(success -> {
-                });
+                    },
+                    throwable -> log.error("Failed to write to " + connection.remoteAddress() + ": " +
+                        throwable.getMessage()));
         }
+
+        private Uni<NetSocket> connect(String host, int port) {
+            String flow = flow(host, port);
+            return connecting.computeIfAbsent(flow, key -> client.connect(port, host)
+                .onItem().invoke(socket -> register(socket, flow))
+                .onTermination().invoke(() -> connecting.remove(flow))
+                .memoize().indefinitely());
+        }
+
+        private void register(NetSocket socket) {
+            register(socket, flow(socket.remoteAddress().host(), socket.remoteAddress().port()));
+        }
+
+        private void register(NetSocket socket, String flow) {
+            SocketAddress remoteAddress = socket.remoteAddress();
+            SipStreamFramer framer = new SipStreamFramer(bytes -> {
+                captureReceived(remoteAddress.getDelegate(), bytes);
+                dispatch(bytes, remoteAddress);
+            });
+            connections.put(flow, socket);
+            socket.handler(buffer -> {
+                try {
+                    framer.handle(buffer.getDelegate());
+                } catch (IllegalStateException e) {
+                    log.error("Closing connection " + flow + ": " + e.getMessage());
+                    socket.closeAndForget();
+                }
+            });
+            socket.closeHandler(() -> connections.remove(flow, socket));
+            socket.exceptionHandler(throwable -> log.error("Connection " + flow + " failed: " +
+                throwable.getMessage()));
+            if (log.isTraceEnabled()) {
+                log.trace("Connection " + flow + " registered");
+            }
+        }
+
+        private String flow(String host, int port) {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18.2.2">rfc3261#section-18.2.2</a>
+     */
+    private static String responseHost(Via via) {
+        return via.getReceived() != null ? via.getReceived() : via.getHost();
     }
 
-    // TODO tcp transport
+    /**
+     * @return buffer content without copying or duplicating
+     */
+    private static ByteBuf byteBuf(Buffer buffer) {
+        io.vertx.core.buffer.Buffer delegate = buffer.getDelegate();
+        return delegate instanceof BufferImpl ? ((BufferImpl) delegate).byteBuf() : delegate.getByteBuf();
+    }
+
+    /**
+     * Wraps pooled buffer without copying
+     */
+    private static Buffer wrap(ByteBuf byteBuf) {
+        return Buffer.newInstance(io.vertx.core.buffer.Buffer.buffer(byteBuf));
+    }
+
+    private static int responsePort(Via via) {
+        if (via.getRPort() > 0) {
+            return via.getRPort();
+        }
+        return sentByPort(via);
+    }
+
+    private static int sentByPort(Via via) {
+        return via.getPort() > 0 ? via.getPort() : DEFAULT_PORT;
+    }
 }
@@ -0,0 +1,29 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.buffer.impl.BufferImpl;
+
+/**
+ * Gives received message bytes to the parser without copying.
+ * <p>
+ * Vert.x copies datagrams (and stream chunks) from pooled direct Netty buffers into exactly sized heap buffer,
+ * releasing pooled buffer right away. Backing array of this heap buffer is used as is, {@link Buffer#getBytes()}
+ * would copy it once more. Parser requires array containing exactly one message, so buffers which are slices
+ * of larger arrays are still copied.
+ */
+final class ReceivedBytes {
+    private ReceivedBytes() {
+    }
+
+    static byte[] of(Buffer buffer) {
+        ByteBuf byteBuf = buffer instanceof BufferImpl ? ((BufferImpl) buffer).byteBuf() : buffer.getByteBuf();
+        if (byteBuf.hasArray()
+            && byteBuf.arrayOffset() == 0
+            && byteBuf.readerIndex() == 0
+            && byteBuf.array().length == byteBuf.readableBytes()) {
+            return byteBuf.array();
+        }
+        return buffer.getBytes();
+    }
+}
@@ -0,0 +1,137 @@
+package tech.ivoice.sip.vertx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Admission of new incoming INVITEs: under overload they are rejected with 503 Service Unavailable and Retry-After
+ * before dialog is created and application is called, so calls in progress still get their ACKs and BYEs on time.
+ * <p>
+ * INVITE is rejected when
+ * <ul>
+ *     <li>dialogs limit is reached, see {@link SipVerticleConfig#setMaxDialogs(int)}</li>
+ *     <li>event loop lag exceeds {@link SipVerticleConfig#setMaxEventLoopLag(long)}: lag is delay of transaction
+ *     timer tick over its period, smoothed to ignore single late ticks</li>
+ *     <li>its source host has no tokens left in its bucket, refilled with
+ *     {@link SipVerticleConfig#setMaxSourceCallsPerSecond(int)} tokens per second</li>
+ *     <li>too many INVITEs wait for in-dialog messages to be handled, see {@link SipReceiveQueue}, rejected by
+ *     verticle with {@link #reject(Rejection)}</li>
+ * </ul>
+ * Rejections and lag are reported to {@link SipMetrics}. Not thread safe, one instance per verticle.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-21.5.4">rfc3261#section-21.5.4</a>
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc6357#section-5">rfc6357#section-5</a>
+ */
+final class SipAdmissionControl {
+    // weight of the new lag sample is 1/8, as TCP smoothed RTT
+    private static final int LAG_SMOOTHING = 8;
+    private static final long BUCKETS_SWEEP_MILLIS = 1000;
+
+    enum Rejection {
+        DIALOGS, EVENT_LOOP_LAG, SOURCE_RATE, RECEIVE_QUEUE;
+
+        // reported to metrics
+        private final String reason = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long updatedMillis;
+    }
+
+    private final SipDialogStore<?> dialogs;
+    private final long maxLagMillis;
+    private final int sourceCallsPerSecond;
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private final SipMetrics metrics;
+
+    private long lastTickMillis = -1;
+    private double lagMillis;
+    private long bucketsSweptMillis;
+
+    SipAdmissionControl(SipVerticleConfig config, SipDialogStore<?> dialogs) {
+        this.dialogs = dialogs;
+        this.maxLagMillis = config.getMaxEventLoopLag();
+        this.sourceCallsPerSecond = config.getMaxSourceCallsPerSecond();
+        this.metrics = config.getMetrics();
+    }
+
+    /**
+     * Called on every transaction timer tick
+     */
+    void onTick(long nowMillis) {
+        if (lastTickMillis >= 0) {
+            long sample = Math.max(0, nowMillis - lastTickMillis - SipTransactionEngine.TICK_MILLIS);
+            lagMillis += (sample - lagMillis) / LAG_SMOOTHING;
+            metrics.eventLoopLag(sample);
+        }
+        lastTickMillis = nowMillis;
+        if (nowMillis - bucketsSweptMillis >= BUCKETS_SWEEP_MILLIS) {
+            sweepBuckets(nowMillis);
+            bucketsSweptMillis = nowMillis;
+        }
+    }
+
+    /**
+     * @param sourceHost host INVITE was received from
+     * @return null if INVITE is admitted, otherwise the reason to reject it
+     */
+    Rejection admit(String sourceHost, long nowMillis) {
+        Rejection rejection = null;
+        if (dialogs.rejectNew()) {
+            rejection = Rejection.DIALOGS;
+        } else if (maxLagMillis > 0 && lagMillis > maxLagMillis) {
+            rejection = Rejection.EVENT_LOOP_LAG;
+        } else if (sourceCallsPerSecond > 0 && !takeToken(sourceHost, nowMillis)) {
+            rejection = Rejection.SOURCE_RATE;
+        }
+        if (rejection != null) {
+            reject(rejection);
+        }
+        return rejection;
+    }
+
+    void reject(Rejection rejection) {
+        metrics.inviteRejected(rejection.reason);
+    }
+
+    private boolean takeToken(String sourceHost, long nowMillis) {
+        TokenBucket bucket = buckets.get(sourceHost);
+        if (bucket == null) {
+            bucket = new TokenBucket();
+            bucket.tokens = sourceCallsPerSecond;
+            bucket.updatedMillis = nowMillis;
+            buckets.put(sourceHost, bucket);
+        } else {
+            refill(bucket, nowMillis);
+        }
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    private void refill(TokenBucket bucket, long nowMillis) {
+        long elapsed = nowMillis - bucket.updatedMillis;
+        if (elapsed > 0) {
+            bucket.tokens = Math.min(sourceCallsPerSecond, bucket.tokens + elapsed * sourceCallsPerSecond / 1000.0);
+            bucket.updatedMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Full buckets are the same as absent ones, removed so sources seen once are not kept forever
+     */
+    private void sweepBuckets(long nowMillis) {
+        for (Iterator<TokenBucket> iterator = buckets.values().iterator(); iterator.hasNext(); ) {
+            TokenBucket bucket = iterator.next();
+            refill(bucket, nowMillis);
+            if (bucket.tokens >= sourceCallsPerSecond) {
+                iterator.remove();
+            }
+        }
+    }
+}
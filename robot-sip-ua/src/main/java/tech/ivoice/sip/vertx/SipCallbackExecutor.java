@@ -0,0 +1,112 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs application callbacks off the event loop, see {@link SipVerticleConfig#setVirtualThreadCallbacks(boolean)}:
+ * every callback gets its own virtual thread, so it may block on ASR, TTS or database clients without stalling
+ * other dialogs. Callbacks of one dialog run strictly one after another in submission order, next one is started
+ * when the previous returns.
+ * <p>
+ * Virtual threads are created with {@code Executors.newVirtualThreadPerTaskExecutor()} when runtime has it
+ * (looked up reflectively, as the project targets Java 11), otherwise with unbounded pool of daemon platform threads.
+ * <p>
+ * Submitted on verticle context only: queues of dialogs are accessed on context, callback completion hops back to it.
+ */
+final class SipCallbackExecutor {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final Context context;
+    private final ExecutorService executor;
+    // callbacks waiting for the running one of the same dialog, by Call-ID, dialog is absent when none is running
+    private final Map<String, ArrayDeque<Runnable>> waiting = new HashMap<>();
+
+    SipCallbackExecutor(Context context) {
+        this(context, newVirtualThreadExecutor());
+    }
+
+    SipCallbackExecutor(Context context, ExecutorService executor) {
+        this.context = context;
+        this.executor = executor;
+    }
+
+    /**
+     * @param callId dialog callbacks are ordered within
+     */
+    void execute(String callId, Runnable callback) {
+        ArrayDeque<Runnable> queue = waiting.get(callId);
+        if (queue != null) {
+            queue.add(callback);
+            return;
+        }
+        waiting.put(callId, new ArrayDeque<>(2));
+        start(callId, callback);
+    }
+
+    /**
+     * @return number of dialogs with running callback
+     */
+    int running() {
+        return waiting.size();
+    }
+
+    void close() {
+        executor.shutdown();
+    }
+
+    private void start(String callId, Runnable callback) {
+        Handler<Void> completed = v -> next(callId);
+        try {
+            executor.execute(() -> {
+                try {
+                    callback.run();
+                } catch (RuntimeException | Error e) {
+                    AbstractSipUserAgent.log.error("Callback failed: Call-ID=" + callId, e);
+                } finally {
+                    context.runOnContext(completed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stopped
+            waiting.remove(callId);
+        }
+    }
+
+    private void next(String callId) {
+        ArrayDeque<Runnable> queue = waiting.get(callId);
+        if (queue == null) {
+            return;
+        }
+        Runnable callback = queue.poll();
+        if (callback == null) {
+            waiting.remove(callId);
+        } else {
+            start(callId, callback);
+        }
+    }
+
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // before Java 21 or preview features disabled
+            AbstractSipUserAgent.log.warn("Virtual threads are not available, callbacks run on platform threads");
+        }
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "sip-callback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
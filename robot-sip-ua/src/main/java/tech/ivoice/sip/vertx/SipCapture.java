@@ -0,0 +1,238 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.NetUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Captures SIP messages to a ring of memory-mapped pcap files, readable by Wireshark and tcpdump.
+ * <p>
+ * Every message is written as IP/UDP packet with synthetic headers (link type RAW), so messages received or sent
+ * over TCP are written one message per packet too, and Wireshark decodes them without stream reassembly.
+ * Timestamps have nanosecond precision.
+ * <p>
+ * Packet is copied into mapped file, no system call or allocation per packet: files are mapped with fixed size,
+ * only switching to the next file of the ring (rotation) maps file and truncates the previous one to its content.
+ * So file is complete when rotated or capture is closed, active file has zero tail. When all files are written,
+ * the oldest one is overwritten.
+ * <p>
+ * Thread safe: transport of shard group may be used from several event loops.
+ *
+ * @see <a href="https://wiki.wireshark.org/Development/LibpcapFileFormat">libpcap file format</a>
+ */
+final class SipCapture {
+    // nanosecond resolution pcap, written big-endian
+    private static final int MAGIC = 0xa1b23c4d;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int SNAPLEN = 65535;
+    private static final int FILE_HEADER = 24;
+    private static final int RECORD_HEADER = 16;
+    private static final int IPV4_HEADER = 20;
+    private static final int IPV6_HEADER = 40;
+    private static final int UDP_HEADER = 8;
+    private static final int MAX_PAYLOAD = SNAPLEN - IPV6_HEADER - UDP_HEADER;
+    private static final int MAX_CACHED_ADDRESSES = 4096;
+    private static final byte[] UNKNOWN_ADDRESS = new byte[4];
+
+    private final Path directory;
+    private final String name;
+    private final int fileSize;
+    private final int files;
+
+    private final long wallNanosBase = System.currentTimeMillis() * 1_000_000;
+    private final long nanoTimeBase = System.nanoTime();
+    // IP address by host literal, host names are not resolved
+    private final Map<String, byte[]> addresses = new HashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int fileIndex = -1;
+    private long packets;
+    private boolean closed;
+
+    /**
+     * @param name files are named name-N.pcap, N from 0 to files - 1
+     */
+    SipCapture(Path directory, String name, int fileSize, int files) {
+        if (fileSize < FILE_HEADER + RECORD_HEADER + SNAPLEN) {
+            throw new IllegalArgumentException("Capture file size " + fileSize + " is less than max packet size");
+        }
+        this.directory = directory;
+        this.name = name;
+        this.fileSize = fileSize;
+        this.files = files;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rotate();
+    }
+
+    /**
+     * Captures message received or sent
+     */
+    synchronized void packet(String sourceHost, int sourcePort, String destinationHost, int destinationPort,
+                             byte[] message) {
+        if (closed) {
+            return;
+        }
+        int length = Math.min(message.length, MAX_PAYLOAD);
+        writeHeaders(sourceHost, sourcePort, destinationHost, destinationPort, length, message.length);
+        buffer.put(message, 0, length);
+        packets++;
+    }
+
+    /**
+     * Captures message sent, buffer indexes are not changed
+     */
+    synchronized void packet(String sourceHost, int sourcePort, String destinationHost, int destinationPort,
+                             ByteBuf message) {
+        if (closed) {
+            return;
+        }
+        int readable = message.readableBytes();
+        int length = Math.min(readable, MAX_PAYLOAD);
+        writeHeaders(sourceHost, sourcePort, destinationHost, destinationPort, length, readable);
+        int position = buffer.position();
+        buffer.limit(position + length);
+        message.getBytes(message.readerIndex(), buffer);
+        buffer.limit(buffer.capacity());
+        buffer.position(position + length);
+        packets++;
+    }
+
+    synchronized long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Truncates active file to its content, further packets are ignored
+     */
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            finishFile();
+        }
+    }
+
+    private void writeHeaders(String sourceHost, int sourcePort, String destinationHost, int destinationPort,
+                              int length, int originalLength) {
+        byte[] source = address(sourceHost);
+        byte[] destination = address(destinationHost);
+        if (source.length != destination.length) {
+            source = toIpv6(source);
+            destination = toIpv6(destination);
+        }
+        int ipHeader = source.length == 4 ? IPV4_HEADER : IPV6_HEADER;
+        int packetLength = ipHeader + UDP_HEADER + length;
+        if (buffer.remaining() < RECORD_HEADER + packetLength) {
+            rotate();
+        }
+
+        long timestamp = wallNanosBase + System.nanoTime() - nanoTimeBase;
+        buffer.putInt((int) (timestamp / 1_000_000_000));
+        buffer.putInt((int) (timestamp % 1_000_000_000));
+        buffer.putInt(packetLength);
+        buffer.putInt(ipHeader + UDP_HEADER + originalLength);
+
+        int udpLength = UDP_HEADER + length;
+        if (ipHeader == IPV4_HEADER) {
+            buffer.put((byte) 0x45); // version 4, header 5 words
+            buffer.put((byte) 0);
+            buffer.putShort((short) packetLength);
+            buffer.putInt(0x4000); // id 0, don't fragment
+            buffer.put((byte) 64); // TTL
+            buffer.put((byte) 17); // UDP
+            buffer.putShort((short) 0); // checksum not validated by Wireshark by default
+        } else {
+            buffer.putInt(0x60000000); // version 6
+            buffer.putShort((short) udpLength);
+            buffer.put((byte) 17); // UDP
+            buffer.put((byte) 64); // hop limit
+        }
+        buffer.put(source);
+        buffer.put(destination);
+        buffer.putShort((short) sourcePort);
+        buffer.putShort((short) destinationPort);
+        buffer.putShort((short) udpLength);
+        buffer.putShort((short) 0); // no checksum
+    }
+
+    private byte[] address(String host) {
+        byte[] address = addresses.get(host);
+        if (address == null) {
+            address = NetUtil.createByteArrayFromIpAddressString(host);
+            if (address == null) {
+                address = UNKNOWN_ADDRESS;
+            }
+            if (addresses.size() >= MAX_CACHED_ADDRESSES) {
+                addresses.clear();
+            }
+            addresses.put(host, address);
+        }
+        return address;
+    }
+
+    private static byte[] toIpv6(byte[] address) {
+        if (address.length == 16) {
+            return address;
+        }
+        // IPv4-mapped IPv6 address ::ffff:a.b.c.d
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(address, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    private void rotate() {
+        finishFile();
+        fileIndex = (fileIndex + 1) % files;
+        Path file = file(fileIndex);
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map capture file " + file, e);
+        }
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) 2); // version 2.4
+        buffer.putShort((short) 4);
+        buffer.putInt(0); // GMT offset
+        buffer.putInt(0); // timestamps accuracy
+        buffer.putInt(SNAPLEN);
+        buffer.putInt(LINKTYPE_RAW);
+    }
+
+    /**
+     * Truncates file to written content, mapping is released by GC
+     */
+    private void finishFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.truncate(buffer.position());
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to truncate capture file " + file(fileIndex), e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    Path file(int index) {
+        return directory.resolve(name + "-" + index + ".pcap");
+    }
+}
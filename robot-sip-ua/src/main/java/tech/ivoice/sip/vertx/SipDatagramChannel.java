@@ -0,0 +1,180 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.NetUtil;
+import io.vertx.core.Handler;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * UDP socket on Netty native epoll transport, used instead of Vert.x datagram socket for high throughput, see
+ * {@link SipVerticleConfig#setNativeUdp(boolean)}. Channel is registered on the event loop of verticle context.
+ * <p>
+ * Receive: datagrams are read with recvmmsg, up to {@link SipVerticleConfig#getUdpReceiveBatch()} per system call,
+ * and passed to receiver on verticle context, as Vert.x handlers are.
+ * <p>
+ * Send: datagrams written on the event loop are not flushed one by one, but by a task queued after the current one,
+ * so all responses and requests produced by one task (e.g. handling a batch of received messages) are sent with
+ * one sendmmsg. Datagrams written from other threads (shards sharing receiver's transport) are flushed at once.
+ *
+ * @see <a href="https://man7.org/linux/man-pages/man2/recvmmsg.2.html">recvmmsg(2)</a>
+ */
+final class SipDatagramChannel {
+    // maximum UDP payload over IPv4, bigger datagrams are truncated by recvmmsg
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int MAX_CACHED_ADDRESSES = 4096;
+
+    private final ContextInternal context;
+    private final SipVerticleConfig config;
+    private final boolean reusePort;
+    private final Handler<DatagramPacket> received;
+    private final Runnable flushTask = this::flush;
+    // IP address by host literal, shared by senders of shard group
+    private final Map<String, InetAddress> addresses = new ConcurrentHashMap<>();
+    private Channel channel;
+    private boolean flushScheduled;
+
+    /**
+     * @param receiver called with datagram bytes and sender on verticle context
+     */
+    SipDatagramChannel(ContextInternal context, SipVerticleConfig config, boolean reusePort,
+                       BiConsumer<byte[], InetSocketAddress> receiver) {
+        this.context = context;
+        this.config = config;
+        this.reusePort = reusePort;
+        this.received = packet -> receiver.accept(ByteBufUtil.getBytes(packet.content()), packet.sender());
+    }
+
+    /**
+     * Native transport is used only if Vert.x event loops are epoll ones
+     */
+    static boolean isAvailable(VertxInternal vertx) {
+        return vertx.isNativeTransportEnabled() && Epoll.isAvailable();
+    }
+
+    ChannelFuture bind() {
+        int receiveBatch = config.getUdpReceiveBatch();
+        Bootstrap bootstrap = new Bootstrap()
+            .group(context.nettyEventLoop())
+            .channel(EpollDatagramChannel.class)
+            .option(EpollChannelOption.SO_REUSEPORT, reusePort)
+            .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, receiveBatch > 1 ? MAX_DATAGRAM_SIZE : 0)
+            .option(ChannelOption.RCVBUF_ALLOCATOR,
+                new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE * receiveBatch).maxMessagesPerRead(16))
+            .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                @Override
+                protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                    context.emit(packet, received);
+                }
+
+                @Override
+                public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                    AbstractSipUserAgent.log.error("Udp channel " + config.getHostPort() + " failed", cause);
+                }
+            });
+        if (config.getUdpReceiveBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, config.getUdpReceiveBufferSize());
+        }
+        if (config.getUdpSendBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, config.getUdpSendBufferSize());
+        }
+        ChannelFuture future = bootstrap.bind(config.getHost(), config.getPort());
+        channel = future.channel();
+        return future;
+    }
+
+    /**
+     * @param content released when written
+     * @param onWritten called when datagram is written or can't be written, null if not needed
+     */
+    void send(ByteBuf content, String host, int port, Runnable onWritten) {
+        InetAddress address = address(host);
+        if (address == null) {
+            context.owner().resolveAddress(host, resolved -> {
+                if (resolved.succeeded()) {
+                    send(content, new InetSocketAddress(resolved.result(), port), onWritten);
+                } else {
+                    content.release();
+                    if (onWritten != null) {
+                        onWritten.run();
+                    }
+                    AbstractSipUserAgent.log.error("Failed to resolve " + host + ": " +
+                        resolved.cause().getMessage());
+                }
+            });
+            return;
+        }
+        send(content, new InetSocketAddress(address, port), onWritten);
+    }
+
+    /**
+     * @return address of IP literal, null for host name
+     */
+    private InetAddress address(String host) {
+        InetAddress address = addresses.get(host);
+        if (address == null) {
+            byte[] bytes = NetUtil.createByteArrayFromIpAddressString(host);
+            if (bytes == null) {
+                return null;
+            }
+            try {
+                address = InetAddress.getByAddress(host, bytes);
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException(e);
+            }
+            if (addresses.size() >= MAX_CACHED_ADDRESSES) {
+                addresses.clear();
+            }
+            addresses.put(host, address);
+        }
+        return address;
+    }
+
+    private void send(ByteBuf content, InetSocketAddress recipient, Runnable onWritten) {
+        DatagramPacket packet = new DatagramPacket(content, recipient);
+        ChannelPromise promise = onWritten == null ? channel.voidPromise() : channel.newPromise();
+        if (onWritten != null) {
+            promise.addListener(future -> onWritten.run());
+        }
+        EventLoop eventLoop = channel.eventLoop();
+        if (!eventLoop.inEventLoop()) {
+            channel.writeAndFlush(packet, promise);
+            return;
+        }
+        channel.write(packet, promise);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            eventLoop.execute(flushTask);
+        }
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        channel.flush();
+    }
+
+    ChannelFuture close() {
+        return channel.close();
+    }
+}
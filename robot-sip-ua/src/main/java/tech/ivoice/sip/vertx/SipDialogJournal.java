@@ -0,0 +1,144 @@
+package tech.ivoice.sip.vertx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Append-only memory-mapped journal of dialog changes, so confirmed dialogs survive verticle restart, see
+ * {@link SipVerticleConfig#setJournalDirectory(String)}. Records are batches of {@link SipDialogReplicator},
+ * one per transaction timer tick with changes.
+ * <p>
+ * File: magic and version, then records of int length and batch, zero length ends the journal. Record length is
+ * written after its batch, so record torn by process crash is not read. Written pages are flushed by OS, journal
+ * survives process crash, but not OS crash.
+ * <p>
+ * Compaction: when record doesn't fit, journal is rewritten with snapshots of live dialogs only, to a new file
+ * replacing the journal atomically. Journal is compacted on recovery too.
+ * <p>
+ * Not thread safe, one file per verticle.
+ */
+final class SipDialogJournal {
+    private static final int MAGIC = 0x5349504a; // SIPJ
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int RECORD_HEADER = 4;
+
+    private final Path file;
+    private final int fileSize;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Maps existing journal or creates empty one
+     */
+    SipDialogJournal(Path file, int fileSize) {
+        this.file = file;
+        this.fileSize = fileSize;
+        long existing;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            existing = Files.exists(file) ? Files.size(file) : 0;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(existing, fileSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map dialog journal " + file, e);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (existing > 0) {
+                AbstractSipUserAgent.log.warn("Replacing dialog journal " + file + " of unknown format");
+            }
+            rewrite(null);
+        }
+        buffer.position(HEADER);
+    }
+
+    /**
+     * Reads records from the start, following appends go after the last complete one
+     *
+     * @param batches called with every record batch
+     */
+    void replay(Consumer<ByteBuffer> batches) {
+        buffer.position(HEADER);
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int position = buffer.position();
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.remaining() - RECORD_HEADER) {
+                break;
+            }
+            int start = position + RECORD_HEADER;
+            batches.accept(buffer.duplicate().position(start).limit(start + length).slice());
+            buffer.position(start + length);
+        }
+    }
+
+    /**
+     * @return false if batch doesn't fit, journal has to be compacted with {@link #rewrite(ByteBuffer)}
+     */
+    boolean append(ByteBuffer batch) {
+        int length = batch.remaining();
+        int position = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER + length) {
+            return false;
+        }
+        buffer.position(position + RECORD_HEADER);
+        buffer.put(batch);
+        buffer.putInt(position, length);
+        return true;
+    }
+
+    /**
+     * Replaces journal with one containing only the live state, mapped at least twice as big as it
+     *
+     * @param live snapshots of live dialogs, null if there are none
+     */
+    void rewrite(ByteBuffer live) {
+        int liveLength = live == null ? 0 : RECORD_HEADER + live.remaining();
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try {
+            FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer compactedBuffer = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(fileSize, HEADER + 2L * liveLength));
+            compactedBuffer.putInt(MAGIC);
+            compactedBuffer.putInt(VERSION);
+            FileChannel previous = channel;
+            channel = compactedChannel;
+            buffer = compactedBuffer;
+            if (live != null) {
+                append(live);
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            previous.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact dialog journal " + file, e);
+        }
+    }
+
+    /**
+     * @return bytes used by header and records
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Mapping is released by GC
+     */
+    void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close dialog journal " + file, e);
+        }
+    }
+}
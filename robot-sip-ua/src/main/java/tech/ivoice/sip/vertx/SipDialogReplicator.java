@@ -0,0 +1,218 @@
+package tech.ivoice.sip.vertx;
+
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogSnapshot;
+
+import javax.sip.DialogState;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replication of confirmed dialogs to a standby node, see {@link SipVerticleConfig#setReplicationAddress(String)},
+ * and to {@link SipDialogJournal}.
+ * <p>
+ * Primary: message path only marks dialog as changed, changes are encoded once per transaction timer tick into one
+ * batch, latest state per dialog: {@link #SNAPSHOT} when dialog is confirmed, {@link #CSEQ} when request is sent in
+ * it, {@link #REMOVE} when it's terminated or removed. Early dialogs are not replicated, their INVITE transaction
+ * can't be continued on other node anyway.
+ * <p>
+ * Standby: replicas are kept by Call-ID until removed by primary, taken over or not updated for dialog lifetime,
+ * see {@link SipVerticleConfig#setDialogLifetime}.
+ * <p>
+ * Batch is a sequence of operations: byte code, then snapshot for {@link #SNAPSHOT}, Call-ID and CSeq long for
+ * {@link #CSEQ}, Call-ID for {@link #REMOVE}, strings encoded as in {@link SipDialogSnapshot}.
+ * <p>
+ * Not thread safe, one instance per verticle.
+ */
+final class SipDialogReplicator {
+    static final byte SNAPSHOT = 1;
+    static final byte CSEQ = 2;
+    static final byte REMOVE = 3;
+
+    private static final long SWEEP_PERIOD_MILLIS = 10_000;
+
+    private static final class Replica {
+        private SipDialogSnapshot snapshot;
+        private long updatedMillis;
+
+        private Replica(SipDialogSnapshot snapshot, long updatedMillis) {
+            this.snapshot = snapshot;
+            this.updatedMillis = updatedMillis;
+        }
+    }
+
+    private final long replicaLifetimeMillis;
+    // false for standby only, changes are not consumed
+    private final boolean tracksChanges;
+    // primary: Call-IDs changed since last batch, local CSeq sent by Call-ID of replicated dialogs
+    private final Set<String> changed = new HashSet<>();
+    private final Map<String, Long> replicated = new HashMap<>();
+    // standby
+    private final Map<String, Replica> replicas = new HashMap<>();
+    private long sweptMillis;
+
+    SipDialogReplicator(SipVerticleConfig config) {
+        this.replicaLifetimeMillis = config.getDialogLifetime(DialogState.CONFIRMED);
+        this.tracksChanges = config.getReplicationAddress() != null || config.getJournalDirectory() != null;
+    }
+
+    void changed(String callId) {
+        if (tracksChanges) {
+            changed.add(callId);
+        }
+    }
+
+    /**
+     * @return changes since previous batch, null if there are none
+     */
+    ByteBuffer nextBatch(SipDialogStore<?> dialogs) {
+        if (changed.isEmpty()) {
+            return null;
+        }
+        List<SipDialogSnapshot> snapshots = new ArrayList<>();
+        List<String> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        int length = 0;
+        for (String callId : changed) {
+            SipDialog<?> dialog = dialogs.get(callId);
+            if (dialog != null && dialog.getState() == DialogState.CONFIRMED) {
+                Long sentCSeq = replicated.get(callId);
+                if (sentCSeq == null) {
+                    SipDialogSnapshot snapshot = dialog.snapshot();
+                    snapshots.add(snapshot);
+                    length += 1 + snapshot.maxEncodedLength();
+                } else if (sentCSeq != dialog.getLocalCSeq()) {
+                    updated.add(callId);
+                    length += 1 + SipDialogSnapshot.maxLength(callId) + Long.BYTES;
+                } else {
+                    continue;
+                }
+                replicated.put(callId, dialog.getLocalCSeq());
+            } else if (replicated.remove(callId) != null) {
+                removed.add(callId);
+                length += 1 + SipDialogSnapshot.maxLength(callId);
+            }
+        }
+        changed.clear();
+        if (length == 0) {
+            return null;
+        }
+        ByteBuffer batch = ByteBuffer.allocate(length);
+        writeSnapshots(batch, snapshots);
+        for (String callId : updated) {
+            batch.put(CSEQ);
+            SipDialogSnapshot.writeString(batch, callId);
+            batch.putLong(replicated.get(callId));
+        }
+        for (String callId : removed) {
+            batch.put(REMOVE);
+            SipDialogSnapshot.writeString(batch, callId);
+        }
+        return batch.flip();
+    }
+
+    /**
+     * @return snapshots of all replicated dialogs, as of the last batch, null if there are none
+     */
+    ByteBuffer liveBatch(SipDialogStore<?> dialogs) {
+        List<SipDialogSnapshot> snapshots = new ArrayList<>(replicated.size());
+        int length = 0;
+        for (Map.Entry<String, Long> entry : replicated.entrySet()) {
+            SipDialog<?> dialog = dialogs.get(entry.getKey());
+            if (dialog == null) {
+                continue;
+            }
+            SipDialogSnapshot snapshot = dialog.snapshot().withLocalCSeq(entry.getValue());
+            snapshots.add(snapshot);
+            length += 1 + snapshot.maxEncodedLength();
+        }
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        ByteBuffer batch = ByteBuffer.allocate(length);
+        writeSnapshots(batch, snapshots);
+        return batch.flip();
+    }
+
+    private static void writeSnapshots(ByteBuffer batch, List<SipDialogSnapshot> snapshots) {
+        for (SipDialogSnapshot snapshot : snapshots) {
+            batch.put(SNAPSHOT);
+            snapshot.writeTo(batch);
+        }
+    }
+
+    /**
+     * Applies batch of primary on standby
+     *
+     * @throws IllegalArgumentException if batch is malformed
+     */
+    void apply(ByteBuffer batch, long nowMillis) {
+        while (batch.hasRemaining()) {
+            byte operation = batch.get();
+            switch (operation) {
+                case SNAPSHOT:
+                    SipDialogSnapshot snapshot = SipDialogSnapshot.readFrom(batch);
+                    replicas.put(snapshot.getCallId(), new Replica(snapshot, nowMillis));
+                    break;
+                case CSEQ:
+                    Replica replica = replicas.get(SipDialogSnapshot.readString(batch));
+                    long localCSeq = batch.getLong();
+                    if (replica != null) {
+                        replica.snapshot = replica.snapshot.withLocalCSeq(localCSeq);
+                        replica.updatedMillis = nowMillis;
+                    }
+                    break;
+                case REMOVE:
+                    replicas.remove(SipDialogSnapshot.readString(batch));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown replication operation " + operation);
+            }
+        }
+    }
+
+    /**
+     * @return replica removed to be taken over by this node, null if there is none
+     */
+    SipDialogSnapshot take(String callId) {
+        Replica replica = replicas.remove(callId);
+        return replica == null ? null : replica.snapshot;
+    }
+
+    int replicas() {
+        return replicas.size();
+    }
+
+    /**
+     * @return all replicas, removed
+     */
+    List<SipDialogSnapshot> takeAll() {
+        List<SipDialogSnapshot> snapshots = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas.values()) {
+            snapshots.add(replica.snapshot);
+        }
+        replicas.clear();
+        return snapshots;
+    }
+
+    /**
+     * Removes replicas primary stopped updating, called on every tick, sweeps once per {@link #SWEEP_PERIOD_MILLIS}
+     */
+    void sweep(long nowMillis) {
+        if (replicaLifetimeMillis == 0 || nowMillis - sweptMillis < SWEEP_PERIOD_MILLIS) {
+            return;
+        }
+        sweptMillis = nowMillis;
+        for (Iterator<Replica> iterator = replicas.values().iterator(); iterator.hasNext(); ) {
+            if (nowMillis - iterator.next().updatedMillis >= replicaLifetimeMillis) {
+                iterator.remove();
+            }
+        }
+    }
+}
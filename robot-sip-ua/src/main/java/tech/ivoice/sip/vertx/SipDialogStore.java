@@ -0,0 +1,195 @@
+package tech.ivoice.sip.vertx;
+
+import tech.ivoice.javax.sip.SipDialog;
+
+import javax.sip.DialogState;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Dialogs of the verticle, bounded by {@link SipVerticleConfig#getMaxDialogs()}.
+ * <p>
+ * Dialogs are evicted when idle (no message sent or received) or alive longer than configured for their current
+ * state, so calls that never complete don't leak. Expiration is checked by incremental sweep: every
+ * {@link #sweep(long, Consumer)} call checks next {@link #SWEEP_BATCH} dialogs from the cursor, so sweep work per
+ * call is bounded regardless of the number of dialogs.
+ * <p>
+ * Dialogs are kept in array besides the map, removed dialog is replaced with the last one, so the sweep cursor
+ * stays valid while dialogs are added and removed.
+ * <p>
+ * Dialogs created and removed, with their lifetime, are reported to {@link SipVerticleConfig#getMetrics()}.
+ * <p>
+ * Not thread safe, used from verticle event loop, only counters can be read from any thread.
+ */
+final class SipDialogStore<T> {
+    static final int SWEEP_BATCH = 256;
+
+    private static final class Entry<T> {
+        private final SipDialog<T> dialog;
+        private final long createdMillis;
+        private long activeMillis;
+        private int index;
+
+        private Entry(SipDialog<T> dialog, long nowMillis) {
+            this.dialog = dialog;
+            this.createdMillis = nowMillis;
+            this.activeMillis = nowMillis;
+        }
+    }
+
+    private final SipVerticleConfig config;
+    private final SipMetrics metrics;
+    private final Map<String, Entry<T>> byCallId = new HashMap<>();
+    private final List<Entry<T>> entries = new ArrayList<>();
+    private int cursor;
+
+    private volatile long evictedIdle;
+    private volatile long evictedExpired;
+    private volatile long rejected;
+
+    SipDialogStore(SipVerticleConfig config) {
+        this.config = config;
+        this.metrics = config.getMetrics();
+    }
+
+    /**
+     * @return dialog or null if there is no dialog with such Call-ID
+     */
+    SipDialog<T> get(String callId) {
+        Entry<T> entry = byCallId.get(callId);
+        return entry == null ? null : entry.dialog;
+    }
+
+    boolean contains(String callId) {
+        return byCallId.containsKey(callId);
+    }
+
+    /**
+     * @return true if store is full and new dialog can't be added, counted as rejected
+     */
+    boolean rejectNew() {
+        if (byCallId.size() < config.getMaxDialogs()) {
+            return false;
+        }
+        rejected++;
+        return true;
+    }
+
+    /**
+     * @throws IllegalStateException if dialog already exists or store is full
+     */
+    void add(SipDialog<T> dialog, long nowMillis) {
+        String callId = dialog.getDialogId();
+        if (byCallId.containsKey(callId)) {
+            throw new IllegalStateException("Dialog already exists, callId = " + callId);
+        }
+        if (rejectNew()) {
+            throw new IllegalStateException("Dialogs limit " + config.getMaxDialogs() + " is reached");
+        }
+        Entry<T> entry = new Entry<>(dialog, nowMillis);
+        entry.index = entries.size();
+        entries.add(entry);
+        byCallId.put(callId, entry);
+        metrics.dialogCreated(dialog.getState());
+    }
+
+    /**
+     * Marks dialog as active, postponing idle eviction
+     */
+    void touch(String callId, long nowMillis) {
+        Entry<T> entry = byCallId.get(callId);
+        if (entry != null) {
+            entry.activeMillis = nowMillis;
+        }
+    }
+
+    /**
+     * @return removed dialog or null if there was no such dialog
+     */
+    SipDialog<T> remove(String callId) {
+        Entry<T> entry = byCallId.remove(callId);
+        if (entry == null) {
+            return null;
+        }
+        removeAt(entry.index);
+        if (metrics.isEnabled()) {
+            metrics.dialogRemoved(entry.dialog.getState(),
+                AbstractSipUserAgent.currentTimeMillis() - entry.createdMillis);
+        }
+        return entry.dialog;
+    }
+
+    /**
+     * Checks next batch of dialogs and evicts expired ones
+     *
+     * @param onEvicted called for every evicted dialog after it's removed
+     */
+    void sweep(long nowMillis, Consumer<SipDialog<T>> onEvicted) {
+        // every dialog is checked at most once per sweep
+        int batch = Math.min(SWEEP_BATCH, entries.size());
+        for (int checked = 0; checked < batch && !entries.isEmpty(); checked++) {
+            if (cursor >= entries.size()) {
+                cursor = 0;
+            }
+            Entry<T> entry = entries.get(cursor);
+            DialogState state = entry.dialog.getState();
+            long lifetime = config.getDialogLifetime(state);
+            long idleTimeout = config.getDialogIdleTimeout(state);
+            boolean expired = lifetime > 0 && nowMillis - entry.createdMillis >= lifetime;
+            boolean idle = idleTimeout > 0 && nowMillis - entry.activeMillis >= idleTimeout;
+            if (expired || idle) {
+                // last entry is moved to the cursor position and checked next
+                byCallId.remove(entry.dialog.getDialogId());
+                removeAt(cursor);
+                if (expired) {
+                    evictedExpired++;
+                } else {
+                    evictedIdle++;
+                }
+                if (metrics.isEnabled()) {
+                    metrics.dialogRemoved(state, nowMillis - entry.createdMillis);
+                }
+                onEvicted.accept(entry.dialog);
+            } else {
+                cursor++;
+            }
+        }
+    }
+
+    int size() {
+        return byCallId.size();
+    }
+
+    /**
+     * @return number of dialogs evicted as idle
+     */
+    long getEvictedIdle() {
+        return evictedIdle;
+    }
+
+    /**
+     * @return number of dialogs evicted as alive longer than lifetime
+     */
+    long getEvictedExpired() {
+        return evictedExpired;
+    }
+
+    /**
+     * @return number of dialogs not created because store was full
+     */
+    long getRejected() {
+        return rejected;
+    }
+
+    private void removeAt(int index) {
+        int last = entries.size() - 1;
+        Entry<T> moved = entries.remove(last);
+        if (index != last) {
+            entries.set(index, moved);
+            moved.index = index;
+        }
+    }
+}
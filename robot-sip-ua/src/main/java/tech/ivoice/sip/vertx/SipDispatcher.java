@@ -0,0 +1,412 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.buffer.Unpooled;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.vertx.core.AbstractVerticle;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static tech.ivoice.sip.vertx.SipHeaderScanner.CALL_ID;
+import static tech.ivoice.sip.vertx.SipHeaderScanner.CALL_ID_COMPACT;
+
+/**
+ * Stateless front dispatcher of udp SIP traffic to several user agent nodes (backends): every datagram is forwarded
+ * as is to the backend owning its Call-ID on {@link SipHashRing}, so all messages of a dialog reach the same node
+ * without dialog state kept here. Only the Call-ID header is scanned, see {@link SipHeaderScanner}.
+ * <p>
+ * Backends see dispatcher as the sender of all messages, so dispatcher stamps top Via of requests with
+ * {@code received} and {@code rport} (when the peer asked for it) of the peer, as backend would do receiving the
+ * request directly. Backends must use this Via as is, see {@link SipVerticleConfig#setTrustTopVia(boolean)}, then
+ * their responses go to the peer directly, not through dispatcher. Per-source limit should be disabled on backends,
+ * see {@link SipVerticleConfig#setMaxSourceCallsPerSecond(int)}.
+ * <p>
+ * Health: every backend is sent OPTIONS each {@link SipDispatcherConfig#setHealthCheckInterval(long)}, backend
+ * missing {@link SipDispatcherConfig#setHealthCheckFailures(int)} answers in a row leaves the ring and joins it again
+ * on the next answer. Backends may be added and removed at runtime too. Only calls of the backend joining or leaving
+ * move, calls of a dead backend move to the backends which don't know them.
+ * <p>
+ * Socket is the same as of {@link AbstractSipUserAgent} udp transport: Vert.x datagram socket, or
+ * {@link SipDatagramChannel} with batched reads and writes when native udp is enabled. Messages without Call-ID and
+ * messages received while no backend is alive are dropped.
+ * <p>
+ * Deploy single instance, state is accessed on its context only. Methods may be called from any thread.
+ */
+public class SipDispatcher extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(SipDispatcher.class);
+    static final String HEALTH_CALL_ID_PREFIX = "dispatcher-health-";
+    private static final byte[] HEALTH_CALL_ID_PREFIX_BYTES = HEALTH_CALL_ID_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_START = "SIP/2.0 ".getBytes(StandardCharsets.US_ASCII);
+    private static final String VIA = "via";
+    private static final char VIA_COMPACT = 'v';
+
+    private static final class Backend {
+        private final String key;
+        private final String host;
+        private final int port;
+        private boolean alive = true;
+        // health checks sent since the last answer
+        private int unanswered;
+        private long cseq;
+
+        private Backend(String key, String host, int port) {
+            this.key = key;
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    private final SipDispatcherConfig config;
+    // by host:port, alive or not
+    private final Map<String, Backend> backends = new LinkedHashMap<>();
+    private SipHashRing<Backend> ring;
+    private DatagramSocket socket;
+    // used instead of socket when enabled, see SipVerticleConfig#setNativeUdp
+    private SipDatagramChannel channel;
+    private long healthTimerId = -1;
+
+    private volatile long forwarded;
+    private volatile long dropped;
+    private volatile int aliveBackends;
+
+    public SipDispatcher(SipDispatcherConfig config) {
+        this.config = config;
+        for (String key : config.getBackends()) {
+            int colon = key.lastIndexOf(':');
+            String host = key.substring(0, colon);
+            if (host.startsWith("[")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            backends.put(key, new Backend(key, host, Integer.parseInt(key.substring(colon + 1))));
+        }
+        rebuildRing();
+    }
+
+    @Override
+    public Uni<Void> asyncStart() {
+        if (config.getHealthCheckInterval() > 0) {
+            healthTimerId = vertx.setPeriodic(config.getHealthCheckInterval(), id -> checkHealth());
+        }
+        SipVerticleConfig listener = config.getListener();
+        if (listener.isNativeUdp() && SipDatagramChannel.isAvailable((VertxInternal) vertx.getDelegate())) {
+            channel = new SipDatagramChannel((ContextInternal) context, listener, false,
+                (bytes, sender) -> onDatagram(bytes, null, sender.getAddress().getHostAddress(), sender.getPort()));
+            return Uni.createFrom().<Void>emitter(emitter -> channel.bind().addListener(future -> {
+                    if (future.isSuccess()) {
+                        emitter.complete(null);
+                    } else {
+                        emitter.fail(future.cause());
+                    }
+                }))
+                .emitOn(task -> context.runOnContext(v -> task.run()))
+                .invoke(() -> log.info("Dispatching " + listener.getHostPort() + " with native transport to " +
+                    backends.keySet()))
+                .onFailure().invoke(throwable -> log.error(throwable.getMessage()));
+        }
+        if (listener.isNativeUdp()) {
+            log.warn("Native udp is not available, Vert.x is not started with native transport");
+        }
+        DatagramSocketOptions options = new DatagramSocketOptions();
+        if (listener.getUdpReceiveBufferSize() > 0) {
+            options.setReceiveBufferSize(listener.getUdpReceiveBufferSize());
+        }
+        if (listener.getUdpSendBufferSize() > 0) {
+            options.setSendBufferSize(listener.getUdpSendBufferSize());
+        }
+        return vertx.createDatagramSocket(options)
+            .listen(listener.getPort(), listener.getHost())
+            .onItem().invoke(socket -> this.socket = socket.getDelegate())
+            .onItem().invoke(socket -> socket.handler(packet -> {
+                Buffer data = packet.data().getDelegate();
+                onDatagram(ReceivedBytes.of(data), data, packet.sender().host(), packet.sender().port());
+            }))
+            .onItem().invoke(socket -> log.info("Dispatching " + listener.getHostPort() + " to " + backends.keySet()))
+            .onFailure().invoke(throwable -> log.error(throwable.getMessage()))
+            .replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> asyncStop() {
+        if (healthTimerId >= 0) {
+            vertx.cancelTimer(healthTimerId);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        return Uni.createFrom().voidItem();
+    }
+
+    /**
+     * Adds backend at runtime, it takes over about {@code 1/n} of new and existing calls
+     */
+    public void addBackend(String host, int port) {
+        if (offContext()) {
+            context.runOnContext(v -> addBackend(host, port));
+            return;
+        }
+        String key = backendKey(host, port);
+        if (backends.containsKey(key)) {
+            return;
+        }
+        backends.put(key, new Backend(key, host, port));
+        log.info("Backend " + key + " is added");
+        rebuildRing();
+    }
+
+    /**
+     * Removes backend at runtime, its calls move to other backends
+     */
+    public void removeBackend(String host, int port) {
+        if (offContext()) {
+            context.runOnContext(v -> removeBackend(host, port));
+            return;
+        }
+        if (backends.remove(backendKey(host, port)) != null) {
+            log.info("Backend " + backendKey(host, port) + " is removed");
+            rebuildRing();
+        }
+    }
+
+    /**
+     * @return number of messages forwarded to backends
+     */
+    public long getForwardedCount() {
+        return forwarded;
+    }
+
+    /**
+     * @return number of messages dropped: without Call-ID or while no backend is alive
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return number of backends on the ring
+     */
+    public int getAliveBackendCount() {
+        return aliveBackends;
+    }
+
+    void onDatagram(byte[] message, Buffer received, String senderHost, int senderPort) {
+        long bounds = SipHeaderScanner.headerValueBounds(message, 0, message.length, CALL_ID, CALL_ID_COMPACT);
+        if (bounds < 0) {
+            dropped++;
+            return;
+        }
+        if (isHealthAnswer(message, bounds)) {
+            int keyStart = SipHeaderScanner.valueStart(bounds) + HEALTH_CALL_ID_PREFIX_BYTES.length;
+            onHealthAnswer(new String(message, keyStart, SipHeaderScanner.valueEnd(bounds) - keyStart,
+                StandardCharsets.UTF_8));
+            return;
+        }
+        Backend backend = owner(message, bounds);
+        if (backend == null) {
+            dropped++;
+            return;
+        }
+        forwarded++;
+        if (!startsWith(message, 0, message.length, RESPONSE_START)) {
+            byte[] stamped = stampVia(message, senderHost, senderPort);
+            if (stamped != message) {
+                message = stamped;
+                received = null;
+            }
+        }
+        if (channel != null) {
+            channel.send(Unpooled.wrappedBuffer(message), backend.host, backend.port, null);
+        } else {
+            socket.send(received != null ? received : Buffer.buffer(message), backend.port, backend.host);
+        }
+    }
+
+    /**
+     * Replaces {@code received} and {@code rport} parameters of top Via with the sender address, {@code rport} only
+     * if present, as the peer asked for it.
+     *
+     * @return request with stamped Via, the same array if request has no Via
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18.2.1">rfc3261#section-18.2.1</a>
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3581#section-4">rfc3581#section-4</a>
+     */
+    static byte[] stampVia(byte[] message, String senderHost, int senderPort) {
+        long bounds = SipHeaderScanner.headerValueBounds(message, 0, message.length, VIA, VIA_COMPACT);
+        if (bounds < 0) {
+            return message;
+        }
+        int start = SipHeaderScanner.valueStart(bounds);
+        int end = SipHeaderScanner.valueEnd(bounds);
+        int comma = SipHeaderScanner.indexOf(message, (byte) ',', start, end);
+        int viaEnd = comma < 0 ? end : comma;
+        while (viaEnd > start && SipHeaderScanner.isWhitespace(message[viaEnd - 1])) {
+            viaEnd--;
+        }
+        StringBuilder via = new StringBuilder(viaEnd - start + 48);
+        boolean rport = false;
+        int from = start;
+        int semicolon = SipHeaderScanner.indexOf(message, (byte) ';', start, viaEnd);
+        if (semicolon < 0) {
+            semicolon = viaEnd;
+        }
+        via.append(new String(message, from, semicolon - from, StandardCharsets.UTF_8));
+        while (semicolon < viaEnd) {
+            int next = SipHeaderScanner.indexOf(message, (byte) ';', semicolon + 1, viaEnd);
+            if (next < 0) {
+                next = viaEnd;
+            }
+            if (isParameter(message, semicolon + 1, next, "rport")) {
+                rport = true;
+            } else if (!isParameter(message, semicolon + 1, next, "received")) {
+                via.append(new String(message, semicolon, next - semicolon, StandardCharsets.UTF_8));
+            }
+            semicolon = next;
+        }
+        via.append(";received=").append(senderHost);
+        if (rport) {
+            via.append(";rport=").append(senderPort);
+        }
+        byte[] stamped = via.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[message.length - (viaEnd - start) + stamped.length];
+        System.arraycopy(message, 0, result, 0, start);
+        System.arraycopy(stamped, 0, result, start, stamped.length);
+        System.arraycopy(message, viaEnd, result, start + stamped.length, message.length - viaEnd);
+        return result;
+    }
+
+    /**
+     * @param name lower case parameter name
+     */
+    private static boolean isParameter(byte[] message, int from, int to, String name) {
+        int i = SipHeaderScanner.skipWhitespace(message, from, to);
+        if (to - i < name.length()) {
+            return false;
+        }
+        for (int j = 0; j < name.length(); j++, i++) {
+            if (Character.toLowerCase((char) message[i]) != name.charAt(j)) {
+                return false;
+            }
+        }
+        i = SipHeaderScanner.skipWhitespace(message, i, to);
+        return i == to || message[i] == '=';
+    }
+
+    /**
+     * @return key of backend owning Call-ID of message, null if message has no Call-ID or no backend is alive
+     */
+    String backendOf(byte[] message) {
+        long bounds = SipHeaderScanner.headerValueBounds(message, 0, message.length, CALL_ID, CALL_ID_COMPACT);
+        Backend backend = bounds < 0 ? null : owner(message, bounds);
+        return backend == null ? null : backend.key;
+    }
+
+    private Backend owner(byte[] message, long bounds) {
+        return ring.nodeOf(SipHashRing.hash(message, SipHeaderScanner.valueStart(bounds),
+            SipHeaderScanner.valueEnd(bounds)));
+    }
+
+    /**
+     * Sends OPTIONS to every backend, removes from the ring backends which didn't answer enough of previous ones.
+     * Unanswered checks are counted instead of time since the last answer, so event loop lag doesn't look like
+     * dead backend.
+     */
+    void checkHealth() {
+        boolean changed = false;
+        for (Backend backend : backends.values()) {
+            if (backend.alive && backend.unanswered >= config.getHealthCheckFailures()) {
+                backend.alive = false;
+                changed = true;
+                log.warn("Backend " + backend.key + " is down, " + backend.unanswered + " OPTIONS are not answered");
+            }
+            backend.unanswered++;
+            byte[] options = healthCheck(backend);
+            if (channel != null) {
+                channel.send(Unpooled.wrappedBuffer(options), backend.host, backend.port, null);
+            } else if (socket != null) {
+                socket.send(Buffer.buffer(options), backend.port, backend.host);
+            }
+        }
+        if (changed) {
+            rebuildRing();
+        }
+    }
+
+    void onHealthAnswer(String key) {
+        Backend backend = backends.get(key);
+        if (backend == null) {
+            return;
+        }
+        backend.unanswered = 0;
+        if (!backend.alive) {
+            backend.alive = true;
+            log.info("Backend " + key + " is up");
+            rebuildRing();
+        }
+    }
+
+    private byte[] healthCheck(Backend backend) {
+        SipVerticleConfig listener = config.getListener();
+        String sentBy = backendKey(listener.getHost(), listener.getPort());
+        long cseq = ++backend.cseq;
+        String options = "OPTIONS sip:" + backend.key + " SIP/2.0\r\n" +
+            "Via: SIP/2.0/UDP " + sentBy + ";branch=z9hG4bK-health-" + Integer.toHexString(backend.key.hashCode()) +
+            "-" + cseq + "\r\n" +
+            "Max-Forwards: 70\r\n" +
+            "From: <sip:dispatcher@" + sentBy + ">;tag=health\r\n" +
+            "To: <sip:" + backend.key + ">\r\n" +
+            "Call-ID: " + HEALTH_CALL_ID_PREFIX + backend.key + "\r\n" +
+            "CSeq: " + cseq + " OPTIONS\r\n" +
+            "Content-Length: 0\r\n\r\n";
+        return options.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isHealthAnswer(byte[] message, long bounds) {
+        return startsWith(message, 0, message.length, RESPONSE_START) &&
+            startsWith(message, SipHeaderScanner.valueStart(bounds), SipHeaderScanner.valueEnd(bounds),
+                HEALTH_CALL_ID_PREFIX_BYTES);
+    }
+
+    private static boolean startsWith(byte[] message, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (message[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildRing() {
+        List<String> keys = new ArrayList<>(backends.size());
+        List<Backend> alive = new ArrayList<>(backends.size());
+        for (Backend backend : backends.values()) {
+            if (backend.alive) {
+                keys.add(backend.key);
+                alive.add(backend);
+            }
+        }
+        ring = new SipHashRing<>(keys, alive, config.getVirtualNodes());
+        aliveBackends = alive.size();
+        if (alive.isEmpty() && !backends.isEmpty()) {
+            log.error("No backend is alive, messages are dropped");
+        }
+    }
+
+    private boolean offContext() {
+        return context != null && !((ContextInternal) context).isRunningOnContext();
+    }
+
+    static String backendKey(String host, int port) {
+        return (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+    }
+}
@@ -0,0 +1,109 @@
+package tech.ivoice.sip.vertx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configuration of {@link SipDispatcher}
+ */
+public class SipDispatcherConfig {
+    private final SipVerticleConfig listener;
+    // host:port
+    private final List<String> backends = new ArrayList<>();
+
+    private int virtualNodes = 160;
+    // 0 disables
+    private long healthCheckInterval = 1000;
+    private int healthCheckFailures = 3;
+
+    /**
+     * @param listener address dispatcher receives on, udp only; native udp and socket buffer sizes are used too.
+     *                 Host is sent in Via of health checks, so it must be the address backends reach dispatcher at.
+     */
+    public SipDispatcherConfig(SipVerticleConfig listener) {
+        if (!listener.getTransport().equalsIgnoreCase("udp")) {
+            throw new IllegalArgumentException("Dispatcher supports udp only, but was " + listener.getTransport());
+        }
+        this.listener = listener;
+    }
+
+    public SipVerticleConfig getListener() {
+        return listener;
+    }
+
+    public List<String> getBackends() {
+        return Collections.unmodifiableList(backends);
+    }
+
+    /**
+     * Adds backend user agent messages are forwarded to, host must be IP address
+     */
+    public SipDispatcherConfig addBackend(String host, int port) {
+        String backend = SipDispatcher.backendKey(host, port);
+        if (backends.contains(backend)) {
+            throw new IllegalArgumentException("Backend " + backend + " is already added");
+        }
+        backends.add(backend);
+        return this;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Points of every backend on the hash ring. More points spread calls more evenly, but make ring rebuild slower.
+     * Default is 160.
+     */
+    public SipDispatcherConfig setVirtualNodes(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive, but was " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+        return this;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Period of OPTIONS sent to every backend, 0 disables health checks, all backends are considered alive.
+     * Default is 1000 ms.
+     */
+    public SipDispatcherConfig setHealthCheckInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("healthCheckInterval must not be negative, but was " + millis);
+        }
+        this.healthCheckInterval = millis;
+        return this;
+    }
+
+    public int getHealthCheckFailures() {
+        return healthCheckFailures;
+    }
+
+    /**
+     * Backend is removed from the ring when it hasn't answered this many health checks in a row, and returned on
+     * the first answer. Default is 3.
+     */
+    public SipDispatcherConfig setHealthCheckFailures(int failures) {
+        if (failures < 1) {
+            throw new IllegalArgumentException("healthCheckFailures must be positive, but was " + failures);
+        }
+        this.healthCheckFailures = failures;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "SipDispatcherConfig{" +
+            "listener=" + listener.getHostPort() +
+            ", backends=" + backends +
+            ", virtualNodes=" + virtualNodes +
+            ", healthCheckInterval=" + healthCheckInterval +
+            ", healthCheckFailures=" + healthCheckFailures +
+            '}';
+    }
+}
@@ -0,0 +1,89 @@
+package tech.ivoice.sip.vertx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring of backend nodes, see {@link SipDispatcher}. Every node is placed on the ring at
+ * {@code virtualNodes} points hashed from its key, key is owned by the node of the first point at or after its hash.
+ * Ring depends only on the set of node keys, so when node joins or leaves only keys of its arcs move, about
+ * {@code 1/n} of all.
+ * <p>
+ * Immutable, rebuilt on membership change.
+ *
+ * @see <a href="https://dl.acm.org/doi/10.1145/258533.258660">Consistent hashing and random trees</a>
+ */
+final class SipHashRing<N> {
+    private final int[] points;
+    private final N[] owners;
+
+    /**
+     * @param keys  stable keys of nodes, e.g. host:port
+     * @param nodes nodes in the same order as keys
+     */
+    @SuppressWarnings("unchecked")
+    SipHashRing(List<String> keys, List<N> nodes, int virtualNodes) {
+        if (keys.size() != nodes.size()) {
+            throw new IllegalArgumentException("Keys and nodes differ in size: " + keys.size() + ", " + nodes.size());
+        }
+        int size = keys.size() * virtualNodes;
+        // point hash in high int, node index in low int, sorted by hash
+        long[] sorted = new long[size];
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+            int keyHash = hash(key, 0, key.length);
+            for (int v = 0; v < virtualNodes; v++) {
+                sorted[i * virtualNodes + v] = (long) mix(keyHash + v * 0x9e3779b9) << 32 | i;
+            }
+        }
+        Arrays.sort(sorted);
+        points = new int[size];
+        owners = (N[]) new Object[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = (int) (sorted[i] >> 32);
+            owners[i] = nodes.get((int) sorted[i]);
+        }
+    }
+
+    /**
+     * @return owner of key hash, null if ring is empty
+     */
+    N nodeOf(int hash) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    /**
+     * FNV-1a of bytes, finalized with {@link #mix(int)}
+     */
+    static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3 finalizer, spreads close values over the ring
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,120 @@
+package tech.ivoice.sip.vertx;
+
+/**
+ * Finds header values directly in raw SIP message bytes, without parsing whole message.
+ * Header names are matched case-insensitively, compact forms are supported.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-7.3">rfc3261#section-7.3</a>
+ */
+final class SipHeaderScanner {
+    static final String CALL_ID = "call-id";
+    static final char CALL_ID_COMPACT = 'i';
+
+    private SipHeaderScanner() {
+    }
+
+    /**
+     * @param name    lower case header name
+     * @param compact compact form of header name or 0 if header has no compact form
+     * @return start index of the first header value with specified name in high and end index in low int, see
+     * {@link #valueStart(long)} and {@link #valueEnd(long)}, -1 if there is no such header
+     */
+    static long headerValueBounds(byte[] message, int offset, int length, String name, char compact) {
+        int end = offset + length;
+        int lineStart = skipLine(message, offset, end); // start line
+        while (lineStart < end) {
+            int lineEnd = lineEnd(message, lineStart, end);
+            if (lineEnd == lineStart) {
+                return -1; // empty line, end of headers
+            }
+            int colon = indexOf(message, (byte) ':', lineStart, lineEnd);
+            if (colon > 0 && nameEquals(message, lineStart, colon, name, compact)) {
+                int valueStart = skipWhitespace(message, colon + 1, lineEnd);
+                int valueEnd = lineEnd;
+                while (valueEnd > valueStart && isWhitespace(message[valueEnd - 1])) {
+                    valueEnd--;
+                }
+                return (long) valueStart << 32 | valueEnd;
+            }
+            lineStart = skipLine(message, lineEnd, end);
+        }
+        return -1;
+    }
+
+    static int valueStart(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    static int valueEnd(long bounds) {
+        return (int) bounds;
+    }
+
+    /**
+     * @return index of CR or LF ending the line started at from (or end)
+     */
+    static int lineEnd(byte[] message, int from, int end) {
+        int i = from;
+        while (i < end && message[i] != '\r' && message[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return index of the next line start after line containing from
+     */
+    static int skipLine(byte[] message, int from, int end) {
+        int i = lineEnd(message, from, end);
+        if (i < end && message[i] == '\r') {
+            i++;
+        }
+        if (i < end && message[i] == '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    static int indexOf(byte[] message, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (message[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int skipWhitespace(byte[] message, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(message[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * @param name lower case header name
+     */
+    static boolean nameEquals(byte[] message, int from, int colon, String name, char compact) {
+        int nameEnd = colon;
+        while (nameEnd > from && isWhitespace(message[nameEnd - 1])) {
+            nameEnd--;
+        }
+        int nameLength = nameEnd - from;
+        if (nameLength == 1) {
+            return compact != 0 && (message[from] | 0x20) == compact;
+        }
+        if (nameLength != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if ((message[from + i] | 0x20) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.CallIdentifier;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+
+import javax.sip.address.SipURI;
+import javax.sip.address.URI;
+import javax.sip.header.HeaderAddress;
+
+/**
+ * One-line summary of SIP message for debug log, written from fields already parsed into reusable builder:
+ * no message encoding, regex or string concatenation. Returned builder is passed to logger as is, it's valid
+ * until the next call, so logger must format it synchronously (as Log4j 2 garbage-free logging does with
+ * {@link CharSequence} message).
+ * <p>
+ * Not thread safe, one instance per verticle.
+ */
+final class SipLogLine {
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * "Client: sending INVITE to Server Call-ID=... CSeq=1"
+     */
+    CharSequence sending(SIPRequest request) {
+        start(request.getFrom()).append(": sending ").append(request.getMethod())
+            .append(" to ").append(user(request.getTo()));
+        return appendIds(request);
+    }
+
+    /**
+     * "Server: responding 200 OK on INVITE Call-ID=... CSeq=1"
+     */
+    CharSequence responding(SIPResponse response) {
+        start(response.getTo()).append(": responding ").append(response.getStatusCode()).append(' ')
+            .append(response.getReasonPhrase()).append(" on ").append(response.getCSeq().getMethod());
+        return appendIds(response);
+    }
+
+    /**
+     * "Server: got INVITE from Client Call-ID=... CSeq=1"
+     */
+    CharSequence received(SIPRequest request) {
+        start(request.getTo()).append(": got ").append(request.getMethod())
+            .append(" from ").append(user(request.getFrom()));
+        return appendIds(request);
+    }
+
+    /**
+     * "Client: got 200 OK on INVITE from Server Call-ID=... CSeq=1"
+     */
+    CharSequence received(SIPResponse response) {
+        start(response.getFrom()).append(": got ").append(response.getStatusCode()).append(' ')
+            .append(response.getReasonPhrase()).append(" on ").append(response.getCSeq().getMethod())
+            .append(" from ").append(user(response.getTo()));
+        return appendIds(response);
+    }
+
+    /**
+     * "Absorbed retransmission INVITE Call-ID=... CSeq=1 INVITE"
+     */
+    CharSequence head(String event, SipMessageHead head) {
+        line.setLength(0);
+        line.append(event).append(' ');
+        if (head.isRequest()) {
+            line.append(head.getMethod());
+        } else {
+            line.append(head.getStatusCode());
+        }
+        return line.append(" Call-ID=").append(head.getCallId())
+            .append(" CSeq=").append(head.getCSeqNumber()).append(' ').append(head.getCSeqMethod());
+    }
+
+    private StringBuilder start(HeaderAddress party) {
+        line.setLength(0);
+        return line.append(user(party));
+    }
+
+    private CharSequence appendIds(SIPMessage message) {
+        // CallID.getCallId() encodes new string
+        CallIdentifier callId = ((CallID) message.getCallId()).getCallIdentifer();
+        line.append(" Call-ID=").append(callId.getLocalId());
+        if (callId.getHost() != null) {
+            line.append('@').append(callId.getHost());
+        }
+        return line.append(" CSeq=").append(message.getCSeq().getSeqNumber());
+    }
+
+    static String user(HeaderAddress party) {
+        URI uri = party.getAddress().getURI();
+        return uri instanceof SipURI ? ((SipURI) uri).getUser() : null;
+    }
+}
@@ -0,0 +1,96 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.ContentLength;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.Iterator;
+import java.util.ListIterator;
+
+/**
+ * Encodes SIP message straight into pooled direct buffer, which is written to the socket as is.
+ * <p>
+ * Start line and headers are appended into thread local {@link StringBuilder} (headers encode themselves into it),
+ * then written into the buffer, body bytes are written after them. Output is the same as of
+ * {@link SIPMessage#encode()}, but without intermediate String and byte array.
+ * <p>
+ * Caller owns returned buffer and must release it after it's written, Vert.x doesn't release buffers it
+ * has not allocated. Message sent several times (retransmitted) is encoded into unpooled heap buffer instead,
+ * see {@link #encodeUnpooled(SIPMessage)}.
+ */
+final class SipMessageEncoder {
+    private static final String CRLF = "\r\n";
+    // builders grown by unusually large messages are not kept
+    private static final int MAX_KEPT_CAPACITY = 16 * 1024;
+
+    private static final FastThreadLocal<StringBuilder> HEAD = new FastThreadLocal<>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    private SipMessageEncoder() {
+    }
+
+    /**
+     * @return pooled direct buffer, must be released by caller
+     */
+    static ByteBuf encode(SIPMessage message) {
+        return encode(message, PooledByteBufAllocator.DEFAULT, true);
+    }
+
+    /**
+     * @return heap buffer left to garbage collector, can be written any number of times
+     */
+    static ByteBuf encodeUnpooled(SIPMessage message) {
+        return encode(message, UnpooledByteBufAllocator.DEFAULT, false);
+    }
+
+    private static ByteBuf encode(SIPMessage message, ByteBufAllocator allocator, boolean direct) {
+        StringBuilder head = HEAD.get();
+        head.setLength(0);
+        if (message instanceof SIPRequest) {
+            ((SIPRequest) message).getRequestLine().encode(head);
+        } else if (message instanceof SIPResponse) {
+            ((SIPResponse) message).getStatusLine().encode(head);
+        } else {
+            throw new IllegalArgumentException("Unexpected message " + message.getClass());
+        }
+        for (Iterator<SIPHeader> headers = message.getHeaders(); headers.hasNext(); ) {
+            SIPHeader header = headers.next();
+            if (!(header instanceof ContentLength)) {
+                header.encode(head);
+            }
+        }
+        for (ListIterator<String> unrecognized = message.getUnrecognizedHeaders(); unrecognized.hasNext(); ) {
+            head.append(unrecognized.next()).append(CRLF);
+        }
+        ContentLength contentLength = (ContentLength) message.getContentLength();
+        if (contentLength != null) {
+            contentLength.encode(head);
+        }
+        head.append(CRLF);
+
+        byte[] body = message.getRawContent();
+        int bodyLength = body == null ? 0 : body.length;
+        int length = ByteBufUtil.utf8Bytes(head) + bodyLength;
+        ByteBuf buffer = direct ? allocator.directBuffer(length) : allocator.heapBuffer(length);
+        ByteBufUtil.writeUtf8(buffer, head);
+        if (bodyLength > 0) {
+            buffer.writeBytes(body);
+        }
+        if (head.capacity() > MAX_KEPT_CAPACITY) {
+            HEAD.remove();
+        }
+        return buffer;
+    }
+}
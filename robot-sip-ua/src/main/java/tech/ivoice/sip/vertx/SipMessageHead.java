@@ -0,0 +1,434 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.MessageParser;
+
+import javax.sip.message.Request;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import static tech.ivoice.sip.vertx.SipHeaderScanner.*;
+
+/**
+ * First phase of two-phase parsing: routing-critical fields taken directly from raw message bytes.
+ * <p>
+ * Only start line, Call-ID, CSeq, top Via branch and From/To tags are extracted, which is enough to drop
+ * keep-alives and stray messages or to route message to its dialog. Full message is parsed lazily
+ * on first {@link #message(MessageParser)} call.
+ * <p>
+ * Positions of header lines copied from request to response are remembered,
+ * so responses can be encoded from raw request bytes, see {@link SipResponseTemplates}.
+ */
+final class SipMessageHead {
+    private static final byte[] SIP_VERSION = "SIP/2.0".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] METHODS = {
+        Request.INVITE, Request.ACK, Request.BYE, Request.CANCEL, Request.OPTIONS, Request.MESSAGE,
+        Request.REGISTER, Request.INFO, Request.PRACK, Request.UPDATE, Request.SUBSCRIBE, Request.NOTIFY,
+        Request.REFER
+    };
+
+    private final byte[] bytes;
+    private String method;
+    private int statusCode;
+    private String callId;
+    private long cSeqNumber = -1;
+    private String cSeqMethod;
+    private String branch;
+    private String fromTag;
+    private String toTag;
+
+    // header lines [start, end) without CRLF
+    private int[] viaLines = new int[4];
+    private int viaLinesCount;
+    private int fromLineStart = -1;
+    private int fromLineEnd;
+    private int toLineStart = -1;
+    private int toLineEnd;
+    private int toAddressStart;
+    private int toAddressEnd;
+    private int callIdLineStart = -1;
+    private int callIdLineEnd;
+    private int cSeqLineStart = -1;
+    private int cSeqLineEnd;
+    private boolean folded;
+
+    private SIPMessage message;
+
+    private SipMessageHead(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return head or null if bytes contain no message (CRLF keep-alive)
+     * @throws ParseException if start line or routing-critical headers are malformed
+     */
+    static SipMessageHead parse(byte[] bytes) throws ParseException {
+        int end = bytes.length;
+        int lineStart = 0;
+        // https://datatracker.ietf.org/doc/html/rfc5626#section-3.5.1 CRLF keep-alive
+        while (lineStart < end && (bytes[lineStart] == '\r' || bytes[lineStart] == '\n')) {
+            lineStart++;
+        }
+        if (lineStart == end) {
+            return null;
+        }
+        SipMessageHead head = new SipMessageHead(bytes);
+        int lineEnd = lineEnd(bytes, lineStart, end);
+        head.parseStartLine(lineStart, lineEnd);
+        lineStart = skipLine(bytes, lineEnd, end);
+
+        while (lineStart < end) {
+            lineEnd = lineEnd(bytes, lineStart, end);
+            if (lineEnd == lineStart) {
+                break; // end of headers
+            }
+            int colon = indexOf(bytes, (byte) ':', lineStart, lineEnd);
+            if (isWhitespace(bytes[lineStart])) {
+                head.folded = true; // continuation of previous header line
+            } else if (colon > 0) {
+                head.parseHeader(lineStart, colon, lineEnd);
+            }
+            lineStart = skipLine(bytes, lineEnd, end);
+        }
+
+        if (head.callId == null) {
+            throw new ParseException("Call-ID header is missing", 0);
+        }
+        if (head.cSeqMethod == null) {
+            throw new ParseException("CSeq header is missing", 0);
+        }
+        return head;
+    }
+
+    private void parseStartLine(int from, int to) throws ParseException {
+        if (startsWith(from, to, SIP_VERSION) && from + SIP_VERSION.length < to
+            && bytes[from + SIP_VERSION.length] == ' ') {
+            // Status-Line = SIP-Version SP Status-Code SP Reason-Phrase
+            int codeStart = from + SIP_VERSION.length + 1;
+            int code = 0;
+            int i = codeStart;
+            while (i < to && bytes[i] >= '0' && bytes[i] <= '9') {
+                code = code * 10 + (bytes[i] - '0');
+                i++;
+            }
+            if (i - codeStart != 3) {
+                throw new ParseException("Bad status line", from);
+            }
+            this.statusCode = code;
+        } else {
+            // Request-Line = Method SP Request-URI SP SIP-Version
+            int methodEnd = indexOf(bytes, (byte) ' ', from, to);
+            if (methodEnd <= from) {
+                throw new ParseException("Bad request line", from);
+            }
+            this.method = method(from, methodEnd);
+        }
+    }
+
+    private void parseHeader(int from, int colon, int to) throws ParseException {
+        int valueStart = skipWhitespace(bytes, colon + 1, to);
+        if (callIdLineStart < 0 && nameEquals(bytes, from, colon, "call-id", 'i')) {
+            int valueEnd = trimEnd(valueStart, to);
+            callId = new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+            callIdLineStart = from;
+            callIdLineEnd = to;
+        } else if (cSeqLineStart < 0 && nameEquals(bytes, from, colon, "cseq", (char) 0)) {
+            parseCSeq(valueStart, to);
+            cSeqLineStart = from;
+            cSeqLineEnd = to;
+        } else if (nameEquals(bytes, from, colon, "via", 'v')) {
+            if (viaLinesCount == 0) {
+                // top Via is the first value of the first Via header
+                int valueEnd = indexOf(bytes, (byte) ',', valueStart, to);
+                branch = parameter(valueStart, valueEnd < 0 ? to : valueEnd, "branch");
+            }
+            addViaLine(from, to);
+        } else if (fromLineStart < 0 && nameEquals(bytes, from, colon, "from", 'f')) {
+            fromTag = parameter(addressEnd(valueStart, to), to, "tag");
+            fromLineStart = from;
+            fromLineEnd = to;
+        } else if (toLineStart < 0 && nameEquals(bytes, from, colon, "to", 't')) {
+            int addressEnd = addressEnd(valueStart, to);
+            toTag = parameter(addressEnd, to, "tag");
+            toLineStart = from;
+            toLineEnd = to;
+            toAddressStart = valueStart;
+            if (addressEnd > valueStart) {
+                toAddressEnd = addressEnd + 1; // include '>'
+            } else {
+                int parameters = indexOf(bytes, (byte) ';', valueStart, to);
+                toAddressEnd = trimEnd(valueStart, parameters < 0 ? to : parameters);
+            }
+        }
+    }
+
+    private void addViaLine(int from, int to) {
+        if (viaLinesCount * 2 == viaLines.length) {
+            viaLines = Arrays.copyOf(viaLines, viaLines.length * 2);
+        }
+        viaLines[viaLinesCount * 2] = from;
+        viaLines[viaLinesCount * 2 + 1] = to;
+        viaLinesCount++;
+    }
+
+    private void parseCSeq(int from, int to) throws ParseException {
+        long number = 0;
+        int i = from;
+        while (i < to && bytes[i] >= '0' && bytes[i] <= '9') {
+            number = number * 10 + (bytes[i] - '0');
+            i++;
+        }
+        int methodStart = skipWhitespace(bytes, i, to);
+        int methodEnd = trimEnd(methodStart, to);
+        if (i == from || methodStart == i || methodEnd == methodStart) {
+            throw new ParseException("Bad CSeq header", from);
+        }
+        this.cSeqNumber = number;
+        this.cSeqMethod = method(methodStart, methodEnd);
+    }
+
+    /**
+     * Header parameters follow address, URI parameters are inside angle brackets
+     *
+     * @return index of '>' or from if address has no angle brackets
+     */
+    private int addressEnd(int from, int to) {
+        int laquot = indexOf(bytes, (byte) '<', from, to);
+        if (laquot < 0) {
+            return from;
+        }
+        int raquot = indexOf(bytes, (byte) '>', laquot, to);
+        return raquot < 0 ? to : raquot;
+    }
+
+    /**
+     * @param name lower case parameter name
+     */
+    private String parameter(int from, int to, String name) {
+        int i = indexOf(bytes, (byte) ';', from, to);
+        while (i >= 0) {
+            int nameStart = skipWhitespace(bytes, i + 1, to);
+            int nameEnd = nameStart;
+            while (nameEnd < to && bytes[nameEnd] != '=' && bytes[nameEnd] != ';' && !isWhitespace(bytes[nameEnd])) {
+                nameEnd++;
+            }
+            if (equalsIgnoreCase(nameStart, nameEnd, name)) {
+                int valueStart = skipWhitespace(bytes, nameEnd, to);
+                if (valueStart < to && bytes[valueStart] == '=') {
+                    valueStart = skipWhitespace(bytes, valueStart + 1, to);
+                    int valueEnd = valueStart;
+                    while (valueEnd < to && bytes[valueEnd] != ';' && bytes[valueEnd] != ','
+                        && !isWhitespace(bytes[valueEnd])) {
+                        valueEnd++;
+                    }
+                    return new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+                }
+                return null;
+            }
+            i = indexOf(bytes, (byte) ';', nameEnd, to);
+        }
+        return null;
+    }
+
+    private String method(int from, int to) {
+        for (String known : METHODS) {
+            if (known.length() == to - from && startsWith(from, to, known)) {
+                return known;
+            }
+        }
+        return new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private boolean startsWith(int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(int from, int to, String lowerCase) {
+        if (to - from != lowerCase.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if ((bytes[from + i] | 0x20) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int trimEnd(int from, int to) {
+        int end = to;
+        while (end > from && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Second phase: full message parsing, done once.
+     * Head is attached to parsed message as {@link SIPMessage#getApplicationData()}.
+     */
+    SIPMessage message(MessageParser parser) throws ParseException {
+        if (message == null) {
+            message = parser.parseSIPMessage(bytes,
+                true,
+                false,
+                (ex, msg, headerClass, headerText, messageText) -> { // ParseExceptionListener
+                    throw new IllegalArgumentException(ex);
+                });
+            message.setApplicationData(this);
+        }
+        return message;
+    }
+
+    /**
+     * @return head of received message or null if message was created locally
+     */
+    static SipMessageHead of(SIPMessage message) {
+        Object applicationData = message.getApplicationData();
+        return applicationData instanceof SipMessageHead ? (SipMessageHead) applicationData : null;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    boolean isRequest() {
+        return method != null;
+    }
+
+    /**
+     * @return request method or null for response
+     */
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return response status code or 0 for request
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    String getCallId() {
+        return callId;
+    }
+
+    long getCSeqNumber() {
+        return cSeqNumber;
+    }
+
+    String getCSeqMethod() {
+        return cSeqMethod;
+    }
+
+    /**
+     * @return branch of the top Via or null if there is no branch
+     */
+    String getBranch() {
+        return branch;
+    }
+
+    String getFromTag() {
+        return fromTag;
+    }
+
+    String getToTag() {
+        return toTag;
+    }
+
+    /**
+     * @return true if some header value continues on the next line, so header lines can't be copied as is
+     */
+    boolean hasFoldedHeaders() {
+        return folded;
+    }
+
+    int getViaLinesCount() {
+        return viaLinesCount;
+    }
+
+    int getViaLineStart(int index) {
+        return viaLines[index * 2];
+    }
+
+    int getViaLineEnd(int index) {
+        return viaLines[index * 2 + 1];
+    }
+
+    int getFromLineStart() {
+        return fromLineStart;
+    }
+
+    int getFromLineEnd() {
+        return fromLineEnd;
+    }
+
+    int getToLineStart() {
+        return toLineStart;
+    }
+
+    int getToLineEnd() {
+        return toLineEnd;
+    }
+
+    /**
+     * @return start of To name-addr or addr-spec, without header parameters
+     */
+    int getToAddressStart() {
+        return toAddressStart;
+    }
+
+    int getToAddressEnd() {
+        return toAddressEnd;
+    }
+
+    int getCallIdLineStart() {
+        return callIdLineStart;
+    }
+
+    int getCallIdLineEnd() {
+        return callIdLineEnd;
+    }
+
+    int getCSeqLineStart() {
+        return cSeqLineStart;
+    }
+
+    int getCSeqLineEnd() {
+        return cSeqLineEnd;
+    }
+
+    @Override
+    public String toString() {
+        return "SipMessageHead{" +
+            (isRequest() ? "method=" + method : "statusCode=" + statusCode) +
+            ", callId='" + callId + '\'' +
+            ", cSeq=" + cSeqNumber + " " + cSeqMethod +
+            ", branch='" + branch + '\'' +
+            ", fromTag='" + fromTag + '\'' +
+            ", toTag='" + toTag + '\'' +
+            '}';
+    }
+}
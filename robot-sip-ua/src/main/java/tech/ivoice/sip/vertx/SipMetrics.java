@@ -0,0 +1,106 @@
+package tech.ivoice.sip.vertx;
+
+import javax.sip.DialogState;
+
+/**
+ * Instrumentation of {@link AbstractSipUserAgent}, set with {@link SipVerticleConfig#setMetrics(SipMetrics)}.
+ * <p>
+ * Methods are called from verticle event loops: all shards of the config share one instance, so implementation
+ * must be thread safe and should not contend or allocate, e.g. count with {@link java.util.concurrent.atomic.LongAdder}
+ * and meters resolved in advance. Method names passed are the constants of {@link javax.sip.message.Request}
+ * for known methods.
+ * <p>
+ * Dialog state null means dialog without response to initial request yet, as in {@link SipVerticleConfig}.
+ * <p>
+ * Default {@link #NOOP} is disabled: user agent does not even read the clock for it.
+ */
+public interface SipMetrics {
+    SipMetrics NOOP = new SipMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return false if nothing is recorded, so durations must not be measured
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Request received, including retransmissions
+     */
+    default void requestReceived(String method) {
+    }
+
+    default void requestSent(String method) {
+    }
+
+    /**
+     * Response received, including retransmissions
+     *
+     * @param method CSeq method
+     */
+    default void responseReceived(String method, int statusCode) {
+    }
+
+    /**
+     * @param method CSeq method
+     */
+    default void responseSent(String method, int statusCode) {
+    }
+
+    /**
+     * Received message dropped as malformed
+     */
+    default void parseFailed() {
+    }
+
+    /**
+     * @param client true for request sent by this UA, false for request received
+     * @param nanos  time from request sent or received to its final response received or sent
+     */
+    default void transactionCompleted(String method, boolean client, int statusCode, long nanos) {
+    }
+
+    /**
+     * @param method request method of handler: onInvite, onBye or onMessage
+     * @param nanos  time spent in the handler
+     */
+    default void requestHandled(String method, long nanos) {
+    }
+
+    /**
+     * New INVITE rejected with 503 under overload, see {@link SipVerticleConfig#setMaxEventLoopLag(long)}
+     *
+     * @param reason dialogs, event_loop_lag, source_rate or receive_queue
+     */
+    default void inviteRejected(String reason) {
+    }
+
+    /**
+     * Delay of transaction timer tick over its period, measured every tick
+     */
+    default void eventLoopLag(long millis) {
+    }
+
+    /**
+     * Dialog is added: new one in null state, or restored from journal or replica in its restored state
+     */
+    default void dialogCreated(DialogState state) {
+    }
+
+    default void dialogStateChanged(DialogState from, DialogState to) {
+    }
+
+    /**
+     * Dialog is removed: terminated, timed out or evicted
+     *
+     * @param state          last dialog state
+     * @param durationMillis time since dialog creation
+     */
+    default void dialogRemoved(DialogState state, long durationMillis) {
+    }
+}
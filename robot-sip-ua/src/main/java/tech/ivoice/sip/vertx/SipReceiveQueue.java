@@ -0,0 +1,64 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.mutiny.core.net.SocketAddress;
+
+import java.util.ArrayDeque;
+import java.util.function.BiConsumer;
+
+/**
+ * Received messages waiting to be handled, in two priority classes: messages of existing dialogs and transactions
+ * (ACK, BYE, MESSAGE, responses, retransmissions) are handled before INVITEs creating new dialogs. So under a burst
+ * calls already established keep low latency and are not retransmitted by remote side, while new calls wait.
+ * <p>
+ * Queue of new INVITEs is bounded, INVITE is not queued when it's full. Message and its sender are stored as
+ * adjacent elements, no allocation per message.
+ * <p>
+ * Not thread safe, one instance per verticle.
+ */
+final class SipReceiveQueue {
+    private final ArrayDeque<Object> inDialog = new ArrayDeque<>();
+    private final ArrayDeque<Object> newDialog = new ArrayDeque<>();
+    private final int maxNewDialogMessages;
+
+    SipReceiveQueue(int maxNewDialogMessages) {
+        this.maxNewDialogMessages = maxNewDialogMessages;
+    }
+
+    /**
+     * @param newDialog true for INVITE creating new dialog
+     * @return false if queue of new INVITEs is full
+     */
+    boolean offer(SipMessageHead head, SocketAddress sender, boolean newDialog) {
+        ArrayDeque<Object> queue = newDialog ? this.newDialog : inDialog;
+        if (newDialog && queue.size() / 2 >= maxNewDialogMessages) {
+            return false;
+        }
+        queue.add(head);
+        queue.add(sender);
+        return true;
+    }
+
+    /**
+     * Passes message of the highest priority to handler
+     *
+     * @return false if queue is empty
+     */
+    boolean poll(BiConsumer<SipMessageHead, SocketAddress> handler) {
+        ArrayDeque<Object> queue = !inDialog.isEmpty() ? inDialog : newDialog;
+        if (queue.isEmpty()) {
+            return false;
+        }
+        SipMessageHead head = (SipMessageHead) queue.poll();
+        SocketAddress sender = (SocketAddress) queue.poll();
+        handler.accept(head, sender);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return inDialog.isEmpty() && newDialog.isEmpty();
+    }
+
+    int size() {
+        return (inDialog.size() + newDialog.size()) / 2;
+    }
+}
@@ -0,0 +1,251 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.Contact;
+import gov.nist.javax.sip.header.ContactList;
+import gov.nist.javax.sip.header.ContentType;
+import gov.nist.javax.sip.header.RetryAfter;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.header.ViaList;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.mutiny.core.buffer.Buffer;
+
+import javax.sip.header.*;
+import javax.sip.message.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Encodes the most frequent responses (100 Trying, 200 OK, 503 Service Unavailable on overload) from pre-encoded
+ * constant parts and header lines copied from raw request bytes, see {@link SipMessageHead}, instead of
+ * {@link SIPResponse#encode()}.
+ * <p>
+ * Via, From, To, Call-ID and CSeq of such response are the headers of the request, so their raw lines are spliced
+ * as is, only To tag and top Via source (received, rport) are appended. Response is encoded with template only if it
+ * has no other headers than listed above, Contact equal to request To address, Retry-After with seconds only and
+ * application/sdp body,
+ * otherwise null is returned and response has to be encoded as usual.
+ * <p>
+ * Headers copied from request by {@link SIPRequest#createResponse(int)} must not be modified, besides To tag.
+ * <p>
+ * 503 on INVITE rejected under overload is encoded from request head without any message created, see
+ * {@link #encodeOverloaded(SipMessageHead, ViaList, String, int)}.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-8.2.6">rfc3261#section-8.2.6</a>
+ */
+final class SipResponseTemplates {
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] TRYING = ascii("SIP/2.0 100 Trying\r\n");
+    private static final byte[] OK = ascii("SIP/2.0 200 OK\r\n");
+    private static final byte[] SERVICE_UNAVAILABLE = ascii("SIP/2.0 503 Service unavailable\r\n");
+    private static final byte[] TAG = ascii(";tag=");
+    private static final byte[] CONTACT = ascii("Contact: ");
+    private static final byte[] RETRY_AFTER = ascii("Retry-After: ");
+    private static final byte[] CONTENT_TYPE_SDP = ascii("Content-Type: application/sdp\r\n");
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] NO_CONTENT = ascii("Content-Length: 0\r\n\r\n");
+    // enough for overload response to INVITE with a few Via lines
+    private static final int OVERLOADED_SIZE = 512;
+
+    /**
+     * @param requestHead head of the request response is created on
+     * @return encoded response or null if response can't be encoded with template
+     */
+    Buffer encode(SIPResponse response, SipMessageHead requestHead) {
+        byte[] statusLine = statusLine(response.getStatusCode());
+        if (statusLine == null || !matches(response, requestHead)) {
+            return null;
+        }
+        String toTag = response.getToTag();
+        if (requestHead.getToTag() != null && !requestHead.getToTag().equals(toTag)) {
+            return null;
+        }
+        boolean contact = false;
+        RetryAfter retryAfter = null;
+        byte[] body = response.getRawContent();
+        for (Iterator<SIPHeader> headers = response.getHeaders(); headers.hasNext(); ) {
+            SIPHeader header = headers.next();
+            switch (header.getHeaderName()) {
+                case ViaHeader.NAME:
+                case FromHeader.NAME:
+                case ToHeader.NAME:
+                case CallIdHeader.NAME:
+                case CSeqHeader.NAME:
+                case ContentLengthHeader.NAME:
+                    break;
+                case ContactHeader.NAME:
+                    contact = true;
+                    break;
+                case RetryAfterHeader.NAME:
+                    retryAfter = (RetryAfter) header;
+                    if (retryAfter.hasComment() || retryAfter.getParameterNames().hasNext()) {
+                        return null;
+                    }
+                    break;
+                case ContentTypeHeader.NAME:
+                    if (!isSdp((ContentType) header)) {
+                        return null;
+                    }
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (contact && !isRequestToAddress(response.getContactHeaders(), response)) {
+            return null;
+        }
+        if (body != null && body.length > 0 && response.getContentTypeHeader() == null) {
+            return null;
+        }
+
+        byte[] request = requestHead.getBytes();
+        Buffer buffer = Buffer.buffer(request.length + (body == null ? 0 : body.length));
+        buffer.appendBytes(statusLine);
+        Via topVia = response.getTopmostVia();
+        if (topVia.getReceived() != null || topVia.getRPort() > 0) {
+            // top Via was stamped with request source, not the same as raw request bytes anymore
+            buffer.appendString(response.getViaHeaders().encode());
+        } else {
+            for (int i = 0; i < requestHead.getViaLinesCount(); i++) {
+                appendLine(buffer, request, requestHead.getViaLineStart(i), requestHead.getViaLineEnd(i));
+            }
+        }
+        appendLine(buffer, request, requestHead.getFromLineStart(), requestHead.getFromLineEnd());
+        buffer.appendBytes(request, requestHead.getToLineStart(),
+            requestHead.getToLineEnd() - requestHead.getToLineStart());
+        if (requestHead.getToTag() == null && toTag != null) {
+            buffer.appendBytes(TAG).appendString(toTag);
+        }
+        buffer.appendBytes(CRLF);
+        appendLine(buffer, request, requestHead.getCallIdLineStart(), requestHead.getCallIdLineEnd());
+        appendLine(buffer, request, requestHead.getCSeqLineStart(), requestHead.getCSeqLineEnd());
+        if (contact) {
+            appendContact(buffer, request, requestHead);
+        }
+        if (retryAfter != null) {
+            buffer.appendBytes(RETRY_AFTER);
+            appendDecimal(buffer, retryAfter.getRetryAfter());
+            buffer.appendBytes(CRLF);
+        }
+        if (body == null || body.length == 0) {
+            buffer.appendBytes(NO_CONTENT);
+        } else {
+            buffer.appendBytes(CONTENT_TYPE_SDP).appendBytes(CONTENT_LENGTH);
+            appendDecimal(buffer, body.length);
+            buffer.appendBytes(CRLF).appendBytes(CRLF).appendBytes(body);
+        }
+        return buffer;
+    }
+
+    /**
+     * Encodes 503 Service Unavailable with Retry-After on INVITE rejected under overload from request head alone,
+     * neither request nor response message is created, see {@link SipAdmissionControl}
+     *
+     * @param topVia     the first Via line of the request with its source added
+     * @param toTag      tag added to To if request has none
+     * @param retryAfter seconds
+     * @return encoded response or null if request has folded headers and can't be copied line by line
+     */
+    Buffer encodeOverloaded(SipMessageHead requestHead, ViaList topVia, String toTag, int retryAfter) {
+        if (!requestHead.isRequest()
+            || requestHead.hasFoldedHeaders()
+            || requestHead.getFromLineStart() < 0
+            || requestHead.getToLineStart() < 0
+            || requestHead.getViaLinesCount() == 0) {
+            return null;
+        }
+        byte[] request = requestHead.getBytes();
+        Buffer buffer = Buffer.buffer(OVERLOADED_SIZE);
+        buffer.appendBytes(SERVICE_UNAVAILABLE);
+        buffer.appendString(topVia.encode());
+        for (int i = 1; i < requestHead.getViaLinesCount(); i++) {
+            appendLine(buffer, request, requestHead.getViaLineStart(i), requestHead.getViaLineEnd(i));
+        }
+        appendLine(buffer, request, requestHead.getFromLineStart(), requestHead.getFromLineEnd());
+        buffer.appendBytes(request, requestHead.getToLineStart(),
+            requestHead.getToLineEnd() - requestHead.getToLineStart());
+        if (requestHead.getToTag() == null) {
+            buffer.appendBytes(TAG).appendString(toTag);
+        }
+        buffer.appendBytes(CRLF);
+        appendLine(buffer, request, requestHead.getCallIdLineStart(), requestHead.getCallIdLineEnd());
+        appendLine(buffer, request, requestHead.getCSeqLineStart(), requestHead.getCSeqLineEnd());
+        buffer.appendBytes(RETRY_AFTER);
+        appendDecimal(buffer, retryAfter);
+        buffer.appendBytes(CRLF).appendBytes(NO_CONTENT);
+        return buffer;
+    }
+
+    private static byte[] statusLine(int statusCode) {
+        switch (statusCode) {
+            case Response.TRYING:
+                return TRYING;
+            case Response.OK:
+                return OK;
+            case Response.SERVICE_UNAVAILABLE:
+                return SERVICE_UNAVAILABLE;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean matches(SIPResponse response, SipMessageHead requestHead) {
+        return requestHead.isRequest()
+            && !requestHead.hasFoldedHeaders()
+            && requestHead.getFromLineStart() >= 0
+            && requestHead.getToLineStart() >= 0
+            && requestHead.getViaLinesCount() > 0
+            && requestHead.getCSeqNumber() == response.getCSeq().getSeqNumber()
+            && requestHead.getCSeqMethod().equals(response.getCSeq().getMethod())
+            && requestHead.getCallId().equals(response.getCallId().getCallId());
+    }
+
+    private static boolean isSdp(ContentType contentType) {
+        return "application".equalsIgnoreCase(contentType.getContentType())
+            && "sdp".equalsIgnoreCase(contentType.getContentSubType())
+            && !contentType.getParameterNames().hasNext();
+    }
+
+    private static boolean isRequestToAddress(ContactList contacts, SIPResponse response) {
+        if (contacts.size() != 1) {
+            return false;
+        }
+        Contact contact = (Contact) contacts.getFirst();
+        return !contact.getParameterNames().hasNext()
+            && contact.getAddress().equals(response.getTo().getAddress());
+    }
+
+    /**
+     * Contact of UAS is request To address, name-addr is copied, addr-spec is put into angle brackets
+     */
+    private static void appendContact(Buffer buffer, byte[] request, SipMessageHead requestHead) {
+        int start = requestHead.getToAddressStart();
+        int end = requestHead.getToAddressEnd();
+        buffer.appendBytes(CONTACT);
+        if (request[end - 1] == '>') {
+            buffer.appendBytes(request, start, end - start);
+        } else {
+            buffer.appendByte((byte) '<').appendBytes(request, start, end - start).appendByte((byte) '>');
+        }
+        buffer.appendBytes(CRLF);
+    }
+
+    private static void appendLine(Buffer buffer, byte[] bytes, int start, int end) {
+        buffer.appendBytes(bytes, start, end - start).appendBytes(CRLF);
+    }
+
+    private static void appendDecimal(Buffer buffer, int value) {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.appendByte((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,119 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.mutiny.core.net.SocketAddress;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Group of user agent instances (shards) sharing one listening address.
+ * <p>
+ * Every dialog is owned by exactly one shard, chosen by Call-ID hash, so dialog state is always accessed from
+ * the event loop of its shard and needs no synchronization. Messages received by any shard are routed to the
+ * owner shard context.
+ * <p>
+ * Group is shared between instances through Vert.x local map, see {@link #MAP_NAME}.
+ */
+final class SipShardGroup implements Shareable {
+    static final String MAP_NAME = "tech.ivoice.sip.shards";
+
+    interface Shard {
+        void onIncomingMessage(SipMessageHead head, SocketAddress sender);
+    }
+
+    private static final class Member {
+        private final Context context;
+        private final Shard shard;
+
+        private Member(Context context, Shard shard) {
+            this.context = context;
+            this.shard = shard;
+        }
+    }
+
+    private final int size;
+    private final AtomicReferenceArray<Member> members;
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger left = new AtomicInteger();
+    private final CompletableFuture<Void> complete = new CompletableFuture<>();
+    private final CompletableFuture<AbstractSipUserAgent.Transport> receiverTransport = new CompletableFuture<>();
+
+    SipShardGroup(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Shard group size must be positive, but was " + size);
+        }
+        this.size = size;
+        this.members = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return index of joined shard
+     * @throws IllegalStateException if group is already complete
+     */
+    int join(Context context, Shard shard) {
+        int index = joined.getAndIncrement();
+        if (index >= size) {
+            throw new IllegalStateException("Shard group is complete, deploy exactly " + size + " instances");
+        }
+        members.set(index, new Member(context, shard));
+        if (index == size - 1) {
+            complete.complete(null);
+        }
+        return index;
+    }
+
+    /**
+     * @return true when last shard left the group
+     */
+    boolean leave(int index) {
+        members.set(index, null);
+        return left.incrementAndGet() == size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Completes when all shards joined the group
+     */
+    CompletionStage<Void> whenComplete() {
+        return complete;
+    }
+
+    /**
+     * Transport of the shard listening on behalf of the whole group
+     */
+    CompletionStage<AbstractSipUserAgent.Transport> receiverTransport() {
+        return receiverTransport;
+    }
+
+    void setReceiverTransport(AbstractSipUserAgent.Transport transport) {
+        receiverTransport.complete(transport);
+    }
+
+    int shardOf(String callId) {
+        int h = callId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), size);
+    }
+
+    /**
+     * Delivers message to the shard owning its Call-ID. Can be called from any shard event loop.
+     */
+    void route(SipMessageHead head, SocketAddress sender) {
+        Member owner = members.get(shardOf(head.getCallId()));
+        if (owner == null) {
+            return; // shard left the group
+        }
+        if (owner.context == Vertx.currentContext()) {
+            owner.shard.onIncomingMessage(head, sender);
+        } else {
+            owner.context.runOnContext(v -> owner.shard.onIncomingMessage(head, sender));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits SIP byte stream (TCP) into separate messages using Content-Length header.
+ * <p>
+ * Chunks are framed in place, only incomplete tail of the stream is kept between chunks,
+ * so connection is never re-buffered as a whole.
+ * <p>
+ * Not thread safe, one instance per connection.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-18.3">rfc3261#section-18.3</a>
+ */
+final class SipStreamFramer {
+    static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final Consumer<byte[]> messageHandler;
+    private final int maxMessageSize;
+
+    // incomplete message left from previous chunks, null if there is none
+    private Buffer pending;
+    // position in pending from which search of headers end is continued
+    private int scanPosition;
+
+    SipStreamFramer(Consumer<byte[]> messageHandler) {
+        this(messageHandler, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    SipStreamFramer(Consumer<byte[]> messageHandler, int maxMessageSize) {
+        this.messageHandler = messageHandler;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * @param chunk next chunk of the stream
+     * @throws IllegalStateException if stream is malformed and connection must be closed
+     */
+    void handle(Buffer chunk) {
+        Buffer data;
+        if (pending == null) {
+            data = chunk;
+        } else {
+            data = pending.appendBuffer(chunk);
+        }
+
+        int start = 0;
+        int scanFrom = pending == null ? 0 : scanPosition;
+        int length = data.length();
+        while (start < length) {
+            // https://datatracker.ietf.org/doc/html/rfc5626#section-3.5.1 CRLF keep-alive between messages
+            if (data.getByte(start) == CR || data.getByte(start) == LF) {
+                start++;
+                scanFrom = start;
+                continue;
+            }
+            int headersEnd = indexOfHeadersEnd(data, Math.max(start, scanFrom), length);
+            if (headersEnd < 0) {
+                scanFrom = Math.max(start, length - 3);
+                break;
+            }
+            int bodyStart = headersEnd + 4;
+            int messageEnd = bodyStart + contentLength(data, start, headersEnd);
+            if (messageEnd - start > maxMessageSize) {
+                throw new IllegalStateException("SIP message exceeds " + maxMessageSize + " bytes");
+            }
+            if (messageEnd > length) {
+                scanFrom = headersEnd;
+                break;
+            }
+            if (start == 0 && messageEnd == length && data == chunk) {
+                messageHandler.accept(ReceivedBytes.of(chunk)); // chunk is exactly one message
+            } else {
+                messageHandler.accept(data.getBytes(start, messageEnd));
+            }
+            start = messageEnd;
+            scanFrom = start;
+        }
+
+        if (start >= length) {
+            pending = null;
+            scanPosition = 0;
+        } else {
+            if (length - start > maxMessageSize) {
+                throw new IllegalStateException("SIP message exceeds " + maxMessageSize + " bytes");
+            }
+            // copy only incomplete tail
+            pending = Buffer.buffer(length - start).appendBuffer(data, start, length - start);
+            scanPosition = scanFrom - start;
+        }
+    }
+
+    private static int indexOfHeadersEnd(Buffer data, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (data.getByte(i) == CR && data.getByte(i + 1) == LF
+                && data.getByte(i + 2) == CR && data.getByte(i + 3) == LF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds Content-Length (or compact "l") header value in headers block.
+     * Stream transports must always have Content-Length, missing header is treated as empty body.
+     */
+    private static int contentLength(Buffer data, int from, int to) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && data.getByte(lineEnd) != CR) {
+                lineEnd++;
+            }
+            int colon = headerNameEnd(data, lineStart, lineEnd);
+            if (colon > 0 && isContentLength(data, lineStart, colon)) {
+                return parseLength(data, colon + 1, lineEnd);
+            }
+            lineStart = lineEnd + 2;
+        }
+        return 0;
+    }
+
+    private static int headerNameEnd(Buffer data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data.getByte(i) == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isContentLength(Buffer data, int from, int colon) {
+        int nameEnd = colon;
+        while (nameEnd > from && isWhitespace(data.getByte(nameEnd - 1))) {
+            nameEnd--;
+        }
+        int nameLength = nameEnd - from;
+        if (nameLength == 1) {
+            return (data.getByte(from) | 0x20) == 'l';
+        }
+        String name = "content-length";
+        if (nameLength != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if ((data.getByte(from + i) | 0x20) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseLength(Buffer data, int from, int to) {
+        int value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            byte b = data.getByte(i);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+                if (value < 0) {
+                    throw new IllegalStateException("Content-Length overflow");
+                }
+            } else if (!isWhitespace(b) || digits) {
+                break;
+            }
+        }
+        if (!digits) {
+            throw new IllegalStateException("Content-Length without value");
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,116 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import io.vertx.core.impl.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes full SIP messages to trace log from its own thread, so messages are not encoded or decoded on event loop.
+ * <p>
+ * Received message is traced from its received bytes, as it can be modified when handled. Sent message is encoded
+ * by writer: sent messages are not modified after sending. Queue is bounded, messages offered when it's full are
+ * dropped and counted, so event loop never blocks on logging.
+ * <p>
+ * One writer per JVM, shared by all verticles, started on first use.
+ */
+final class SipTraceWriter {
+    static final int CAPACITY = 8192;
+    private static volatile SipTraceWriter instance;
+
+    private final Logger log;
+    private final BlockingQueue<Trace> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+
+    private static final class Trace {
+        private final String user;
+        private final String action;
+        // received bytes or message to encode
+        private final Object message;
+
+        private Trace(String user, String action, Object message) {
+            this.user = user;
+            this.action = action;
+            this.message = message;
+        }
+    }
+
+    SipTraceWriter(Logger log) {
+        this.log = log;
+    }
+
+    static SipTraceWriter get() {
+        SipTraceWriter writer = instance;
+        if (writer == null) {
+            synchronized (SipTraceWriter.class) {
+                writer = instance;
+                if (writer == null) {
+                    writer = new SipTraceWriter(AbstractSipUserAgent.log);
+                    writer.start();
+                    instance = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    void start() {
+        Thread thread = new Thread(this::run, "sip-trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes "user: action" line followed by the message
+     */
+    void trace(String user, String action, SIPMessage message) {
+        SipMessageHead head = SipMessageHead.of(message);
+        offer(new Trace(user, action, head != null ? head.getBytes() : message));
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void offer(Trace trace) {
+        if (!queue.offer(trace)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        long reportedDropped = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            Trace trace;
+            try {
+                trace = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long droppedNow = dropped.get();
+            if (droppedNow != reportedDropped) {
+                log.warn("Trace queue is full, " + (droppedNow - reportedDropped) + " messages not traced");
+                reportedDropped = droppedNow;
+            }
+            write(trace);
+        }
+    }
+
+    private void write(Trace trace) {
+        try {
+            log.trace(trace.user + ": " + trace.action + "\n" + text(trace.message));
+        } catch (RuntimeException e) {
+            log.warn("Failed to trace message: " + e.getMessage());
+        }
+    }
+
+    private static String text(Object message) {
+        if (message instanceof byte[]) {
+            return new String((byte[]) message, StandardCharsets.UTF_8);
+        }
+        return ((SIPMessage) message).encode();
+    }
+}
@@ -0,0 +1,421 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.To;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.mutiny.core.buffer.Buffer;
+import tech.ivoice.javax.sip.SipClientTransaction;
+import tech.ivoice.javax.sip.SipServerTransaction;
+import tech.ivoice.javax.sip.SipTransaction;
+
+import javax.sip.SipException;
+import javax.sip.TransactionState;
+import javax.sip.message.Request;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Drives client and server transaction state machines: retransmits over unreliable transport and times out
+ * transactions without final response or ACK.
+ * <p>
+ * All timers of the verticle are put on one {@link TimingWheel}, two wheel timers (retransmission and timeout)
+ * per transaction, so keeping hundreds of thousands of transactions in flight costs a few objects per transaction
+ * and no Vert.x timers.
+ * <p>
+ * Timers: A, B, D for INVITE client transaction; E, F, K for non-INVITE client transaction; G, H, I for INVITE
+ * server transaction; J for non-INVITE server transaction. As UA calls UA directly (no proxies), 2xx on INVITE is
+ * retransmitted by server with timers G and H until ACK, the same as non-2xx final response, and client absorbs
+ * retransmitted 2xx for 64*T1 re-sending ACK. ACK on non-2xx final response is part of INVITE transaction: client
+ * sends it and re-sends it on every retransmitted final response, server absorbs it even if dialog is already removed.
+ * <p>
+ * Retransmitted requests are recognized by top Via branch and method in message head, before the message is parsed
+ * or reaches dialog and application, and answered with the last response bytes sent in the transaction.
+ * <p>
+ * Not thread safe, used from verticle event loop.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-17">rfc3261#section-17</a>
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-13.3.1.4">rfc3261#section-13.3.1.4</a>
+ */
+final class SipTransactionEngine {
+    static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+    // https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.1.2 Timer D, at least 32 seconds for unreliable
+    private static final long TIMER_D = 32_000;
+
+    private final TimingWheel wheel;
+    private final Supplier<AbstractSipUserAgent.Transport> transport;
+    private final Consumer<SipTransaction> timeoutHandler;
+    private final SipMetrics metrics;
+    private final boolean reliable;
+    private final long t1;
+    private final long t2;
+    private final long t4;
+
+    // key is top Via branch
+    private final Map<String, Entry> clientTransactions = new HashMap<>();
+    // key is top Via branch and method, see serverKey
+    private final Map<String, Entry> serverTransactions = new HashMap<>();
+    // key is Call-ID, INVITE client transactions answered with 2xx, absorbing 2xx retransmissions
+    private final Map<String, Entry> acceptedInvites = new HashMap<>();
+    // key is Call-ID, INVITE server transactions answered with final response, waiting for ACK or its retransmissions
+    private final Map<String, Entry> serverInvites = new HashMap<>();
+
+    /**
+     * @param transport      transport to retransmit messages with
+     * @param timeoutHandler called when transaction is timed out, see {@link #onTimeout(Entry)}
+     * @param nowMillis      current time, see {@link #advance(long)}
+     */
+    SipTransactionEngine(SipVerticleConfig config,
+                         Supplier<AbstractSipUserAgent.Transport> transport,
+                         Consumer<SipTransaction> timeoutHandler,
+                         long nowMillis) {
+        this.wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, nowMillis);
+        this.transport = transport;
+        this.timeoutHandler = timeoutHandler;
+        this.metrics = config.getMetrics();
+        this.reliable = !config.getTransport().equals("udp");
+        this.t1 = config.getTimerT1();
+        this.t2 = config.getTimerT2();
+        this.t4 = config.getTimerT4();
+    }
+
+    /**
+     * Fires expired timers, called periodically with {@link #TICK_MILLIS} period
+     */
+    void advance(long nowMillis) {
+        wheel.advance(nowMillis);
+    }
+
+    /**
+     * @return number of transactions in progress
+     */
+    int size() {
+        return clientTransactions.size() + serverTransactions.size() + acceptedInvites.size();
+    }
+
+    //region Client transactions
+
+    /**
+     * https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.1.2 Timers A, B
+     * https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.2.2 Timers E, F
+     */
+    void onRequestSent(SipClientTransaction transaction) {
+        SIPRequest request = transaction.getOriginalRequest();
+        if (request.getMethod().equals(Request.ACK)) {
+            // ACK on 2xx is not a transaction, it's kept to answer 2xx retransmissions
+            Entry invite = acceptedInvites.get(request.getCallId().getCallId());
+            if (invite != null) {
+                invite.ack = request;
+            }
+            return;
+        }
+        Entry entry = new Entry(transaction, transaction.getBranchId(), true);
+        transaction.setState(isInvite(entry) ? TransactionState.CALLING : TransactionState.TRYING);
+        clientTransactions.put(entry.key, entry);
+        if (!reliable) {
+            entry.interval = t1;
+            wheel.schedule(entry.retransmission, t1);
+        }
+        wheel.schedule(entry.timeout, 64 * t1);
+    }
+
+    /**
+     * @return false if response is retransmission absorbed by transaction and must not be passed to dialog
+     */
+    boolean onResponseReceived(SIPResponse response) {
+        String branch = response.getTopmostVia().getBranch();
+        Entry entry = branch == null ? null : clientTransactions.get(branch);
+        if (entry == null) {
+            Entry accepted = acceptedInvites.get(response.getCallId().getCallId());
+            if (accepted != null && accepted.key.equals(branch) && response.getStatusCode() / 100 == 2) {
+                // https://datatracker.ietf.org/doc/html/rfc3261#section-13.2.2.4 retransmitted 2xx is ACKed again
+                if (accepted.ack != null) {
+                    transport.get().send(accepted.ack);
+                }
+                return false;
+            }
+            return true;
+        }
+        SipTransaction transaction = entry.transaction;
+        TransactionState state = transaction.getState();
+        int code = response.getStatusCode();
+        if (state == TransactionState.COMPLETED) {
+            if (entry.ack != null && code >= 300) {
+                // https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.1.2 retransmitted final response
+                transport.get().send(entry.ack);
+            }
+            return false;
+        }
+        if (code < 200) {
+            transaction.setState(TransactionState.PROCEEDING);
+            if (isInvite(entry)) {
+                // INVITE can stay in proceeding as long as server needs
+                wheel.cancel(entry.retransmission);
+                wheel.cancel(entry.timeout);
+            } else if (entry.retransmission.isScheduled()) {
+                entry.interval = t2;
+            }
+            return true;
+        }
+        wheel.cancel(entry.retransmission);
+        recordCompleted(entry, code);
+        if (isInvite(entry) && code < 300) {
+            clientTransactions.remove(entry.key);
+            transaction.setState(TransactionState.TERMINATED);
+            acceptedInvites.put(response.getCallId().getCallId(), entry);
+            wheel.schedule(entry.timeout, 64 * t1);
+            return true;
+        }
+        transaction.setState(TransactionState.COMPLETED);
+        if (isInvite(entry)) {
+            entry.ack = createErrorAck(transaction.getOriginalRequest(), response);
+            transport.get().send(entry.ack);
+        }
+        long wait = reliable ? 0 : (isInvite(entry) ? TIMER_D : t4);
+        complete(entry, wait);
+        return true;
+    }
+
+    /**
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-17.1.1.3">rfc3261#section-17.1.1.3</a>
+     */
+    private static SIPRequest createErrorAck(SIPRequest invite, SIPResponse response) {
+        try {
+            return invite.createErrorAck((To) response.getTo());
+        } catch (SipException | ParseException e) {
+            throw new IllegalStateException("Failed to create ACK on " + response.getStatusCode(), e);
+        }
+    }
+    //endregion
+
+    //region Server transactions
+
+    /**
+     * Absorbs retransmitted request: the last response sent in its transaction is sent again, retransmitted ACK
+     * is dropped.
+     *
+     * @param head received request head
+     * @return true if request is retransmission and must be dropped
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-17.2.3">rfc3261#section-17.2.3</a>
+     */
+    boolean absorbRetransmission(SipMessageHead head) {
+        String branch = head.getBranch();
+        if (branch == null) {
+            return false;
+        }
+        if (head.getMethod().equals(Request.ACK)) {
+            Entry invite = serverInvites.get(head.getCallId());
+            return invite != null && branch.equals(invite.ackBranch);
+        }
+        Entry entry = serverTransactions.get(serverKey(branch, head.getMethod()));
+        if (entry == null) {
+            return false;
+        }
+        if (entry.encoded != null) {
+            transport.get().send(entry.response, entry.encoded);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if response is sent in server transaction and can be retransmitted,
+     * so encoded response must be passed to {@link #onResponseSent(SIPResponse, Buffer)}
+     */
+    boolean isRetransmittable(SIPResponse response) {
+        return !reliable && serverEntry(response) != null;
+    }
+
+    void onRequestReceived(SipServerTransaction transaction) {
+        SIPRequest request = transaction.getOriginalRequest();
+        if (request.getMethod().equals(Request.ACK)) {
+            onAckReceived(request);
+            return;
+        }
+        Entry entry = new Entry(transaction, serverKey(transaction.getBranchId(), request.getMethod()), false);
+        transaction.setState(isInvite(entry) ? TransactionState.PROCEEDING : TransactionState.TRYING);
+        serverTransactions.put(entry.key, entry);
+    }
+
+    /**
+     * https://datatracker.ietf.org/doc/html/rfc3261#section-17.2.1 Timers G, H, I
+     * https://datatracker.ietf.org/doc/html/rfc3261#section-17.2.2 Timer J
+     */
+    void onResponseSent(SIPResponse response) {
+        onResponseSent(response, null);
+    }
+
+    /**
+     * @param encoded response bytes to retransmit, must not be released or modified after the call,
+     *                null if response has to be encoded on retransmission
+     */
+    void onResponseSent(SIPResponse response, Buffer encoded) {
+        Entry entry = serverEntry(response);
+        if (entry == null || entry.transaction.getState() != TransactionState.PROCEEDING
+            && entry.transaction.getState() != TransactionState.TRYING) {
+            return;
+        }
+        SipTransaction transaction = entry.transaction;
+        entry.response = response;
+        entry.encoded = encoded;
+        if (response.getStatusCode() < 200) {
+            transaction.setState(TransactionState.PROCEEDING);
+            return;
+        }
+        transaction.setState(TransactionState.COMPLETED);
+        recordCompleted(entry, response.getStatusCode());
+        if (isInvite(entry)) {
+            serverInvites.put(response.getCallId().getCallId(), entry);
+            if (!reliable) {
+                entry.interval = t1;
+                wheel.schedule(entry.retransmission, t1);
+            }
+            wheel.schedule(entry.timeout, 64 * t1);
+        } else {
+            complete(entry, reliable ? 0 : 64 * t1);
+        }
+    }
+
+    private void onAckReceived(SIPRequest ack) {
+        confirm(ack.getCallId().getCallId(), ack.getTopmostVia().getBranch());
+    }
+
+    /**
+     * Confirms INVITE server transaction of a dialog already removed, e.g. rejected with non-2xx final response
+     *
+     * @param head received ACK head
+     * @return true if ACK belongs to completed INVITE server transaction and must be dropped
+     */
+    boolean absorbAck(SipMessageHead head) {
+        return confirm(head.getCallId(), head.getBranch());
+    }
+
+    /**
+     * https://datatracker.ietf.org/doc/html/rfc3261#section-17.2.1 ACK stops Timer G, Timer I absorbs its
+     * retransmissions
+     */
+    private boolean confirm(String callId, String ackBranch) {
+        Entry entry = serverInvites.get(callId);
+        if (entry == null || entry.transaction.getState() != TransactionState.COMPLETED) {
+            return false;
+        }
+        wheel.cancel(entry.retransmission);
+        entry.transaction.setState(TransactionState.CONFIRMED);
+        entry.ackBranch = ackBranch;
+        complete(entry, reliable ? 0 : t4);
+        return true;
+    }
+
+    private Entry serverEntry(SIPResponse response) {
+        String branch = response.getTopmostVia().getBranch();
+        return branch == null ? null : serverTransactions.get(serverKey(branch, response.getCSeq().getMethod()));
+    }
+
+    private static String serverKey(String branch, String method) {
+        return branch + ' ' + method;
+    }
+    //endregion
+
+    private void recordCompleted(Entry entry, int statusCode) {
+        if (metrics.isEnabled()) {
+            metrics.transactionCompleted(entry.transaction.getOriginalRequest().getMethod(), entry.client, statusCode,
+                System.nanoTime() - entry.startNanos);
+        }
+    }
+
+    /**
+     * Waits in completed (confirmed) state to absorb retransmissions, then terminates transaction
+     */
+    private void complete(Entry entry, long wait) {
+        if (wait == 0) {
+            terminate(entry);
+        } else {
+            wheel.schedule(entry.timeout, wait);
+        }
+    }
+
+    private void terminate(Entry entry) {
+        wheel.cancel(entry.retransmission);
+        wheel.cancel(entry.timeout);
+        entry.transaction.setState(TransactionState.TERMINATED);
+        if (entry.client) {
+            clientTransactions.remove(entry.key, entry);
+            acceptedInvites.remove(entry.transaction.getOriginalRequest().getCallId().getCallId(), entry);
+        } else {
+            serverTransactions.remove(entry.key, entry);
+            serverInvites.remove(entry.transaction.getOriginalRequest().getCallId().getCallId(), entry);
+        }
+    }
+
+    private void onRetransmission(Entry entry) {
+        if (entry.client) {
+            transport.get().send(entry.transaction.getOriginalRequest());
+            // INVITE request interval is doubled without limit (Timer A), other intervals are capped by T2
+            entry.interval = isInvite(entry) ? entry.interval * 2 : Math.min(entry.interval * 2, t2);
+        } else {
+            if (entry.encoded != null) {
+                transport.get().send(entry.response, entry.encoded);
+            } else {
+                transport.get().send(entry.response);
+            }
+            entry.interval = Math.min(entry.interval * 2, t2);
+        }
+        wheel.schedule(entry.retransmission, entry.interval);
+    }
+
+    /**
+     * Timers B, F, H time out transaction, other timers just end waiting for retransmissions
+     */
+    private void onTimeout(Entry entry) {
+        TransactionState state = entry.transaction.getState();
+        boolean timedOut = state == TransactionState.CALLING
+            || state == TransactionState.TRYING
+            || state == TransactionState.PROCEEDING
+            || !entry.client && isInvite(entry) && state == TransactionState.COMPLETED;
+        terminate(entry);
+        if (timedOut) {
+            timeoutHandler.accept(entry.transaction);
+        }
+    }
+
+    private static boolean isInvite(Entry entry) {
+        return entry.transaction.getOriginalRequest().getMethod().equals(Request.INVITE);
+    }
+
+    private final class Entry {
+        private final SipTransaction transaction;
+        private final String key;
+        private final boolean client;
+        // request sent or received, set only when metrics are enabled
+        private final long startNanos;
+        private final TimingWheel.Timer retransmission = new TimingWheel.Timer() {
+            @Override
+            protected void expire() {
+                onRetransmission(Entry.this);
+            }
+        };
+        private final TimingWheel.Timer timeout = new TimingWheel.Timer() {
+            @Override
+            protected void expire() {
+                onTimeout(Entry.this);
+            }
+        };
+        private long interval;
+        // last response sent in server transaction and its bytes
+        private SIPResponse response;
+        private Buffer encoded;
+        // ACK on final response in INVITE server transaction
+        private String ackBranch;
+        // ACK sent on final response in client INVITE transaction
+        private SIPRequest ack;
+
+        private Entry(SipTransaction transaction, String key, boolean client) {
+            this.transaction = transaction;
+            this.key = key;
+            this.client = client;
+            this.startNanos = metrics.isEnabled() ? System.nanoTime() : 0;
+        }
+    }
+}
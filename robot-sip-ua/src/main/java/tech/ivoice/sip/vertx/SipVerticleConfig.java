@@ -1,10 +1,52 @@
 package tech.ivoice.sip.vertx;
 
+import javax.sip.DialogState;
+import java.util.Arrays;
+import java.util.Objects;
+
 public class SipVerticleConfig {
     private final String host;
     private final int port;
     private final String transport;
 
+    private int shards = 1;
+    // https://datatracker.ietf.org/doc/html/rfc3261#appendix-A
+    private long timerT1 = 500;
+    private long timerT2 = 4000;
+    private long timerT4 = 5000;
+
+    private int maxDialogs = 100_000;
+    // indexed by dialogStateIndex, 0 disables
+    private final long[] dialogIdleTimeouts = {32_000, 180_000, 0, 32_000, 32_000};
+    private final long[] dialogLifetimes = {14_400_000, 14_400_000, 86_400_000, 14_400_000, 14_400_000};
+
+    private boolean nativeUdp;
+    private int udpReceiveBatch = 16;
+    // 0 is OS default
+    private int udpReceiveBufferSize;
+    private int udpSendBufferSize;
+
+    private int receiveBatchSize = 64;
+    private int maxQueuedInvites = 1024;
+    // 0 disables
+    private long maxEventLoopLag = 0;
+    private int maxSourceCallsPerSecond = 0;
+    private int overloadRetryAfter = 5;
+    private boolean trustTopVia;
+
+    private boolean virtualThreadCallbacks;
+
+    private String replicationAddress;
+    private String standbyFor;
+    private String journalDirectory;
+    private int journalFileSize = 64 * 1024 * 1024;
+
+    private SipMetrics metrics = SipMetrics.NOOP;
+
+    private String captureDirectory;
+    private int captureFileSize = 64 * 1024 * 1024;
+    private int captureFiles = 8;
+
     public SipVerticleConfig(String host, int port, String transport) {
         this.host = host;
         this.port = port;
@@ -23,6 +65,387 @@ public class SipVerticleConfig {
         return transport;
     }
 
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Number of verticle instances sharing listening address, see {@link AbstractSipUserAgent}.
+     * Deploy exactly this number of instances.
+     */
+    public SipVerticleConfig setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive, but was " + shards);
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    public long getTimerT1() {
+        return timerT1;
+    }
+
+    /**
+     * RTT estimate in milliseconds, initial retransmission interval, transaction timeout is 64*T1
+     */
+    public SipVerticleConfig setTimerT1(long millis) {
+        this.timerT1 = requirePositive("T1", millis);
+        return this;
+    }
+
+    public long getTimerT2() {
+        return timerT2;
+    }
+
+    /**
+     * Maximum retransmission interval in milliseconds for non-INVITE requests and INVITE responses
+     */
+    public SipVerticleConfig setTimerT2(long millis) {
+        this.timerT2 = requirePositive("T2", millis);
+        return this;
+    }
+
+    public long getTimerT4() {
+        return timerT4;
+    }
+
+    /**
+     * Maximum duration in milliseconds a message will remain in the network
+     */
+    public SipVerticleConfig setTimerT4(long millis) {
+        this.timerT4 = requirePositive("T4", millis);
+        return this;
+    }
+
+    public int getMaxDialogs() {
+        return maxDialogs;
+    }
+
+    /**
+     * Maximum number of dialogs of verticle instance, new incoming INVITE is rejected with 503 when reached,
+     * see {@link #setOverloadRetryAfter(int)}
+     */
+    public SipVerticleConfig setMaxDialogs(int maxDialogs) {
+        if (maxDialogs < 1) {
+            throw new IllegalArgumentException("maxDialogs must be positive, but was " + maxDialogs);
+        }
+        this.maxDialogs = maxDialogs;
+        return this;
+    }
+
+    public boolean isNativeUdp() {
+        return nativeUdp;
+    }
+
+    /**
+     * Enables udp socket on native epoll transport with batched reads (recvmmsg) and writes (sendmmsg), see
+     * {@link SipDatagramChannel}. Takes effect when Vert.x runs on native transport
+     * ({@code VertxOptions.setPreferNativeTransport(true)} and netty-transport-native-epoll available), otherwise
+     * Vert.x datagram socket is used. Disabled by default.
+     */
+    public SipVerticleConfig setNativeUdp(boolean nativeUdp) {
+        this.nativeUdp = nativeUdp;
+        return this;
+    }
+
+    public int getUdpReceiveBatch() {
+        return udpReceiveBatch;
+    }
+
+    /**
+     * Maximum number of datagrams read by one system call with native udp, 1 disables recvmmsg. Default is 16.
+     */
+    public SipVerticleConfig setUdpReceiveBatch(int datagrams) {
+        this.udpReceiveBatch = (int) requirePositive("udpReceiveBatch", datagrams);
+        return this;
+    }
+
+    public int getUdpReceiveBufferSize() {
+        return udpReceiveBufferSize;
+    }
+
+    /**
+     * SO_RCVBUF of udp socket in bytes, 0 keeps OS default (default). Kernel limits it with net.core.rmem_max.
+     */
+    public SipVerticleConfig setUdpReceiveBufferSize(int bytes) {
+        this.udpReceiveBufferSize = (int) requireNotNegative("udpReceiveBufferSize", bytes);
+        return this;
+    }
+
+    public int getUdpSendBufferSize() {
+        return udpSendBufferSize;
+    }
+
+    /**
+     * SO_SNDBUF of udp socket in bytes, 0 keeps OS default (default). Kernel limits it with net.core.wmem_max.
+     */
+    public SipVerticleConfig setUdpSendBufferSize(int bytes) {
+        this.udpSendBufferSize = (int) requireNotNegative("udpSendBufferSize", bytes);
+        return this;
+    }
+
+    public int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    /**
+     * Maximum number of received messages handled per event loop task, messages of existing dialogs first and new
+     * INVITEs last, see {@link SipReceiveQueue}. 0 disables prioritization, messages are handled as received.
+     * Default is 64.
+     */
+    public SipVerticleConfig setReceiveBatchSize(int messages) {
+        this.receiveBatchSize = (int) requireNotNegative("receiveBatchSize", messages);
+        return this;
+    }
+
+    public int getMaxQueuedInvites() {
+        return maxQueuedInvites;
+    }
+
+    /**
+     * Maximum number of new INVITEs waiting for messages of existing dialogs to be handled, INVITE received when
+     * reached is rejected with 503 at once. Default is 1024.
+     */
+    public SipVerticleConfig setMaxQueuedInvites(int invites) {
+        this.maxQueuedInvites = (int) requirePositive("maxQueuedInvites", invites);
+        return this;
+    }
+
+    public long getMaxEventLoopLag() {
+        return maxEventLoopLag;
+    }
+
+    /**
+     * New incoming INVITE is rejected with 503 when smoothed event loop lag exceeds this number of milliseconds,
+     * 0 disables (default). Lag is measured as delay of the transaction timer tick, see {@link SipAdmissionControl}.
+     */
+    public SipVerticleConfig setMaxEventLoopLag(long millis) {
+        this.maxEventLoopLag = requireNotNegative("maxEventLoopLag", millis);
+        return this;
+    }
+
+    public int getMaxSourceCallsPerSecond() {
+        return maxSourceCallsPerSecond;
+    }
+
+    /**
+     * New incoming INVITEs from the same source host exceeding this rate are rejected with 503, bursts up to this
+     * number of INVITEs are admitted. 0 disables (default).
+     */
+    public SipVerticleConfig setMaxSourceCallsPerSecond(int callsPerSecond) {
+        this.maxSourceCallsPerSecond = (int) requireNotNegative("maxSourceCallsPerSecond", callsPerSecond);
+        return this;
+    }
+
+    public int getOverloadRetryAfter() {
+        return overloadRetryAfter;
+    }
+
+    /**
+     * Retry-After seconds of 503 response on INVITE rejected because of overload, default is 5
+     *
+     * @see <a href="https://datatracker.ietf.org/doc/html/rfc3261#section-20.33">rfc3261#section-20.33</a>
+     */
+    public SipVerticleConfig setOverloadRetryAfter(int seconds) {
+        this.overloadRetryAfter = (int) requirePositive("overloadRetryAfter", seconds);
+        return this;
+    }
+
+    public boolean isTrustTopVia() {
+        return trustTopVia;
+    }
+
+    /**
+     * Uses top Via of received requests as is, without received and rport of the sender. Enable on backends behind
+     * {@link SipDispatcher}: the sender is the dispatcher there, which stamps the peer address to Via itself, see
+     * <a href="https://datatracker.ietf.org/doc/html/rfc3581#section-4">RFC 3581</a>. Disabled by default.
+     */
+    public SipVerticleConfig setTrustTopVia(boolean trustTopVia) {
+        this.trustTopVia = trustTopVia;
+        return this;
+    }
+
+    public boolean isVirtualThreadCallbacks() {
+        return virtualThreadCallbacks;
+    }
+
+    /**
+     * Runs application callbacks ({@code onInvite}, {@code onMessage} etc.) on virtual threads instead of event loop,
+     * so they may block, see {@link SipCallbackExecutor}. Disabled by default.
+     */
+    public SipVerticleConfig setVirtualThreadCallbacks(boolean virtualThreadCallbacks) {
+        this.virtualThreadCallbacks = virtualThreadCallbacks;
+        return this;
+    }
+
+    public String getReplicationAddress() {
+        return replicationAddress;
+    }
+
+    /**
+     * Event bus address confirmed dialogs are published to once per timer tick, so a standby node can take them
+     * over, see {@link #setStandbyFor(String)} and {@link SipDialogReplicator}. Other nodes are reached with
+     * clustered Vert.x. Null disables (default).
+     */
+    public SipVerticleConfig setReplicationAddress(String address) {
+        this.replicationAddress = address;
+        return this;
+    }
+
+    public String getStandbyFor() {
+        return standbyFor;
+    }
+
+    /**
+     * Event bus address of primary node dialogs are replicated from, see {@link #setReplicationAddress(String)}:
+     * in-dialog request for unknown Call-ID is handled with replicated dialog. Every shard keeps all replicas,
+     * dialog is taken over by the shard owning its Call-ID. Null disables (default).
+     */
+    public SipVerticleConfig setStandbyFor(String address) {
+        this.standbyFor = address;
+        return this;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Enables journal of confirmed dialogs in the directory, null disables (default). Dialogs are recovered from it
+     * on start, before {@code onServerStartedListening}, so calls survive verticle restart. Every instance writes
+     * its own file, see {@link SipDialogJournal}.
+     */
+    public SipVerticleConfig setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+        return this;
+    }
+
+    public int getJournalFileSize() {
+        return journalFileSize;
+    }
+
+    /**
+     * Size of journal file in bytes, journal is compacted when it's full. Default is 64 MiB.
+     */
+    public SipVerticleConfig setJournalFileSize(int bytes) {
+        if (bytes < 64 * 1024) {
+            throw new IllegalArgumentException("journalFileSize must be at least 64 KiB, but was " + bytes);
+        }
+        this.journalFileSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param state dialog state, null for dialog without response to initial request yet
+     */
+    public long getDialogIdleTimeout(DialogState state) {
+        return dialogIdleTimeouts[dialogStateIndex(state)];
+    }
+
+    /**
+     * Dialog without messages sent or received for this time is evicted, 0 disables.
+     * Defaults are 32s before response and when terminated, 180s when early, disabled when confirmed.
+     *
+     * @param state dialog state, null for dialog without response to initial request yet
+     */
+    public SipVerticleConfig setDialogIdleTimeout(DialogState state, long millis) {
+        dialogIdleTimeouts[dialogStateIndex(state)] = requireNotNegative("dialogIdleTimeout", millis);
+        return this;
+    }
+
+    /**
+     * @param state dialog state, null for dialog without response to initial request yet
+     */
+    public long getDialogLifetime(DialogState state) {
+        return dialogLifetimes[dialogStateIndex(state)];
+    }
+
+    /**
+     * Dialog is evicted when it exists for this time since creation, 0 disables. Default is 4 hours, 24 hours when
+     * confirmed: long calls are not cut, while dialogs whose BYE is lost or whose peer is gone don't fill the store
+     * up to {@link #setMaxDialogs}. Confirmed lifetime also expires replicas on standby, see
+     * {@link #setStandbyFor}.
+     *
+     * @param state dialog state, null for dialog without response to initial request yet
+     */
+    public SipVerticleConfig setDialogLifetime(DialogState state, long millis) {
+        dialogLifetimes[dialogStateIndex(state)] = requireNotNegative("dialogLifetime", millis);
+        return this;
+    }
+
+    public SipMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Metrics shared by all instances deployed with this config, default {@link SipMetrics#NOOP} records nothing
+     */
+    public SipVerticleConfig setMetrics(SipMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        return this;
+    }
+
+    public String getCaptureDirectory() {
+        return captureDirectory;
+    }
+
+    /**
+     * Enables capture of sent and received messages to a ring of pcap files in the directory, null disables.
+     * Every listening instance writes its own files, see {@link SipCapture}.
+     */
+    public SipVerticleConfig setCaptureDirectory(String captureDirectory) {
+        this.captureDirectory = captureDirectory;
+        return this;
+    }
+
+    public int getCaptureFileSize() {
+        return captureFileSize;
+    }
+
+    /**
+     * Size of every capture file in bytes, default is 64 MiB
+     */
+    public SipVerticleConfig setCaptureFileSize(int bytes) {
+        if (bytes < 1024 * 1024) {
+            throw new IllegalArgumentException("captureFileSize must be at least 1 MiB, but was " + bytes);
+        }
+        this.captureFileSize = bytes;
+        return this;
+    }
+
+    public int getCaptureFiles() {
+        return captureFiles;
+    }
+
+    /**
+     * Number of capture files in the ring, the oldest file is overwritten when all are written, default is 8
+     */
+    public SipVerticleConfig setCaptureFiles(int files) {
+        if (files < 1) {
+            throw new IllegalArgumentException("captureFiles must be positive, but was " + files);
+        }
+        this.captureFiles = files;
+        return this;
+    }
+
+    private static int dialogStateIndex(DialogState state) {
+        return state == null ? 0 : state.getValue() + 1;
+    }
+
+    private static long requireNotNegative(String name, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(name + " must not be negative, but was " + millis);
+        }
+        return millis;
+    }
+
+    private static long requirePositive(String name, long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, but was " + millis);
+        }
+        return millis;
+    }
+
     public String getHostPort() {
         return host + ":" + port;
     }
@@ -33,6 +456,32 @@ public class SipVerticleConfig {
             "host='" + host + '\'' +
             ", port=" + port +
             ", transport='" + transport + '\'' +
+            ", shards=" + shards +
+            ", timerT1=" + timerT1 +
+            ", timerT2=" + timerT2 +
+            ", timerT4=" + timerT4 +
+            ", maxDialogs=" + maxDialogs +
+            ", dialogIdleTimeouts=" + Arrays.toString(dialogIdleTimeouts) +
+            ", dialogLifetimes=" + Arrays.toString(dialogLifetimes) +
+            ", nativeUdp=" + nativeUdp +
+            ", udpReceiveBatch=" + udpReceiveBatch +
+            ", udpReceiveBufferSize=" + udpReceiveBufferSize +
+            ", udpSendBufferSize=" + udpSendBufferSize +
+            ", receiveBatchSize=" + receiveBatchSize +
+            ", maxQueuedInvites=" + maxQueuedInvites +
+            ", maxEventLoopLag=" + maxEventLoopLag +
+            ", maxSourceCallsPerSecond=" + maxSourceCallsPerSecond +
+            ", overloadRetryAfter=" + overloadRetryAfter +
+            ", trustTopVia=" + trustTopVia +
+            ", virtualThreadCallbacks=" + virtualThreadCallbacks +
+            ", replicationAddress='" + replicationAddress + '\'' +
+            ", standbyFor='" + standbyFor + '\'' +
+            ", journalDirectory='" + journalDirectory + '\'' +
+            ", journalFileSize=" + journalFileSize +
+            ", metrics=" + metrics +
+            ", captureDirectory='" + captureDirectory + '\'' +
+            ", captureFileSize=" + captureFileSize +
+            ", captureFiles=" + captureFiles +
             '}';
     }
 }
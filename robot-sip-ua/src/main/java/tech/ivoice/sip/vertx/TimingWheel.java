@@ -0,0 +1,145 @@
+package tech.ivoice.sip.vertx;
+
+/**
+ * Hashed timing wheel: timers are put into bucket of their deadline tick, so scheduling and cancelling is O(1)
+ * and every tick only the timers of one bucket are checked.
+ * <p>
+ * Timers are intrusive doubly linked list nodes, wheel allocates nothing per timer. Timer deadline is rounded up
+ * to the tick, so timer never fires earlier than scheduled.
+ * <p>
+ * Not thread safe, wheel is advanced and used from one event loop.
+ *
+ * @see <a href="http://www.cs.columbia.edu/~nahum/w6998/papers/sosp87-timing-wheels.pdf">Hashed and Hierarchical
+ * Timing Wheels</a>
+ */
+final class TimingWheel {
+
+    abstract static class Timer {
+        private static final int UNSCHEDULED = -1;
+
+        private Timer prev;
+        private Timer next;
+        private int bucket = UNSCHEDULED;
+        private long deadlineTick;
+
+        boolean isScheduled() {
+            return bucket != UNSCHEDULED;
+        }
+
+        /**
+         * Called from {@link #advance(long)} when deadline is reached, timer can be scheduled again from here
+         */
+        protected abstract void expire();
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    // last bucket keeps timers expired in current tick until they are fired
+    private final Timer[] buckets;
+    private final int expiring;
+    private final long startMillis;
+    private long tick;
+    private int size;
+
+    /**
+     * @param wheelSize   number of buckets, power of two
+     * @param startMillis current time, wheel time is counted from it
+     */
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive, but was " + tickMillis);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be power of two, but was " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new Timer[wheelSize + 1];
+        this.expiring = wheelSize;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Schedules timer, already scheduled timer is rescheduled
+     */
+    void schedule(Timer timer, long delayMillis) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        timer.deadlineTick = tick + ticks;
+        link(timer, (int) (timer.deadlineTick & mask));
+    }
+
+    /**
+     * Cancels timer, does nothing if timer is not scheduled
+     */
+    void cancel(Timer timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+    }
+
+    /**
+     * Fires timers with deadline up to the current time
+     */
+    void advance(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (tick < targetTick) {
+            tick++;
+            collectExpired((int) (tick & mask));
+            // timers cancelled by callbacks are removed from expiring list too
+            Timer timer;
+            while ((timer = buckets[expiring]) != null) {
+                unlink(timer);
+                timer.expire();
+            }
+        }
+    }
+
+    /**
+     * @return number of scheduled timers
+     */
+    int size() {
+        return size;
+    }
+
+    private void collectExpired(int bucket) {
+        Timer timer = buckets[bucket];
+        while (timer != null) {
+            Timer next = timer.next;
+            if (timer.deadlineTick <= tick) {
+                unlink(timer);
+                link(timer, expiring);
+            }
+            timer = next;
+        }
+    }
+
+    private void link(Timer timer, int bucket) {
+        Timer head = buckets[bucket];
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        buckets[bucket] = timer;
+        timer.bucket = bucket;
+        size++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            buckets[timer.bucket] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = Timer.UNSCHEDULED;
+        size--;
+    }
+}
@@ -6,9 +6,11 @@ import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
 import tech.ivoice.sip.vertx.SipUserAgentTestImpl;
 import tech.ivoice.sip.vertx.SipVerticleConfig;
 
+import javax.sip.DialogState;
 import javax.sip.address.AddressFactory;
 import javax.sip.address.SipURI;
 import javax.sip.header.HeaderFactory;
@@ -17,7 +19,9 @@ import javax.sip.message.Response;
 import java.text.ParseException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SipDialogImplTest {
     private final AddressFactory addressFactory = new AddressFactoryImpl();
@@ -202,4 +206,44 @@ class SipDialogImplTest {
         SipDialog<Void> dialog = new SipDialogImpl<>(clientTransaction, () -> "testAckBranchId", headerFactory, "tcp");
         assertThrows(IllegalStateException.class, dialog::createAck);
     }
+
+    @Test
+    void errorResponseOnInviteTerminatesDialog() throws ParseException {
+        SipURI target = addressFactory.createSipURI("Server", "127.0.0.2:5082");
+        SIPRequest invite = sipVerticle.createInvite("Client", target);
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipClientTransactionImpl(invite), () -> "mockId",
+            headerFactory, "udp");
+        dialog.updateOnResponse(invite.createResponse(Response.TRYING));
+
+        dialog.updateOnResponse(invite.createResponse(Response.SERVICE_UNAVAILABLE));
+
+        assertEquals(DialogState.TERMINATED, dialog.getState());
+    }
+
+    @Test
+    void confirmedDialogKeepsNoMessages() throws ParseException {
+        SipURI target = addressFactory.createSipURI("Server", "127.0.0.2:5082");
+        SIPRequest invite = sipVerticle.createInvite("Client", target);
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipClientTransactionImpl(invite), () -> "mockId",
+            headerFactory, "udp");
+        SIPResponse ringing = invite.createResponse(Response.RINGING);
+        ringing.setToTag("serverToTag");
+        dialog.updateOnResponse(ringing);
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("serverToTag");
+        dialog.updateOnResponse(ok);
+        dialog.addTransaction(new SipClientTransactionImpl(dialog.createAck()));
+
+        assertNull(dialog.getLastRequest());
+        long retained = GraphLayout.parseInstance(dialog)
+            .subtract(GraphLayout.parseInstance(headerFactory, DialogState.CONFIRMED))
+            .totalSize();
+        assertTrue(retained < 768, "retained " + retained + " bytes");
+
+        // dialog still creates requests from compact state
+        SIPRequest bye = dialog.createRequest(Request.BYE);
+        assertEquals("sip:Server@127.0.0.2:5082", bye.getRequestURI().toString());
+        assertEquals("serverToTag", bye.getToTag());
+        assertEquals(2, bye.getCSeq().getSeqNumber());
+    }
 }
@@ -0,0 +1,103 @@
+package tech.ivoice.sip.rtp;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RtpEngineTest {
+    private static final int PCMU = 0;
+
+    private final Vertx vertx = Vertx.vertx();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void streamsExchangeFrames() throws Exception {
+        RtpEngine engine = new RtpEngine(vertx, new RtpConfig("127.0.0.1", 15200, 15209).setRtcpInterval(200));
+        Context context = vertx.getOrCreateContext();
+        RtpStream caller = await(context, engine::open);
+        RtpStream callee = await(context, engine::open);
+        VertxTestContext testContext = new VertxTestContext();
+        Checkpoint played = testContext.checkpoint(10);
+        Checkpoint reported = testContext.checkpoint();
+        AtomicBoolean reportReceived = new AtomicBoolean();
+        AtomicInteger counter = new AtomicInteger();
+        caller.setSource((frame, samples) -> {
+            frame.writeInt(counter.getAndIncrement()).writeZero(samples - 4);
+            return true;
+        });
+        callee.setFrameHandler(frame -> {
+            testContext.verify(() -> assertEquals(160, frame.readableBytes()));
+            played.flag();
+            if (callee.getRtcpPacketsReceived() > 0 && reportReceived.compareAndSet(false, true)) {
+                reported.flag();
+            }
+        });
+
+        await(context, () -> callee.start("127.0.0.1", caller.getLocalPort(), PCMU, 20));
+        await(context, () -> caller.start("127.0.0.1", callee.getLocalPort(), PCMU, 20));
+
+        assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS), "frames and sender report not received");
+        if (testContext.failed()) {
+            throw new AssertionError(testContext.causeOfFailure());
+        }
+        assertEquals(2, engine.getOpenStreams());
+        await(context, caller::close);
+        await(context, callee::close);
+        assertEquals(0, engine.getOpenStreams());
+    }
+
+    @Test
+    void openFailsWhenPortsAreExhausted() throws Exception {
+        RtpEngine engine = new RtpEngine(vertx, new RtpConfig("127.0.0.1", 15210, 15213));
+        Context context = vertx.getOrCreateContext();
+        await(context, engine::open);
+        await(context, engine::open);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> await(context, engine::open));
+
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(2, engine.getOpenStreams());
+    }
+
+    @Test
+    void streamOpenedOffContextBelongsToGivenContext() throws Exception {
+        RtpEngine engine = new RtpEngine(vertx, new RtpConfig("127.0.0.1", 15214, 15215));
+        Context context = vertx.getOrCreateContext();
+
+        assertThrows(IllegalStateException.class, engine::open, "no current context");
+        CompletableFuture<Context> openedOn = new CompletableFuture<>();
+        engine.open(context).onComplete(opened -> openedOn.complete(Vertx.currentContext()));
+
+        assertSame(context, openedOn.get(5, TimeUnit.SECONDS));
+        assertEquals(1, engine.getOpenStreams());
+    }
+
+    static <T> T await(Context context, Supplier<Future<T>> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> action.get().onComplete(done -> {
+            if (done.succeeded()) {
+                result.complete(done.result());
+            } else {
+                result.completeExceptionally(done.cause());
+            }
+        }));
+        return result.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,99 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RtpJitterBufferTest {
+    private static final int SAMPLES = 160;
+
+    private final ByteBuf payload = Unpooled.buffer(SAMPLES);
+    private final RtpJitterBuffer buffer = new RtpJitterBuffer(2, 10, SAMPLES, RtpStream.MAX_PAYLOAD_SIZE);
+
+    @Test
+    void playoutStartsAtTargetDepthInSequenceOrder() {
+        offer(65535, 0);
+        assertNull(buffer.poll(), "playout waits for target depth");
+        offer(1, 0);
+        offer(0, 0);
+
+        assertEquals(65535, played());
+        assertEquals(0, played());
+        assertEquals(1, played());
+        assertNull(buffer.poll(), "underrun");
+        assertEquals(0, buffer.getLost());
+    }
+
+    @Test
+    void missingFrameIsLostAndLateOneDiscarded() {
+        offer(10, 0);
+        offer(12, 0);
+
+        assertEquals(10, played());
+        assertNull(buffer.poll());
+        assertEquals(1, buffer.getLost());
+        assertFalse(offer(11, 0));
+        assertEquals(1, buffer.getLate());
+        offer(13, 0);
+        assertEquals(12, played());
+    }
+
+    @Test
+    void targetDepthFollowsJitter() {
+        int sequence = 0;
+        for (int i = 0; i < 200; i++, sequence++) {
+            // arrives every other frame duration early or late by 3 frames
+            offer(sequence, (i % 2) * 3 * SAMPLES);
+            buffer.poll();
+        }
+        int jittery = buffer.getTargetDepth();
+        for (int i = 0; i < 400; i++, sequence++) {
+            offer(sequence, 0);
+            buffer.poll();
+        }
+
+        assertEquals(10, jittery, "jitter of 3 frames needs maximum depth");
+        assertEquals(2, buffer.getTargetDepth(), "depth shrinks to minimum when jitter is gone");
+        assertTrue(buffer.getBuffered() <= 3, "excess frames are dropped, buffered " + buffer.getBuffered());
+        assertTrue(buffer.getDropped() > 0);
+    }
+
+    @Test
+    void buffersWithoutAllocation() {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 100_000; i++) {
+            offer(i & 0xffff, 0);
+            buffer.poll();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 100_000; i < 200_000; i++) {
+            offer(i & 0xffff, 0);
+            buffer.poll();
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 10_000, allocated + " bytes allocated by 100000 frames");
+    }
+
+    /**
+     * @param delay arrival delay in samples over timestamp
+     */
+    private boolean offer(int sequence, int delay) {
+        payload.clear().writeShort(sequence).writerIndex(SAMPLES);
+        int timestamp = sequence * SAMPLES;
+        return buffer.offer(sequence, timestamp, timestamp + delay, payload, 0, SAMPLES);
+    }
+
+    private int played() {
+        ByteBuf frame = buffer.poll();
+        assertNotNull(frame);
+        assertEquals(SAMPLES, frame.readableBytes());
+        return frame.getUnsignedShort(0);
+    }
+}
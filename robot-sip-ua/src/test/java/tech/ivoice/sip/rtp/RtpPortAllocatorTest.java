@@ -0,0 +1,43 @@
+package tech.ivoice.sip.rtp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RtpPortAllocatorTest {
+    @Test
+    void allocatesEvenPortsUntilExhausted() {
+        RtpPortAllocator ports = new RtpPortAllocator(10001, 10008);
+
+        assertEquals(3, ports.getCapacity());
+        assertEquals(10002, ports.allocate());
+        assertEquals(10004, ports.allocate());
+        assertEquals(10006, ports.allocate());
+        assertEquals(-1, ports.allocate());
+        assertEquals(3, ports.getAllocated());
+    }
+
+    @Test
+    void releasedPortIsReusedLast() {
+        RtpPortAllocator ports = new RtpPortAllocator(10000, 10007);
+        int first = ports.allocate();
+        ports.allocate();
+
+        ports.release(first);
+
+        assertEquals(10004, ports.allocate());
+        assertEquals(10006, ports.allocate());
+        assertEquals(first, ports.allocate());
+    }
+
+    @Test
+    void portIsReleasedOnce() {
+        RtpPortAllocator ports = new RtpPortAllocator(10000, 10007);
+        int port = ports.allocate();
+        ports.release(port);
+
+        assertThrows(IllegalStateException.class, () -> ports.release(port));
+        assertThrows(IllegalStateException.class, () -> ports.release(20000));
+        assertEquals(0, ports.getAllocated());
+    }
+}
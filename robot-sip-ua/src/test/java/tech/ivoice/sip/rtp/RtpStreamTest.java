@@ -0,0 +1,108 @@
+package tech.ivoice.sip.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoop;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tech.ivoice.sip.rtp.RtpEngineTest.await;
+
+/**
+ * Schedulers are ticked by tests: their tasks are scheduled on event loop that is never started
+ */
+class RtpStreamTest {
+    private static final int PCMU = 0;
+    private static final int SAMPLES = 160;
+
+    private final Vertx vertx = Vertx.vertx();
+    private final RtpEngine engine = new RtpEngine(vertx, new RtpConfig("127.0.0.1", 15220, 15229),
+        new DefaultEventLoop(task -> {
+        }));
+    private final Context context = vertx.getOrCreateContext();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void streamSendsOnePacketPerPacketDuration() throws Exception {
+        RtpStream shortPtime = await(context, engine::open);
+        RtpStream longPtime = await(context, engine::open);
+        shortPtime.setSource(this::silence);
+        longPtime.setSource(this::silence);
+        await(context, () -> shortPtime.start("127.0.0.1", longPtime.getLocalPort(), PCMU, 20));
+        await(context, () -> longPtime.start("127.0.0.1", shortPtime.getLocalPort(), PCMU, 40));
+
+        tick(10);
+
+        assertEquals(1, engine.getSchedulers(), "streams of one event loop share scheduler");
+        assertEquals(10, shortPtime.getPacketsSent());
+        assertEquals(5, longPtime.getPacketsSent());
+
+        await(context, shortPtime::close);
+        tick(10);
+
+        assertEquals(1, engine.getScheduler(context).size());
+        assertEquals(10, shortPtime.getPacketsSent(), "closed stream is not called");
+        assertEquals(10, longPtime.getPacketsSent());
+    }
+
+    @Test
+    void receivedFramesArePlayedOncePerPacketDuration() throws Exception {
+        RtpStream stream = await(context, engine::open);
+        RtpStream peer = await(context, engine::open);
+        List<Integer> played = new ArrayList<>();
+        stream.setFrameHandler(frame -> played.add(frame.getInt(frame.readerIndex())));
+        await(context, () -> stream.start("127.0.0.1", peer.getLocalPort(), PCMU, 40));
+
+        await(context, () -> {
+            RtpStream.RtpHandler handler = stream.new RtpHandler();
+            for (int sequence = 0; sequence < 3; sequence++) {
+                handler.channelRead(null, packet(sequence));
+            }
+            return Future.succeededFuture();
+        });
+        List<List<Integer>> playedPerTick = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tick(1);
+            playedPerTick.add(List.copyOf(played));
+        }
+
+        assertEquals(List.of(List.of(), List.of(0), List.of(0), List.of(0, 1), List.of(0, 1), List.of(0, 1, 2),
+            List.of(0, 1, 2), List.of(0, 1, 2)), playedPerTick);
+        assertEquals(3, stream.getPacketsReceived());
+        assertEquals(0, stream.getPacketsLost());
+    }
+
+    private boolean silence(ByteBuf frame, int samples) {
+        frame.writeZero(samples);
+        return true;
+    }
+
+    private ByteBuf packet(int sequence) {
+        ByteBuf packet = Unpooled.buffer(RtpPacket.HEADER_SIZE + SAMPLES);
+        RtpPacket.writeHeader(packet, sequence == 0, PCMU, sequence, sequence * SAMPLES * 2, 1);
+        packet.writerIndex(RtpPacket.HEADER_SIZE);
+        packet.writeInt(sequence).writeZero(SAMPLES * 2 - 4);
+        return packet;
+    }
+
+    private void tick(int periods) throws Exception {
+        await(context, () -> {
+            for (int i = 0; i < periods; i++) {
+                engine.getScheduler(context).run();
+            }
+            return Future.succeededFuture();
+        });
+    }
+}
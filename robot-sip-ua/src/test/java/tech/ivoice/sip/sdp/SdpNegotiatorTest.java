@@ -0,0 +1,145 @@
+package tech.ivoice.sip.sdp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdpNegotiatorTest {
+    private final SdpNegotiator negotiator = new SdpNegotiator("10.0.0.10",
+        List.of(SdpCodec.PCMA, SdpCodec.PCMU, SdpCodec.TELEPHONE_EVENT), 20);
+
+    @Test
+    void answersFirstSupportedCodecInOffererOrder() {
+        SdpAnswer answer = negotiator.answer(bytes(SdpParserTest.OFFER), 40000);
+
+        assertEquals(SdpCodec.PCMU, answer.getCodec());
+        assertEquals(0, answer.getPayloadType());
+        assertEquals(101, answer.getTelephoneEventPayloadType());
+        assertEquals(20, answer.getPtime());
+        assertEquals(MediaDescription.SENDRECV, answer.getDirection());
+        assertEquals("192.168.1.3", answer.getRemoteAddress());
+        assertEquals(30832, answer.getRemotePort());
+
+        MediaDescription audio = SdpParser.parse(answer.getBody()).getMedia().get(0);
+        assertEquals(40000, audio.getPort());
+        assertEquals(List.of("0", "101"), audio.getFormats());
+        assertEquals("0-16", audio.getFormatParameters("101"));
+    }
+
+    @Test
+    void answersOfferedDynamicPayloadTypeAndPtime() {
+        String offer = "v=0\r\n" +
+            "o=- 7 7 IN IP4 10.0.0.2\r\n" +
+            "s=-\r\n" +
+            "c=IN IP4 10.0.0.2\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 5004 RTP/AVP 18 8 96\r\n" +
+            "a=rtpmap:18 G729/8000\r\n" +
+            "a=rtpmap:96 telephone-event/8000\r\n" +
+            "a=fmtp:96 0-15\r\n" +
+            "a=ptime:30\r\n" +
+            "a=sendonly\r\n";
+
+        SdpAnswer answer = negotiator.answer(bytes(offer), 40000);
+
+        assertEquals(SdpCodec.PCMA, answer.getCodec());
+        assertEquals(96, answer.getTelephoneEventPayloadType());
+        assertEquals(30, answer.getPtime());
+        assertEquals(MediaDescription.RECVONLY, answer.getDirection());
+        MediaDescription audio = SdpParser.parse(answer.getBody()).getMedia().get(0);
+        assertEquals(List.of("8", "96"), audio.getFormats());
+        assertEquals("0-15", audio.getFormatParameters("96"));
+    }
+
+    @Test
+    void offerWithoutCommonCodecIsNotAcceptable() {
+        String offer = "v=0\r\n" +
+            "o=- 7 7 IN IP4 10.0.0.2\r\n" +
+            "s=-\r\n" +
+            "c=IN IP4 10.0.0.2\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 5004 RTP/AVP 18\r\n" +
+            "a=rtpmap:18 G729/8000\r\n";
+
+        assertNull(negotiator.answer(bytes(offer), 40000));
+        assertNull(negotiator.answer(bytes(offer), 40002));
+        assertEquals(1, negotiator.getCacheHits());
+    }
+
+    @Test
+    void otherMediaIsRejected() {
+        String offer = "v=0\r\n" +
+            "o=- 7 7 IN IP4 10.0.0.2\r\n" +
+            "s=-\r\n" +
+            "t=0 0\r\n" +
+            "m=video 5006 RTP/AVP 97\r\n" +
+            "c=IN IP4 10.0.0.3\r\n" +
+            "a=rtpmap:97 H264/90000\r\n" +
+            "m=audio 5004 RTP/AVP 8\r\n" +
+            "c=IN IP4 10.0.0.2\r\n";
+
+        SdpAnswer answer = negotiator.answer(bytes(offer), 40000);
+
+        assertEquals("10.0.0.2", answer.getRemoteAddress());
+        assertEquals(5004, answer.getRemotePort());
+        SessionDescription description = SdpParser.parse(answer.getBody());
+        assertEquals(0, description.getMedia().get(0).getPort());
+        assertEquals("video", description.getMedia().get(0).getMedia());
+        assertEquals(40000, description.getMedia().get(1).getPort());
+    }
+
+    @Test
+    void sameOfferFromAnotherCallIsAnsweredFromCache() {
+        SdpAnswer first = negotiator.answer(bytes(SdpParserTest.OFFER), 40000);
+        String offer = SdpParserTest.OFFER
+            .replace("1637391494 1637391495", "1637391600 1637391601")
+            .replace("192.168.1.3", "192.168.1.44")
+            .replace("30832", "30900");
+
+        SdpAnswer second = negotiator.answer(bytes(offer), 41234);
+
+        assertEquals(1, negotiator.getCacheHits());
+        assertEquals("192.168.1.44", second.getRemoteAddress());
+        assertEquals(30900, second.getRemotePort());
+        assertEquals(first.getCodec(), second.getCodec());
+        SessionDescription firstAnswer = SdpParser.parse(first.getBody());
+        SessionDescription secondAnswer = SdpParser.parse(second.getBody());
+        assertEquals(firstAnswer.getSessionId() + 1, secondAnswer.getSessionId());
+        assertEquals(secondAnswer.getSessionId(), secondAnswer.getSessionVersion());
+        assertEquals(41234, secondAnswer.getMedia().get(0).getPort());
+        assertEquals(new String(first.getBody(), StandardCharsets.UTF_8)
+                .replace(String.valueOf(firstAnswer.getSessionId()), String.valueOf(secondAnswer.getSessionId()))
+                .replace("40000", "41234"),
+            new String(second.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void changedOfferIsNegotiatedAgain() {
+        negotiator.answer(bytes(SdpParserTest.OFFER), 40000);
+
+        SdpAnswer answer = negotiator.answer(bytes(SdpParserTest.OFFER.replace("0 8 101", "8 0 101")), 40000);
+
+        assertEquals(0, negotiator.getCacheHits());
+        assertEquals(SdpCodec.PCMA, answer.getCodec());
+    }
+
+    @Test
+    void offerContainsSupportedCodecs() {
+        SessionDescription offer = SdpParser.parse(negotiator.offer(40000));
+
+        assertEquals("10.0.0.10", offer.getConnectionAddress());
+        MediaDescription audio = offer.getMedia().get(0);
+        assertEquals(40000, audio.getPort());
+        assertEquals(List.of("8", "0", "101"), audio.getFormats());
+        assertEquals("telephone-event/8000", audio.getRtpMap("101"));
+        assertEquals(20, audio.getPtime());
+        assertEquals(MediaDescription.SENDRECV, audio.getDirection());
+    }
+
+    private static byte[] bytes(String sdp) {
+        return sdp.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package tech.ivoice.sip.sdp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdpParserTest {
+    static final String OFFER = "v=0\r\n" +
+        "o=- 1637391494 1637391495 IN IP4 192.168.1.3\r\n" +
+        "s=Asterisk\r\n" +
+        "c=IN IP4 192.168.1.3\r\n" +
+        "t=0 0\r\n" +
+        "m=audio 30832 RTP/AVP 0 8 101\r\n" +
+        "a=rtpmap:0 PCMU/8000\r\n" +
+        "a=rtpmap:8 PCMA/8000\r\n" +
+        "a=rtpmap:101 telephone-event/8000\r\n" +
+        "a=fmtp:101 0-16\r\n" +
+        "a=ptime:20\r\n" +
+        "a=sendrecv\r\n";
+
+    @Test
+    void parsesOffer() {
+        SessionDescription description = SdpParser.parse(OFFER.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("-", description.getOriginUsername());
+        assertEquals(1637391494L, description.getSessionId());
+        assertEquals(1637391495L, description.getSessionVersion());
+        assertEquals("192.168.1.3", description.getOriginAddress());
+        assertEquals("Asterisk", description.getSessionName());
+        assertEquals("192.168.1.3", description.getConnectionAddress());
+        assertEquals(1, description.getMedia().size());
+        MediaDescription audio = description.getMedia().get(0);
+        assertEquals("audio", audio.getMedia());
+        assertEquals(30832, audio.getPort());
+        assertEquals("RTP/AVP", audio.getProtocol());
+        assertEquals(List.of("0", "8", "101"), audio.getFormats());
+        assertEquals("PCMU/8000", audio.getRtpMap("0"));
+        assertEquals("telephone-event/8000", audio.getRtpMap("101"));
+        assertEquals("0-16", audio.getFormatParameters("101"));
+        assertEquals(20, audio.getPtime());
+        assertEquals(MediaDescription.SENDRECV, audio.getDirection());
+        assertEquals("192.168.1.3", description.getConnectionAddress(audio));
+    }
+
+    @Test
+    void parsesLfLineEndsMediaConnectionAndSessionDirection() {
+        String sdp = "v=0\n" +
+            "o=user 1 2 IN IP4 10.0.0.1\n" +
+            "s=-\n" +
+            "t=0 0\n" +
+            "a=sendonly\n" +
+            "m=audio 4000/2 RTP/AVP 8\n" +
+            "c=IN IP4 224.2.1.1/127\n";
+
+        SessionDescription description = SdpParser.parse(sdp.getBytes(StandardCharsets.UTF_8));
+
+        MediaDescription audio = description.getMedia().get(0);
+        assertNull(description.getConnectionAddress());
+        assertEquals("224.2.1.1", description.getConnectionAddress(audio));
+        assertEquals(4000, audio.getPort());
+        assertEquals(MediaDescription.SENDONLY, audio.getDirection());
+    }
+
+    @Test
+    void writtenDescriptionParsesBack() {
+        SessionDescription description = SdpParser.parse(OFFER.getBytes(StandardCharsets.UTF_8));
+
+        String written = SdpWriter.toString(description);
+
+        assertEquals(OFFER, written);
+        assertEquals(written, SdpWriter.toString(SdpParser.parse(SdpWriter.write(description))));
+    }
+
+    @Test
+    void malformedDescriptionIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> parse("o=- 1 1 IN IP4 10.0.0.1\r\n"));
+        assertThrows(IllegalArgumentException.class, () -> parse("v=0\r\nm=audio\r\n"));
+        assertThrows(IllegalArgumentException.class, () -> parse("v=0\r\nm=audio x RTP/AVP 0\r\n"));
+        assertThrows(IllegalArgumentException.class, () -> parse("v=0\r\nhello\r\n"));
+    }
+
+    private static SessionDescription parse(String sdp) {
+        return SdpParser.parse(sdp.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,8 +2,12 @@ package tech.ivoice.sip.vertx;
 
 import gov.nist.javax.sip.address.AddressFactoryImpl;
 import gov.nist.javax.sip.header.ContentType;
+import gov.nist.javax.sip.header.Via;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.net.SocketAddress;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import tech.ivoice.javax.sip.SipDialog;
@@ -13,6 +17,8 @@ import javax.sip.address.AddressFactory;
 import javax.sip.address.SipURI;
 import javax.sip.message.Response;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -132,5 +138,149 @@ class AbstractSipUserAgentTest {
         assertThrows(IllegalStateException.class, () -> sipVerticle.findDialog(invite.getCallId()));
     }
 
+    @Test
+    void dialogLifecycleReportedToMetrics() throws ParseException {
+        List<String> events = new ArrayList<>();
+        SipMetrics metrics = new SipMetrics() {
+            @Override
+            public void requestSent(String method) {
+                events.add("sent " + method);
+            }
+
+            @Override
+            public void dialogCreated(DialogState state) {
+                events.add("created " + state);
+            }
+
+            @Override
+            public void dialogStateChanged(DialogState from, DialogState to) {
+                events.add(from + " -> " + to);
+            }
+
+            @Override
+            public void dialogRemoved(DialogState state, long durationMillis) {
+                events.add("removed " + state);
+            }
+        };
+        sipVerticle = new SipUserAgentTestImpl(new SipVerticleConfig("127.0.0.1", 5080, "tcp")
+            .setMetrics(metrics), () -> "mockId");
+        SipURI targetSipUri = addressFactory.createSipURI("Server", "127.0.0.2:5082");
+        SIPRequest invite = sipVerticle.createInvite("Client", targetSipUri);
+
+        sipVerticle.sendRequest(invite);
+        sipVerticle.onResponse(invite.createResponse(Response.RINGING));
+        sipVerticle.onResponse(invite.createResponse(Response.OK));
+        SIPRequest bye = sipVerticle.createBye(invite.getCallId().getCallId());
+        sipVerticle.sendRequest(bye);
+        sipVerticle.onResponse(bye.createResponse(Response.OK));
+
+        assertEquals(List.of("created null", "sent INVITE", "null -> Early Dialog", "Early Dialog -> Confirmed Dialog",
+            "sent BYE", "Confirmed Dialog -> Terminated Dialog", "removed Terminated Dialog"), events);
+    }
+
+    @Test
+    void invitesOverSourceRateRejectedWithRetryAfter() {
+        List<String> sent = new ArrayList<>();
+        AbstractSipUserAgent.Transport transport = new AbstractSipUserAgent.Transport() {
+            @Override
+            public Uni<Void> asyncStartListener() {
+                return Uni.createFrom().voidItem();
+            }
+
+            @Override
+            public void send(SIPRequest request) {
+                sent.add(request.encode());
+            }
+
+            @Override
+            public void send(SIPResponse response) {
+                sent.add(response.encode());
+            }
+
+            @Override
+            public void send(SIPResponse response, Buffer encoded) {
+                sent.add(encoded.toString());
+            }
+
+            @Override
+            public void send(Buffer encoded, Via requestVia) {
+                sent.add(encoded.toString());
+            }
+        };
+        sipVerticle = new SipUserAgentTestImpl(new SipVerticleConfig("127.0.0.1", 5081, "udp")
+            .setMaxSourceCallsPerSecond(2)
+            .setOverloadRetryAfter(7), transport, () -> "mockId");
+        SocketAddress sender = SocketAddress.inetSocketAddress(5080, "127.0.0.1");
+
+        for (int i = 0; i < 3; i++) {
+            String invite = SipMessages.INVITE.replace("2a0f0e5c", "call-" + i).replace("c6f7b2f1", "branch" + i);
+            sipVerticle.dispatch(invite.getBytes(), sender);
+        }
+
+        assertNotNull(sipVerticle.findDialog("call-0-8e0d-4cbb-9c63-6b0c1f7f2e11"));
+        assertNotNull(sipVerticle.findDialog("call-1-8e0d-4cbb-9c63-6b0c1f7f2e11"));
+        assertThrows(IllegalStateException.class, () -> sipVerticle.findDialog("call-2-8e0d-4cbb-9c63-6b0c1f7f2e11"));
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).startsWith("SIP/2.0 503 Service unavailable\r\n"), sent.get(0));
+        assertTrue(sent.get(0).contains("\r\nRetry-After: 7\r\n"), sent.get(0));
+        assertTrue(sent.get(0).contains("Call-ID: call-2-"), sent.get(0));
+        assertTrue(sent.get(0).contains(";tag=server-mockId\r\n"), "To tag is added: " + sent.get(0));
+    }
+
+    @Test
+    void overloadResponseSentAsParsedResponseByDefault() {
+        List<SIPResponse> sent = new ArrayList<>();
+        AbstractSipUserAgent.Transport transport = new AbstractSipUserAgent.Transport() {
+            @Override
+            public Uni<Void> asyncStartListener() {
+                return Uni.createFrom().voidItem();
+            }
+
+            @Override
+            public void send(SIPRequest request) {
+            }
+
+            @Override
+            public void send(SIPResponse response) {
+                sent.add(response);
+            }
+        };
+        sipVerticle = new SipUserAgentTestImpl(new SipVerticleConfig("127.0.0.1", 5081, "udp")
+            .setMaxSourceCallsPerSecond(1), transport, () -> "mockId");
+        SocketAddress sender = SocketAddress.inetSocketAddress(5090, "127.0.0.2");
+
+        for (int i = 0; i < 2; i++) {
+            String invite = SipMessages.INVITE.replace("2a0f0e5c", "call-" + i).replace("c6f7b2f1", "branch" + i);
+            sipVerticle.dispatch(invite.getBytes(), sender);
+        }
+
+        assertEquals(1, sent.size());
+        assertEquals(Response.SERVICE_UNAVAILABLE, sent.get(0).getStatusCode());
+        assertEquals("server-mockId", sent.get(0).getToTag());
+        assertEquals("127.0.0.2", sent.get(0).getTopmostVia().getReceived());
+    }
+
+    @Test
+    void messageFailingToBeHandledDoesNotStopReceiveQueue() {
+        List<String> invites = new ArrayList<>();
+        sipVerticle = new SipUserAgentTestImpl(new SipVerticleConfig("127.0.0.1", 5081, "udp"), () -> "mockId") {
+            @Override
+            protected void onInvite(SIPRequest invite) {
+                invites.add(invite.getCallId().getCallId());
+                if (invites.size() == 1) {
+                    throw new IllegalStateException("application failure");
+                }
+            }
+        };
+        SocketAddress sender = SocketAddress.inetSocketAddress(5080, "127.0.0.1");
+
+        for (int i = 0; i < 2; i++) {
+            String invite = SipMessages.INVITE.replace("2a0f0e5c", "call-" + i).replace("c6f7b2f1", "branch" + i);
+            sipVerticle.dispatch(invite.getBytes(), sender);
+        }
+
+        assertEquals(List.of("call-0-8e0d-4cbb-9c63-6b0c1f7f2e11", "call-1-8e0d-4cbb-9c63-6b0c1f7f2e11"), invites);
+    }
+
     // TODO test dialog termination
 }
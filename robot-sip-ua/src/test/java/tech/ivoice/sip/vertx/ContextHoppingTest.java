@@ -0,0 +1,215 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.address.SipURI;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextHoppingTest {
+    private static final int CALLS = 20;
+    private static final int ITERATIONS = 10_000;
+
+    private final Vertx vertx = Vertx.vertx();
+
+    @AfterEach
+    void tearDown() {
+        vertx.closeAndAwait();
+    }
+
+    @Test
+    void apiCalledFromMutinyThreadsRunsOnContext() throws Exception {
+        VertxTestContext testContext = new VertxTestContext();
+        SipURI calleeUri = new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:15096");
+        Callee callee = new Callee(new SipVerticleConfig("127.0.0.1", 15096, "udp"), testContext);
+        Caller caller = new Caller(new SipVerticleConfig("127.0.0.1", 15095, "udp"), calleeUri,
+            testContext.checkpoint(CALLS));
+
+        vertx.deployVerticle(callee)
+            .chain(() -> vertx.deployVerticle(caller))
+            .subscribe().with(id -> {
+            }, testContext::failNow);
+
+        assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS), "calls not completed");
+        if (testContext.failed()) {
+            throw new AssertionError(testContext.causeOfFailure());
+        }
+    }
+
+    @Test
+    void apiOnContextDoesNotAllocateTask() throws Exception {
+        DialogHolder holder = new DialogHolder(new SipVerticleConfig("127.0.0.1", 15097, "udp"));
+        vertx.deployVerticleAndAwait(holder);
+
+        long allocated = holder.allocatedOnContext.get(5, TimeUnit.SECONDS);
+
+        assertTrue(allocated < 1000, allocated + " bytes allocated by " + ITERATIONS + " calls on context");
+    }
+
+    @Test
+    void blockingCallFromOtherEventLoopIsRefused() throws Exception {
+        DialogHolder holder = new DialogHolder(new SipVerticleConfig("127.0.0.1", 15098, "udp"));
+        vertx.deployVerticleAndAwait(holder);
+        holder.allocatedOnContext.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        vertx.getDelegate().getOrCreateContext().runOnContext(v -> {
+            try {
+                holder.getApplicationData(holder.callId);
+                failure.complete(null);
+            } catch (RuntimeException e) {
+                failure.complete(e);
+            }
+        });
+
+        assertInstanceOf(IllegalStateException.class, failure.get(5, TimeUnit.SECONDS));
+        // not blocking calls are queued to owner context
+        holder.setApplicationData(holder.callId, "set from test thread");
+        assertEquals("set from test thread", holder.getApplicationData(holder.callId));
+    }
+
+    @Test
+    void errorOnContextIsRethrownToBlockedCaller() throws Exception {
+        DialogHolder holder = new DialogHolder(new SipVerticleConfig("127.0.0.1", 15100, "udp")) {
+            @Override
+            protected SIPRequest createBye(String callId) {
+                if (Context.isOnEventLoopThread()) {
+                    throw new AssertionError("failed on context");
+                }
+                return super.createBye(callId);
+            }
+        };
+        vertx.deployVerticleAndAwait(holder);
+        holder.allocatedOnContext.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Throwable> failure = CompletableFuture.supplyAsync(() -> {
+            try {
+                holder.createBye(holder.callId);
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+
+        Throwable thrown = failure.get(5, TimeUnit.SECONDS);
+        assertInstanceOf(AssertionError.class, thrown);
+        assertEquals("failed on context", thrown.getMessage());
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final Checkpoint completed;
+
+        Caller(SipVerticleConfig config, SipURI calleeUri, Checkpoint completed) {
+            super(config);
+            this.calleeUri = calleeUri;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            for (int i = 0; i < CALLS; i++) {
+                sendRequest(createInvite("Caller", calleeUri));
+            }
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            String callId = successResponseOnInvite.getCallId().getCallId();
+            sendRequest(createAck(successResponseOnInvite));
+            sendRequest(createBye(callId));
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            completed.flag();
+        }
+    }
+
+    /**
+     * Answers as the example robot: after delay, on Mutiny executor thread
+     */
+    private static class Callee extends AbstractSipUserAgent<String> {
+        private final VertxTestContext testContext;
+
+        Callee(SipVerticleConfig config, VertxTestContext testContext) {
+            super(config);
+            this.testContext = testContext;
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            Uni.createFrom().voidItem()
+                .onItem().delayIt().by(Duration.ofMillis(50))
+                .subscribe().with(itsTime -> {
+                    testContext.verify(() -> assertFalse(Context.isOnEventLoopThread()));
+                    setApplicationData(callId, "initialized");
+                    sendResponse(createOk(callId, "v=0\r\n"));
+                });
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            String callId = bye.getCallId().getCallId();
+            testContext.verify(() -> assertEquals("initialized", getApplicationData(callId)));
+            sendResponse(createOk(callId));
+        }
+    }
+
+    /**
+     * Creates dialog with INVITE nobody answers and measures API calls on context
+     */
+    private static class DialogHolder extends AbstractSipUserAgent<String> {
+        private final CompletableFuture<Long> allocatedOnContext = new CompletableFuture<>();
+        private volatile String callId;
+
+        DialogHolder(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            try {
+                SipURI nobody = new AddressFactoryImpl().createSipURI("Nobody", "127.0.0.1:15099");
+                SIPRequest invite = createInvite("Holder", nobody);
+                sendRequest(invite);
+                callId = invite.getCallId().getCallId();
+                allocatedOnContext.complete(allocatedBy(callId));
+            } catch (Exception e) {
+                allocatedOnContext.completeExceptionally(e);
+            }
+        }
+
+        private long allocatedBy(String callId) {
+            com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            String data = "data";
+            for (int i = 0; i < ITERATIONS; i++) {
+                setApplicationData(callId, data);
+                getApplicationData(callId);
+            }
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                setApplicationData(callId, data);
+                getApplicationData(callId);
+            }
+            return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tech.ivoice.javax.sip.SipDialog;
+
+import javax.sip.address.SipURI;
+import javax.sip.message.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Primary and standby in one Vert.x instance share event bus as clustered nodes do
+ */
+class DialogFailoverTest {
+    private static final String REPLICATION_ADDRESS = "sip.dialogs.primary";
+    private static final int CALLER_PORT = 15111;
+    private static final int PRIMARY_PORT = 15112;
+    private static final int STANDBY_PORT = 15113;
+
+    private final Vertx vertx = Vertx.vertx();
+
+    @AfterEach
+    void tearDown() {
+        vertx.closeAndAwait();
+    }
+
+    @Test
+    void standbyHandlesByeOfDialogConfirmedOnFailedPrimary() throws Exception {
+        Standby standby = new Standby(new SipVerticleConfig("127.0.0.1", STANDBY_PORT, "udp")
+            .setStandbyFor(REPLICATION_ADDRESS));
+        Callee primary = new Callee(new SipVerticleConfig("127.0.0.1", PRIMARY_PORT, "udp")
+            .setReplicationAddress(REPLICATION_ADDRESS));
+        Caller caller = new Caller(new SipVerticleConfig("127.0.0.1", CALLER_PORT, "udp"),
+            new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:" + PRIMARY_PORT));
+        vertx.deployVerticleAndAwait(standby);
+        String primaryId = vertx.deployVerticleAndAwait(primary);
+        vertx.deployVerticleAndAwait(caller);
+
+        String callId = caller.confirmed.get(5, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (standby.getDialogReplicaCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, standby.getDialogReplicaCount());
+        vertx.undeployAndAwait(primaryId);
+
+        // standby takes over address of primary, e.g. floating IP
+        SIPRequest bye = caller.createBye(callId);
+        ((SipURI) bye.getTo().getAddress().getURI()).setPort(STANDBY_PORT);
+        caller.sendRequest(bye);
+
+        assertEquals(Response.OK, caller.terminated.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(callId, standby.restored.get(5, TimeUnit.SECONDS));
+        assertEquals(0, standby.getDialogReplicaCount());
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final CompletableFuture<String> confirmed = new CompletableFuture<>();
+        private final CompletableFuture<SIPResponse> terminated = new CompletableFuture<>();
+
+        Caller(SipVerticleConfig config, SipURI calleeUri) {
+            super(config);
+            this.calleeUri = calleeUri;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            sendRequest(createInvite("Caller", calleeUri));
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            sendRequest(createAck(successResponseOnInvite));
+            confirmed.complete(successResponseOnInvite.getCallId().getCallId());
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            terminated.complete(successResponseOnBye);
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<Void> {
+        Callee(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            sendResponse(createOk(callId, "v=0\r\n"));
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            sendResponse(createOk(bye.getCallId().getCallId()));
+        }
+    }
+
+    private static class Standby extends Callee {
+        private final CompletableFuture<String> restored = new CompletableFuture<>();
+
+        Standby(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onDialogRestored(SipDialog<Void> dialog) {
+            restored.complete(dialog.getDialogId());
+        }
+    }
+}
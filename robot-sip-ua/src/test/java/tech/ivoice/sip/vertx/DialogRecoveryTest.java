@@ -0,0 +1,131 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogSnapshot;
+
+import javax.sip.DialogState;
+import javax.sip.message.Response;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DialogRecoveryTest {
+    private static final int DIALOGS = 100_000;
+    private static final int BATCH = 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void confirmedDialogRecoveredAfterRestart() throws Exception {
+        SipUserAgentTestImpl before = userAgent();
+        before.recoverDialogs();
+        SIPRequest invite = before.createInvite("Client",
+            new AddressFactoryImpl().createSipURI("Server", "127.0.0.2:5082"));
+        before.sendRequest(invite);
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        before.onResponse(ok);
+        SIPRequest expectedBye = before.createBye(invite.getCallId().getCallId());
+        before.onTimerTick(AbstractSipUserAgent.currentTimeMillis());
+
+        List<DialogState> created = new ArrayList<>();
+        SipUserAgentTestImpl after = new SipUserAgentTestImpl(config().setMetrics(new SipMetrics() {
+            @Override
+            public void dialogCreated(DialogState state) {
+                created.add(state);
+            }
+        }), () -> "4f1a7c2e");
+        after.recoverDialogs();
+
+        SipDialog<Void> dialog = after.findDialog(invite.getCallId());
+        assertEquals(DialogState.CONFIRMED, dialog.getState());
+        assertEquals(List.of(DialogState.CONFIRMED), created, "restored dialog is counted as confirmed");
+        assertFalse(dialog.isServer());
+        assertEquals(expectedBye.encode(), after.createBye(invite.getCallId().getCallId()).encode());
+    }
+
+    @Test
+    void terminatedDialogIsNotRecovered() throws Exception {
+        SipUserAgentTestImpl before = userAgent();
+        before.recoverDialogs();
+        SIPRequest invite = before.createInvite("Client",
+            new AddressFactoryImpl().createSipURI("Server", "127.0.0.2:5082"));
+        before.sendRequest(invite);
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        before.onResponse(ok);
+        before.onTimerTick(AbstractSipUserAgent.currentTimeMillis());
+        SIPRequest bye = before.createBye(invite.getCallId().getCallId());
+        before.sendRequest(bye);
+        before.onResponse(bye.createResponse(Response.OK));
+        before.onTimerTick(AbstractSipUserAgent.currentTimeMillis());
+
+        SipUserAgentTestImpl after = userAgent();
+        after.recoverDialogs();
+
+        assertEquals(0, after.getDialogCount());
+    }
+
+    @Test
+    void hundredThousandDialogsRecovered() throws Exception {
+        SipUserAgentTestImpl before = userAgent();
+        before.recoverDialogs();
+        SIPRequest invite = before.createInvite("Client",
+            new AddressFactoryImpl().createSipURI("Server", "127.0.0.2:5082"));
+        before.sendRequest(invite);
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        before.onResponse(ok);
+        // journal dialogs as copies of one confirmed dialog with their own Call-IDs
+        ByteBuffer template = ByteBuffer.allocate(4096);
+        before.findDialog(invite.getCallId()).snapshot().writeTo(template);
+        template.flip();
+        SipDialogSnapshot.readString(template);
+        SipDialogJournal journal = new SipDialogJournal(journalFile(), 256 * 1024 * 1024);
+        for (int i = 0; i < DIALOGS; i += BATCH) {
+            ByteBuffer batch = ByteBuffer.allocate(BATCH * (1 + 64 + template.remaining()));
+            for (int j = i; j < i + BATCH; j++) {
+                batch.put(SipDialogReplicator.SNAPSHOT);
+                SipDialogSnapshot.writeString(batch, "recovered-" + j);
+                batch.put(template.duplicate());
+            }
+            assertTrue(journal.append(batch.flip()));
+        }
+        journal.close();
+        AtomicInteger restored = new AtomicInteger();
+        SipUserAgentTestImpl after = new SipUserAgentTestImpl(config(), () -> "4f1a7c2e") {
+            @Override
+            protected void onDialogRestored(SipDialog<Void> dialog) {
+                restored.incrementAndGet();
+            }
+        };
+
+        after.recoverDialogs();
+
+        assertEquals(DIALOGS, after.getDialogCount());
+        assertEquals(DIALOGS, restored.get());
+        assertEquals(DialogState.CONFIRMED, after.findDialog("recovered-" + (DIALOGS - 1)).getState());
+    }
+
+    private SipUserAgentTestImpl userAgent() {
+        return new SipUserAgentTestImpl(config(), () -> "4f1a7c2e");
+    }
+
+    private SipVerticleConfig config() {
+        return new SipVerticleConfig("127.0.0.1", 5080, "udp").setJournalDirectory(directory.toString());
+    }
+
+    private Path journalFile() {
+        return directory.resolve("dialogs-udp-5080-0.journal");
+    }
+}
@@ -0,0 +1,102 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.netty.channel.epoll.Epoll;
+import io.vertx.core.VertxOptions;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.address.SipURI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NativeUdpTransportTest {
+    private static final int CALLS = 50;
+
+    @Test
+    void callsOverNativeUdp() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "epoll is not available");
+        Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+        try {
+            assertTrue(vertx.isNativeTransportEnabled());
+            VertxTestContext testContext = new VertxTestContext();
+            SipURI calleeUri = new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:15092");
+            Callee callee = new Callee(config(15092));
+            Caller caller = new Caller(config(15091), calleeUri, testContext.checkpoint(CALLS));
+
+            vertx.deployVerticle(callee)
+                .chain(() -> vertx.deployVerticle(caller))
+                .subscribe().with(id -> {
+                }, testContext::failNow);
+
+            assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS), "calls not completed");
+            if (testContext.failed()) {
+                throw new AssertionError(testContext.causeOfFailure());
+            }
+        } finally {
+            vertx.closeAndAwait();
+        }
+    }
+
+    private static SipVerticleConfig config(int port) {
+        return new SipVerticleConfig("127.0.0.1", port, "udp")
+            .setNativeUdp(true)
+            .setUdpReceiveBufferSize(1024 * 1024)
+            .setUdpSendBufferSize(1024 * 1024);
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final Checkpoint completed;
+
+        Caller(SipVerticleConfig config, SipURI calleeUri, Checkpoint completed) {
+            super(config);
+            this.calleeUri = calleeUri;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            // all INVITEs are written in one task, so flushed together
+            for (int i = 0; i < CALLS; i++) {
+                sendRequest(createInvite("Caller", calleeUri));
+            }
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            String callId = successResponseOnInvite.getCallId().getCallId();
+            sendRequest(createAck(successResponseOnInvite));
+            sendRequest(createBye(callId));
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            completed.flag();
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<Void> {
+        Callee(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            sendResponse(createOk(callId, "v=0\r\n"));
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            sendResponse(createOk(bye.getCallId().getCallId()));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.buffer.impl.VertxByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceivedBytesTest {
+    @Test
+    void receivedBufferIsNotCopied() {
+        byte[] bytes = SipMessages.INVITE.getBytes();
+        // same buffer as created by Vert.x for received datagram
+        ByteBuf byteBuf = VertxByteBufAllocator.DEFAULT.heapBuffer(bytes.length).writeBytes(bytes);
+        Buffer received = Buffer.buffer(byteBuf);
+
+        assertSame(byteBuf.array(), ReceivedBytes.of(received));
+    }
+
+    @Test
+    void sliceOfLargerArrayIsCopied() {
+        byte[] bytes = (SipMessages.INVITE + SipMessages.BYE).getBytes();
+        Buffer slice = Buffer.buffer(bytes.length).appendBytes(bytes).slice(0, SipMessages.INVITE.length());
+
+        byte[] message = ReceivedBytes.of(slice);
+
+        assertNotSame(bytes, message);
+        assertArrayEquals(SipMessages.INVITE.getBytes(), message);
+    }
+}
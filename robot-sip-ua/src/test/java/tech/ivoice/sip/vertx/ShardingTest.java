@@ -0,0 +1,106 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.sip.address.SipURI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class ShardingTest {
+    private static final int SHARDS = 4;
+    private static final int CALLS = 32;
+
+    @Test
+    void dialogIsHandledByOneShard(io.vertx.core.Vertx vertx, VertxTestContext testContext) throws Exception {
+        Map<String, Set<String>> threadsByCallId = new ConcurrentHashMap<>();
+        SipVerticleConfig calleeConfig = new SipVerticleConfig("127.0.0.1", 15182, "udp").setShards(SHARDS);
+        SipURI calleeUri = new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:15182");
+        Checkpoint terminated = testContext.checkpoint(CALLS);
+
+        Vertx mutinyVertx = Vertx.newInstance(vertx);
+        mutinyVertx.deployVerticle(() -> new Callee(calleeConfig, threadsByCallId),
+                new DeploymentOptions().setInstances(SHARDS))
+            .chain(() -> mutinyVertx.deployVerticle(
+                new Caller(new SipVerticleConfig("127.0.0.1", 15181, "udp"), calleeUri, terminated)))
+            .subscribe().with(id -> {
+            }, testContext::failNow);
+
+        assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS));
+        assertEquals(CALLS, threadsByCallId.size());
+        threadsByCallId.values().forEach(threads -> assertEquals(1, threads.size()));
+        long distinctThreads = threadsByCallId.values().stream().flatMap(Set::stream).distinct().count();
+        assertTrue(distinctThreads > 1, "calls must be spread across event loops");
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final Checkpoint terminated;
+
+        Caller(SipVerticleConfig config, SipURI calleeUri, Checkpoint terminated) {
+            super(config);
+            this.calleeUri = calleeUri;
+            this.terminated = terminated;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            for (int i = 0; i < CALLS; i++) {
+                sendRequest(createInvite("Caller", calleeUri));
+            }
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            sendRequest(createAck(successResponseOnInvite));
+            sendRequest(createBye(successResponseOnInvite.getCallId().getCallId()));
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            terminated.flag();
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<Void> {
+        private final Map<String, Set<String>> threadsByCallId;
+
+        Callee(SipVerticleConfig config, Map<String, Set<String>> threadsByCallId) {
+            super(config);
+            this.threadsByCallId = threadsByCallId;
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            recordThread(callId);
+            sendResponse(createOk(callId));
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            String callId = bye.getCallId().getCallId();
+            recordThread(callId);
+            sendResponse(createOk(callId));
+        }
+
+        private void recordThread(String callId) {
+            threadsByCallId.computeIfAbsent(callId, id -> ConcurrentHashMap.newKeySet())
+                .add(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package tech.ivoice.sip.vertx;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tech.ivoice.sip.vertx.SipAdmissionControl.Rejection.*;
+import static tech.ivoice.sip.vertx.SipMessages.config;
+import static tech.ivoice.sip.vertx.SipMessages.dialog;
+
+class SipAdmissionControlTest {
+    private static final long TICK = SipTransactionEngine.TICK_MILLIS;
+
+    private final List<String> rejected = new ArrayList<>();
+    private final List<Long> lags = new ArrayList<>();
+    private final SipMetrics metrics = new SipMetrics() {
+        @Override
+        public void inviteRejected(String reason) {
+            rejected.add(reason);
+        }
+
+        @Override
+        public void eventLoopLag(long millis) {
+            lags.add(millis);
+        }
+    };
+
+    @Test
+    void admitsEverythingByDefault() {
+        SipAdmissionControl admission = admission(config());
+        for (int i = 0; i < 10_000; i++) {
+            admission.onTick(i * 1000);
+            assertNull(admission.admit("10.0.0.1", i));
+        }
+    }
+
+    @Test
+    void rejectsWhenDialogsLimitReached() throws ParseException {
+        SipVerticleConfig config = config().setMaxDialogs(1).setMetrics(metrics);
+        SipDialogStore<Void> dialogs = new SipDialogStore<>(config);
+        SipAdmissionControl admission = new SipAdmissionControl(config, dialogs);
+        assertNull(admission.admit("10.0.0.1", 0));
+
+        dialogs.add(dialog("call-1"), 0);
+
+        assertEquals(DIALOGS, admission.admit("10.0.0.1", 0));
+        assertEquals(List.of("dialogs"), rejected);
+    }
+
+    @Test
+    void rejectsWhileEventLoopLags() {
+        SipAdmissionControl admission = admission(config().setMaxEventLoopLag(100));
+        long now = 0;
+        admission.onTick(now);
+        // single late tick is smoothed
+        now += TICK + 400;
+        admission.onTick(now);
+        assertNull(admission.admit("10.0.0.1", now));
+
+        for (int i = 0; i < 10; i++) {
+            now += TICK + 400;
+            admission.onTick(now);
+        }
+        assertEquals(400, lags.get(lags.size() - 1));
+        assertEquals(EVENT_LOOP_LAG, admission.admit("10.0.0.1", now));
+        assertEquals(List.of("event_loop_lag"), rejected);
+
+        for (int i = 0; i < 50; i++) {
+            now += TICK;
+            admission.onTick(now);
+        }
+        assertNull(admission.admit("10.0.0.1", now), "lag is smoothed out");
+    }
+
+    @Test
+    void limitsCallsRatePerSource() {
+        SipAdmissionControl admission = admission(config().setMaxSourceCallsPerSecond(10));
+
+        // burst of 10 is admitted
+        for (int i = 0; i < 10; i++) {
+            assertNull(admission.admit("10.0.0.1", 0));
+        }
+        assertEquals(SOURCE_RATE, admission.admit("10.0.0.1", 0));
+        assertNull(admission.admit("10.0.0.2", 0), "other source has its own bucket");
+
+        // one token per 100 ms
+        assertEquals(SOURCE_RATE, admission.admit("10.0.0.1", 50));
+        assertNull(admission.admit("10.0.0.1", 150));
+        assertEquals(SOURCE_RATE, admission.admit("10.0.0.1", 150));
+        assertEquals(List.of("source_rate", "source_rate", "source_rate"), rejected);
+
+        // full bucket is swept and starts full again
+        admission.onTick(5000);
+        for (int i = 0; i < 10; i++) {
+            assertNull(admission.admit("10.0.0.1", 5000));
+        }
+    }
+
+    private SipAdmissionControl admission(SipVerticleConfig config) {
+        config.setMetrics(metrics);
+        return new SipAdmissionControl(config, new SipDialogStore<>(config));
+    }
+}
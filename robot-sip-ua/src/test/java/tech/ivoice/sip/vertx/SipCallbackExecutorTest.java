@@ -0,0 +1,96 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipCallbackExecutorTest {
+    private final Vertx vertx = Vertx.vertx();
+    private final Context context = vertx.getOrCreateContext();
+    private final SipCallbackExecutor executor = new SipCallbackExecutor(context);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+        vertx.close();
+    }
+
+    @Test
+    void callbacksOfDialogRunInOrder() throws InterruptedException {
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(50);
+        context.runOnContext(v -> {
+            for (int i = 0; i < 50; i++) {
+                int index = i;
+                executor.execute("dialog", () -> {
+                    assertFalse(Context.isOnEventLoopThread());
+                    if (index % 10 == 0) {
+                        sleep(5);
+                    }
+                    executed.add(index);
+                    done.countDown();
+                });
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toList()), executed);
+    }
+
+    @Test
+    void blockedCallbackDoesNotDelayOtherDialogs() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        CountDownLatch blockedDone = new CountDownLatch(1);
+        context.runOnContext(v -> {
+            executor.execute("blocked", () -> await(release));
+            executor.execute("blocked", blockedDone::countDown);
+            executor.execute("other", otherDone::countDown);
+        });
+
+        assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, blockedDone.getCount(), "callback started before previous of the same dialog returned");
+        release.countDown();
+        assertTrue(blockedDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedCallbackDoesNotStopDialog() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        context.runOnContext(v -> {
+            executor.execute("dialog", () -> {
+                throw new IllegalStateException("expected");
+            });
+            executor.execute("dialog", done::countDown);
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
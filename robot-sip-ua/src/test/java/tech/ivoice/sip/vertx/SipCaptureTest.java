@@ -0,0 +1,177 @@
+package tech.ivoice.sip.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipCaptureTest {
+    private static final int MIN_FILE_SIZE = 24 + 16 + 65535;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesPcapReadableByWireshark() throws IOException {
+        SipCapture capture = new SipCapture(directory, "sip", 1024 * 1024, 2);
+        byte[] invite = SipMessages.INVITE.getBytes();
+        ByteBuf bye = Unpooled.copiedBuffer(SipMessages.BYE.getBytes());
+        long before = System.currentTimeMillis();
+
+        capture.packet("10.0.0.1", 5080, "127.0.0.1", 5081, invite);
+        capture.packet("127.0.0.1", 5081, "10.0.0.1", 5080, bye);
+        capture.close();
+
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(capture.file(0)));
+        assertEquals(0xa1b23c4d, file.getInt(), "nanosecond pcap magic");
+        assertEquals(2, file.getShort());
+        assertEquals(4, file.getShort());
+        file.position(20);
+        assertEquals(101, file.getInt(), "LINKTYPE_RAW");
+
+        List<Packet> packets = packets(file);
+        assertEquals(2, packets.size());
+        Packet first = packets.get(0);
+        assertTrue(first.seconds >= before / 1000 && first.seconds <= System.currentTimeMillis() / 1000);
+        assertEquals("10.0.0.1", first.source);
+        assertEquals(5080, first.sourcePort);
+        assertEquals("127.0.0.1", first.destination);
+        assertEquals(5081, first.destinationPort);
+        assertEquals(SipMessages.INVITE, first.payload);
+        assertEquals(SipMessages.BYE, packets.get(1).payload);
+        assertEquals(0, bye.readerIndex(), "sent buffer is not consumed");
+    }
+
+    @Test
+    void ringRotatesAndOverwritesOldestFile() throws IOException {
+        SipCapture capture = new SipCapture(directory, "sip", MIN_FILE_SIZE, 2);
+        byte[] message = new byte[30_000];
+
+        // two packets per file
+        for (int i = 0; i < 7; i++) {
+            message[0] = (byte) i;
+            capture.packet("10.0.0.1", 5080, "127.0.0.1", 5081, message);
+        }
+        capture.close();
+
+        // files: 0 - packets 0, 1; 1 - packets 2, 3; 0 - packets 4, 5; 1 - packet 6
+        List<Packet> first = packets(ByteBuffer.wrap(Files.readAllBytes(capture.file(0))).position(24));
+        List<Packet> second = packets(ByteBuffer.wrap(Files.readAllBytes(capture.file(1))).position(24));
+        assertEquals(List.of(4, 5), firstBytes(first));
+        assertEquals(List.of(6), firstBytes(second));
+        assertEquals(7, capture.getPackets());
+    }
+
+    @Test
+    void ipv6AddressesAndUnknownHosts() throws IOException {
+        SipCapture capture = new SipCapture(directory, "sip", 1024 * 1024, 1);
+
+        capture.packet("::1", 5080, "::1", 5081, new byte[10]);
+        capture.packet("robot.local", 5080, "::1", 5081, new byte[10]);
+        capture.close();
+
+        List<Packet> packets = packets(ByteBuffer.wrap(Files.readAllBytes(capture.file(0))).position(24));
+        assertEquals("0:0:0:0:0:0:0:1", packets.get(0).source);
+        // host name is not resolved, unknown IPv4 address is written as IPv4-mapped IPv6 address
+        assertEquals("0.0.0.0", packets.get(1).source);
+    }
+
+    @Test
+    void packetDoesNotAllocate() {
+        SipCapture capture = new SipCapture(directory, "sip", 64 * 1024 * 1024, 1);
+        byte[] message = SipMessages.INVITE.getBytes();
+        ByteBuf buffer = Unpooled.directBuffer().writeBytes(message);
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 10_000; i++) {
+            capture.packet("10.0.0.1", 5080, "127.0.0.1", 5081, message);
+            capture.packet("127.0.0.1", 5081, "10.0.0.1", 5080, buffer);
+        }
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            capture.packet("10.0.0.1", 5080, "127.0.0.1", 5081, message);
+            capture.packet("127.0.0.1", 5081, "10.0.0.1", 5080, buffer);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        capture.close();
+
+        assertTrue(allocated < 1000, allocated + " bytes allocated for 20000 packets");
+    }
+
+    private static List<Integer> firstBytes(List<Packet> packets) {
+        List<Integer> bytes = new ArrayList<>();
+        for (Packet packet : packets) {
+            bytes.add((int) packet.payload.charAt(0));
+        }
+        return bytes;
+    }
+
+    private static List<Packet> packets(ByteBuffer file) {
+        List<Packet> packets = new ArrayList<>();
+        while (file.hasRemaining()) {
+            Packet packet = new Packet();
+            packet.seconds = file.getInt() & 0xffffffffL;
+            int nanos = file.getInt();
+            assertTrue(nanos >= 0 && nanos < 1_000_000_000);
+            int length = file.getInt();
+            assertEquals(length, file.getInt(), "not truncated");
+            int start = file.position();
+            int version = (file.get(start) & 0xff) >> 4;
+            int addressLength = version == 4 ? 4 : 16;
+            int udp = start + (version == 4 ? 20 : 40);
+            if (version == 4) {
+                assertEquals(length, file.getShort(start + 2) & 0xffff);
+                assertEquals(17, file.get(start + 9));
+            } else {
+                assertEquals(6, version);
+                assertEquals(length - 40, file.getShort(start + 4) & 0xffff);
+                assertEquals(17, file.get(start + 6));
+            }
+            packet.source = address(file, udp - 2 * addressLength, addressLength);
+            packet.destination = address(file, udp - addressLength, addressLength);
+            packet.sourcePort = file.getShort(udp) & 0xffff;
+            packet.destinationPort = file.getShort(udp + 2) & 0xffff;
+            int udpLength = file.getShort(udp + 4) & 0xffff;
+            assertEquals(start + length, udp + udpLength);
+            byte[] payload = new byte[udpLength - 8];
+            file.position(udp + 8);
+            file.get(payload);
+            packet.payload = new String(payload);
+            packets.add(packet);
+        }
+        return packets;
+    }
+
+    private static String address(ByteBuffer file, int position, int length) {
+        byte[] address = new byte[length];
+        for (int i = 0; i < length; i++) {
+            address[i] = file.get(position + i);
+        }
+        try {
+            return java.net.InetAddress.getByAddress(address).getHostAddress();
+        } catch (java.net.UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static class Packet {
+        private long seconds;
+        private String source;
+        private int sourcePort;
+        private String destination;
+        private int destinationPort;
+        private String payload;
+    }
+}
@@ -0,0 +1,100 @@
+package tech.ivoice.sip.vertx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipDialogJournalTest {
+    private static final int FILE_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsReplayedAfterReopen() {
+        Path file = directory.resolve("dialogs.journal");
+        SipDialogJournal journal = new SipDialogJournal(file, FILE_SIZE);
+        assertTrue(journal.append(record(1, 10)));
+        assertTrue(journal.append(record(2, 20)));
+        journal.close();
+
+        SipDialogJournal reopened = new SipDialogJournal(file, FILE_SIZE);
+        List<ByteBuffer> records = replay(reopened);
+
+        assertEquals(List.of(record(1, 10), record(2, 20)), records);
+        assertTrue(reopened.append(record(3, 30)), "appended after the last record");
+        assertEquals(3, replay(reopened).size());
+    }
+
+    @Test
+    void tornRecordIsNotReplayed() throws IOException {
+        Path file = directory.resolve("dialogs.journal");
+        SipDialogJournal journal = new SipDialogJournal(file, FILE_SIZE);
+        journal.append(record(1, 10));
+        int end = journal.size();
+        journal.close();
+        // crash while writing the second record: batch bytes are there, its length is not
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(record(2, 20), end + 4);
+        }
+
+        List<ByteBuffer> records = replay(new SipDialogJournal(file, FILE_SIZE));
+
+        assertEquals(List.of(record(1, 10)), records);
+    }
+
+    @Test
+    void fullJournalIsCompacted() throws IOException {
+        Path file = directory.resolve("dialogs.journal");
+        SipDialogJournal journal = new SipDialogJournal(file, FILE_SIZE);
+        int appended = 0;
+        while (journal.append(record(appended, 1000))) {
+            appended++;
+        }
+        assertTrue(appended > 60, appended + " records");
+
+        journal.rewrite(record(-1, 100));
+
+        assertEquals(8 + 4 + 100, journal.size());
+        assertEquals(List.of(record(-1, 100)), replay(journal));
+        assertTrue(journal.append(record(0, 1000)));
+        journal.close();
+        assertEquals(List.of(record(-1, 100), record(0, 1000)), replay(new SipDialogJournal(file, FILE_SIZE)));
+        assertFalse(Files.exists(directory.resolve("dialogs.journal.compact")));
+    }
+
+    @Test
+    void unknownFileIsReplaced() throws IOException {
+        Path file = directory.resolve("dialogs.journal");
+        Files.write(file, "not a journal".getBytes());
+
+        SipDialogJournal journal = new SipDialogJournal(file, FILE_SIZE);
+
+        assertTrue(replay(journal).isEmpty());
+        assertTrue(journal.append(record(1, 10)));
+    }
+
+    private static List<ByteBuffer> replay(SipDialogJournal journal) {
+        List<ByteBuffer> records = new ArrayList<>();
+        journal.replay(records::add);
+        return records;
+    }
+
+    private static ByteBuffer record(int value, int length) {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        while (record.remaining() >= Integer.BYTES) {
+            record.putInt(value);
+        }
+        return record.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.junit.jupiter.api.Test;
+import tech.ivoice.javax.sip.SipClientTransactionImpl;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogImpl;
+import tech.ivoice.javax.sip.SipDialogSnapshot;
+import tech.ivoice.javax.sip.SipServerTransactionImpl;
+
+import javax.sip.DialogState;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipDialogReplicatorTest {
+    private static final String CALL_ID = "2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11";
+
+    private final SipVerticleConfig config = new SipVerticleConfig("127.0.0.1", 5081, "udp")
+        .setReplicationAddress("sip.dialogs.primary");
+    private final SipDialogStore<Void> dialogs = new SipDialogStore<>(config);
+    private final SipDialogReplicator primary = new SipDialogReplicator(config);
+    private final SipDialogReplicator standby = new SipDialogReplicator(config);
+
+    @Test
+    void confirmedDialogRestoredOnStandby() throws Exception {
+        SipDialog<Void> dialog = confirmedDialog();
+
+        primary.changed(CALL_ID);
+        standby.apply(primary.nextBatch(dialogs), 0);
+        SipDialogSnapshot snapshot = standby.take(CALL_ID);
+        SipDialog<Void> restored = new SipDialogImpl<>(snapshot, () -> "z9hG4bK-branch", new HeaderFactoryImpl(),
+            "udp");
+
+        assertEquals(DialogState.CONFIRMED, restored.getState());
+        assertTrue(restored.isServer());
+        assertEquals(dialog.createRequest(Request.BYE).encode(), restored.createRequest(Request.BYE).encode());
+        assertTrue(restored.createRequest(Request.BYE).encode().contains("Route: <sip:proxy.example.com;lr>"));
+        assertNull(standby.take(CALL_ID), "replica is taken once");
+    }
+
+    @Test
+    void sentRequestReplicatedAsCSeq() throws Exception {
+        SipDialog<Void> dialog = confirmedDialog();
+        primary.changed(CALL_ID);
+        standby.apply(primary.nextBatch(dialogs), 0);
+
+        dialog.addTransaction(new SipClientTransactionImpl(dialog.createRequest(Request.BYE)));
+        primary.changed(CALL_ID);
+        ByteBuffer batch = primary.nextBatch(dialogs);
+
+        assertEquals(SipDialogReplicator.CSEQ, batch.get(0));
+        assertTrue(batch.remaining() < 64, batch.remaining() + " bytes for CSeq update");
+        standby.apply(batch, 0);
+        assertEquals(2, standby.take(CALL_ID).getLocalCSeq());
+    }
+
+    @Test
+    void removedDialogRemovedOnStandby() throws Exception {
+        confirmedDialog();
+        primary.changed(CALL_ID);
+        standby.apply(primary.nextBatch(dialogs), 0);
+        assertEquals(1, standby.replicas());
+
+        dialogs.remove(CALL_ID);
+        primary.changed(CALL_ID);
+        standby.apply(primary.nextBatch(dialogs), 0);
+
+        assertEquals(0, standby.replicas());
+        primary.changed(CALL_ID);
+        assertNull(primary.nextBatch(dialogs), "removal is replicated once");
+    }
+
+    @Test
+    void earlyDialogIsNotReplicated() throws Exception {
+        SIPRequest invite = invite();
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipServerTransactionImpl(invite), () -> "z9hG4bK-branch",
+            new HeaderFactoryImpl(), "udp");
+        dialog.updateOnResponse(invite.createResponse(Response.RINGING));
+        dialogs.add(dialog, 0);
+
+        primary.changed(CALL_ID);
+
+        assertNull(primary.nextBatch(dialogs));
+    }
+
+    @Test
+    void replicasNotUpdatedForLifetimeAreSwept() throws Exception {
+        config.setDialogLifetime(DialogState.CONFIRMED, 60_000);
+        SipDialogReplicator standby = new SipDialogReplicator(config);
+        confirmedDialog();
+        primary.changed(CALL_ID);
+        standby.apply(primary.nextBatch(dialogs), 0);
+
+        standby.sweep(30_000);
+        assertEquals(1, standby.replicas());
+        standby.sweep(60_000);
+        assertEquals(0, standby.replicas());
+    }
+
+    private SipDialog<Void> confirmedDialog() throws Exception {
+        SIPRequest invite = invite();
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipServerTransactionImpl(invite), () -> "z9hG4bK-branch",
+            new HeaderFactoryImpl(), "udp");
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-5e1d");
+        dialog.updateOnResponse(ok);
+        dialogs.add(dialog, 0);
+        return dialog;
+    }
+
+    private static SIPRequest invite() throws Exception {
+        String invite = SipMessages.INVITE.replace("Max-Forwards: 70\r\n",
+            "Max-Forwards: 70\r\nRecord-Route: <sip:proxy.example.com;lr>\r\n");
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(invite.getBytes(), true, false, null);
+    }
+}
@@ -0,0 +1,145 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPResponse;
+import org.junit.jupiter.api.Test;
+import tech.ivoice.javax.sip.SipDialog;
+
+import javax.sip.DialogState;
+import javax.sip.message.Response;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tech.ivoice.sip.vertx.SipMessages.config;
+import static tech.ivoice.sip.vertx.SipMessages.dialog;
+
+class SipDialogStoreTest {
+    private final List<SipDialog<Void>> evicted = new ArrayList<>();
+
+    @Test
+    void addGetRemove() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config());
+        SipDialog<Void> dialog = dialog("call-1");
+        store.add(dialog, 0);
+
+        assertSame(dialog, store.get("call-1"));
+        assertThrows(IllegalStateException.class, () -> store.add(dialog("call-1"), 0));
+        assertSame(dialog, store.remove("call-1"));
+        assertNull(store.get("call-1"));
+        assertNull(store.remove("call-1"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void rejectsWhenFull() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config().setMaxDialogs(2));
+        store.add(dialog("call-1"), 0);
+        assertFalse(store.rejectNew());
+        store.add(dialog("call-2"), 0);
+
+        assertTrue(store.rejectNew());
+        assertThrows(IllegalStateException.class, () -> store.add(dialog("call-3"), 0));
+        assertEquals(2, store.getRejected());
+
+        store.remove("call-1");
+        assertFalse(store.rejectNew());
+    }
+
+    @Test
+    void evictsIdleByState() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config()
+            .setDialogIdleTimeout(null, 1000)
+            .setDialogIdleTimeout(DialogState.EARLY, 5000));
+        SipDialog<Void> initial = dialog("call-1");
+        SipDialog<Void> early = dialog("call-2");
+        early.updateOnResponse(provisional(early));
+        store.add(initial, 0);
+        store.add(early, 0);
+
+        store.sweep(999, evicted::add);
+        assertTrue(evicted.isEmpty());
+
+        store.sweep(1000, evicted::add);
+        assertEquals(List.of(initial), evicted);
+
+        store.touch("call-2", 4000);
+        store.sweep(8999, evicted::add);
+        assertEquals(1, evicted.size());
+        store.sweep(9000, evicted::add);
+        assertEquals(List.of(initial, early), evicted);
+
+        assertEquals(2, store.getEvictedIdle());
+        assertEquals(0, store.getEvictedExpired());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void evictsOnLifetimeDespiteActivity() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config()
+            .setDialogIdleTimeout(null, 0)
+            .setDialogLifetime(null, 10_000));
+        SipDialog<Void> dialog = dialog("call-1");
+        store.add(dialog, 0);
+
+        store.touch("call-1", 9000);
+        store.sweep(9999, evicted::add);
+        assertTrue(evicted.isEmpty());
+
+        store.sweep(10_000, evicted::add);
+        assertEquals(List.of(dialog), evicted);
+        assertEquals(1, store.getEvictedExpired());
+    }
+
+    @Test
+    void confirmedDialogHasLongerDefaultLifetime() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config());
+        SipDialog<Void> confirmed = dialog("call-1");
+        SIPResponse ok = confirmed.getLastRequest().createResponse(Response.OK);
+        ok.setToTag("server-1");
+        confirmed.updateOnResponse(ok);
+        store.add(confirmed, 0);
+        SipDialog<Void> initial = dialog("call-2");
+        store.add(initial, 0);
+
+        store.sweep(config().getDialogLifetime(null), evicted::add);
+
+        assertEquals(DialogState.CONFIRMED, confirmed.getState());
+        assertEquals(List.of(initial), evicted);
+        assertSame(confirmed, store.get("call-1"));
+
+        store.sweep(config().getDialogLifetime(DialogState.CONFIRMED), evicted::add);
+
+        assertEquals(List.of(initial, confirmed), evicted);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void sweepIsIncremental() throws ParseException {
+        SipDialogStore<Void> store = new SipDialogStore<>(config().setDialogIdleTimeout(null, 1000));
+        int dialogs = SipDialogStore.SWEEP_BATCH * 3 + 10;
+        for (int i = 0; i < dialogs; i++) {
+            store.add(dialog("call-" + i), i < 10 ? 1000 : 0);
+        }
+
+        store.sweep(1000, evicted::add);
+        // 10 active dialogs checked first
+        assertEquals(SipDialogStore.SWEEP_BATCH - 10, evicted.size());
+
+        // cursor continues, recently active dialogs are kept
+        for (int sweeps = 0; sweeps < 4; sweeps++) {
+            store.sweep(1000, evicted::add);
+        }
+        assertEquals(dialogs - 10, evicted.size());
+        assertEquals(10, store.size());
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(store.get("call-" + i));
+        }
+    }
+
+    private static SIPResponse provisional(SipDialog<Void> dialog) throws ParseException {
+        SIPResponse response = dialog.getLastRequest().createResponse(Response.RINGING);
+        response.setToTag("server-1");
+        return response;
+    }
+}
@@ -0,0 +1,176 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.address.SipURI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipDispatcherTest {
+    private static final int DISPATCHER_PORT = 15120;
+    private static final int CALLER_PORT = 15121;
+    private static final int FIRST_BACKEND_PORT = 15122;
+    private static final int SECOND_BACKEND_PORT = 15123;
+    private static final int DEAD_BACKEND_PORT = 15124;
+    private static final int CALLS = 20;
+
+    private final Vertx vertx = Vertx.vertx();
+
+    @AfterEach
+    void tearDown() {
+        vertx.closeAndAwait();
+    }
+
+    @Test
+    void callsSpreadOverBackendsByCallId() throws Exception {
+        Callee first = new Callee(new SipVerticleConfig("127.0.0.1", FIRST_BACKEND_PORT, "udp"));
+        Callee second = new Callee(new SipVerticleConfig("127.0.0.1", SECOND_BACKEND_PORT, "udp"));
+        vertx.deployVerticleAndAwait(first);
+        vertx.deployVerticleAndAwait(second);
+        SipDispatcher dispatcher = new SipDispatcher(dispatcherConfig());
+        vertx.deployVerticleAndAwait(dispatcher);
+
+        Caller caller = new Caller();
+        vertx.deployVerticleAndAwait(caller);
+
+        assertTrue(caller.confirmed.await(5, TimeUnit.SECONDS), caller.confirmed.getCount() + " calls left");
+        assertEquals(CALLS, first.getDialogCount() + second.getDialogCount());
+        assertTrue(first.getDialogCount() > 0 && second.getDialogCount() > 0,
+            first.getDialogCount() + " and " + second.getDialogCount() + " calls");
+        assertTrue(dispatcher.getForwardedCount() >= CALLS, "INVITEs are forwarded");
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    void deadBackendLeavesRingAndJoinsWhenAnswers() throws Exception {
+        Callee first = new Callee(new SipVerticleConfig("127.0.0.1", FIRST_BACKEND_PORT, "udp"));
+        Callee second = new Callee(new SipVerticleConfig("127.0.0.1", SECOND_BACKEND_PORT, "udp"));
+        vertx.deployVerticleAndAwait(first);
+        vertx.deployVerticleAndAwait(second);
+        SipDispatcher dispatcher = new SipDispatcher(dispatcherConfig()
+            .addBackend("127.0.0.1", DEAD_BACKEND_PORT)
+            .setHealthCheckInterval(100)
+            .setHealthCheckFailures(3));
+        vertx.deployVerticleAndAwait(dispatcher);
+
+        awaitAliveBackends(dispatcher, 2);
+        Caller caller = new Caller();
+        vertx.deployVerticleAndAwait(caller);
+        assertTrue(caller.confirmed.await(5, TimeUnit.SECONDS), caller.confirmed.getCount() + " calls left");
+        assertEquals(CALLS, first.getDialogCount() + second.getDialogCount());
+
+        vertx.deployVerticleAndAwait(new Callee(new SipVerticleConfig("127.0.0.1", DEAD_BACKEND_PORT, "udp")));
+        awaitAliveBackends(dispatcher, 3);
+    }
+
+    @Test
+    void callerAskingForRportIsAnsweredDirectly() throws Exception {
+        Callee first = new Callee(new SipVerticleConfig("127.0.0.1", FIRST_BACKEND_PORT, "udp").setTrustTopVia(true));
+        Callee second = new Callee(new SipVerticleConfig("127.0.0.1", SECOND_BACKEND_PORT, "udp").setTrustTopVia(true));
+        vertx.deployVerticleAndAwait(first);
+        vertx.deployVerticleAndAwait(second);
+        SipDispatcher dispatcher = new SipDispatcher(dispatcherConfig());
+        vertx.deployVerticleAndAwait(dispatcher);
+
+        Caller caller = new Caller(true);
+        vertx.deployVerticleAndAwait(caller);
+
+        assertTrue(caller.confirmed.await(5, TimeUnit.SECONDS), caller.confirmed.getCount() + " calls left");
+        assertEquals(CALLS, first.getDialogCount() + second.getDialogCount());
+    }
+
+    @Test
+    void topViaIsStampedWithSender() {
+        String request = "INVITE sip:robot@10.0.0.2 SIP/2.0\r\n" +
+            "Via: SIP/2.0/UDP 192.168.1.5:5060;rport;branch=z9hG4bK-1;received=1.1.1.1, SIP/2.0/UDP 10.0.0.9\r\n" +
+            "Call-ID: 1\r\n\r\n";
+        String noRport = "INVITE sip:robot@10.0.0.2 SIP/2.0\r\nv: SIP/2.0/UDP 192.168.1.5;branch=z9hG4bK-1\r\n\r\n";
+
+        assertEquals("INVITE sip:robot@10.0.0.2 SIP/2.0\r\n" +
+                "Via: SIP/2.0/UDP 192.168.1.5:5060;branch=z9hG4bK-1;received=203.0.113.7;rport=40123, " +
+                "SIP/2.0/UDP 10.0.0.9\r\n" +
+                "Call-ID: 1\r\n\r\n",
+            new String(SipDispatcher.stampVia(request.getBytes(), "203.0.113.7", 40123)));
+        assertEquals("INVITE sip:robot@10.0.0.2 SIP/2.0\r\n" +
+                "v: SIP/2.0/UDP 192.168.1.5;branch=z9hG4bK-1;received=203.0.113.7\r\n\r\n",
+            new String(SipDispatcher.stampVia(noRport.getBytes(), "203.0.113.7", 40123)));
+    }
+
+    @Test
+    void messageWithoutCallIdIsDropped() {
+        SipDispatcher dispatcher = new SipDispatcher(dispatcherConfig());
+
+        assertNull(dispatcher.backendOf(SipMessages.INVITE.replace("Call-ID", "X-Call").getBytes()));
+        assertNotNull(dispatcher.backendOf(SipMessages.INVITE.getBytes()));
+    }
+
+    private static void awaitAliveBackends(SipDispatcher dispatcher, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getAliveBackendCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, dispatcher.getAliveBackendCount());
+    }
+
+    private static SipDispatcherConfig dispatcherConfig() {
+        return new SipDispatcherConfig(new SipVerticleConfig("127.0.0.1", DISPATCHER_PORT, "udp"))
+            .addBackend("127.0.0.1", FIRST_BACKEND_PORT)
+            .addBackend("127.0.0.1", SECOND_BACKEND_PORT);
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final CountDownLatch confirmed = new CountDownLatch(CALLS);
+        private final boolean rport;
+
+        Caller() {
+            this(false);
+        }
+
+        Caller(boolean rport) {
+            super(new SipVerticleConfig("127.0.0.1", CALLER_PORT, "udp"));
+            this.rport = rport;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            try {
+                SipURI dispatcher = new AddressFactoryImpl().createSipURI("Robot", "127.0.0.1:" + DISPATCHER_PORT);
+                for (int i = 0; i < CALLS; i++) {
+                    SIPRequest invite = createInvite("Caller", dispatcher);
+                    if (rport) {
+                        invite.getTopmostVia().setRPort();
+                    }
+                    sendRequest(invite);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            sendRequest(createAck(successResponseOnInvite));
+            confirmed.countDown();
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<Void> {
+        Callee(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            sendResponse(createOk(callId, "v=0\r\n"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package tech.ivoice.sip.vertx;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipHashRingTest {
+    private static final int CALLS = 100_000;
+
+    private final List<String> callIds = new ArrayList<>();
+
+    SipHashRingTest() {
+        for (int i = 0; i < CALLS; i++) {
+            callIds.add(UUID.randomUUID().toString());
+        }
+    }
+
+    @Test
+    void callsSpreadEvenly() {
+        List<String> backends = backends(5);
+        Map<String, String> owners = owners(ring(backends));
+
+        Map<String, Integer> counts = new HashMap<>();
+        owners.values().forEach(backend -> counts.merge(backend, 1, Integer::sum));
+        for (String backend : backends) {
+            int count = counts.getOrDefault(backend, 0);
+            assertTrue(Math.abs(count - CALLS / 5) < CALLS / 5 / 5, backend + " owns " + count + " calls");
+        }
+    }
+
+    @Test
+    void joiningBackendTakesCallsOnlyFromOthers() {
+        List<String> backends = backends(4);
+        Map<String, String> before = owners(ring(backends));
+        backends.add("10.0.0.5:5080");
+
+        Map<String, String> after = owners(ring(backends));
+
+        int moved = 0;
+        for (String callId : callIds) {
+            if (!before.get(callId).equals(after.get(callId))) {
+                assertEquals("10.0.0.5:5080", after.get(callId), "call moves only to the joined backend");
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - CALLS / 5) < CALLS / 5 / 5, moved + " calls moved");
+    }
+
+    @Test
+    void leavingBackendCallsMoveOthersStay() {
+        List<String> backends = backends(5);
+        Map<String, String> before = owners(ring(backends));
+        backends.remove("10.0.0.3:5080");
+
+        Map<String, String> after = owners(ring(backends));
+
+        for (String callId : callIds) {
+            if (!before.get(callId).equals("10.0.0.3:5080")) {
+                assertEquals(before.get(callId), after.get(callId));
+            }
+        }
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        SipHashRing<String> ring = ring(List.of());
+
+        assertTrue(ring.isEmpty());
+        assertNull(ring.nodeOf(42));
+    }
+
+    private Map<String, String> owners(SipHashRing<String> ring) {
+        Map<String, String> owners = new HashMap<>();
+        for (String callId : callIds) {
+            byte[] bytes = callId.getBytes(StandardCharsets.UTF_8);
+            owners.put(callId, ring.nodeOf(SipHashRing.hash(bytes, 0, bytes.length)));
+        }
+        return owners;
+    }
+
+    private static SipHashRing<String> ring(List<String> backends) {
+        return new SipHashRing<>(backends, backends, 160);
+    }
+
+    private static List<String> backends(int count) {
+        List<String> backends = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            backends.add("10.0.0." + i + ":5080");
+        }
+        return backends;
+    }
+}
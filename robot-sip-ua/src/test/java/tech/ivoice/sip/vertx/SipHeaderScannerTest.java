@@ -0,0 +1,57 @@
+package tech.ivoice.sip.vertx;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SipHeaderScannerTest {
+
+    @Test
+    void callId() {
+        byte[] message = ("BYE sip:Client@127.0.0.1:5080 SIP/2.0\r\n" +
+            "Via: SIP/2.0/UDP 127.0.0.2:5082;branch=z9hG4bK-1\r\n" +
+            "CALL-ID:  mockId \r\n" +
+            "CSeq: 2 BYE\r\n" +
+            "\r\n").getBytes();
+
+        assertEquals("mockId", callId(message));
+    }
+
+    @Test
+    void compactCallId() {
+        byte[] message = ("SIP/2.0 200 OK\r\n" +
+            "v: SIP/2.0/UDP 127.0.0.2:5082;branch=z9hG4bK-1\r\n" +
+            "i:mockId\r\n" +
+            "\r\n").getBytes();
+
+        assertEquals("mockId", callId(message));
+    }
+
+    @Test
+    void whenCallIdOnlyInBodyThenNull() {
+        byte[] message = ("MESSAGE sip:Client@127.0.0.1:5080 SIP/2.0\r\n" +
+            "Content-Length: 16\r\n" +
+            "\r\n" +
+            "Call-ID: mockId\r\n").getBytes();
+
+        assertNull(callId(message));
+    }
+
+    @Test
+    void whenKeepAliveThenNull() {
+        assertNull(callId("\r\n\r\n".getBytes()));
+    }
+
+    private static String callId(byte[] message) {
+        long bounds = SipHeaderScanner.headerValueBounds(message, 0, message.length, SipHeaderScanner.CALL_ID,
+            SipHeaderScanner.CALL_ID_COMPACT);
+        if (bounds < 0) {
+            return null;
+        }
+        int start = SipHeaderScanner.valueStart(bounds);
+        return new String(message, start, SipHeaderScanner.valueEnd(bounds) - start, StandardCharsets.UTF_8);
+    }
+}
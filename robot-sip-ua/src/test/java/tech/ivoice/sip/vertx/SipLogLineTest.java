@@ -0,0 +1,72 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.message.Response;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static tech.ivoice.sip.vertx.SipMessages.parse;
+
+class SipLogLineTest {
+    private static final String CALL_ID = "2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11";
+    private static final int WARMUP = 10_000;
+    private static final int ITERATIONS = 10_000;
+
+    private final SipLogLine line = new SipLogLine();
+
+    @Test
+    void requestSummary() throws ParseException {
+        SIPRequest invite = parse(SipMessages.INVITE);
+
+        assertEquals("Human: sending INVITE to Robot Call-ID=" + CALL_ID + " CSeq=1",
+            line.sending(invite).toString());
+        assertEquals("Robot: got INVITE from Human Call-ID=" + CALL_ID + " CSeq=1",
+            line.received(invite).toString());
+    }
+
+    @Test
+    void responseSummary() throws ParseException {
+        SIPResponse ok = parse(SipMessages.INVITE).createResponse(Response.OK);
+
+        assertEquals("Robot: responding 200 OK on INVITE Call-ID=" + CALL_ID + " CSeq=1",
+            line.responding(ok).toString());
+        assertEquals("Human: got 200 OK on INVITE from Robot Call-ID=" + CALL_ID + " CSeq=1",
+            line.received(ok).toString());
+    }
+
+    @Test
+    void headSummary() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.BYE.getBytes());
+
+        assertEquals("Absorbed retransmission BYE Call-ID=" + head.getCallId() + " CSeq=2 BYE",
+            line.head("Absorbed retransmission", head).toString());
+    }
+
+    @Test
+    void summaryDoesNotAllocate() throws ParseException {
+        SIPRequest invite = parse(SipMessages.INVITE);
+        SIPResponse ok = invite.createResponse(Response.OK);
+
+        assertEquals(0, allocatedPerSummary(() -> line.received(invite)));
+        assertEquals(0, allocatedPerSummary(() -> line.responding(ok)));
+    }
+
+    private static long allocatedPerSummary(Supplier<CharSequence> summary) {
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            summary.get();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            summary.get();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+}
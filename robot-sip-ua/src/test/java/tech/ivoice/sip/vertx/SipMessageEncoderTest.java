@@ -0,0 +1,69 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tech.ivoice.javax.sip.SipClientTransactionImpl;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogImpl;
+
+import javax.sip.address.SipURI;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipMessageEncoderTest {
+    private final SipUserAgentTestImpl userAgent =
+        new SipUserAgentTestImpl(new SipVerticleConfig("127.0.0.1", 5080, "udp"), () -> "mockId");
+
+    @Test
+    void dialogRequests() throws ParseException {
+        SipURI target = new AddressFactoryImpl().createSipURI("Server", "127.0.0.2:5082");
+        SIPRequest invite = userAgent.createInvite("Client", target);
+        SipDialog<Void> dialog = new SipDialogImpl<>(new SipClientTransactionImpl(invite), () -> "mockId",
+            new HeaderFactoryImpl(), "udp");
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("serverToTag");
+        dialog.updateOnResponse(ok);
+
+        assertEncodedAsJainSip(invite);
+        assertEncodedAsJainSip(ok);
+        assertEncodedAsJainSip(dialog.createAck());
+        assertEncodedAsJainSip(dialog.createRequest(Request.BYE));
+    }
+
+    @Test
+    void requestWithBody() throws ParseException {
+        SIPRequest invite = (SIPRequest) new StringMsgParser()
+            .parseSIPMessage(SipMessages.INVITE.getBytes(), true, false, null);
+        invite.setContent("v=0\r\ns=Привет\r\n", invite.getContentTypeHeader());
+
+        assertEncodedAsJainSip(invite);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {SipMessages.INVITE, SipMessages.BYE, SipMessages.MESSAGE})
+    void receivedMessages(String message) throws ParseException {
+        assertEncodedAsJainSip(new StringMsgParser().parseSIPMessage(message.getBytes(), true, false, null));
+    }
+
+    private static void assertEncodedAsJainSip(SIPMessage message) {
+        ByteBuf encoded = SipMessageEncoder.encode(message);
+        try {
+            assertTrue(encoded.isDirect());
+            assertEquals(message.encode(), encoded.toString(StandardCharsets.UTF_8));
+        } finally {
+            encoded.release();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipMessageHeadTest {
+
+    @Test
+    void request() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+
+        assertTrue(head.isRequest());
+        assertEquals("INVITE", head.getMethod());
+        assertEquals("2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11", head.getCallId());
+        assertEquals(1, head.getCSeqNumber());
+        assertEquals("INVITE", head.getCSeqMethod());
+        assertEquals("z9hG4bK-524287-1---c6f7b2f1e4d1d1e3", head.getBranch());
+        assertEquals("initiator-9a3b1c", head.getFromTag());
+        assertNull(head.getToTag());
+    }
+
+    @Test
+    void response() throws ParseException {
+        byte[] bytes = ("SIP/2.0 200 OK\r\n" +
+            "v: SIP/2.0/UDP 127.0.0.1:5080;rport=5080;BRANCH=z9hG4bK-2, SIP/2.0/UDP 10.0.0.1;branch=z9hG4bK-1\r\n" +
+            "f: \"Human\" <sip:Human@127.0.0.1:5080;tag=uri-param>;tag=initiator-1\r\n" +
+            "t: sip:Robot@127.0.0.1:5081;tag=server-2\r\n" +
+            "i: mockId\r\n" +
+            "CSeq: 2 BYE\r\n" +
+            "l: 0\r\n" +
+            "\r\n").getBytes();
+        SipMessageHead head = SipMessageHead.parse(bytes);
+
+        assertFalse(head.isRequest());
+        assertEquals(200, head.getStatusCode());
+        assertEquals("mockId", head.getCallId());
+        assertEquals(2, head.getCSeqNumber());
+        assertEquals("BYE", head.getCSeqMethod());
+        assertEquals("z9hG4bK-2", head.getBranch());
+        assertEquals("initiator-1", head.getFromTag());
+        assertEquals("server-2", head.getToTag());
+    }
+
+    @Test
+    void whenKeepAliveThenNull() throws ParseException {
+        assertNull(SipMessageHead.parse("\r\n\r\n".getBytes()));
+    }
+
+    @Test
+    void whenCallIdMissingThenException() {
+        byte[] bytes = ("BYE sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+            "CSeq: 2 BYE\r\n" +
+            "\r\n").getBytes();
+
+        assertThrows(ParseException.class, () -> SipMessageHead.parse(bytes));
+    }
+
+    @Test
+    void fullMessageIsParsedOnce() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.BYE.getBytes());
+        StringMsgParser parser = new StringMsgParser();
+
+        SIPRequest bye = (SIPRequest) head.message(parser);
+        assertEquals(head.getCallId(), bye.getCallId().getCallId());
+        assertSame(bye, head.message(parser));
+    }
+}
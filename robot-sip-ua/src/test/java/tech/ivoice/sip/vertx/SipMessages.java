@@ -0,0 +1,86 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import tech.ivoice.javax.sip.SipDialog;
+import tech.ivoice.javax.sip.SipDialogImpl;
+import tech.ivoice.javax.sip.SipServerTransactionImpl;
+
+import java.text.ParseException;
+
+/**
+ * Realistic messages as received from Asterisk, and user agent they are sent to
+ */
+final class SipMessages {
+    static final String INVITE = "INVITE sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+        "Via: SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-524287-1---c6f7b2f1e4d1d1e3;rport\r\n" +
+        "Max-Forwards: 70\r\n" +
+        "Contact: <sip:Human@127.0.0.1:5080>\r\n" +
+        "To: <sip:Robot@127.0.0.1:5081>\r\n" +
+        "From: <sip:Human@127.0.0.1:5080>;tag=initiator-9a3b1c\r\n" +
+        "Call-ID: 2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11\r\n" +
+        "CSeq: 1 INVITE\r\n" +
+        "Allow: INVITE, ACK, CANCEL, BYE, NOTIFY, REFER, MESSAGE, OPTIONS, INFO, SUBSCRIBE\r\n" +
+        "Content-Type: application/sdp\r\n" +
+        "User-Agent: Asterisk PBX 18.8.0\r\n" +
+        "Content-Length: 230\r\n" +
+        "\r\n" +
+        "v=0\r\n" +
+        "o=- 1637391494 1637391495 IN IP4 192.168.1.3\r\n" +
+        "s=Asterisk\r\n" +
+        "c=IN IP4 192.168.1.3\r\n" +
+        "t=0 0\r\n" +
+        "m=audio 30832 RTP/AVP 0 8 101\r\n" +
+        "a=rtpmap:0 PCMU/8000\r\n" +
+        "a=rtpmap:8 PCMA/8000\r\n" +
+        "a=rtpmap:101 telephone-event/8000\r\n" +
+        "a=fmtp:101 0-16\r\n" +
+        "a=ptime:20\r\n" +
+        "a=sendrecv\r\n";
+    static final String BYE = "BYE sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+        "Via: SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-524287-1---0d3b5c7a9e1f2a4b;rport\r\n" +
+        "Max-Forwards: 70\r\n" +
+        "To: <sip:Robot@127.0.0.1:5081>;tag=server-5e1d\r\n" +
+        "From: <sip:Human@127.0.0.1:5080>;tag=initiator-9a3b1c\r\n" +
+        "Call-ID: 2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11\r\n" +
+        "CSeq: 2 BYE\r\n" +
+        "User-Agent: Asterisk PBX 18.8.0\r\n" +
+        "Content-Length: 0\r\n" +
+        "\r\n";
+    static final String MESSAGE = "MESSAGE sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+        "Via: SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-524287-1---7c1e9d2b3a4f5e6d;rport\r\n" +
+        "Max-Forwards: 70\r\n" +
+        "To: <sip:Robot@127.0.0.1:5081>;tag=server-5e1d\r\n" +
+        "From: <sip:Human@127.0.0.1:5080>;tag=initiator-9a3b1c\r\n" +
+        "Call-ID: 2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11\r\n" +
+        "CSeq: 3 MESSAGE\r\n" +
+        "Content-Type: application/text\r\n" +
+        "Content-Length: 10\r\n" +
+        "\r\n" +
+        "John Wayne";
+
+    private SipMessages() {
+    }
+
+    static SIPRequest parse(String message) throws ParseException {
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(message.getBytes(), true, false, null);
+    }
+
+    /**
+     * @return config of user agent messages are sent to
+     */
+    static SipVerticleConfig config() {
+        return new SipVerticleConfig("127.0.0.1", 5081, "udp");
+    }
+
+    /**
+     * @return server dialog created by {@link #INVITE} with the Call-ID
+     */
+    static SipDialog<Void> dialog(String callId) throws ParseException {
+        SIPRequest invite = parse(INVITE);
+        invite.getCallId().setCallId(callId);
+        return new SipDialogImpl<>(new SipServerTransactionImpl(invite), () -> "mockId",
+            new HeaderFactoryImpl(), "udp");
+    }
+}
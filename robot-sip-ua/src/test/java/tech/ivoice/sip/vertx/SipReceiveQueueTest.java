@@ -0,0 +1,97 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.mutiny.core.net.SocketAddress;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipReceiveQueueTest {
+    private final SocketAddress sender = SocketAddress.inetSocketAddress(5080, "127.0.0.1");
+    private final List<String> handled = new ArrayList<>();
+
+    @Test
+    void inDialogMessagesFirst() throws ParseException {
+        SipReceiveQueue queue = new SipReceiveQueue(10);
+        queue.offer(head(SipMessages.INVITE), sender, true);
+        queue.offer(head(SipMessages.BYE), sender, false);
+        queue.offer(head(SipMessages.MESSAGE), sender, false);
+        assertEquals(3, queue.size());
+
+        List<SocketAddress> senders = new ArrayList<>();
+        while (queue.poll((head, from) -> {
+            handled.add(head.getMethod());
+            senders.add(from);
+        })) {
+        }
+
+        assertEquals(List.of("BYE", "MESSAGE", "INVITE"), handled);
+        assertEquals(List.of(sender, sender, sender), senders);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void inDialogMessageReceivedLaterOvertakesQueuedInvites() throws ParseException {
+        SipReceiveQueue queue = new SipReceiveQueue(10);
+        queue.offer(head(SipMessages.INVITE), sender, true);
+        queue.offer(head(SipMessages.INVITE), sender, true);
+        queue.poll((head, from) -> handled.add(head.getMethod()));
+
+        queue.offer(head(SipMessages.BYE), sender, false);
+        while (queue.poll((head, from) -> handled.add(head.getMethod()))) {
+        }
+
+        assertEquals(List.of("INVITE", "BYE", "INVITE"), handled);
+    }
+
+    @Test
+    void newDialogQueueIsBounded() throws ParseException {
+        SipReceiveQueue queue = new SipReceiveQueue(2);
+        SipMessageHead invite = head(SipMessages.INVITE);
+
+        assertTrue(queue.offer(invite, sender, true));
+        assertTrue(queue.offer(invite, sender, true));
+        assertFalse(queue.offer(invite, sender, true));
+        assertTrue(queue.offer(head(SipMessages.BYE), sender, false), "in-dialog queue is not bounded");
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    void offerAndPollDoNotAllocate() throws ParseException {
+        SipReceiveQueue queue = new SipReceiveQueue(1000);
+        SipMessageHead invite = head(SipMessages.INVITE);
+        SipMessageHead bye = head(SipMessages.BYE);
+        BiConsumer<SipMessageHead, SocketAddress> handler = (head, from) -> handled.size();
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20_000; i++) {
+            offerAndPoll(queue, invite, bye, handler);
+        }
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 20_000; i++) {
+            offerAndPoll(queue, invite, bye, handler);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 1000, allocated + " bytes allocated for 40000 messages");
+    }
+
+    private void offerAndPoll(SipReceiveQueue queue, SipMessageHead invite, SipMessageHead bye,
+                              BiConsumer<SipMessageHead, SocketAddress> handler) {
+        queue.offer(invite, sender, true);
+        queue.offer(bye, sender, false);
+        queue.poll(handler);
+        queue.poll(handler);
+    }
+
+    private static SipMessageHead head(String message) throws ParseException {
+        return SipMessageHead.parse(message.getBytes());
+    }
+}
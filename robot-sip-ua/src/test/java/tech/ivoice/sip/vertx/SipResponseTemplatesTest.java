@@ -0,0 +1,154 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.vertx.mutiny.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.InvalidArgumentException;
+import javax.sip.header.ContentTypeHeader;
+import javax.sip.header.RetryAfterHeader;
+import javax.sip.message.Response;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipResponseTemplatesTest {
+    private final SipResponseTemplates templates = new SipResponseTemplates();
+    private final HeaderFactoryImpl headerFactory = new HeaderFactoryImpl();
+
+    @Test
+    void trying() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SIPRequest invite = (SIPRequest) head.message(new StringMsgParser());
+        SIPResponse trying = invite.createResponse(Response.TRYING);
+
+        Buffer encoded = templates.encode(trying, head);
+
+        assertNotNull(encoded);
+        assertSameMessage(trying, encoded);
+    }
+
+    @Test
+    void okWithSdp() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SIPRequest invite = (SIPRequest) head.message(new StringMsgParser());
+        SIPResponse ok = invite.createResponse(Response.OK);
+        ok.setToTag("server-1");
+        ok.setHeader(headerFactory.createContactHeader(invite.getTo().getAddress()));
+        ContentTypeHeader sdp = headerFactory.createContentTypeHeader("application", "sdp");
+        ok.setContent("v=0\r\n".getBytes(), sdp);
+
+        Buffer encoded = templates.encode(ok, head);
+
+        assertNotNull(encoded);
+        assertSameMessage(ok, encoded);
+    }
+
+    @Test
+    void stampedVia() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.BYE.getBytes());
+        SIPRequest bye = (SIPRequest) head.message(new StringMsgParser());
+        Via via = bye.getTopmostVia();
+        via.setReceived("10.0.0.1");
+        via.setParameter(Via.RPORT, "5090");
+        SIPResponse ok = bye.createResponse(Response.OK);
+
+        Buffer encoded = templates.encode(ok, head);
+
+        assertNotNull(encoded);
+        assertSameMessage(ok, encoded);
+        assertTrue(encoded.toString().contains("received=10.0.0.1"));
+    }
+
+    @Test
+    void serviceUnavailableWithRetryAfter() throws ParseException, InvalidArgumentException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SIPRequest invite = (SIPRequest) head.message(new StringMsgParser());
+        SIPResponse unavailable = invite.createResponse(Response.SERVICE_UNAVAILABLE);
+        unavailable.setHeader(headerFactory.createRetryAfterHeader(30));
+
+        Buffer encoded = templates.encode(unavailable, head);
+
+        assertNotNull(encoded);
+        assertSameMessage(unavailable, encoded);
+
+        RetryAfterHeader withComment = headerFactory.createRetryAfterHeader(30);
+        withComment.setComment("maintenance");
+        unavailable.setHeader(withComment);
+        assertNull(templates.encode(unavailable, head));
+    }
+
+    @Test
+    void serviceUnavailableFromHead() throws ParseException, InvalidArgumentException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SIPRequest invite = (SIPRequest) new StringMsgParser()
+            .parseSIPMessage(SipMessages.INVITE.getBytes(), true, false, null);
+        invite.getTopmostVia().setParameter(Via.RPORT, "5062");
+        SIPResponse unavailable = invite.createResponse(Response.SERVICE_UNAVAILABLE);
+        unavailable.setToTag("server-1");
+        unavailable.setHeader(headerFactory.createRetryAfterHeader(30));
+
+        Buffer encoded = templates.encodeOverloaded(head, unavailable.getViaHeaders(), "server-1", 30);
+
+        assertNotNull(encoded);
+        assertSameMessage(unavailable, encoded);
+    }
+
+    @Test
+    void fallbackOnOtherResponses() throws ParseException {
+        SipMessageHead head = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SIPRequest invite = (SIPRequest) head.message(new StringMsgParser());
+
+        assertNull(templates.encode(invite.createResponse(Response.RINGING), head));
+
+        SIPResponse withExtraHeader = invite.createResponse(Response.OK);
+        withExtraHeader.setHeader(headerFactory.createHeader("Subject", "test"));
+        assertNull(templates.encode(withExtraHeader, head));
+
+        SIPResponse withOtherBody = invite.createResponse(Response.OK);
+        withOtherBody.setContent("text", headerFactory.createContentTypeHeader("text", "plain"));
+        assertNull(templates.encode(withOtherBody, head));
+    }
+
+    @Test
+    void fallbackOnOtherRequest() throws ParseException {
+        SipMessageHead inviteHead = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        SipMessageHead byeHead = SipMessageHead.parse(SipMessages.BYE.getBytes());
+        SIPRequest invite = (SIPRequest) inviteHead.message(new StringMsgParser());
+
+        assertNull(templates.encode(invite.createResponse(Response.OK), byeHead));
+    }
+
+    /**
+     * Messages are the same if parsed messages have the same headers, header order may differ
+     */
+    private static void assertSameMessage(SIPResponse expected, Buffer actual) throws ParseException {
+        SIPMessage parsed = new StringMsgParser().parseSIPMessage(actual.getBytes(), true, false, null);
+        assertEquals(expected.getFirstLine(), parsed.getFirstLine());
+        assertEquals(headers(expected), headers(parsed));
+        assertEquals(expected.getContentLength().getContentLength(), parsed.getContentLength().getContentLength());
+        assertEquals(new String(expected.getRawContent() == null ? new byte[0] : expected.getRawContent(),
+                StandardCharsets.UTF_8),
+            new String(parsed.getRawContent() == null ? new byte[0] : parsed.getRawContent(), StandardCharsets.UTF_8));
+    }
+
+    private static List<String> headers(SIPMessage message) {
+        List<String> headers = new ArrayList<>();
+        for (Iterator<SIPHeader> iterator = message.getHeaders(); iterator.hasNext(); ) {
+            headers.add(iterator.next().encode());
+        }
+        Collections.sort(headers);
+        return headers;
+    }
+}
@@ -0,0 +1,80 @@
+package tech.ivoice.sip.vertx;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SipStreamFramerTest {
+    private static final String BYE = "BYE sip:Client@127.0.0.1:5080 SIP/2.0\r\n" +
+        "Via: SIP/2.0/TCP 127.0.0.2:5082;branch=z9hG4bK-1\r\n" +
+        "Call-ID: mockId\r\n" +
+        "CSeq: 2 BYE\r\n" +
+        "Content-Length: 0\r\n" +
+        "\r\n";
+    private static final String MESSAGE = "MESSAGE sip:Client@127.0.0.1:5080 SIP/2.0\r\n" +
+        "Via: SIP/2.0/TCP 127.0.0.2:5082;branch=z9hG4bK-2\r\n" +
+        "Call-ID: mockId\r\n" +
+        "CSeq: 3 MESSAGE\r\n" +
+        "Content-Type: application/text\r\n" +
+        "l: 18\r\n" +
+        "\r\n" +
+        "What is your name?";
+
+    private final List<String> messages = new ArrayList<>();
+    private SipStreamFramer framer;
+
+    @BeforeEach
+    void init() {
+        framer = new SipStreamFramer(bytes -> messages.add(new String(bytes)), 1024);
+    }
+
+    @Test
+    void whenSeveralMessagesInChunkThenAllFramed() {
+        framer.handle(Buffer.buffer(BYE + MESSAGE));
+
+        assertEquals(List.of(BYE, MESSAGE), messages);
+    }
+
+    @Test
+    void whenMessageSplitAcrossChunksThenFramedOnLastChunk() {
+        String stream = MESSAGE + BYE;
+        for (int i = 0; i < stream.length(); i += 7) {
+            framer.handle(Buffer.buffer(stream.substring(i, Math.min(i + 7, stream.length()))));
+        }
+
+        assertEquals(List.of(MESSAGE, BYE), messages);
+    }
+
+    @Test
+    void whenBodyIsIncompleteThenMessageWaitsForRest() {
+        framer.handle(Buffer.buffer(MESSAGE.substring(0, MESSAGE.length() - 5)));
+        assertTrue(messages.isEmpty());
+
+        framer.handle(Buffer.buffer(MESSAGE.substring(MESSAGE.length() - 5)));
+        assertEquals(List.of(MESSAGE), messages);
+    }
+
+    @Test
+    void keepAliveIsSkipped() {
+        framer.handle(Buffer.buffer("\r\n\r\n" + BYE + "\r\n\r\n"));
+        framer.handle(Buffer.buffer("\r\n"));
+
+        assertEquals(List.of(BYE), messages);
+    }
+
+    @Test
+    void whenMessageExceedsMaxSizeThenException() {
+        String huge = "MESSAGE sip:Client@127.0.0.1:5080 SIP/2.0\r\n" +
+            "Content-Length: 4096\r\n" +
+            "\r\n";
+
+        assertThrows(IllegalStateException.class, () -> framer.handle(Buffer.buffer(huge)));
+    }
+}
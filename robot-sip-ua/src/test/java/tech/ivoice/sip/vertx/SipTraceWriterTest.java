@@ -0,0 +1,124 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.vertx.core.impl.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.message.Response;
+import java.text.ParseException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tech.ivoice.sip.vertx.SipMessages.parse;
+
+class SipTraceWriterTest {
+    private final BlockingQueue<String> traced = new LinkedBlockingQueue<>();
+
+    @Test
+    void receivedMessageTracedFromBytes() throws Exception {
+        SipTraceWriter writer = new SipTraceWriter(new RecordingLogger());
+        writer.start();
+        SipMessageHead head = SipMessageHead.parse(SipMessages.BYE.getBytes());
+        SIPRequest bye = (SIPRequest) head.message(new StringMsgParser());
+        // modified by handling, trace shows message as received
+        bye.getTopmostVia().setReceived("10.0.0.1");
+
+        writer.trace("Robot", "got request", bye);
+
+        assertEquals("Robot: got request\n" + SipMessages.BYE, traced.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sentMessageEncodedByWriter() throws Exception {
+        SipTraceWriter writer = new SipTraceWriter(new RecordingLogger());
+        writer.start();
+        SIPRequest invite = parse(SipMessages.INVITE);
+
+        writer.trace("Robot", "responding", invite.createResponse(Response.RINGING));
+
+        String trace = traced.poll(5, TimeUnit.SECONDS);
+        assertNotNull(trace);
+        assertTrue(trace.startsWith("Robot: responding\nSIP/2.0 180 Ringing\r\n"), trace);
+    }
+
+    @Test
+    void dropsWhenQueueIsFull() throws ParseException {
+        // not started, nothing is taken from queue
+        SipTraceWriter writer = new SipTraceWriter(new RecordingLogger());
+        SIPRequest invite = parse(SipMessages.INVITE);
+
+        for (int i = 0; i < SipTraceWriter.CAPACITY + 10; i++) {
+            writer.trace("Human", "sending", invite);
+        }
+
+        assertEquals(10, writer.getDropped());
+        assertTrue(traced.isEmpty());
+    }
+
+    private class RecordingLogger implements Logger {
+        @Override
+        public boolean isTraceEnabled() {
+            return true;
+        }
+
+        @Override
+        public void trace(Object message) {
+            traced.add(String.valueOf(message));
+        }
+
+        @Override
+        public void trace(Object message, Throwable t) {
+            trace(message);
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return true;
+        }
+
+        @Override
+        public void debug(Object message) {
+        }
+
+        @Override
+        public void debug(Object message, Throwable t) {
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return true;
+        }
+
+        @Override
+        public void info(Object message) {
+        }
+
+        @Override
+        public void info(Object message, Throwable t) {
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return true;
+        }
+
+        @Override
+        public void warn(Object message) {
+        }
+
+        @Override
+        public void warn(Object message, Throwable t) {
+        }
+
+        @Override
+        public void error(Object message) {
+        }
+
+        @Override
+        public void error(Object message, Throwable t) {
+        }
+    }
+}
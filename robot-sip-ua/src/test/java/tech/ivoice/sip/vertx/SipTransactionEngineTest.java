@@ -0,0 +1,349 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+import tech.ivoice.javax.sip.SipClientTransactionImpl;
+import tech.ivoice.javax.sip.SipServerTransactionImpl;
+import tech.ivoice.javax.sip.SipTransaction;
+
+import javax.sip.TransactionState;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tech.ivoice.sip.vertx.SipMessages.parse;
+
+class SipTransactionEngineTest {
+    private static final long T1 = 500;
+    private static final long T2 = 4000;
+    private static final long T4 = 5000;
+
+    private final List<SIPMessage> sent = new ArrayList<>();
+    private final List<Buffer> sentBytes = new ArrayList<>();
+    private final List<SipTransaction> timedOut = new ArrayList<>();
+    private long now = 0;
+
+    @Test
+    void inviteRetransmittedUntilTimeout() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SipClientTransactionImpl invite = new SipClientTransactionImpl(parse(SipMessages.INVITE));
+        engine.onRequestSent(invite);
+        assertEquals(TransactionState.CALLING, invite.getState());
+
+        // Timer A: T1, 2*T1, 4*T1...
+        advance(engine, T1);
+        assertEquals(1, sent.size());
+        advance(engine, 2 * T1);
+        assertEquals(2, sent.size());
+        advance(engine, 4 * T1);
+        assertEquals(3, sent.size());
+
+        // Timer B: 64*T1
+        advance(engine, 64 * T1 - 7 * T1);
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        assertEquals(List.of(invite), timedOut);
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    void provisionalResponseStopsInviteRetransmissions() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipClientTransactionImpl invite = new SipClientTransactionImpl(request);
+        engine.onRequestSent(invite);
+
+        assertTrue(engine.onResponseReceived(request.createResponse(Response.TRYING)));
+        assertEquals(TransactionState.PROCEEDING, invite.getState());
+
+        advance(engine, 128 * T1);
+        assertTrue(sent.isEmpty());
+        assertTrue(timedOut.isEmpty());
+    }
+
+    @Test
+    void retransmittedSuccessOnInviteIsAcknowledgedAgain() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipClientTransactionImpl invite = new SipClientTransactionImpl(request);
+        engine.onRequestSent(invite);
+        SIPResponse ok = request.createResponse(Response.OK);
+        ok.setToTag("server-1");
+
+        assertTrue(engine.onResponseReceived(ok));
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        SIPRequest ack = parse(SipMessages.INVITE);
+        ack.setMethod(Request.ACK);
+        ack.getCSeq().setMethod(Request.ACK);
+        ack.getTopmostVia().setBranch("z9hG4bK-ack");
+        engine.onRequestSent(new SipClientTransactionImpl(ack));
+
+        assertFalse(engine.onResponseReceived(ok));
+        assertEquals(List.of(ack), sent);
+
+        advance(engine, 64 * T1);
+        assertEquals(0, engine.size());
+        assertTrue(timedOut.isEmpty());
+    }
+
+    @Test
+    void nonInviteRetransmissionsAreCappedByT2() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.BYE);
+        SipClientTransactionImpl bye = new SipClientTransactionImpl(request);
+        engine.onRequestSent(bye);
+        assertEquals(TransactionState.TRYING, bye.getState());
+
+        // Timer E: T1, 2*T1, 4*T1, T2, T2
+        advance(engine, T1 + 2 * T1 + 4 * T1 + T2 + T2);
+        assertEquals(5, sent.size());
+
+        assertTrue(engine.onResponseReceived(request.createResponse(Response.OK)));
+        assertEquals(TransactionState.COMPLETED, bye.getState());
+        assertFalse(engine.onResponseReceived(request.createResponse(Response.OK)));
+
+        // Timer K
+        advance(engine, T4);
+        assertEquals(TransactionState.TERMINATED, bye.getState());
+        assertEquals(5, sent.size());
+        assertTrue(timedOut.isEmpty());
+    }
+
+    @Test
+    void successOnInviteRetransmittedUntilAck() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipServerTransactionImpl invite = new SipServerTransactionImpl(request);
+        engine.onRequestReceived(invite);
+        engine.onResponseSent(request.createResponse(Response.TRYING));
+        assertEquals(TransactionState.PROCEEDING, invite.getState());
+
+        SIPResponse ok = request.createResponse(Response.OK);
+        engine.onResponseSent(ok);
+        assertEquals(TransactionState.COMPLETED, invite.getState());
+
+        // Timer G: T1, 2*T1
+        advance(engine, T1 + 2 * T1);
+        assertEquals(List.of(ok, ok), sent);
+
+        SIPRequest ack = parse(SipMessages.INVITE);
+        ack.setMethod(Request.ACK);
+        engine.onRequestReceived(new SipServerTransactionImpl(ack));
+        assertEquals(TransactionState.CONFIRMED, invite.getState());
+
+        // Timer I
+        advance(engine, T4);
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        assertEquals(2, sent.size());
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    void successOnInviteWithoutAckTimesOut() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipServerTransactionImpl invite = new SipServerTransactionImpl(request);
+        engine.onRequestReceived(invite);
+        engine.onResponseSent(request.createResponse(Response.OK));
+
+        // Timer H
+        advance(engine, 64 * T1);
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        assertEquals(List.of(invite), timedOut);
+    }
+
+    @Test
+    void reliableTransportHasNoRetransmissions() throws ParseException {
+        SipTransactionEngine engine = engine("tcp");
+        SIPRequest request = parse(SipMessages.BYE);
+        SipClientTransactionImpl bye = new SipClientTransactionImpl(request);
+        engine.onRequestSent(bye);
+
+        advance(engine, 10 * T1);
+        assertTrue(sent.isEmpty());
+
+        engine.onResponseReceived(request.createResponse(Response.OK));
+        assertEquals(TransactionState.TERMINATED, bye.getState());
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    void retransmittedInviteAnsweredWithLastResponseBytes() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        engine.onRequestReceived(new SipServerTransactionImpl(request));
+        SipMessageHead retransmission = SipMessageHead.parse(SipMessages.INVITE.getBytes());
+        // no response yet
+        assertTrue(engine.absorbRetransmission(retransmission));
+        assertTrue(sent.isEmpty());
+
+        SIPResponse trying = request.createResponse(Response.TRYING);
+        assertTrue(engine.isRetransmittable(trying));
+        Buffer tryingBytes = Buffer.buffer(trying.encode());
+        engine.onResponseSent(trying, tryingBytes);
+
+        assertTrue(engine.absorbRetransmission(retransmission));
+        assertEquals(List.of(trying), sent);
+        assertEquals(List.of(tryingBytes), sentBytes);
+    }
+
+    @Test
+    void retransmittedByeAnsweredAfterTransactionCompleted() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.BYE);
+        engine.onRequestReceived(new SipServerTransactionImpl(request));
+        SIPResponse ok = request.createResponse(Response.OK);
+        Buffer okBytes = Buffer.buffer(ok.encode());
+        engine.onResponseSent(ok, okBytes);
+
+        assertTrue(engine.absorbRetransmission(SipMessageHead.parse(SipMessages.BYE.getBytes())));
+        assertEquals(List.of(okBytes), sentBytes);
+
+        // Timer J
+        advance(engine, 64 * T1);
+        assertFalse(engine.absorbRetransmission(SipMessageHead.parse(SipMessages.BYE.getBytes())));
+    }
+
+    @Test
+    void newRequestIsNotAbsorbed() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        engine.onRequestReceived(new SipServerTransactionImpl(parse(SipMessages.INVITE)));
+
+        String otherBranch = SipMessages.INVITE.replace("c6f7b2f1e4d1d1e3", "0000000000000000");
+        assertFalse(engine.absorbRetransmission(SipMessageHead.parse(otherBranch.getBytes())));
+        String otherMethod = SipMessages.INVITE.replaceFirst("INVITE", "OPTIONS")
+            .replace("CSeq: 1 INVITE", "CSeq: 1 OPTIONS");
+        assertFalse(engine.absorbRetransmission(SipMessageHead.parse(otherMethod.getBytes())));
+    }
+
+    @Test
+    void retransmittedAckAbsorbed() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        engine.onRequestReceived(new SipServerTransactionImpl(request));
+        engine.onResponseSent(request.createResponse(Response.OK));
+        String ackMessage = "ACK sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+            "Via: SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-ack;rport\r\n" +
+            "To: <sip:Robot@127.0.0.1:5081>;tag=server-5e1d\r\n" +
+            "From: <sip:Human@127.0.0.1:5080>;tag=initiator-9a3b1c\r\n" +
+            "Call-ID: 2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11\r\n" +
+            "CSeq: 1 ACK\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n";
+        SipMessageHead ack = SipMessageHead.parse(ackMessage.getBytes());
+
+        assertFalse(engine.absorbRetransmission(ack));
+        engine.onRequestReceived(new SipServerTransactionImpl(parse(ackMessage)));
+        assertTrue(engine.absorbRetransmission(ack));
+    }
+
+    @Test
+    void rejectionOfInviteIsAcknowledgedOnEveryRetransmission() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipClientTransactionImpl invite = new SipClientTransactionImpl(request);
+        engine.onRequestSent(invite);
+        SIPResponse busy = request.createResponse(Response.BUSY_HERE);
+        busy.getTo().setTag("server-5e1d");
+
+        assertTrue(engine.onResponseReceived(busy));
+        assertEquals(TransactionState.COMPLETED, invite.getState());
+        assertEquals(1, sent.size());
+        SIPRequest ack = (SIPRequest) sent.get(0);
+        assertEquals(Request.ACK, ack.getMethod());
+        assertEquals(Request.ACK, ack.getCSeq().getMethod());
+        assertEquals(request.getCSeq().getSeqNumber(), ack.getCSeq().getSeqNumber());
+        assertEquals(request.getTopmostVia().getBranch(), ack.getTopmostVia().getBranch());
+        assertEquals("server-5e1d", ack.getToTag());
+        assertEquals(request.getRequestURI(), ack.getRequestURI());
+
+        assertFalse(engine.onResponseReceived(busy));
+        assertEquals(List.of(ack, ack), sent);
+
+        // Timer D
+        advance(engine, 32_000);
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        assertTrue(timedOut.isEmpty());
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    void ackOnRejectionConfirmsTransactionWithoutDialog() throws ParseException {
+        SipTransactionEngine engine = engine("udp");
+        SIPRequest request = parse(SipMessages.INVITE);
+        SipServerTransactionImpl invite = new SipServerTransactionImpl(request);
+        engine.onRequestReceived(invite);
+        SIPResponse busy = request.createResponse(Response.BUSY_HERE);
+        engine.onResponseSent(busy);
+        // ACK on non-2xx has the branch of INVITE
+        String ackMessage = "ACK sip:Robot@127.0.0.1:5081 SIP/2.0\r\n" +
+            "Via: SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-524287-1---c6f7b2f1e4d1d1e3;rport\r\n" +
+            "To: <sip:Robot@127.0.0.1:5081>;tag=server-5e1d\r\n" +
+            "From: <sip:Human@127.0.0.1:5080>;tag=initiator-9a3b1c\r\n" +
+            "Call-ID: 2a0f0e5c-8e0d-4cbb-9c63-6b0c1f7f2e11\r\n" +
+            "CSeq: 1 ACK\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n";
+        SipMessageHead ack = SipMessageHead.parse(ackMessage.getBytes());
+
+        // Timer G
+        advance(engine, T1);
+        assertEquals(List.of(busy), sent);
+        assertTrue(engine.absorbAck(ack));
+        assertEquals(TransactionState.CONFIRMED, invite.getState());
+        assertTrue(engine.absorbRetransmission(ack), "retransmitted ACK is absorbed");
+
+        // Timer I, no more retransmissions and no Timer H
+        advance(engine, 64 * T1);
+        assertEquals(TransactionState.TERMINATED, invite.getState());
+        assertEquals(List.of(busy), sent);
+        assertTrue(timedOut.isEmpty());
+        assertFalse(engine.absorbAck(ack));
+    }
+
+    private SipTransactionEngine engine(String transport) {
+        SipVerticleConfig config = new SipVerticleConfig("127.0.0.1", 5081, transport)
+            .setTimerT1(T1)
+            .setTimerT2(T2)
+            .setTimerT4(T4);
+        return new SipTransactionEngine(config, () -> new RecordingTransport(), timedOut::add, now);
+    }
+
+    private void advance(SipTransactionEngine engine, long millis) {
+        long target = now + millis;
+        // advance tick by tick, as periodic timer does
+        while (now < target) {
+            now = Math.min(now + SipTransactionEngine.TICK_MILLIS, target);
+            engine.advance(now);
+        }
+    }
+
+    private class RecordingTransport implements AbstractSipUserAgent.Transport {
+        @Override
+        public Uni<Void> asyncStartListener() {
+            return Uni.createFrom().voidItem();
+        }
+
+        @Override
+        public void send(SIPRequest request) {
+            sent.add(request);
+        }
+
+        @Override
+        public void send(SIPResponse response) {
+            sent.add(response);
+        }
+
+        @Override
+        public void send(SIPResponse response, Buffer encoded) {
+            sent.add(response);
+            sentBytes.add(encoded);
+        }
+    }
+}
@@ -11,6 +11,10 @@ public class SipUserAgentTestImpl extends AbstractSipUserAgent<Void> {
         super(config, new TransportMock(), idGenerator);
     }
 
+    public SipUserAgentTestImpl(SipVerticleConfig config, Transport transport, Supplier<String> idGenerator) {
+        super(config, transport, idGenerator);
+    }
+
     private static class TransportMock implements Transport {
         @Override
         public Uni<Void> asyncStartListener() {
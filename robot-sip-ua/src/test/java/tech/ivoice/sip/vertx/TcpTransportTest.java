@@ -0,0 +1,120 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.sip.address.SipURI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TcpTransportTest {
+
+    @Test
+    void callOverTcp(io.vertx.core.Vertx vertx, VertxTestContext testContext) throws Exception {
+        SipURI calleeUri = new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:15082");
+        Callee callee = new Callee(new SipVerticleConfig("127.0.0.1", 15082, "tcp"));
+        Caller caller = new Caller(new SipVerticleConfig("127.0.0.1", 15081, "tcp"), calleeUri, testContext);
+
+        Vertx mutinyVertx = Vertx.newInstance(vertx);
+        mutinyVertx.deployVerticle(callee)
+            .chain(() -> mutinyVertx.deployVerticle(caller))
+            .subscribe().with(id -> {
+            }, testContext::failNow);
+
+        testContext.awaitCompletion(5, TimeUnit.SECONDS);
+        if (testContext.failed()) {
+            throw new AssertionError(testContext.causeOfFailure());
+        }
+    }
+
+    @Test
+    void responseOnClosedConnectionIsSentToSentByPort(io.vertx.core.Vertx vertx, VertxTestContext testContext)
+        throws Exception {
+        String invite = SipMessages.INVITE
+            .replace("SIP/2.0/UDP 127.0.0.1:5080;branch=z9hG4bK-524287-1---c6f7b2f1e4d1d1e3;rport",
+                "SIP/2.0/TCP 127.0.0.1:15084;branch=z9hG4bK-524287-1---c6f7b2f1e4d1d1e3");
+        vertx.createNetServer()
+            .connectHandler(socket -> socket.handler(buffer -> testContext.verify(() -> {
+                assertTrue(buffer.toString().startsWith("SIP/2.0 200 OK\r\n"), buffer.toString());
+                testContext.completeNow();
+            })))
+            .listen(15084, "127.0.0.1")
+            .compose(server -> vertx.deployVerticle(new DelayedCallee(new SipVerticleConfig("127.0.0.1", 15083,
+                "tcp"))))
+            .compose(id -> vertx.createNetClient().connect(15083, "127.0.0.1"))
+            // request source port is closed before response is sent
+            .compose(socket -> socket.write(invite).compose(v -> socket.close()))
+            .onFailure(testContext::failNow);
+
+        assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS), "response not received on sent-by port");
+        if (testContext.failed()) {
+            throw new AssertionError(testContext.causeOfFailure());
+        }
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final VertxTestContext testContext;
+
+        Caller(SipVerticleConfig config, SipURI calleeUri, VertxTestContext testContext) {
+            super(config);
+            this.calleeUri = calleeUri;
+            this.testContext = testContext;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            sendRequest(createInvite("Caller", calleeUri));
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            String callId = successResponseOnInvite.getCallId().getCallId();
+            sendRequest(createAck(successResponseOnInvite));
+            sendRequest(createBye(callId));
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            testContext.completeNow();
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<Void> {
+        Callee(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            sendResponse(createOk(callId, "v=0\r\n"));
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            sendResponse(createOk(bye.getCallId().getCallId()));
+        }
+    }
+
+    private static class DelayedCallee extends AbstractSipUserAgent<Void> {
+        DelayedCallee(SipVerticleConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            vertx.setTimer(300, id -> sendResponse(createOk(callId, "v=0\r\n")));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package tech.ivoice.sip.vertx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void firesOnDeadline() {
+        TimingWheel wheel = new TimingWheel(10, 8, 1000);
+        wheel.schedule(timer("a"), 25);
+        wheel.schedule(timer("b"), 10);
+
+        wheel.advance(1019);
+        assertEquals(List.of("b"), fired);
+
+        wheel.advance(1029);
+        assertEquals(List.of("b"), fired);
+
+        wheel.advance(1030);
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesAfterSeveralRounds() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0);
+        wheel.schedule(timer("long"), 1000); // 100 ticks, 12 rounds of the wheel
+        wheel.schedule(timer("short"), 20);
+
+        wheel.advance(990);
+        assertEquals(List.of("short"), fired);
+
+        wheel.advance(1000);
+        assertEquals(List.of("short", "long"), fired);
+    }
+
+    @Test
+    void cancel() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0);
+        TimingWheel.Timer timer = timer("cancelled");
+        wheel.schedule(timer, 50);
+        wheel.cancel(timer);
+        wheel.cancel(timer);
+
+        wheel.advance(100);
+
+        assertTrue(fired.isEmpty());
+        assertFalse(timer.isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timerCancelledByTimerExpiringInTheSameTick() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0);
+        List<TimingWheel.Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            int other = 1 - i;
+            timers.add(new TimingWheel.Timer() {
+                @Override
+                protected void expire() {
+                    fired.add("fired");
+                    wheel.cancel(timers.get(other));
+                }
+            });
+        }
+        wheel.schedule(timers.get(0), 10);
+        wheel.schedule(timers.get(1), 10);
+
+        wheel.advance(10);
+
+        assertEquals(List.of("fired"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void rescheduleFromExpire() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0);
+        TimingWheel.Timer periodic = new TimingWheel.Timer() {
+            @Override
+            protected void expire() {
+                fired.add("tick");
+                wheel.schedule(this, 10);
+            }
+        };
+        wheel.schedule(periodic, 10);
+
+        wheel.advance(35);
+
+        assertEquals(List.of("tick", "tick", "tick"), fired);
+        assertTrue(periodic.isScheduled());
+    }
+
+    @Test
+    void manyTimers() {
+        TimingWheel wheel = new TimingWheel(10, 512, 0);
+        List<TimingWheel.Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            TimingWheel.Timer timer = timer("t");
+            timers.add(timer);
+            wheel.schedule(timer, 32_000 + i % 1000);
+        }
+        for (int i = 0; i < timers.size(); i += 2) {
+            wheel.cancel(timers.get(i));
+        }
+        assertEquals(50_000, wheel.size());
+
+        wheel.advance(33_000);
+
+        assertEquals(50_000, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    private TimingWheel.Timer timer(String name) {
+        return new TimingWheel.Timer() {
+            @Override
+            protected void expire() {
+                fired.add(name);
+            }
+        };
+    }
+}
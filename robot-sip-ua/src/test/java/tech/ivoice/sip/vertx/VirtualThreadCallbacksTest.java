@@ -0,0 +1,108 @@
+package tech.ivoice.sip.vertx;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.vertx.core.Context;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.mutiny.core.Vertx;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.address.SipURI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadCallbacksTest {
+    private static final int CALLS = 20;
+    private static final long SCENARIO_MILLIS = 300;
+
+    @Test
+    void blockingCallbacksDoNotBlockOtherCalls() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            VertxTestContext testContext = new VertxTestContext();
+            SipURI calleeUri = new AddressFactoryImpl().createSipURI("Callee", "127.0.0.1:15094");
+            Callee callee = new Callee(new SipVerticleConfig("127.0.0.1", 15094, "udp")
+                .setVirtualThreadCallbacks(true), testContext);
+            Caller caller = new Caller(new SipVerticleConfig("127.0.0.1", 15093, "udp"), calleeUri,
+                testContext.checkpoint(CALLS));
+
+            vertx.deployVerticle(callee)
+                .chain(() -> vertx.deployVerticle(caller))
+                .subscribe().with(id -> {
+                }, testContext::failNow);
+
+            // calls blocked one after another would take CALLS * SCENARIO_MILLIS
+            assertTrue(testContext.awaitCompletion(CALLS * SCENARIO_MILLIS / 2, TimeUnit.MILLISECONDS),
+                "calls not completed");
+            if (testContext.failed()) {
+                throw new AssertionError(testContext.causeOfFailure());
+            }
+        } finally {
+            vertx.closeAndAwait();
+        }
+    }
+
+    private static class Caller extends AbstractSipUserAgent<Void> {
+        private final SipURI calleeUri;
+        private final Checkpoint completed;
+
+        Caller(SipVerticleConfig config, SipURI calleeUri, Checkpoint completed) {
+            super(config);
+            this.calleeUri = calleeUri;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void onServerStartedListening() {
+            for (int i = 0; i < CALLS; i++) {
+                sendRequest(createInvite("Caller", calleeUri));
+            }
+        }
+
+        @Override
+        protected void onClientDialogConfirmed(SIPResponse successResponseOnInvite) {
+            String callId = successResponseOnInvite.getCallId().getCallId();
+            sendRequest(createAck(successResponseOnInvite));
+            sendRequest(createBye(callId));
+        }
+
+        @Override
+        protected void onDialogTerminated(SIPResponse successResponseOnBye) {
+            completed.flag();
+        }
+    }
+
+    private static class Callee extends AbstractSipUserAgent<String> {
+        private final VertxTestContext testContext;
+
+        Callee(SipVerticleConfig config, VertxTestContext testContext) {
+            super(config);
+            this.testContext = testContext;
+        }
+
+        @Override
+        protected void onInvite(SIPRequest invite) {
+            String callId = invite.getCallId().getCallId();
+            sendResponse(createTrying(callId));
+            testContext.verify(() -> assertTrue(!Context.isOnEventLoopThread(), "callback on event loop"));
+            // blocking scenario initialization, e.g. database query
+            try {
+                Thread.sleep(SCENARIO_MILLIS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            setApplicationData(callId, "initialized");
+            sendResponse(createOk(callId, "v=0\r\n"));
+        }
+
+        @Override
+        protected void onBye(SIPRequest bye) {
+            String callId = bye.getCallId().getCallId();
+            testContext.verify(() -> assertTrue("initialized".equals(getApplicationData(callId))));
+            sendResponse(createOk(callId));
+        }
+    }
+}